@@ -0,0 +1,86 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.cmd.MarkerInfo2;
+
+public class MarkerQueryTest {
+    private IProject testProject;
+    private IMarker ruleAMarker;
+    private IMarker ruleBMarker;
+    private IMarker dfaMarker;
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createProject("MarkerQueryTest");
+        Assert.assertTrue("A test project cannot be created; the tests cannot be performed.",
+                testProject != null && testProject.exists() && testProject.isAccessible());
+
+        IFile file = EclipseUtils.createTestSourceFile(testProject, "/Test.java", "class Test { }");
+        ruleAMarker = MarkerInfo2.violation(PMDRuntimeConstants.PMD_MARKER_1, "RuleA", "first", 1, 1, 1,
+                IMarker.SEVERITY_ERROR).addAsMarkerTo(file);
+        ruleBMarker = MarkerInfo2.violation(PMDRuntimeConstants.PMD_MARKER_1, "RuleB", "second", 1, 1, 1,
+                IMarker.SEVERITY_ERROR).addAsMarkerTo(file);
+        dfaMarker = MarkerInfo2.violation(PMDRuntimeConstants.PMD_DFA_MARKER, "RuleB", "third", 1, 1, 3,
+                IMarker.SEVERITY_WARNING).addAsMarkerTo(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testProject != null && testProject.exists()) {
+            testProject.delete(true, true, null);
+        }
+    }
+
+    @Test
+    public void allMarkersAreFoundOnce() throws Exception {
+        assertFound(MarkerQuery.allMarkers().find(testProject), ruleAMarker, ruleBMarker, dfaMarker);
+        Assert.assertEquals(3, MarkerQuery.allMarkers().count(testProject));
+        Assert.assertTrue(MarkerQuery.allMarkers().exists(testProject));
+    }
+
+    @Test
+    public void markersOfSeveralTypesAreFoundOnce() throws Exception {
+        MarkerQuery pmdTypes = MarkerQuery.markersOf(PMDRuntimeConstants.PMD_MARKER_1,
+                PMDRuntimeConstants.PMD_DFA_MARKER);
+        assertFound(pmdTypes.find(testProject), ruleAMarker, ruleBMarker, dfaMarker);
+
+        // the problem markers include the PMD markers
+        MarkerQuery otherTypes = MarkerQuery.markersOf(IMarker.PROBLEM, PMDRuntimeConstants.PMD_MARKER_1);
+        assertFound(otherTypes.find(testProject), ruleAMarker, ruleBMarker, dfaMarker);
+        Assert.assertEquals(3, otherTypes.count(testProject));
+
+        assertFound(MarkerQuery.ruleMarkers().find(testProject), ruleAMarker, ruleBMarker);
+    }
+
+    @Test
+    public void markersAreFilteredByRuleAndPriority() throws Exception {
+        assertFound(MarkerQuery.allMarkers().withRule("RuleB").find(testProject), ruleBMarker, dfaMarker);
+        assertFound(MarkerQuery.allMarkers().withPriority(3).find(testProject), dfaMarker);
+        assertFound(MarkerQuery.allMarkers().withRule("RuleB").withPriority(1).find(testProject), ruleBMarker);
+        Assert.assertEquals(1, MarkerQuery.ruleMarkers().withRule("RuleA").count(testProject));
+        Assert.assertFalse(MarkerQuery.allMarkers().withRule("RuleA").withPriority(3).exists(testProject));
+    }
+
+    private static void assertFound(IMarker[] found, IMarker... expected) {
+        Set<IMarker> foundSet = new HashSet<IMarker>(Arrays.asList(found));
+        Assert.assertEquals("Markers found several times", found.length, foundSet.size());
+        Assert.assertEquals(new HashSet<IMarker>(Arrays.asList(expected)), foundSet);
+    }
+}
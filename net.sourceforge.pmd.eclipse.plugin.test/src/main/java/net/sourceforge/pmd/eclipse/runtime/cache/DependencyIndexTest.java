@@ -0,0 +1,64 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DependencyIndexTest {
+
+    @Test
+    public void findsTheFilesReferringToAType() {
+        DependencyIndex index = new DependencyIndex(new File("does-not-exist.index"));
+        index.record("src/a/User.java", "1", Arrays.asList("b.Service", "java.util.List"));
+        index.record("src/a/Nested.java", "1", Arrays.asList("b.Service.Inner"));
+        index.record("src/a/OnDemand.java", "1", Arrays.asList("b.*"));
+        index.record("src/a/Other.java", "1", Arrays.asList("b.ServiceFactory"));
+
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("src/a/User.java", "src/a/Nested.java",
+                "src/a/OnDemand.java")), index.dependentsOf(Collections.singleton("b.Service")));
+        Assert.assertTrue(index.dependentsOf(Collections.singleton("c.Service")).isEmpty());
+    }
+
+    @Test
+    public void recordingReplacesTheReferences() {
+        DependencyIndex index = new DependencyIndex(new File("does-not-exist.index"));
+        index.record("src/a/User.java", "1", Arrays.asList("b.Service"));
+        Assert.assertTrue(index.isCurrent("src/a/User.java", "1"));
+        Assert.assertFalse(index.isCurrent("src/a/User.java", "2"));
+
+        index.record("src/a/User.java", "2", Arrays.asList("b.Other"));
+        Assert.assertTrue(index.dependentsOf(Collections.singleton("b.Service")).isEmpty());
+        Assert.assertEquals(1, index.dependentsOf(Collections.singleton("b.Other")).size());
+
+        index.remove("src/a/User.java");
+        Assert.assertTrue(index.dependentsOf(Collections.singleton("b.Other")).isEmpty());
+    }
+
+    @Test
+    public void persistsTheReferences() throws IOException {
+        File file = File.createTempFile("dependencies", ".index");
+        // the index is only read if it exists
+        file.delete();
+        try {
+            DependencyIndex index = new DependencyIndex(file);
+            index.record("src/a/User.java", "1", Arrays.asList("b.Service"));
+            index.persist();
+
+            DependencyIndex loaded = new DependencyIndex(file);
+            Assert.assertTrue(loaded.isCurrent("src/a/User.java", "1"));
+            Assert.assertEquals(Collections.singleton("src/a/User.java"),
+                    loaded.dependentsOf(Collections.singleton("b.Service")));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReviewCostModelTest {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void defaultEstimate() {
+        ReviewCostModel model = new ReviewCostModel(new File("does-not-exist.properties"));
+        Assert.assertEquals(20.0, model.estimateFileMillis(100), DELTA);
+    }
+
+    @Test
+    public void learnsFromReviews() {
+        ReviewCostModel model = new ReviewCostModel(new File("does-not-exist.properties"));
+        model.record(10, 100, 1000);
+        Assert.assertEquals(100.0, model.estimateFileMillis(100), DELTA);
+        // another rule count is estimated per file and rule
+        Assert.assertEquals(50.0, model.estimateFileMillis(50), DELTA);
+
+        model.record(10, 100, 2000);
+        Assert.assertEquals(130.0, model.estimateFileMillis(100), DELTA);
+        Assert.assertEquals(13000, model.estimateMillis(100, 100));
+
+        // reviews without analyzed files are ignored
+        model.record(0, 100, 500);
+        Assert.assertEquals(130.0, model.estimateFileMillis(100), DELTA);
+    }
+
+    @Test
+    public void filesWithinBudget() {
+        ReviewCostModel model = new ReviewCostModel(new File("does-not-exist.properties"));
+        model.record(10, 100, 1000);
+        Assert.assertEquals(20, model.filesWithin(2000, 100));
+        Assert.assertEquals(1, model.filesWithin(10, 100));
+    }
+
+    @Test
+    public void persistsTheEstimates() throws IOException {
+        File file = File.createTempFile("review-costs", ".properties");
+        file.delete();
+        try {
+            ReviewCostModel model = new ReviewCostModel(file);
+            model.record(4, 10, 200);
+            model.persist();
+
+            ReviewCostModel loaded = new ReviewCostModel(file);
+            Assert.assertEquals(50.0, loaded.estimateFileMillis(10), DELTA);
+            Assert.assertEquals(10.0, loaded.estimateFileMillis(2), DELTA);
+        } finally {
+            file.delete();
+        }
+    }
+}
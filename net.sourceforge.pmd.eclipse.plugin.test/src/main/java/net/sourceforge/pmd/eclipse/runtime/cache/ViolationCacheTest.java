@@ -0,0 +1,90 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.cmd.MarkerInfo2;
+
+public class ViolationCacheTest {
+
+    // a handle is enough, the cache only uses the project relative path
+    private final IFile file = ResourcesPlugin.getWorkspace().getRoot().getFile(new Path("/P/src/A.java"));
+
+    private static MarkerInfo2 violation(String message) {
+        return MarkerInfo2.violation(PMDRuntimeConstants.PMD_MARKER_3, "Rule", message, 3, 4, 3,
+                IMarker.SEVERITY_WARNING);
+    }
+
+    @Test
+    public void entriesAreValidForTheSameContentAndFingerprint() {
+        ViolationCache cache = new ViolationCache(new File("does-not-exist.cache"));
+        cache.useFingerprint("rules");
+        Set<MarkerInfo2> markers = Collections.singleton(violation("message"));
+        cache.put(file, "content", markers);
+
+        Assert.assertEquals(markers, cache.get(file, "content"));
+        Assert.assertNull(cache.get(file, "changed content"));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertTrue(cache.isCurrent(file, "content"));
+
+        cache.useFingerprint("other rules");
+        Assert.assertNull(cache.get(file, "content"));
+        Assert.assertFalse(cache.isCurrent(file, "content"));
+    }
+
+    @Test
+    public void persistsTheMarkers() throws IOException {
+        File cacheFile = File.createTempFile("violations", ".cache");
+        // the cache is only read if it exists
+        cacheFile.delete();
+        try {
+            char[] longMessage = new char[100000];
+            Arrays.fill(longMessage, '\u00e9');
+            MarkerInfo2 violation = violation(new String(longMessage));
+            MarkerInfo2 analysisMarker = MarkerInfo2.of(PMDRuntimeConstants.PMD_ANALYSIS_MARKER, "skipped",
+                    IMarker.SEVERITY_INFO).withAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRESCAN, "SKIP_LARGE");
+            ViolationCache cache = new ViolationCache(cacheFile);
+            cache.useFingerprint("rules");
+            cache.put(file, "content", new HashSet<MarkerInfo2>(Arrays.asList(violation, analysisMarker)));
+            cache.persist();
+            Assert.assertFalse(new File(cacheFile.getPath() + ".tmp").exists());
+
+            ViolationCache loaded = new ViolationCache(cacheFile);
+            loaded.useFingerprint("rules");
+            Set<MarkerInfo2> markers = loaded.get(file, "content");
+            Assert.assertNotNull(markers);
+            Assert.assertEquals(2, markers.size());
+            for (MarkerInfo2 marker : markers) {
+                MarkerInfo2 expected = marker.getRuleName() == null ? analysisMarker : violation;
+                Assert.assertEquals(expected.getType(), marker.getType());
+                Assert.assertEquals(expected.getMessage(), marker.getMessage());
+                Assert.assertEquals(expected.getLine2(), marker.getLine2());
+                Assert.assertEquals(expected.getSeverity(), marker.getSeverity());
+                Assert.assertEquals(expected.getAdditionalAttributes(), marker.getAdditionalAttributes());
+            }
+
+            ViolationCache otherRules = new ViolationCache(cacheFile);
+            otherRules.useFingerprint("other rules");
+            Assert.assertNull(otherRules.get(file, "content"));
+        } finally {
+            cacheFile.delete();
+        }
+    }
+}
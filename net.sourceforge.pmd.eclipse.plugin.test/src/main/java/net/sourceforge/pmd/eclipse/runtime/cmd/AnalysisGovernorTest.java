@@ -0,0 +1,56 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import org.eclipse.core.runtime.jobs.Job;
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.runtime.cmd.AnalysisGovernor.Throttle;
+
+public class AnalysisGovernorTest {
+
+    @Test
+    public void threadsAreLimitedToAShareOfTheProcessors() {
+        Assert.assertEquals(6, AnalysisGovernor.threadLimit(64, 8));
+        Assert.assertEquals(2, AnalysisGovernor.threadLimit(2, 8));
+        Assert.assertEquals(1, AnalysisGovernor.threadLimit(4, 1));
+    }
+
+    @Test
+    public void lowHeapThrottlesTheAnalysis() {
+        Assert.assertEquals(Throttle.NONE, AnalysisGovernor.memoryThrottle(500, 1000));
+        Assert.assertEquals(Throttle.LOW_MEMORY, AnalysisGovernor.memoryThrottle(800, 1000));
+        Assert.assertEquals(Throttle.NO_MEMORY, AnalysisGovernor.memoryThrottle(950, 1000));
+        // pools without a maximum size are not watched
+        Assert.assertEquals(Throttle.NONE, AnalysisGovernor.memoryThrottle(950, -1));
+    }
+
+    @Test
+    public void throttleReducesTheWorkers() {
+        Assert.assertEquals(4, AnalysisGovernor.permittedWorkers(4, Throttle.NONE));
+        Assert.assertEquals(1, AnalysisGovernor.permittedWorkers(4, Throttle.LOW_MEMORY));
+        Assert.assertEquals(0, AnalysisGovernor.permittedWorkers(4, Throttle.NO_MEMORY));
+        Assert.assertEquals(0, AnalysisGovernor.permittedWorkers(4, Throttle.BUILD));
+    }
+
+    @Test
+    public void releasedSlotsGoToTheWaitingReviewsOfHigherPriority() {
+        AnalysisGovernor governor = new AnalysisGovernor(2);
+        Assert.assertTrue(governor.acquireWorker(Job.LONG));
+        Assert.assertTrue(governor.acquireWorker(Job.LONG));
+        Assert.assertFalse(governor.acquireWorker(Job.SHORT));
+        governor.setWaiting(Job.SHORT, true);
+
+        // the build review releases its slot and can not take it back
+        governor.releaseWorkers(1);
+        Assert.assertFalse(governor.acquireWorker(Job.LONG));
+        Assert.assertTrue(governor.acquireWorker(Job.SHORT));
+        governor.setWaiting(Job.SHORT, false);
+
+        governor.releaseWorkers(1);
+        Assert.assertTrue(governor.acquireWorker(Job.LONG));
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RulePriority;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.eclipse.runtime.cmd.FilePreScanner.Decision;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.rule.MockRule;
+
+public class FilePreScannerTest {
+
+    private static Rule rule(String name, RulePriority priority) {
+        Rule rule = new MockRule(name, "description", "message", "ruleset");
+        rule.setLanguage(LanguageRegistry.getLanguage(JavaLanguageModule.NAME));
+        rule.setPriority(priority);
+        return rule;
+    }
+
+    @Test
+    public void filesAreClassifiedBySize() {
+        FilePreScanner scanner = new FilePreScanner(512, 4096, "");
+
+        Assert.assertEquals(Decision.ANALYZE, scanner.classify(512 * 1024, "class A {}"));
+        Assert.assertEquals(Decision.LIGHT, scanner.classify(512 * 1024 + 1, "class A {}"));
+        Assert.assertEquals(Decision.SKIP_LARGE, scanner.classify(4096 * 1024 + 1, "class A {}"));
+    }
+
+    @Test
+    public void tooLargeFilesAreKnownFromTheirSizeOnly() {
+        FilePreScanner scanner = new FilePreScanner(512, 4096, "");
+
+        Assert.assertTrue(scanner.isTooLarge(4096 * 1024 + 1));
+        Assert.assertFalse(scanner.isTooLarge(4096 * 1024));
+        // the size of a file of a remote file system is not known
+        Assert.assertFalse(scanner.isTooLarge(-1));
+        Assert.assertFalse(new FilePreScanner(0, 0, null).isTooLarge(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void theHeaderIsScannedWithoutTheContent() {
+        FilePreScanner scanner = new FilePreScanner(512, 4096, "DO NOT EDIT");
+
+        Assert.assertEquals(Decision.SKIP_GENERATED, scanner.scan(100, "// DO NOT EDIT", null));
+        Assert.assertEquals(Decision.LIGHT, scanner.scan(600 * 1024, "class A {", null));
+    }
+
+    @Test
+    public void generatedFilesAreSkipped() {
+        FilePreScanner scanner = new FilePreScanner(512, 4096, "@Generated, DO NOT EDIT ,");
+
+        Assert.assertEquals(Decision.SKIP_GENERATED, scanner.classify(100, "// DO NOT EDIT\nclass A {}"));
+        Assert.assertEquals(Decision.SKIP_GENERATED, scanner.classify(600 * 1024, "@Generated\nclass A {}"));
+        Assert.assertEquals(Decision.ANALYZE, scanner.classify(100, "class Generated {}"));
+    }
+
+    @Test
+    public void zeroMeansNoLimit() {
+        FilePreScanner scanner = new FilePreScanner(0, 0, null);
+
+        Assert.assertEquals(Decision.ANALYZE, scanner.classify(Long.MAX_VALUE, "class A {}"));
+        Assert.assertFalse(scanner.getSettingsKey().equals(new FilePreScanner(0, 1, null).getSettingsKey()));
+    }
+
+    @Test
+    public void largeFilesAreCheckedWithTheHighPriorityRules() {
+        Rule high = rule("High", RulePriority.HIGH);
+        Rule medium = rule("Medium", RulePriority.MEDIUM);
+        RuleSets ruleSets = new RuleSets(RuleSetUtil.addRules(
+                RuleSetUtil.newEmpty("ruleset", "description"), Arrays.asList(high, medium)));
+
+        RuleSets lightRuleSets = FilePreScanner.lightRuleSets(ruleSets);
+        Assert.assertEquals(1, lightRuleSets.getAllRules().size());
+        Assert.assertEquals("High", lightRuleSets.getAllRules().iterator().next().getName());
+        Assert.assertEquals(0, FilePreScanner.lightRuleSets(new RuleSets(RuleSetUtil.addRules(
+                RuleSetUtil.newEmpty("ruleset", "description"), Arrays.asList(medium)))).getAllRuleSets().length);
+    }
+}
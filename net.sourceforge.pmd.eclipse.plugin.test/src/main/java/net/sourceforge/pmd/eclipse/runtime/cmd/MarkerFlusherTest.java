@@ -0,0 +1,115 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
+
+public class MarkerFlusherTest {
+    private IProject testProject;
+    private final List<IFile> files = new ArrayList<IFile>();
+    private final Map<IFile, Set<MarkerInfo2>> accumulator = new HashMap<IFile, Set<MarkerInfo2>>();
+    private final Set<IFile> appliedFiles = new HashSet<IFile>();
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createProject("MarkerFlusherTest");
+        Assert.assertTrue("A test project cannot be created; the tests cannot be performed.",
+                testProject != null && testProject.exists() && testProject.isAccessible());
+
+        for (int i = 0; i < MarkerFlusher.BATCH_SIZE; i++) {
+            IFile file = EclipseUtils.createTestSourceFile(testProject, "/F" + i + ".java", "class F" + i + " { }");
+            files.add(file);
+            accumulator.put(file, Collections.singleton(MarkerInfo2.violation(PMDRuntimeConstants.PMD_MARKER_3,
+                    "Rule", "violation " + i, 1, 1, 3, IMarker.SEVERITY_WARNING)));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testProject != null && testProject.exists()) {
+            testProject.delete(true, true, null);
+        }
+    }
+
+    private MarkerFlusher flusher(boolean retainMarkers) {
+        return new MarkerFlusher(accumulator, appliedFiles, Collections.<IProject, ProjectAnalysisContext>emptyMap(),
+                null, retainMarkers);
+    }
+
+    private static int markerCountOf(IFile file) throws Exception {
+        return MarkerUtil.findMarkers(file, PMDRuntimeConstants.RULE_MARKER_TYPES).length;
+    }
+
+    @Test
+    public void completedFilesAreAppliedOnceTheBatchIsFull() throws Exception {
+        MarkerFlusher flusher = flusher(false);
+        for (int i = 0; i < MarkerFlusher.BATCH_SIZE - 1; i++) {
+            flusher.completed(files.get(i), false);
+        }
+        Assert.assertTrue(appliedFiles.isEmpty());
+        Assert.assertEquals(0, markerCountOf(files.get(0)));
+
+        flusher.completed(files.get(MarkerFlusher.BATCH_SIZE - 1), false);
+        Assert.assertEquals(new HashSet<IFile>(files), appliedFiles);
+        Assert.assertEquals(MarkerFlusher.BATCH_SIZE, flusher.getAppliedMarkerCount());
+        for (IFile file : files) {
+            Assert.assertEquals(1, markerCountOf(file));
+            Assert.assertTrue("The markers are released", accumulator.get(file).isEmpty());
+        }
+    }
+
+    @Test
+    public void completedFilesWaitForTheBatchIntervalAtMost() throws Exception {
+        MarkerFlusher flusher = flusher(false);
+        flusher.completed(files.get(0), false);
+        Assert.assertTrue(appliedFiles.isEmpty());
+
+        Thread.sleep(MarkerFlusher.BATCH_INTERVAL_MILLIS);
+        flusher.completed(files.get(1), false);
+        Assert.assertEquals(new HashSet<IFile>(files.subList(0, 2)), appliedFiles);
+        Assert.assertEquals(1, markerCountOf(files.get(0)));
+        Assert.assertEquals(1, markerCountOf(files.get(1)));
+    }
+
+    @Test
+    public void urgentFilesAreAppliedAtOnceAndRetainedOnDemand() throws Exception {
+        MarkerFlusher flusher = flusher(true);
+        flusher.completed(files.get(0), true);
+        Assert.assertEquals(Collections.singleton(files.get(0)), appliedFiles);
+        Assert.assertEquals(1, markerCountOf(files.get(0)));
+        Assert.assertEquals(1, accumulator.get(files.get(0)).size());
+    }
+
+    @Test
+    public void appliedFilesAreSkipped() throws Exception {
+        appliedFiles.add(files.get(0));
+        MarkerFlusher flusher = flusher(false);
+        flusher.completed(files.get(0), false);
+        flusher.completed(files.get(1), false);
+        flusher.flush();
+        Assert.assertEquals(0, markerCountOf(files.get(0)));
+        Assert.assertEquals(1, accumulator.get(files.get(0)).size());
+        Assert.assertEquals(1, markerCountOf(files.get(1)));
+        Assert.assertEquals(1, flusher.getAppliedMarkerCount());
+    }
+}
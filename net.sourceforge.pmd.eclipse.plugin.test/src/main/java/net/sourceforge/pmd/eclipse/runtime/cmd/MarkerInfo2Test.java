@@ -0,0 +1,96 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IMarker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+
+public class MarkerInfo2Test {
+
+    @Test
+    public void theMarkerOfAViolationHasTheMessageWithTheRuleName() {
+        MarkerInfo2 info = MarkerInfo2.violation(PMDRuntimeConstants.PMD_MARKER_1, "UnusedLocalVariable",
+                "Avoid unused local variables such as 'x'.", 10, 12, 1, IMarker.SEVERITY_WARNING);
+
+        Map<String, Object> attributes = info.getAttributes();
+        Assert.assertEquals(8, attributes.size());
+        Assert.assertEquals("UnusedLocalVariable: Avoid unused local variables such as 'x'.",
+                attributes.get(IMarker.MESSAGE));
+        Assert.assertEquals("Avoid unused local variables such as 'x'.",
+                attributes.get(PMDRuntimeConstants.KEY_MARKERATT_MESSAGE));
+        Assert.assertEquals(Integer.valueOf(10), attributes.get(IMarker.LINE_NUMBER));
+        Assert.assertEquals(Integer.valueOf(12), attributes.get(PMDRuntimeConstants.KEY_MARKERATT_LINE2));
+        Assert.assertEquals(Integer.valueOf(1), attributes.get(PMDRuntimeConstants.KEY_MARKERATT_PRIORITY));
+        Assert.assertEquals(Integer.valueOf(IMarker.SEVERITY_WARNING), attributes.get(IMarker.SEVERITY));
+    }
+
+    @Test
+    public void theAttributesOfAMarkerAreComparedWithoutBuildingThem() {
+        MarkerInfo2 info = MarkerInfo2.violation(PMDRuntimeConstants.PMD_MARKER_1, "Rule", "message", 3, 3, 2,
+                IMarker.SEVERITY_ERROR);
+        Map<String, Object> attributes = new HashMap<String, Object>(info.getAttributes());
+        Assert.assertTrue(info.hasAttributes(attributes));
+
+        attributes.put(IMarker.MESSAGE, "Rulx: message");
+        Assert.assertFalse(info.hasAttributes(attributes));
+        attributes.put(IMarker.MESSAGE, "Rule: message");
+        attributes.put(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
+        Assert.assertFalse(info.hasAttributes(attributes));
+    }
+
+    @Test
+    public void theAttributesOfOtherPluginsAreNotCompared() {
+        MarkerInfo2 info = MarkerInfo2.violation(PMDRuntimeConstants.PMD_MARKER_1, "Rule", "message", 3, 3, 2,
+                IMarker.SEVERITY_ERROR);
+        Map<String, Object> attributes = new HashMap<String, Object>(info.getAttributes());
+        attributes.put("org.example.foreign", "value");
+        Assert.assertFalse(MarkerInfo2.isOwnedAttribute("org.example.foreign"));
+        Assert.assertTrue(info.hasAttributes(attributes));
+
+        // an attribute of the plugin the marker does not have anymore is a change
+        attributes.put(PMDRuntimeConstants.KEY_MARKERATT_TIER, "HIGH");
+        Assert.assertTrue(MarkerInfo2.isOwnedAttribute(PMDRuntimeConstants.KEY_MARKERATT_TIER));
+        Assert.assertFalse(info.hasAttributes(attributes));
+
+        MarkerInfo2 analysisInfo = MarkerInfo2.of(PMDRuntimeConstants.PMD_ANALYSIS_MARKER, "skipped",
+                IMarker.SEVERITY_INFO).withAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRESCAN, "SKIP_LARGE");
+        attributes = new HashMap<String, Object>(analysisInfo.getAttributes());
+        attributes.put("org.example.foreign", "value");
+        Assert.assertTrue(analysisInfo.hasAttributes(attributes));
+        attributes.put(PMDRuntimeConstants.KEY_MARKERATT_PRESCAN, "SKIP_GENERATED");
+        Assert.assertFalse(analysisInfo.hasAttributes(attributes));
+    }
+
+    @Test
+    public void otherMarkersKeepTheirAdditionalAttributes() {
+        MarkerInfo2 info = MarkerInfo2.of(PMDRuntimeConstants.PMD_ANALYSIS_MARKER, "skipped", IMarker.SEVERITY_INFO)
+                .withAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRESCAN, "SKIP_LARGE");
+
+        Assert.assertNull(info.getRuleName());
+        Assert.assertEquals("SKIP_LARGE", info.getAdditionalAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRESCAN));
+        Assert.assertEquals(3, info.getAttributeNames().length);
+        Assert.assertEquals("skipped", info.getAttributes().get(IMarker.MESSAGE));
+        Assert.assertTrue(info.hasAttributes(info.getAttributes()));
+    }
+
+    @Test
+    public void longMessagesAreTruncated() {
+        StringBuilder description = new StringBuilder();
+        while (description.length() < 100000) {
+            description.append("description ");
+        }
+        MarkerInfo2 info = MarkerInfo2.violation(PMDRuntimeConstants.PMD_MARKER_1, "Rule", description.toString(),
+                1, 1, 1, IMarker.SEVERITY_WARNING);
+
+        Assert.assertTrue(info.getMessage().length() < 65535 / 3);
+        Assert.assertTrue(description.toString().startsWith(info.getMessage()));
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetFactory;
+import net.sourceforge.pmd.RuleSets;
+
+public class PathMatcherTest {
+
+    @Test
+    public void literalPrefixPatterns() {
+        PathMatcher matcher = PathMatcher.compile(Arrays.asList("/ws/project/src/gen/.*", "/ws/project/Main\\.java"));
+        Assert.assertTrue(matcher.matches("/ws/project/src/gen/A.java"));
+        Assert.assertTrue(matcher.matches("/ws/project/src/gen/"));
+        Assert.assertTrue(matcher.matches("/ws/project/Main.java"));
+        Assert.assertFalse(matcher.matches("/ws/project/Main.javax"));
+        Assert.assertFalse(matcher.matches("/ws/project/src/generated/A.java"));
+        Assert.assertFalse(matcher.matches("/ws/project/src/gen"));
+    }
+
+    @Test
+    public void combinedPatterns() {
+        PathMatcher matcher = PathMatcher.compile(Arrays.asList(".*/generated/.*", ".*Test\\.java", "/ws/(a|b)/.*"));
+        Assert.assertTrue(matcher.matches("/ws/project/generated/A.java"));
+        Assert.assertTrue(matcher.matches("/ws/project/src/ATest.java"));
+        Assert.assertTrue(matcher.matches("/ws/b/A.java"));
+        Assert.assertFalse(matcher.matches("/ws/c/A.java"));
+        Assert.assertFalse(matcher.matches("/ws/project/src/A.java"));
+    }
+
+    @Test
+    public void emptyAndInvalidPatterns() {
+        Assert.assertTrue(PathMatcher.compile(Collections.<String>emptyList()).isEmpty());
+        PathMatcher matcher = PathMatcher.compile(Arrays.asList("(unclosed"));
+        Assert.assertTrue(matcher.isEmpty());
+        Assert.assertFalse(matcher.matches("(unclosed"));
+    }
+
+    @Test
+    public void patternsThatDoNotCombine() {
+        // the same named group twice, and a quote left open which quotes the closing parenthesis
+        PathMatcher matcher = PathMatcher.compile(Arrays.asList("(?<n>.*)/a/.*", "(?<n>.*)/b/.*", ".*\\Q.txt"));
+        Assert.assertFalse(matcher.isEmpty());
+        Assert.assertTrue(matcher.matches("/ws/a/A.java"));
+        Assert.assertTrue(matcher.matches("/ws/b/A.java"));
+        Assert.assertTrue(matcher.matches("/ws/notes.txt"));
+        Assert.assertFalse(matcher.matches("/ws/c/A.java"));
+    }
+
+    @Test
+    public void patternsAreRemovedOnlyIfAllRuleSetsHaveThem() {
+        RuleSet first = newRuleSet(set(".*/excluded/.*"), set(".*/Keep\\.java"));
+        RuleSet second = newRuleSet(set(".*/excluded/.*"), set(".*/Keep\\.java"));
+        RuleSets unfiltered = RuleSetsFileFilter.withoutPatterns(new RuleSets(first));
+        Assert.assertTrue(unfiltered.getAllRuleSets()[0].getExcludePatterns().isEmpty());
+        Assert.assertTrue(unfiltered.getAllRuleSets()[0].getIncludePatterns().isEmpty());
+
+        RuleSets ruleSets = new RuleSets(first);
+        ruleSets.addRuleSet(second);
+        Assert.assertEquals(2, RuleSetsFileFilter.withoutPatterns(ruleSets).getAllRuleSets().length);
+        Assert.assertTrue(RuleSetsFileFilter.withoutPatterns(ruleSets).getAllRuleSets()[1].getExcludePatterns()
+                .isEmpty());
+
+        ruleSets.addRuleSet(newRuleSet(set(".*/other/.*"), set()));
+        Assert.assertSame(ruleSets, RuleSetsFileFilter.withoutPatterns(ruleSets));
+    }
+
+    @Test
+    public void literals() {
+        Assert.assertEquals("a/b.c", PathMatcher.literalOf("a/b\\.c"));
+        Assert.assertNull(PathMatcher.literalOf("a/b.c"));
+        Assert.assertNull(PathMatcher.literalOf("a\\d"));
+        Assert.assertNull(PathMatcher.literalOf("ab?"));
+    }
+
+    @Test
+    public void sameResultAsRuleSets() {
+        RuleSet ruleSet = newRuleSet(set(".*/excluded/.*", "/ws/project/build/.*"), set(".*/excluded/Keep\\.java"));
+        RuleSets ruleSets = new RuleSets(ruleSet);
+        RuleSetsFileFilter filter = new RuleSetsFileFilter(ruleSets);
+        String[] paths = { "/ws/project/src/A.java", "/ws/project/excluded/A.java", "/ws/project/excluded/Keep.java",
+            "/ws/project/build/A.java", "/ws/project/builder/A.java", };
+        for (String path : paths) {
+            File file = new File(path);
+            Assert.assertEquals(path, ruleSets.applies(file), filter.applies(file));
+        }
+    }
+
+    private static Set<String> set(String... patterns) {
+        return new HashSet<String>(Arrays.asList(patterns));
+    }
+
+    private static RuleSet newRuleSet(Set<String> excludePatterns, Set<String> includePatterns) {
+        return new RuleSetFactory().createNewRuleSet("test", "test", null, excludePatterns, includePatterns,
+                Collections.<Rule>emptySet());
+    }
+}
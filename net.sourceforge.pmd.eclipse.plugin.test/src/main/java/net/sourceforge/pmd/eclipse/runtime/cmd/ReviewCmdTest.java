@@ -9,15 +9,19 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IMarkerDelta;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IProjectDescription;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.resources.ResourcesPlugin;
@@ -32,6 +36,7 @@ import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.eclipse.EclipseUtils;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
@@ -94,6 +99,7 @@ public class ReviewCmdTest {
     @Test
     public void testReviewCmdBasic() throws CoreException {
         final ReviewCodeCmd cmd = new ReviewCodeCmd();
+        cmd.setRetainMarkers(true);
         cmd.addResource(this.testProject);
         cmd.performExecute();
         cmd.join();
@@ -140,6 +146,7 @@ public class ReviewCmdTest {
             testProject.refreshLocal(IResource.DEPTH_INFINITE, null);
 
             ReviewCodeCmd cmd = new ReviewCodeCmd();
+            cmd.setRetainMarkers(true);
             cmd.addResource(testProject);
             cmd.performExecute();
             cmd.join();
@@ -150,6 +157,7 @@ public class ReviewCmdTest {
             // without type resolution, there is a violation
             PMDPlugin.getDefault().getPreferencesManager().loadPreferences().setProjectBuildPathEnabled(false);
             cmd = new ReviewCodeCmd();
+            cmd.setRetainMarkers(true);
             cmd.addResource(testProject);
             cmd.performExecute();
             cmd.join();
@@ -202,6 +210,7 @@ public class ReviewCmdTest {
             newProject.refreshLocal(IResource.DEPTH_INFINITE, null);
 
             ReviewCodeCmd cmd = new ReviewCodeCmd();
+            cmd.setRetainMarkers(true);
             cmd.addResource(newProject);
             cmd.performExecute();
             cmd.join();
@@ -212,6 +221,7 @@ public class ReviewCmdTest {
             // without type resolution, there is a violation
             PMDPlugin.getDefault().getPreferencesManager().loadPreferences().setProjectBuildPathEnabled(false);
             cmd = new ReviewCodeCmd();
+            cmd.setRetainMarkers(true);
             cmd.addResource(newProject);
             cmd.performExecute();
             cmd.join();
@@ -306,4 +316,147 @@ public class ReviewCmdTest {
             PMDPlugin.getDefault().loadPreferences().setDetermineFiletypesAutomatically(IPreferences.DETERMINE_FILETYPES_AUTOMATICALLY_DEFAULT);
         }
     }
+
+    /**
+     * The markers of a file reviewed again without changes are kept as they
+     * are: same ids, same creation times and no marker change notified.
+     */
+    @Test
+    public void testReviewCmdKeepsUnchangedMarkers() throws Exception {
+        final IFile sourceFile = this.testProject.getFile("/src/Test.java");
+        reviewTestProject();
+        IMarker[] markers = MarkerUtil.findMarkers(sourceFile, PMDRuntimeConstants.RULE_MARKER_TYPES);
+        Assert.assertTrue("No marker to keep", markers.length > 0);
+        Map<Long, Long> creationTimes = creationTimesOf(markers);
+
+        final List<IMarkerDelta> deltas = new ArrayList<IMarkerDelta>();
+        IResourceChangeListener listener = new IResourceChangeListener() {
+            @Override
+            public void resourceChanged(IResourceChangeEvent event) {
+                for (IMarkerDelta delta : MarkerUtil.markerDeltasIn(event)) {
+                    if (sourceFile.equals(delta.getResource())) {
+                        synchronized (deltas) {
+                            deltas.add(delta);
+                        }
+                    }
+                }
+            }
+        };
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(listener, IResourceChangeEvent.POST_CHANGE);
+        try {
+            reviewTestProject();
+        } finally {
+            ResourcesPlugin.getWorkspace().removeResourceChangeListener(listener);
+        }
+
+        Assert.assertEquals(creationTimes,
+                creationTimesOf(MarkerUtil.findMarkers(sourceFile, PMDRuntimeConstants.RULE_MARKER_TYPES)));
+        synchronized (deltas) {
+            Assert.assertTrue("Marker deltas posted: " + deltas.size(), deltas.isEmpty());
+        }
+    }
+
+    /**
+     * A marker whose severity changed is updated in place, the marker of a
+     * removed violation is deleted and the other markers are kept.
+     */
+    @Test
+    public void testReplaceMarkersUpdatesChangedAndDeletesRemovedMarkers() throws Exception {
+        IFile sourceFile = this.testProject.getFile("/src/Test.java");
+        reviewTestProject();
+        IMarker[] markers = MarkerUtil.findMarkers(sourceFile, PMDRuntimeConstants.RULE_MARKER_TYPES);
+        Assert.assertTrue("Two markers are needed, found " + markers.length, markers.length >= 2);
+        Map<Long, Long> creationTimes = creationTimesOf(markers);
+
+        IMarker changedMarker = markers[0];
+        IMarker removedMarker = markers[1];
+        int changedSeverity = changedMarker.getAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING)
+                == IMarker.SEVERITY_ERROR ? IMarker.SEVERITY_INFO : IMarker.SEVERITY_ERROR;
+        List<MarkerInfo2> markerInfos = new ArrayList<MarkerInfo2>();
+        markerInfos.add(markerInfoOf(changedMarker, changedSeverity));
+        for (int i = 2; i < markers.length; i++) {
+            markerInfos.add(markerInfoOf(markers[i], markers[i].getAttribute(IMarker.SEVERITY, 0)));
+        }
+        MarkerUtil.replaceMarkers(sourceFile, markerInfos, null);
+
+        IMarker[] newMarkers = MarkerUtil.findMarkers(sourceFile, PMDRuntimeConstants.RULE_MARKER_TYPES);
+        Assert.assertEquals(markers.length - 1, newMarkers.length);
+        Assert.assertFalse(removedMarker.exists());
+        Assert.assertTrue(changedMarker.exists());
+        Assert.assertEquals(changedSeverity, changedMarker.getAttribute(IMarker.SEVERITY, -1));
+        creationTimes.remove(Long.valueOf(removedMarker.getId()));
+        Assert.assertEquals(creationTimes, creationTimesOf(newMarkers));
+    }
+
+    /**
+     * The attributes other plug-ins set on the markers of the plugin are kept
+     * when the markers are replaced, and do not make the markers change.
+     */
+    @Test
+    public void testReplaceMarkersKeepsForeignAttributes() throws Exception {
+        IFile sourceFile = this.testProject.getFile("/src/Test.java");
+        reviewTestProject();
+        IMarker[] markers = MarkerUtil.findMarkers(sourceFile, PMDRuntimeConstants.RULE_MARKER_TYPES);
+        Assert.assertTrue("No marker to keep", markers.length > 0);
+        Map<Long, Long> creationTimes = creationTimesOf(markers);
+        List<MarkerInfo2> markerInfos = new ArrayList<MarkerInfo2>();
+        for (IMarker marker : markers) {
+            markerInfos.add(markerInfoOf(marker, marker.getAttribute(IMarker.SEVERITY, 0)));
+        }
+        markers[0].setAttribute("org.example.foreign", "value");
+
+        MarkerUtil.replaceMarkers(sourceFile, markerInfos, null);
+
+        Assert.assertEquals(creationTimes,
+                creationTimesOf(MarkerUtil.findMarkers(sourceFile, PMDRuntimeConstants.RULE_MARKER_TYPES)));
+        Assert.assertEquals("value", markers[0].getAttribute("org.example.foreign"));
+    }
+
+    /**
+     * By default, the markers are applied during the review and the marker
+     * sets of the applied files are released.
+     */
+    @Test
+    public void testReviewCmdAppliesTheMarkersItDoesNotRetain() throws Exception {
+        IFile sourceFile = this.testProject.getFile("/src/Test.java");
+        ReviewCodeCmd cmd = new ReviewCodeCmd();
+        cmd.addResource(this.testProject);
+        cmd.performExecute();
+        cmd.join();
+        Assert.assertTrue(cmd.getMarkers().containsKey(sourceFile));
+        Assert.assertTrue(cmd.getMarkers().get(sourceFile).isEmpty());
+        IMarker[] markers = MarkerUtil.findMarkers(sourceFile, PMDRuntimeConstants.RULE_MARKER_TYPES);
+        Assert.assertTrue("No marker applied", markers.length > 0);
+
+        cmd = new ReviewCodeCmd();
+        cmd.setRetainMarkers(true);
+        cmd.addResource(this.testProject);
+        cmd.performExecute();
+        cmd.join();
+        Assert.assertEquals(markers.length, cmd.getMarkers().get(sourceFile).size());
+    }
+
+    private void reviewTestProject() {
+        ReviewCodeCmd cmd = new ReviewCodeCmd();
+        cmd.addResource(this.testProject);
+        cmd.performExecute();
+        cmd.join();
+    }
+
+    private static Map<Long, Long> creationTimesOf(IMarker[] markers) throws CoreException {
+        Map<Long, Long> creationTimes = new HashMap<Long, Long>();
+        for (IMarker marker : markers) {
+            creationTimes.put(Long.valueOf(marker.getId()), Long.valueOf(marker.getCreationTime()));
+        }
+        return creationTimes;
+    }
+
+    private static MarkerInfo2 markerInfoOf(IMarker marker, int severity) throws CoreException {
+        return MarkerInfo2.violation(marker.getType(),
+                marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, ""),
+                marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_MESSAGE, ""),
+                marker.getAttribute(IMarker.LINE_NUMBER, 0),
+                marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_LINE2, 0),
+                marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRIORITY, 0), severity);
+    }
 }
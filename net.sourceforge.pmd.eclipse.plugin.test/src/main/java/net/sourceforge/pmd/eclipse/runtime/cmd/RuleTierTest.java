@@ -0,0 +1,71 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.rule.MockRule;
+
+public class RuleTierTest {
+
+    private static Rule rule(String name) {
+        Rule rule = new MockRule(name, "description", "message", "ruleset");
+        rule.setLanguage(LanguageRegistry.getLanguage(JavaLanguageModule.NAME));
+        return rule;
+    }
+
+    @Test
+    public void rulesNeedingTheDataFlowOrAssignedRunInTheBackground() {
+        Rule syntactic = rule("Syntactic");
+        Rule dataflow = rule("Dataflow");
+        dataflow.setDfa(true);
+        Rule assigned = rule("Assigned");
+        Set<String> assignedNames = Collections.singleton("Assigned");
+
+        Assert.assertEquals(RuleTier.SAVE, RuleTier.of(syntactic, assignedNames));
+        Assert.assertEquals(RuleTier.BACKGROUND, RuleTier.of(dataflow, assignedNames));
+        Assert.assertEquals(RuleTier.BACKGROUND, RuleTier.of(assigned, assignedNames));
+    }
+
+    @Test
+    public void selectKeepsTheRulesOfTheTier() {
+        Rule syntactic = rule("Syntactic");
+        Rule assigned = rule("Assigned");
+        RuleSets ruleSets = new RuleSets(RuleSetUtil.addRules(
+                RuleSetUtil.newEmpty("ruleset", "description"), Arrays.asList(syntactic, assigned)));
+        Set<String> assignedNames = Collections.singleton("Assigned");
+
+        RuleSets saveRuleSets = RuleTier.SAVE.select(ruleSets, assignedNames);
+        Assert.assertEquals(1, saveRuleSets.getAllRules().size());
+        Assert.assertEquals("Syntactic", saveRuleSets.getAllRules().iterator().next().getName());
+        Assert.assertEquals(1, RuleTier.BACKGROUND.select(ruleSets, assignedNames).getAllRules().size());
+        Assert.assertEquals(0, RuleTier.BACKGROUND.select(ruleSets, new HashSet<String>()).getAllRuleSets().length);
+    }
+
+    @Test
+    public void markersBelongToTheTierOfTheirRule() {
+        Set<String> backgroundNames = Collections.singleton("Dataflow");
+
+        Assert.assertTrue(RuleTier.BACKGROUND.owns("Dataflow", null, backgroundNames));
+        Assert.assertFalse(RuleTier.SAVE.owns("Dataflow", null, backgroundNames));
+        // the markers of removed rules are cleaned up by the save tier
+        Assert.assertTrue(RuleTier.SAVE.owns("Removed", null, backgroundNames));
+        // analysis markers carry their tier, the untagged ones come from reviews of all rules
+        Assert.assertTrue(RuleTier.BACKGROUND.owns(null, "BACKGROUND", backgroundNames));
+        Assert.assertTrue(RuleTier.SAVE.owns(null, null, backgroundNames));
+        Assert.assertFalse(RuleTier.BACKGROUND.owns(null, null, backgroundNames));
+    }
+}
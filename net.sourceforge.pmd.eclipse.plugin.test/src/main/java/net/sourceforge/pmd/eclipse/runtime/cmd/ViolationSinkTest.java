@@ -0,0 +1,212 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.nio.charset.Charset;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RulePriority;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.lang.rule.MockRule;
+
+public class ViolationSinkTest {
+    private IProject testProject;
+    private WorkspaceFileDataSource dataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createProject("ViolationSinkTest");
+        Assert.assertTrue("A test project cannot be created; the tests cannot be performed.",
+                testProject != null && testProject.exists() && testProject.isAccessible());
+
+        IFile file = EclipseUtils.createTestSourceFile(testProject, "/A.java", "class A {\n"
+                + "    // @PMD:REVIEWED:Capped: by someone\n"
+                + "    void a() {}\n"
+                + "}\n");
+        dataSource = new WorkspaceFileDataSource(file, "A.java", Charset.forName("UTF-8"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testProject != null && testProject.exists()) {
+            testProject.delete(true, true, null);
+        }
+    }
+
+    private static Rule rule(String name) {
+        Rule rule = new MockRule(name, "description", "message", "ruleset");
+        rule.setPriority(RulePriority.MEDIUM);
+        return rule;
+    }
+
+    private static Rule cappedRule(String name, int maxViolations) {
+        Rule rule = rule(name);
+        rule.definePropertyDescriptor(PMDRuntimeConstants.MAX_VIOLATIONS_DESCRIPTOR);
+        rule.setProperty(PMDRuntimeConstants.MAX_VIOLATIONS_DESCRIPTOR, maxViolations);
+        return rule;
+    }
+
+    @Test
+    public void violationsOverTheMaximumOfTheRuleAreDropped() {
+        ViolationSink sink = new ViolationSink(false);
+        sink.register(dataSource);
+        Rule capped = cappedRule("Capped", 3);
+        Rule other = rule("Other");
+        // the reviewed violation of line 3 does not count for the maximum
+        for (int line = 1; line <= 5; line++) {
+            sink.ruleViolationAdded(new Violation(capped, "A.java", line));
+            sink.ruleViolationAdded(new Violation(other, "A.java", line));
+        }
+
+        Set<MarkerInfo2> markers = sink.takeMarkers(dataSource, new Report());
+        Assert.assertEquals(8, markers.size());
+        int cappedMarkers = 0;
+        for (MarkerInfo2 marker : markers) {
+            Assert.assertEquals(PMDRuntimeConstants.PMD_MARKER_3, marker.getType());
+            if ("Capped".equals(marker.getRuleName())) {
+                cappedMarkers++;
+                Assert.assertTrue(marker.getLine() == 1 || marker.getLine() == 2 || marker.getLine() == 4);
+            }
+        }
+        Assert.assertEquals(3, cappedMarkers);
+
+        // the file is unregistered once its markers are taken
+        sink.ruleViolationAdded(new Violation(other, "A.java", 6));
+        Assert.assertTrue(sink.takeMarkers(dataSource, new Report()).isEmpty());
+    }
+
+    @Test
+    public void theReportIsOnlyUsedWhenNoViolationWasReceived() {
+        Report report = new Report();
+        Rule capped = cappedRule("Capped", 2);
+        for (int line = 4; line <= 6; line++) {
+            // reported with another file name, as the sink does not know it
+            report.addRuleViolation(new Violation(capped, "/other/A.java", line));
+        }
+
+        ViolationSink sink = new ViolationSink(false);
+        sink.register(dataSource);
+        Set<MarkerInfo2> markers = sink.takeMarkers(dataSource, report);
+        Assert.assertEquals("The maximum of the rule applies to the report", 2, markers.size());
+
+        sink.register(dataSource);
+        sink.ruleViolationAdded(new Violation(rule("Other"), "A.java", 1));
+        markers = sink.takeMarkers(dataSource, report);
+        Assert.assertEquals(1, markers.size());
+        Assert.assertEquals("Other", markers.iterator().next().getRuleName());
+    }
+
+    @Test
+    public void reviewsApplyToTheNextCodeLine() {
+        String source = "class A {\r\n"
+                + "    // @PMD:REVIEWED:ShortMethodName: by someone\r\n"
+                + "    // @PMD:REVIEWED:UnusedPrivateMethod: by someone\r\n"
+                + "\r\n"
+                + "    private void a() {}\r\n"
+                + "}\r\n";
+        Set<ViolationSink.Review> reviews = ViolationSink.findReviewedViolations(source);
+        Assert.assertEquals(2, reviews.size());
+        Assert.assertTrue(reviews.contains(new ViolationSink.Review("ShortMethodName", 5)));
+        Assert.assertTrue(reviews.contains(new ViolationSink.Review("UnusedPrivateMethod", 5)));
+    }
+
+    @Test
+    public void reviewsInBlockCommentsAreIgnored() {
+        String source = "class A {\n"
+                + "    /*\n"
+                + "    // @PMD:REVIEWED:ShortMethodName: by someone\n"
+                + "    */\n"
+                + "    void a() {}\r"
+                + "    // @PMD:REVIEWED:ShortMethodName: by someone\r"
+                + "    void b() {}\r"
+                + "}";
+        Set<ViolationSink.Review> reviews = ViolationSink.findReviewedViolations(source);
+        Assert.assertEquals(1, reviews.size());
+        Assert.assertTrue(reviews.contains(new ViolationSink.Review("ShortMethodName", 7)));
+    }
+
+    private static final class Violation implements RuleViolation {
+        private final Rule rule;
+        private final String fileName;
+        private final int line;
+
+        Violation(Rule rule, String fileName, int line) {
+            this.rule = rule;
+            this.fileName = fileName;
+            this.line = line;
+        }
+
+        @Override
+        public Rule getRule() {
+            return rule;
+        }
+
+        @Override
+        public String getDescription() {
+            return rule.getName() + " at line " + line;
+        }
+
+        @Override
+        public boolean isSuppressed() {
+            return false;
+        }
+
+        @Override
+        public String getFilename() {
+            return fileName;
+        }
+
+        @Override
+        public int getBeginLine() {
+            return line;
+        }
+
+        @Override
+        public int getBeginColumn() {
+            return 1;
+        }
+
+        @Override
+        public int getEndLine() {
+            return line;
+        }
+
+        @Override
+        public int getEndColumn() {
+            return 1;
+        }
+
+        @Override
+        public String getPackageName() {
+            return "";
+        }
+
+        @Override
+        public String getClassName() {
+            return "A";
+        }
+
+        @Override
+        public String getMethodName() {
+            return "";
+        }
+
+        @Override
+        public String getVariableName() {
+            return "";
+        }
+    }
+}
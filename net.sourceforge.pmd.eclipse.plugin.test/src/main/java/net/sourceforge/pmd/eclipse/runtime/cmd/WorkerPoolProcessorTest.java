@@ -0,0 +1,221 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSetFactory;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.rule.MockRule;
+import net.sourceforge.pmd.processor.PmdRunnable;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.util.datasource.DataSource;
+
+public class WorkerPoolProcessorTest {
+    // lets the blocked analyses end
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final RecordingListener listener = new RecordingListener();
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    public void filesTakingLongerThanTheTimeoutAreAbandoned() throws Exception {
+        AnalysisGovernor governor = new AnalysisGovernor(2);
+        TestProcessor processor = new TestProcessor(2, new NullProgressMonitor(), 200, governor);
+        processor.analyses.put("Slow.java", blockingAnalysis(null));
+        processor.process("Slow.java", "A.java", "B.java");
+
+        Assert.assertEquals(Arrays.asList("Slow.java"), listener.timedOut);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("A.java", "B.java")),
+                new HashSet<String>(listener.analyzed));
+        Assert.assertNull(listener.unfinished);
+        Assert.assertEquals(Arrays.asList("Slow.java"), processor.abandoned);
+        Assert.assertEquals(3, processor.getProcessedFilesCount());
+        Assert.assertEquals(1, processor.getTimedOutFilesCount());
+        Assert.assertEquals(2, processor.getAnalyzedFilesCount());
+
+        // the abandoned thread keeps its worker slot until it ends
+        Assert.assertTrue(governor.acquireWorker(Job.LONG));
+        Assert.assertFalse(governor.acquireWorker(Job.LONG));
+        release.countDown();
+        awaitWorker(governor);
+    }
+
+    @Test
+    public void cancellationReportsTheUnfinishedFiles() throws Exception {
+        AnalysisGovernor governor = new AnalysisGovernor(1);
+        IProgressMonitor monitor = new NullProgressMonitor();
+        TestProcessor processor = new TestProcessor(1, monitor, 0, governor);
+        processor.analyses.put("Running.java", blockingAnalysis(monitor));
+        processor.process("Done.java", "Running.java", "Queued.java");
+
+        Assert.assertEquals(Arrays.asList("Done.java"), listener.analyzed);
+        Assert.assertEquals(Arrays.asList("Running.java", "Queued.java"), listener.unfinished);
+        Assert.assertTrue(listener.timedOut.isEmpty());
+        Assert.assertEquals(Arrays.asList("Running.java"), processor.abandoned);
+        Assert.assertEquals(1, processor.getProcessedFilesCount());
+
+        Assert.assertFalse(governor.acquireWorker(Job.LONG));
+        release.countDown();
+        awaitWorker(governor);
+    }
+
+    /**
+     * @param monitor
+     *            the monitor canceled once the analysis started, may be null
+     * @return an analysis that, like PMD, ignores interruptions and blocks
+     *         until the test releases it
+     */
+    private Callable<Report> blockingAnalysis(final IProgressMonitor monitor) {
+        return new Callable<Report>() {
+            @Override
+            public Report call() {
+                if (monitor != null) {
+                    monitor.setCanceled(true);
+                }
+                while (release.getCount() > 0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // ignored, as by PMD
+                    }
+                }
+                return new Report();
+            }
+        };
+    }
+
+    private static void awaitWorker(AnalysisGovernor governor) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!governor.acquireWorker(Job.LONG)) {
+            Assert.assertTrue("The worker slot is not given back", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private final class TestProcessor extends WorkerPoolProcessor {
+        // the analyses by file name, the other files are analyzed at once
+        private final Map<String, Callable<Report>> analyses = new HashMap<String, Callable<Report>>();
+        private final List<String> abandoned = new ArrayList<String>();
+
+        TestProcessor(int threadCount, IProgressMonitor monitor, long timeoutMillis, AnalysisGovernor governor) {
+            super(new PMDConfiguration(), threadCount, monitor, listener, timeoutMillis, governor);
+        }
+
+        void process(String... fileNames) {
+            List<DataSource> files = new ArrayList<DataSource>();
+            for (String fileName : fileNames) {
+                files.add(new NamedDataSource(fileName));
+            }
+            final Rule rule = new MockRule("Rule", "description", "message", "ruleset");
+            rule.setLanguage(LanguageRegistry.getLanguage(JavaLanguageModule.NAME));
+            RuleSetFactory ruleSetFactory = new RuleSetFactory() {
+                @Override
+                public synchronized RuleSets createRuleSets(String referenceString) {
+                    return new RuleSets(RuleSetUtil.newSingle(rule));
+                }
+            };
+            processFiles(ruleSetFactory, files, new RuleContext(), Collections.<Renderer>emptyList());
+        }
+
+        @Override
+        protected Callable<Report> analysisTask(PmdRunnable runnable, DataSource dataSource) {
+            Callable<Report> analysis = analyses.get(dataSource.getNiceFileName(false, null));
+            if (analysis != null) {
+                return analysis;
+            }
+            return new Callable<Report>() {
+                @Override
+                public Report call() {
+                    return new Report();
+                }
+            };
+        }
+
+        @Override
+        protected void analysisAbandoned(DataSource dataSource) {
+            abandoned.add(dataSource.getNiceFileName(false, null));
+        }
+    }
+
+    private static final class RecordingListener implements WorkerPoolProcessor.FileReportListener {
+        private final List<String> analyzed = new ArrayList<String>();
+        private final List<String> timedOut = new ArrayList<String>();
+        private List<String> unfinished;
+
+        @Override
+        public void fileAnalyzed(DataSource dataSource, Report report) {
+            analyzed.add(dataSource.getNiceFileName(false, null));
+        }
+
+        @Override
+        public void fileTimedOut(DataSource dataSource, long timeoutMillis) {
+            timedOut.add(dataSource.getNiceFileName(false, null));
+        }
+
+        @Override
+        public void analysisCanceled(List<DataSource> unfinishedDataSources) {
+            unfinished = new ArrayList<String>();
+            for (DataSource dataSource : unfinishedDataSources) {
+                unfinished.add(dataSource.getNiceFileName(false, null));
+            }
+        }
+    }
+
+    private static final class NamedDataSource implements DataSource {
+        private final String name;
+
+        NamedDataSource(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public String getNiceFileName(boolean shortNames, String inputFileName) {
+            return name;
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
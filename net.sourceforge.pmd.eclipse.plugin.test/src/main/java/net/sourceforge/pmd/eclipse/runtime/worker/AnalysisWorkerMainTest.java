@@ -0,0 +1,114 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.worker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AnalysisWorkerMainTest {
+
+    private File sourceFile;
+
+    @Before
+    public void setUp() throws IOException {
+        sourceFile = File.createTempFile("Worker", ".java");
+        OutputStream out = new FileOutputStream(sourceFile);
+        try {
+            out.write("class Worker {\n    void run() {\n        int unused = 0;\n    }\n}\n".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        sourceFile.delete();
+    }
+
+    @Test
+    public void configurationSurvivesTheRoundTrip() throws IOException {
+        WorkerConfiguration configuration = new WorkerConfiguration("rules.xml", "java 1.8",
+                Arrays.asList("a.jar", "classes"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        configuration.write(new DataOutputStream(bytes));
+
+        WorkerConfiguration read = WorkerConfiguration
+                .read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(configuration, read);
+        Assert.assertEquals(Arrays.asList("a.jar", "classes"), read.getAuxClasspath());
+    }
+
+    @Test
+    public void workerAnswersWithTheViolationsOfTheFile() throws IOException {
+        ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(requests);
+        out.writeByte(AnalysisWorkerMain.CONFIGURE);
+        new WorkerConfiguration("category/java/bestpractices.xml/UnusedLocalVariable", "java 1.8",
+                Collections.<String>emptyList()).write(out);
+        out.writeByte(AnalysisWorkerMain.ANALYZE);
+        out.writeUTF(sourceFile.getPath());
+        out.writeUTF("UTF-8");
+        out.writeByte(AnalysisWorkerMain.ANALYZE);
+        out.writeUTF(new File(sourceFile.getPath() + ".missing").getPath());
+        out.writeUTF("UTF-8");
+        out.writeByte(AnalysisWorkerMain.EXIT);
+
+        ByteArrayOutputStream answers = new ByteArrayOutputStream();
+        new AnalysisWorkerMain().serve(new DataInputStream(new ByteArrayInputStream(requests.toByteArray())),
+                new DataOutputStream(answers));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(answers.toByteArray()));
+        Assert.assertEquals(AnalysisWorkerMain.RESULT_OK, in.readByte());
+        Assert.assertEquals(AnalysisWorkerMain.RESULT_OK, in.readByte());
+        Assert.assertEquals(1, in.readInt());
+        ViolationRecord violation = ViolationRecord.read(in);
+        Assert.assertEquals("UnusedLocalVariable", violation.getRuleName());
+        Assert.assertEquals(3, violation.getBeginLine());
+        // a file that can not be read is reported, the worker goes on
+        Assert.assertEquals(AnalysisWorkerMain.RESULT_ERROR, in.readByte());
+        Assert.assertFalse(in.readUTF().isEmpty());
+        Assert.assertEquals(0, in.available());
+    }
+
+    @Test
+    public void workerAnswersWithAnErrorIfTheAuxClasspathCanNotBeRead() throws IOException {
+        ByteArrayOutputStream requests = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(requests);
+        out.writeByte(AnalysisWorkerMain.CONFIGURE);
+        // a classpath starting with file:// names a file listing the entries
+        new WorkerConfiguration("category/java/bestpractices.xml/UnusedLocalVariable", "java 1.8",
+                Arrays.asList("file://" + sourceFile.getPath() + ".missing")).write(out);
+        out.writeByte(AnalysisWorkerMain.ANALYZE);
+        out.writeUTF(sourceFile.getPath());
+        out.writeUTF("UTF-8");
+        out.writeByte(AnalysisWorkerMain.EXIT);
+
+        ByteArrayOutputStream answers = new ByteArrayOutputStream();
+        new AnalysisWorkerMain().serve(new DataInputStream(new ByteArrayInputStream(requests.toByteArray())),
+                new DataOutputStream(answers));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(answers.toByteArray()));
+        Assert.assertEquals(AnalysisWorkerMain.RESULT_ERROR, in.readByte());
+        String error = in.readUTF();
+        Assert.assertTrue(error, error.contains(".missing"));
+        // the files are not analyzed with a partial configuration
+        Assert.assertEquals(AnalysisWorkerMain.RESULT_ERROR, in.readByte());
+        Assert.assertEquals(error, in.readUTF());
+        Assert.assertEquals(0, in.available());
+    }
+}
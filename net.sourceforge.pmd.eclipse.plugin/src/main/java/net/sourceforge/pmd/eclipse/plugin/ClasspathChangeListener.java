@@ -0,0 +1,51 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.plugin;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
+import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+
+/**
+ * Drops the cached analysis results of a java project when its classpath
+ * changes, as type resolution may then give other results for unchanged files.
+ */
+public class ClasspathChangeListener implements IElementChangedListener {
+    private static final Logger LOG = LoggerFactory.getLogger(ClasspathChangeListener.class);
+
+    private static final int CLASSPATH_CHANGED = IJavaElementDelta.F_CLASSPATH_CHANGED
+            | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED;
+
+    @Override
+    public void elementChanged(ElementChangedEvent event) {
+        for (IJavaElementDelta delta : event.getDelta().getAffectedChildren()) {
+            if (delta.getElement().getElementType() == IJavaElement.JAVA_PROJECT
+                    && (delta.getFlags() & CLASSPATH_CHANGED) != 0) {
+                classpathChanged(delta.getElement().getJavaProject().getProject());
+            }
+        }
+    }
+
+    private void classpathChanged(IProject project) {
+        if (!project.isAccessible()) {
+            return;
+        }
+        LOG.debug("Classpath of project {} changed", project.getName());
+        try {
+            IProjectProperties properties = PMDPlugin.getDefault().loadProjectProperties(project);
+            properties.resetAuxClasspath();
+            properties.invalidateAnalysisCache();
+        } catch (PropertiesException e) {
+            LOG.warn("Unable to invalidate the analysis cache of project " + project.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.plugin;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IEditorReference;
+import org.eclipse.ui.IPartListener2;
+import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchPartReference;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.IWindowListener;
+import org.eclipse.ui.PartInitException;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.ide.ResourceUtil;
+
+/**
+ * Keeps track of the files that are open in editors, so that the reviews can
+ * analyze them first. The listeners are called on the UI thread, the files
+ * can be queried from any thread.
+ */
+public class EditorTracker implements IWindowListener, IPartListener2 {
+
+    private volatile Set<IFile> openFiles = Collections.emptySet();
+    private volatile Set<IFile> visibleFiles = Collections.emptySet();
+    private IWorkbench workbench;
+
+    /**
+     * Starts tracking the editors, if the workbench is running and the
+     * tracker is not installed yet.
+     */
+    public synchronized void install() {
+        if (workbench != null || !PlatformUI.isWorkbenchRunning()) {
+            return;
+        }
+        workbench = PlatformUI.getWorkbench();
+        final IWorkbench trackedWorkbench = workbench;
+        trackedWorkbench.getDisplay().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                if (trackedWorkbench.isClosing()) {
+                    return;
+                }
+                trackedWorkbench.addWindowListener(EditorTracker.this);
+                for (IWorkbenchWindow window : trackedWorkbench.getWorkbenchWindows()) {
+                    window.getPartService().addPartListener(EditorTracker.this);
+                }
+                update();
+            }
+        });
+    }
+
+    public synchronized void uninstall() {
+        if (workbench == null) {
+            return;
+        }
+        workbench.removeWindowListener(this);
+        for (IWorkbenchWindow window : workbench.getWorkbenchWindows()) {
+            window.getPartService().removePartListener(this);
+        }
+        workbench = null;
+        openFiles = Collections.emptySet();
+        visibleFiles = Collections.emptySet();
+    }
+
+    /**
+     * @return the files of all open editors, including the visible ones
+     */
+    public Set<IFile> getOpenFiles() {
+        return openFiles;
+    }
+
+    /**
+     * @return the files of the editors that are currently visible
+     */
+    public Set<IFile> getVisibleFiles() {
+        return visibleFiles;
+    }
+
+    private void update() {
+        IWorkbench trackedWorkbench = workbench;
+        if (trackedWorkbench == null) {
+            return;
+        }
+        Set<IFile> open = new HashSet<IFile>();
+        Set<IFile> visible = new HashSet<IFile>();
+        for (IWorkbenchWindow window : trackedWorkbench.getWorkbenchWindows()) {
+            for (IWorkbenchPage page : window.getPages()) {
+                for (IEditorReference reference : page.getEditorReferences()) {
+                    IFile file = fileOf(reference);
+                    if (file == null) {
+                        continue;
+                    }
+                    open.add(file);
+                    // editors that have not been restored yet are not visible
+                    IEditorPart editor = reference.getEditor(false);
+                    if (editor != null && page.isPartVisible(editor)) {
+                        visible.add(file);
+                    }
+                }
+            }
+        }
+        openFiles = Collections.unmodifiableSet(open);
+        visibleFiles = Collections.unmodifiableSet(visible);
+    }
+
+    private static IFile fileOf(IEditorReference reference) {
+        try {
+            return ResourceUtil.getFile(reference.getEditorInput());
+        } catch (PartInitException e) {
+            return null;
+        }
+    }
+
+    private void editorChanged(IWorkbenchPartReference partRef) {
+        if (partRef instanceof IEditorReference) {
+            update();
+        }
+    }
+
+    @Override
+    public void windowOpened(IWorkbenchWindow window) {
+        window.getPartService().addPartListener(this);
+        update();
+    }
+
+    @Override
+    public void windowClosed(IWorkbenchWindow window) {
+        window.getPartService().removePartListener(this);
+        update();
+    }
+
+    @Override
+    public void windowActivated(IWorkbenchWindow window) {
+        // the open editors do not change
+    }
+
+    @Override
+    public void windowDeactivated(IWorkbenchWindow window) {
+        // the open editors do not change
+    }
+
+    @Override
+    public void partOpened(IWorkbenchPartReference partRef) {
+        editorChanged(partRef);
+    }
+
+    @Override
+    public void partClosed(IWorkbenchPartReference partRef) {
+        editorChanged(partRef);
+    }
+
+    @Override
+    public void partVisible(IWorkbenchPartReference partRef) {
+        editorChanged(partRef);
+    }
+
+    @Override
+    public void partHidden(IWorkbenchPartReference partRef) {
+        editorChanged(partRef);
+    }
+
+    @Override
+    public void partInputChanged(IWorkbenchPartReference partRef) {
+        editorChanged(partRef);
+    }
+
+    @Override
+    public void partActivated(IWorkbenchPartReference partRef) {
+        // the visibility is reported separately
+    }
+
+    @Override
+    public void partBroughtToTop(IWorkbenchPartReference partRef) {
+        // the visibility is reported separately
+    }
+
+    @Override
+    public void partDeactivated(IWorkbenchPartReference partRef) {
+        // the visibility is reported separately
+    }
+}
@@ -17,6 +17,7 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 
 import net.sourceforge.pmd.eclipse.runtime.cmd.ReviewCodeCmd;
 
@@ -98,6 +99,8 @@ public class FileChangeReviewer implements IResourceChangeListener {
 
         ReviewCodeCmd cmd = new ReviewCodeCmd(); // separate one for each thread
         cmd.reset();
+        // the saved files are reviewed before the files of other reviews
+        cmd.setJobPriority(Job.SHORT);
 
         for (ResourceChange chg : itemsChanged) {
             cmd.addResource(chg.file);
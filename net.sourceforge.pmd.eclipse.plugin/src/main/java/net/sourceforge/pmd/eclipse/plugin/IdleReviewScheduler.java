@@ -0,0 +1,460 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.IJobChangeListener;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.PlatformUI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.runtime.cmd.AnalysisGovernor;
+import net.sourceforge.pmd.eclipse.runtime.cmd.ReviewCodeCmd;
+import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
+import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+import net.sourceforge.pmd.eclipse.util.IOUtil;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+
+/**
+ * Checks the stale files of the workspace while the workbench is idle, that
+ * is when there was neither user input nor a build for the delay set in the
+ * preferences. Only the projects that are not checked by full builds are
+ * swept. The files are checked in small slices by a job of the lowest
+ * priority, which is canceled as soon as the user types or a build starts.
+ *
+ * <p>The first sweep checks all the files, for the changes made while the
+ * workbench was closed. Its position is persisted, so that it goes on after a
+ * restart. The next sweeps only check the files changed since, leaving out the
+ * derived and team private files, e.g. the output of the builds.
+ */
+public class IdleReviewScheduler extends Job implements Listener {
+    private static final Logger LOG = LoggerFactory.getLogger(IdleReviewScheduler.class);
+
+    private static final String STATE_FILE = "idle-review.properties";
+    private static final String CURSOR = "cursor";
+    private static final int SLICE_SIZE = 20;
+    private static final int[] INPUT_EVENTS = { SWT.KeyDown, SWT.MouseDown, SWT.MouseWheel };
+
+    private static final Comparator<IFile> BY_PATH = new Comparator<IFile>() {
+        @Override
+        public int compare(IFile file1, IFile file2) {
+            return file1.getFullPath().toString().compareTo(file2.getFullPath().toString());
+        }
+    };
+
+    private final IJobChangeListener buildListener = new JobChangeAdapter() {
+        @Override
+        public void aboutToRun(IJobChangeEvent event) {
+            if (AnalysisGovernor.isBuild(event.getJob())) {
+                activity();
+            }
+        }
+
+        @Override
+        public void done(IJobChangeEvent event) {
+            if (AnalysisGovernor.isBuild(event.getJob())) {
+                activity();
+            }
+        }
+    };
+
+    private final IResourceChangeListener changeListener = new IResourceChangeListener() {
+        @Override
+        public void resourceChanged(IResourceChangeEvent event) {
+            if (collectChangedFiles(event.getDelta())) {
+                scheduleIfPending();
+            }
+        }
+    };
+
+    // the files changed since the start of the last sweep
+    private final Set<IFile> changedFiles = Collections.synchronizedSet(new LinkedHashSet<IFile>());
+    // whether the next sweep checks all the files, at first for the changes made while the workbench was closed
+    private volatile boolean sweepAll = true;
+    private volatile long lastActivity = System.currentTimeMillis();
+    private volatile Display display;
+
+    // the state of the current sweep, only changed by the job
+    private String cursor;
+    private volatile List<IFile> sweepFiles;
+    private boolean fullSweep;
+
+    public IdleReviewScheduler() {
+        super("Checking stale files with PMD");
+        setSystem(true);
+        setPriority(Job.DECORATE);
+    }
+
+    /**
+     * Starts watching the user input and the builds, if the workbench is
+     * running and the scheduler is not installed yet.
+     */
+    public synchronized void install() {
+        if (display != null || !PlatformUI.isWorkbenchRunning()) {
+            return;
+        }
+        final IWorkbench workbench = PlatformUI.getWorkbench();
+        display = workbench.getDisplay();
+        display.asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                if (workbench.isClosing()) {
+                    return;
+                }
+                for (int eventType : INPUT_EVENTS) {
+                    workbench.getDisplay().addFilter(eventType, IdleReviewScheduler.this);
+                }
+            }
+        });
+        cursor = loadCursor();
+        Job.getJobManager().addJobChangeListener(buildListener);
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(changeListener, IResourceChangeEvent.POST_CHANGE);
+        scheduleIfPending();
+    }
+
+    public synchronized void uninstall() {
+        if (display == null) {
+            return;
+        }
+        final Display watchedDisplay = display;
+        if (!watchedDisplay.isDisposed()) {
+            watchedDisplay.asyncExec(new Runnable() {
+                @Override
+                public void run() {
+                    for (int eventType : INPUT_EVENTS) {
+                        watchedDisplay.removeFilter(eventType, IdleReviewScheduler.this);
+                    }
+                }
+            });
+        }
+        display = null;
+        Job.getJobManager().removeJobChangeListener(buildListener);
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(changeListener);
+        cancel();
+    }
+
+    /**
+     * Called on the UI thread for each input event.
+     */
+    @Override
+    public void handleEvent(Event event) {
+        activity();
+    }
+
+    /**
+     * Restarts the idle delay. The running slice is canceled, it is checked
+     * again once the workbench is idle.
+     */
+    private void activity() {
+        lastActivity = System.currentTimeMillis();
+        if (getState() == Job.RUNNING) {
+            cancel();
+        }
+        scheduleIfPending();
+    }
+
+    private void scheduleIfPending() {
+        int delay = idleDelayMillis();
+        if (delay > 0 && getState() == Job.NONE && hasWork()) {
+            schedule(delay);
+        }
+    }
+
+    private void reschedule(long delay) {
+        // the job is canceled for good once uninstalled
+        if (display != null) {
+            schedule(delay);
+        }
+    }
+
+    private boolean hasWork() {
+        return sweepFiles != null || sweepAll || !changedFiles.isEmpty();
+    }
+
+    private static int idleDelayMillis() {
+        return PMDPlugin.getDefault().loadPreferences().getIdleReviewDelay() * 1000;
+    }
+
+    /**
+     * @return the time in milliseconds until the workbench is idle, 0 if it
+     *         is idle now
+     */
+    private long remainingDelay() {
+        long remaining = lastActivity + idleDelayMillis() - System.currentTimeMillis();
+        if (remaining <= 0 && AnalysisGovernor.isBuildRunning()) {
+            return idleDelayMillis();
+        }
+        return Math.max(0, remaining);
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        if (idleDelayMillis() <= 0) {
+            // the next activity schedules the job again once enabled
+            return Status.OK_STATUS;
+        }
+        try {
+            if (sweepFiles == null) {
+                startSweep();
+            }
+            while (!sweepFiles.isEmpty()) {
+                long remaining = remainingDelay();
+                if (monitor.isCanceled() || remaining > 0) {
+                    reschedule(remaining > 0 ? remaining : idleDelayMillis());
+                    return Status.CANCEL_STATUS;
+                }
+                List<IFile> slice = sweepFiles.subList(0, Math.min(SLICE_SIZE, sweepFiles.size()));
+                review(slice, monitor);
+                if (monitor.isCanceled()) {
+                    // the slice is checked again, its files already done are found current
+                    reschedule(idleDelayMillis());
+                    return Status.CANCEL_STATUS;
+                }
+                if (fullSweep) {
+                    cursor = slice.get(slice.size() - 1).getFullPath().toString();
+                    storeCursor(cursor);
+                }
+                slice.clear();
+            }
+            LOG.debug("The idle check of the workspace is complete");
+            sweepFiles = null;
+            if (fullSweep) {
+                cursor = null;
+                storeCursor(null);
+            }
+            if (hasWork()) {
+                reschedule(idleDelayMillis());
+            }
+            return Status.OK_STATUS;
+        } catch (CoreException e) {
+            sweepFiles = null;
+            if (fullSweep) {
+                sweepAll = true;
+            }
+            return e.getStatus();
+        }
+    }
+
+    /**
+     * Lists the files of the sweep, in the order of their paths: all the files
+     * starting after the last file checked by the previous full sweep, if it
+     * did not complete, or the files changed since the last sweep.
+     */
+    private void startSweep() throws CoreException {
+        fullSweep = sweepAll;
+        sweepAll = false;
+        List<IFile> files = new ArrayList<IFile>();
+        if (fullSweep) {
+            // the files changed from now on are found by the listing
+            changedFiles.clear();
+            for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+                if (isSwept(project)) {
+                    collectFiles(project, files);
+                }
+            }
+        } else {
+            takeChangedFiles(files);
+        }
+        Collections.sort(files, BY_PATH);
+        if (fullSweep && cursor != null) {
+            int start = 0;
+            while (start < files.size() && files.get(start).getFullPath().toString().compareTo(cursor) <= 0) {
+                start++;
+            }
+            files = files.subList(start, files.size());
+            LOG.debug("Resuming the idle check of the workspace after " + cursor);
+        }
+        sweepFiles = new ArrayList<IFile>(files);
+    }
+
+    private void takeChangedFiles(List<IFile> files) {
+        Map<IProject, Boolean> sweptProjects = new HashMap<IProject, Boolean>();
+        synchronized (changedFiles) {
+            for (IFile file : changedFiles) {
+                Boolean swept = sweptProjects.get(file.getProject());
+                if (swept == null) {
+                    swept = Boolean.valueOf(isSwept(file.getProject()));
+                    sweptProjects.put(file.getProject(), swept);
+                }
+                if (swept.booleanValue() && file.exists()) {
+                    files.add(file);
+                }
+            }
+            changedFiles.clear();
+        }
+    }
+
+    private static boolean isSwept(IProject project) {
+        if (!project.isAccessible()) {
+            return false;
+        }
+        try {
+            IProjectProperties properties = PMDPlugin.getDefault().loadProjectProperties(project);
+            // the full builds already check all the files of the other projects
+            return properties.isPmdEnabled() && !properties.isFullBuildEnabled();
+        } catch (PropertiesException e) {
+            LOG.warn("Unable to load the PMD properties of project " + project.getName(), e);
+            return false;
+        }
+    }
+
+    private static void collectFiles(IProject project, final List<IFile> files) throws CoreException {
+        project.accept(new IResourceProxyVisitor() {
+            @Override
+            public boolean visit(IResourceProxy proxy) {
+                if (proxy.isDerived() || proxy.isTeamPrivateMember()) {
+                    return false;
+                }
+                if (proxy.getType() == IResource.FILE && isLanguageFile(proxy.getName())) {
+                    files.add((IFile) proxy.requestResource());
+                }
+                return true;
+            }
+        }, IResource.NONE);
+    }
+
+    private static boolean isLanguageFile(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && !LanguageRegistry.findByExtension(fileName.substring(dot + 1)).isEmpty();
+    }
+
+    private static void review(List<IFile> slice, IProgressMonitor monitor) {
+        ReviewCodeCmd cmd = new ReviewCodeCmd();
+        cmd.setTaskMarker(false);
+        cmd.setDeferredReview(true);
+        cmd.setStaleOnly(true);
+        cmd.setMonitor(monitor);
+        for (IFile file : slice) {
+            if (file.exists()) {
+                cmd.addResource(file);
+            }
+        }
+        if (!cmd.isReadyToExecute()) {
+            return;
+        }
+        try {
+            cmd.execute();
+        } catch (RuntimeException e) {
+            // the slice is skipped, so that the sweep goes on
+            LOG.warn("Unable to check files in idle time", e);
+        }
+    }
+
+    /**
+     * Records the added and changed files of a delta, without the derived and
+     * team private ones.
+     *
+     * @return true if a file has been recorded
+     */
+    private boolean collectChangedFiles(IResourceDelta delta) {
+        if (delta == null) {
+            return false;
+        }
+        final boolean[] changed = new boolean[1];
+        try {
+            delta.accept(new IResourceDeltaVisitor() {
+                @Override
+                public boolean visit(IResourceDelta fileDelta) {
+                    IResource resource = fileDelta.getResource();
+                    // e.g. the class files of a build
+                    if (resource.isDerived() || resource.isTeamPrivateMember()) {
+                        return false;
+                    }
+                    if (resource.getType() == IResource.FILE && isLanguageFile(resource.getName())
+                            && (fileDelta.getKind() == IResourceDelta.ADDED
+                                    || (fileDelta.getFlags() & IResourceDelta.CONTENT) != 0)) {
+                        changedFiles.add((IFile) resource);
+                        changed[0] = true;
+                    }
+                    return true;
+                }
+            });
+        } catch (CoreException e) {
+            LOG.debug("Unable to find the changed files, all the files are checked", e);
+            sweepAll = true;
+            return true;
+        }
+        return changed[0];
+    }
+
+    private static File stateFile() {
+        return PMDPlugin.getDefault().getStateLocation().append(STATE_FILE).toFile();
+    }
+
+    private static String loadCursor() {
+        File file = stateFile();
+        if (!file.exists()) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            Properties properties = new Properties();
+            properties.load(in);
+            return properties.getProperty(CURSOR);
+        } catch (IOException e) {
+            LOG.warn("Unable to read the idle check state " + file + ", starting a new sweep", e);
+            return null;
+        } finally {
+            IOUtil.closeQuietly(in);
+        }
+    }
+
+    private static void storeCursor(String cursor) {
+        File file = stateFile();
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            Properties properties = new Properties();
+            if (cursor != null) {
+                properties.setProperty(CURSOR, cursor);
+            }
+            properties.store(out, "PMD idle check state");
+        } catch (IOException e) {
+            LOG.warn("Unable to write the idle check state " + file, e);
+        } finally {
+            IOUtil.closeQuietly(out);
+        }
+    }
+}
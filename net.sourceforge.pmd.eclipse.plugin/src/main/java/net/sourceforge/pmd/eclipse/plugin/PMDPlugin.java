@@ -15,6 +15,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -29,6 +30,7 @@ import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.core.ElementChangedEvent;
 import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
@@ -73,6 +75,7 @@ import net.sourceforge.pmd.eclipse.runtime.properties.IProjectPropertiesManager;
 import net.sourceforge.pmd.eclipse.runtime.properties.IPropertiesFactory;
 import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
 import net.sourceforge.pmd.eclipse.runtime.properties.impl.PropertiesFactoryImpl;
+import net.sourceforge.pmd.eclipse.runtime.worker.AnalysisWorkerPool;
 import net.sourceforge.pmd.eclipse.runtime.writer.IAstWriter;
 import net.sourceforge.pmd.eclipse.runtime.writer.IRuleSetWriter;
 import net.sourceforge.pmd.eclipse.runtime.writer.impl.WriterFactoryImpl;
@@ -99,13 +102,19 @@ public class PMDPlugin extends AbstractUIPlugin {
 
     private FileChangeReviewer changeReviewer;
 
+    private ClasspathChangeListener classpathChangeListener;
+
+    private final EditorTracker editorTracker = new EditorTracker();
+
+    private final IdleReviewScheduler idleReviewScheduler = new IdleReviewScheduler();
+
     private Map<RGB, Color> coloursByRGB = new HashMap<RGB, Color>();
 
     public static final String PLUGIN_ID = "net.sourceforge.pmd.eclipse.plugin";
     public static final String VIOLATIONS_OVERVIEW_ID = "net.sourceforge.pmd.eclipse.ui.views.violationOverview"; 
     public static final String VIOLATIONS_OUTLINE_ID = "net.sourceforge.pmd.eclipse.ui.views.violationOutline"; 
 
-    private static Map<IProject, IJavaProject> javaProjectsByIProject = new HashMap<IProject, IJavaProject>();
+    private static Map<IProject, IJavaProject> javaProjectsByIProject = new ConcurrentHashMap<IProject, IJavaProject>();
 
     // The shared instance
     private static PMDPlugin plugin;
@@ -257,10 +266,17 @@ public class PMDPlugin extends AbstractUIPlugin {
             }
         });
 
+        // if the classpath of a project changes, its cached analysis results become stale
+        classpathChangeListener = new ClasspathChangeListener();
+        JavaCore.addElementChangedListener(classpathChangeListener, ElementChangedEvent.POST_CHANGE);
+
         // the initialization can only take place, after the plugin has been started.
         // otherwise the preferences are not available yet.
         PriorityFilter.getInstance().initialize();
 
+        editorTracker.install();
+        idleReviewScheduler.install();
+
         version = context.getBundle().getHeaders().get("Bundle-Version");
         LOG.debug("PMD Plugin {} has started...", version);
     }
@@ -286,6 +302,17 @@ public class PMDPlugin extends AbstractUIPlugin {
         return files;
     }
 
+    /**
+     * Returns the tracker of the open editors. It is installed on first use,
+     * if the plugin was started before the workbench.
+     *
+     * @return the editor tracker
+     */
+    public EditorTracker getEditorTracker() {
+        editorTracker.install();
+        return editorTracker;
+    }
+
     /**
      * Open a view to the id passed in.
      * 
@@ -377,6 +404,13 @@ public class PMDPlugin extends AbstractUIPlugin {
      */
     public void stop(BundleContext context) throws Exception {
         fileChangeListenerEnabled(false);
+        editorTracker.uninstall();
+        idleReviewScheduler.uninstall();
+        AnalysisWorkerPool.getInstance().shutdown();
+        if (classpathChangeListener != null) {
+            JavaCore.removeElementChangedListener(classpathChangeListener);
+            classpathChangeListener = null;
+        }
 
         disposeResources();
         ShapePainter.disposeAll();
@@ -26,6 +26,8 @@ public class PMDRuntimeConstants {
 
     public static final String PMD_DFA_MARKER = PMDPlugin.PLUGIN_ID + ".pmdDFAMarker";
     public static final String PMD_TASKMARKER = PMDPlugin.PLUGIN_ID + ".pmdTaskMarker";
+    /** This marker type reports files PMD could not analyze. It is not a violation marker. */
+    public static final String PMD_ANALYSIS_MARKER = PMDPlugin.PLUGIN_ID + ".pmdAnalysisMarker";
     public static final String[] RULE_MARKER_TYPES = new String[] { PMD_MARKER_1, PMD_MARKER_2,
         PMD_MARKER_3, PMD_MARKER_4, PMD_MARKER_5 };
     public static final String[] ALL_MARKER_TYPES = new String[] { PMD_MARKER, PMD_DFA_MARKER, PMD_TASKMARKER,
@@ -46,6 +48,14 @@ public class PMDRuntimeConstants {
      * contain both rule name + message.
      */
     public static final String KEY_MARKERATT_MESSAGE = "pmd_message";
+    /**
+     * The rule tier an analysis marker was created by, as it has no rule name.
+     */
+    public static final String KEY_MARKERATT_TIER = "pmd_tier";
+    /**
+     * The pre-scan decision an analysis marker reports, it has none if it reports a timeout.
+     */
+    public static final String KEY_MARKERATT_PRESCAN = "pmd_prescan";
 
     public static final String PLUGIN_STYLE_REVIEW_COMMENT = "// @PMD:REVIEWED:";
     public static final String PMD_STYLE_REVIEW_COMMENT = "// NOPMD";
@@ -0,0 +1,215 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+
+/**
+ * A query of the markers of a resource and its members. The PMD markers of
+ * several types are found in one walk of the resource tree, with their common
+ * super type {@link PMDRuntimeConstants#PMD_MARKER}, so that each marker is
+ * found once. Other types are queried one after the other, the markers found
+ * for several types being kept once. The markers are filtered by type, rule,
+ * priority or other attributes while they are found, and can be visited or
+ * counted without collecting them.
+ *
+ * <p>A query is immutable, the <code>with</code> methods return a new query.
+ */
+public final class MarkerQuery {
+
+    /**
+     * Receives the markers found by a query, one at a time.
+     */
+    public interface MarkerVisitor {
+        /**
+         * @param marker
+         *            a marker matching the query
+         * @return true to go on with the next markers, false to stop
+         */
+        boolean visit(IMarker marker) throws CoreException;
+    }
+
+    private static final Object[] NO_VALUES = new Object[0];
+    private static final String[] NO_NAMES = new String[0];
+
+    private final String[] types;
+    // whether the types are PMD marker types, found with their super type
+    private final boolean pmdTypes;
+    private final String[] attributeNames;
+    private final Object[] attributeValues;
+
+    private MarkerQuery(String[] types, String[] attributeNames, Object[] attributeValues) {
+        this.types = types;
+        this.pmdTypes = Arrays.asList(PMDRuntimeConstants.ALL_MARKER_TYPES).containsAll(Arrays.asList(types));
+        this.attributeNames = attributeNames;
+        this.attributeValues = attributeValues;
+    }
+
+    /**
+     * @return a query of all the PMD markers: violations, data flow anomalies
+     *         and tasks
+     */
+    public static MarkerQuery allMarkers() {
+        return new MarkerQuery(new String[] { PMDRuntimeConstants.PMD_MARKER }, NO_NAMES, NO_VALUES);
+    }
+
+    /**
+     * @return a query of the markers of the rule violations
+     */
+    public static MarkerQuery ruleMarkers() {
+        return new MarkerQuery(PMDRuntimeConstants.RULE_MARKER_TYPES, NO_NAMES, NO_VALUES);
+    }
+
+    /**
+     * @param types
+     *            marker types
+     * @return a query of the markers of these types and their sub types
+     */
+    public static MarkerQuery markersOf(String... types) {
+        return new MarkerQuery(types.clone(), NO_NAMES, NO_VALUES);
+    }
+
+    /**
+     * @param name
+     *            an attribute name
+     * @param value
+     *            the value the attribute of the markers must be equal to
+     * @return a query of the markers of this query having the attribute value
+     */
+    public MarkerQuery withAttribute(String name, Object value) {
+        String[] names = Arrays.copyOf(attributeNames, attributeNames.length + 1);
+        Object[] values = Arrays.copyOf(attributeValues, attributeValues.length + 1);
+        names[attributeNames.length] = name;
+        values[attributeValues.length] = value;
+        return new MarkerQuery(types, names, values);
+    }
+
+    /**
+     * @param ruleName
+     *            the name of a rule
+     * @return a query of the markers of this query reported by the rule
+     */
+    public MarkerQuery withRule(String ruleName) {
+        return withAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, ruleName);
+    }
+
+    /**
+     * @param priority
+     *            a PMD rule priority
+     * @return a query of the markers of this query with the priority
+     */
+    public MarkerQuery withPriority(int priority) {
+        return withAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRIORITY, Integer.valueOf(priority));
+    }
+
+    /**
+     * Visits the matching markers of a resource and its members.
+     *
+     * @param resource
+     *            a resource
+     * @param visitor
+     *            the visitor of the markers
+     * @return false if the visitor stopped the query
+     */
+    public boolean accept(IResource resource, MarkerVisitor visitor) throws CoreException {
+        if (types.length == 1 || pmdTypes) {
+            String queryType = types.length == 1 ? types[0] : PMDRuntimeConstants.PMD_MARKER;
+            for (IMarker marker : resource.findMarkers(queryType, true, IResource.DEPTH_INFINITE)) {
+                if ((types.length == 1 || isOfQueriedType(marker)) && hasAttributes(marker)
+                        && !visitor.visit(marker)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Set<IMarker> foundMarkers = new HashSet<IMarker>();
+        for (String type : types) {
+            for (IMarker marker : resource.findMarkers(type, true, IResource.DEPTH_INFINITE)) {
+                if (foundMarkers.add(marker) && hasAttributes(marker) && !visitor.visit(marker)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean hasAttributes(IMarker marker) throws CoreException {
+        for (int i = 0; i < attributeNames.length; i++) {
+            Object value = marker.getAttribute(attributeNames[i]);
+            // if the value is null, the attribute doesn't exist
+            if (value == null || !value.equals(attributeValues[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isOfQueriedType(IMarker marker) throws CoreException {
+        String type = marker.getType();
+        for (String queryType : types) {
+            // the super type of the PMD markers stands for all of them
+            if (queryType.equals(type) || PMDRuntimeConstants.PMD_MARKER.equals(queryType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param resource
+     *            a resource
+     * @return the matching markers of the resource and its members
+     */
+    public IMarker[] find(IResource resource) throws CoreException {
+        final List<IMarker> markers = new ArrayList<IMarker>();
+        accept(resource, new MarkerVisitor() {
+            public boolean visit(IMarker marker) {
+                markers.add(marker);
+                return true;
+            }
+        });
+        return markers.isEmpty() ? MarkerUtil.EMPTY_MARKERS : markers.toArray(new IMarker[markers.size()]);
+    }
+
+    /**
+     * @param resource
+     *            a resource
+     * @return the number of matching markers of the resource and its members
+     */
+    public int count(IResource resource) throws CoreException {
+        final int[] count = new int[1];
+        accept(resource, new MarkerVisitor() {
+            public boolean visit(IMarker marker) {
+                count[0]++;
+                return true;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * @param resource
+     *            a resource
+     * @return true if the resource or one of its members has a matching marker
+     */
+    public boolean exists(IResource resource) throws CoreException {
+        return !accept(resource, new MarkerVisitor() {
+            public boolean visit(IMarker marker) {
+                return false;
+            }
+        });
+    }
+}
@@ -18,14 +18,17 @@ import org.eclipse.core.resources.IMarkerDelta;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
-import org.eclipse.core.resources.IResourceVisitor;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.cmd.MarkerInfo2;
+import net.sourceforge.pmd.eclipse.runtime.cmd.ProjectAnalysisContext;
 import net.sourceforge.pmd.eclipse.ui.PMDUiConstants;
 import net.sourceforge.pmd.eclipse.ui.model.AbstractPMDRecord;
 import net.sourceforge.pmd.eclipse.ui.model.FileRecord;
@@ -47,45 +50,7 @@ public class MarkerUtil {
     }
 
     public static boolean hasAnyRuleMarkers(IResource resource) throws CoreException {
-
-        final boolean[] foundOne = new boolean[] { false };
-
-        IResourceVisitor ruleMarkerFinder = new IResourceVisitor() {
-
-            public boolean visit(IResource resource) {
-
-                if (foundOne[0]) {
-                    return false;
-                }
-
-                if (resource instanceof IFile) {
-
-                    for (String markerType : PMDRuntimeConstants.RULE_MARKER_TYPES) {
-                        IMarker[] ruleMarkers = null;
-                        try {
-                            ruleMarkers = resource.findMarkers(markerType, true, IResource.DEPTH_INFINITE);
-                        } catch (CoreException ex) {
-                            // what do to?
-                        }
-                        if (ruleMarkers != null && ruleMarkers.length > 0) {
-                            foundOne[0] = true;
-                            return false;
-                        }
-                    }
-                }
-
-                return true;
-            }
-        };
-
-        try {
-            resource.accept(ruleMarkerFinder);
-        } catch (CoreException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-
-        return foundOne[0];
+        return MarkerQuery.ruleMarkers().exists(resource);
     }
 
     private static IProject projectFor(IResource resource) {
@@ -145,22 +110,10 @@ public class MarkerUtil {
     public static int deleteViolationsOf(String ruleName, IResource resource) {
 
         try {
-            IMarker[] markers = findAllMarkers(resource);
+            IMarker[] markers = MarkerQuery.allMarkers().withRule(ruleName).find(resource);
             if (markers.length == 0) {
                 return 0;
             }
-
-            List<IMarker> matches = new ArrayList<IMarker>(markers.length);
-
-            for (IMarker marker : markers) {
-                String name = ruleNameFor(marker);
-                if (ruleName.equals(name)) {
-                    matches.add(marker);
-                }
-            }
-
-            markers = new IMarker[matches.size()];
-            matches.toArray(markers);
             resource.getWorkspace().deleteMarkers(markers);
 
             return markers.length;
@@ -223,6 +176,7 @@ public class MarkerUtil {
     }
 
     public static void deleteAllMarkersIn(IResource resource) throws CoreException {
+        resource.deleteMarkers(PMDRuntimeConstants.PMD_ANALYSIS_MARKER, true, IResource.DEPTH_INFINITE);
         deleteMarkersIn(resource, PMDRuntimeConstants.ALL_MARKER_TYPES);
     }
 
@@ -237,41 +191,181 @@ public class MarkerUtil {
         PMDPlugin.getDefault().removedMarkersIn(resource);
     }
 
-    public static IMarker[] findAllMarkers(IResource resource) throws CoreException {
-        return findMarkers(resource, PMDRuntimeConstants.ALL_MARKER_TYPES);
+    /**
+     * Replaces the PMD markers of a file. If the monitor is canceled before
+     * the markers are changed, the file keeps its previous markers.
+     *
+     * @param file
+     *            the file
+     * @param markerInfos
+     *            the new markers of the file
+     * @param monitor
+     *            the monitor checked for cancellation
+     * @return the number of markers of the file, or -1 if the monitor was
+     *         canceled
+     * @see #replaceMarkers(IFile, Collection, ProjectAnalysisContext, IProgressMonitor)
+     */
+    public static int replaceMarkers(IFile file, Collection<MarkerInfo2> markerInfos, IProgressMonitor monitor)
+            throws CoreException {
+        return replaceMarkers(file, markerInfos, null, monitor);
     }
 
-    public static IMarker[] findMarkers(IResource resource, String markerType) throws CoreException {
-        return findMarkers(resource, new String[] { markerType });
+    /**
+     * Replaces the PMD markers of a file the review of a context is
+     * responsible for, the other markers are kept. The new markers are
+     * reconciled with the previous ones by their type, rule, lines and
+     * message: only the markers that disappeared are deleted, only the new
+     * ones are created and only the changed attributes are set. The markers
+     * of a file whose violations did not change are left untouched, so that
+     * no resource change event is fired. If the monitor is canceled before
+     * the markers are changed, the file keeps its previous markers.
+     *
+     * @param file
+     *            the file
+     * @param markerInfos
+     *            the new markers of the file
+     * @param analysisContext
+     *            the context of the review that found the markers, null to
+     *            replace all the markers
+     * @param monitor
+     *            the monitor checked for cancellation
+     * @return the number of markers of the file, or -1 if the monitor was
+     *         canceled
+     */
+    public static int replaceMarkers(IFile file, Collection<MarkerInfo2> markerInfos,
+            ProjectAnalysisContext analysisContext, IProgressMonitor monitor) throws CoreException {
+        Map<String, List<IMarker>> previousMarkers = new HashMap<String, List<IMarker>>();
+        String[] markerTypes = { PMDRuntimeConstants.PMD_MARKER, PMDRuntimeConstants.PMD_ANALYSIS_MARKER };
+        for (String markerType : markerTypes) {
+            for (IMarker marker : file.findMarkers(markerType, true, IResource.DEPTH_ZERO)) {
+                if (analysisContext == null || analysisContext.replaces(marker)) {
+                    Map<String, Object> attributes = attributesOf(marker);
+                    Object message = attributes.get(PMDRuntimeConstants.KEY_MARKERATT_MESSAGE);
+                    String key = markerKeyOf(marker.getType(),
+                            attributes.get(PMDRuntimeConstants.KEY_MARKERATT_RULENAME),
+                            attributes.get(IMarker.LINE_NUMBER),
+                            attributes.get(PMDRuntimeConstants.KEY_MARKERATT_LINE2),
+                            message == null ? attributes.get(IMarker.MESSAGE) : message);
+                    List<IMarker> sameKeyMarkers = previousMarkers.get(key);
+                    if (sameKeyMarkers == null) {
+                        sameKeyMarkers = new ArrayList<IMarker>(1);
+                        previousMarkers.put(key, sameKeyMarkers);
+                    }
+                    sameKeyMarkers.add(marker);
+                }
+            }
+        }
+
+        List<MarkerInfo2> createdMarkers = new ArrayList<MarkerInfo2>();
+        Map<IMarker, MarkerInfo2> updatedMarkers = new HashMap<IMarker, MarkerInfo2>();
+        for (MarkerInfo2 markerInfo : markerInfos) {
+            List<IMarker> sameKeyMarkers = previousMarkers.get(markerKeyOf(markerInfo));
+            if (sameKeyMarkers == null || sameKeyMarkers.isEmpty()) {
+                createdMarkers.add(markerInfo);
+                continue;
+            }
+            IMarker marker = sameKeyMarkers.remove(sameKeyMarkers.size() - 1);
+            if (!markerInfo.hasAttributes(attributesOf(marker))) {
+                updatedMarkers.put(marker, markerInfo);
+            }
+        }
+        List<IMarker> deletedMarkers = new ArrayList<IMarker>();
+        for (List<IMarker> sameKeyMarkers : previousMarkers.values()) {
+            deletedMarkers.addAll(sameKeyMarkers);
+        }
+
+        if (monitor != null && monitor.isCanceled()) {
+            return -1;
+        }
+        if (createdMarkers.isEmpty() && updatedMarkers.isEmpty() && deletedMarkers.isEmpty()) {
+            return markerInfos.size();
+        }
+        for (Map.Entry<IMarker, MarkerInfo2> entry : updatedMarkers.entrySet()) {
+            updateAttributes(entry.getKey(), entry.getValue().getAttributes());
+        }
+        for (MarkerInfo2 markerInfo : createdMarkers) {
+            markerInfo.addAsMarkerTo(file);
+        }
+        deleteMarkers(deletedMarkers);
+        PMDPlugin.getDefault().removedMarkersIn(file);
+        return markerInfos.size();
     }
 
-    public static IMarker[] findMarkers(IResource resource, String[] markerTypes) throws CoreException {
+    /**
+     * The key a marker is reconciled by, it does not change as long as the
+     * violation is reported on the same lines with the same message.
+     */
+    private static String markerKeyOf(String type, Object ruleName, Object line, Object line2, Object message) {
+        return type + '|' + ruleName + '|' + line + '|' + line2 + '|' + (message == null ? 0 : message.hashCode());
+    }
 
-        List<IMarker> markerList = new ArrayList<IMarker>();
+    private static String markerKeyOf(MarkerInfo2 markerInfo) {
+        if (markerInfo.getRuleName() == null) {
+            // like the attributes of the marker, which has no rule and no lines
+            return markerKeyOf(markerInfo.getType(), null, null, null, markerInfo.getMessage());
+        }
+        return markerKeyOf(markerInfo.getType(), markerInfo.getRuleName(), markerInfo.getLine(),
+                markerInfo.getLine2(), markerInfo.getMessage());
+    }
 
-        for (String markerType : markerTypes) {
-            for (IMarker marker : resource.findMarkers(markerType, true, IResource.DEPTH_INFINITE)) {
-                markerList.add(marker);
+    private static Map<String, Object> attributesOf(IMarker marker) throws CoreException {
+        Map<String, Object> attributes = marker.getAttributes();
+        return attributes == null ? new HashMap<String, Object>() : attributes;
+    }
+
+    /**
+     * Sets the attributes of a marker that differ from the new ones, and
+     * removes the attributes owned by the plugin the new ones do not have.
+     * The attributes set by other plug-ins are kept.
+     */
+    private static void updateAttributes(IMarker marker, Map<String, Object> attributes) throws CoreException {
+        Map<String, Object> previousAttributes = attributesOf(marker);
+        List<String> names = new ArrayList<String>();
+        List<Object> values = new ArrayList<Object>();
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            if (!attribute.getValue().equals(previousAttributes.get(attribute.getKey()))) {
+                names.add(attribute.getKey());
+                values.add(attribute.getValue());
             }
         }
+        for (String name : previousAttributes.keySet()) {
+            if (!attributes.containsKey(name) && MarkerInfo2.isOwnedAttribute(name)) {
+                names.add(name);
+                values.add(null);
+            }
+        }
+        marker.setAttributes(names.toArray(new String[names.size()]), values.toArray());
+    }
+
+    private static void deleteMarkers(List<IMarker> markers) throws CoreException {
+        if (!markers.isEmpty()) {
+            ResourcesPlugin.getWorkspace().deleteMarkers(markers.toArray(new IMarker[markers.size()]));
+        }
+    }
+
+    public static IMarker[] findAllMarkers(IResource resource) throws CoreException {
+        return MarkerQuery.allMarkers().find(resource);
+    }
 
-        IMarker[] markerArray = new IMarker[markerList.size()];
-        return markerList.toArray(markerArray);
+    public static IMarker[] findMarkers(IResource resource, String markerType) throws CoreException {
+        return MarkerQuery.markersOf(markerType).find(resource);
     }
 
-    public static Set<Integer> priorityRangeOf(IResource resource, String[] markerTypes, int sizeLimit)
+    public static IMarker[] findMarkers(IResource resource, String[] markerTypes) throws CoreException {
+        return MarkerQuery.markersOf(markerTypes).find(resource);
+    }
+
+    public static Set<Integer> priorityRangeOf(IResource resource, String[] markerTypes, final int sizeLimit)
             throws CoreException {
 
-        Set<Integer> priorityLevels = new HashSet<Integer>(sizeLimit);
+        final Set<Integer> priorityLevels = new HashSet<Integer>(sizeLimit);
 
-        for (String markerType : markerTypes) {
-            for (IMarker marker : resource.findMarkers(markerType, true, IResource.DEPTH_INFINITE)) {
+        MarkerQuery.markersOf(markerTypes).accept(resource, new MarkerQuery.MarkerVisitor() {
+            public boolean visit(IMarker marker) throws CoreException {
                 priorityLevels.add(rulePriorityFor(marker));
-                if (priorityLevels.size() == sizeLimit) {
-                    return priorityLevels;
-                }
+                return priorityLevels.size() < sizeLimit;
             }
-        }
+        });
 
         return priorityLevels;
     }
@@ -13,6 +13,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,8 +21,8 @@ import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.cmd.ReviewCodeCmd;
 
 /**
- * Implements an incremental builder for PMD. Use ResourceVisitor and
- * DeltaVisitor to process each file of the project.
+ * Implements an incremental builder for PMD. The resources or the delta of
+ * the project are reviewed by a {@link ReviewCodeCmd}.
  *
  * @author Philippe Herlin
  *
@@ -113,6 +114,8 @@ public class PMDBuilder extends IncrementalProjectBuilder {
                 cmd.setResourceDelta(resourceDelta);
                 cmd.setTaskMarker(false);
                 cmd.setMonitor(monitor);
+                // the saved files are reviewed before the files of other reviews
+                cmd.setJobPriority(Job.SHORT);
                 // a builder is always asynchronous;
                 // execute a command synchronously
                 // whatever its processor
@@ -0,0 +1,102 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cache;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.cache.AnalysisCache;
+import net.sourceforge.pmd.stat.Metric;
+
+/**
+ * An analysis cache that delegates to another one and counts how often PMD
+ * could reuse the cached result of a file. PMD asks the cache from its worker
+ * threads, so the counters are thread safe.
+ *
+ * <p>Once the analysis of a file failed, e.g. because it was abandoned after
+ * a timeout or canceled, the violations still reported for it are not
+ * recorded.
+ */
+public final class CountingAnalysisCache implements AnalysisCache {
+
+    private final AnalysisCache delegate;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final Set<String> failedFiles = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public CountingAnalysisCache(AnalysisCache delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean isUpToDate(File sourceFile) {
+        if (failedFiles.contains(sourceFile.getPath())) {
+            // the delegate must not record a new result for the file
+            return false;
+        }
+        boolean upToDate = delegate.isUpToDate(sourceFile);
+        if (upToDate) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return upToDate;
+    }
+
+    @Override
+    public List<RuleViolation> getCachedViolations(File sourceFile) {
+        return delegate.getCachedViolations(sourceFile);
+    }
+
+    @Override
+    public void analysisFailed(File sourceFile) {
+        failedFiles.add(sourceFile.getPath());
+        delegate.analysisFailed(sourceFile);
+    }
+
+    @Override
+    public void checkValidity(RuleSets ruleSets, ClassLoader auxclassPathClassLoader) {
+        delegate.checkValidity(ruleSets, auxclassPathClassLoader);
+    }
+
+    @Override
+    public void persist() {
+        delegate.persist();
+    }
+
+    @Override
+    public void ruleViolationAdded(RuleViolation ruleViolation) {
+        if (failedFiles.contains(ruleViolation.getFilename())) {
+            return;
+        }
+        delegate.ruleViolationAdded(ruleViolation);
+    }
+
+    @Override
+    public void metricAdded(Metric metric) {
+        delegate.metricAdded(metric);
+    }
+
+    /**
+     * @return the number of files whose cached result could be reused
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of files that had to be analyzed
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.core.resources.IProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.util.IOUtil;
+
+/**
+ * Persistent per project index of the types the files of a project refer to,
+ * so that the files depending on a changed type can be analyzed again: the
+ * results of the rules using type resolution may change with the type.
+ *
+ * <p>The files are identified by their project relative path. A referenced
+ * type is a qualified type name, or a package name followed by <code>.*</code>
+ * for an on demand import. Each name is kept once in memory, whatever the
+ * number of files referring to it.
+ */
+public final class DependencyIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(DependencyIndex.class);
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String INDEX_FOLDER = "dependency-index";
+    private static final String ON_DEMAND_SUFFIX = ".*";
+
+    private static final ConcurrentMap<String, DependencyIndex> INDEXES
+            = new ConcurrentHashMap<String, DependencyIndex>();
+
+    private final File indexFile;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    // the files referring to each type, sorted so that the nested types of a type follow it
+    private final NavigableMap<String, Set<String>> dependents = new TreeMap<String, Set<String>>();
+    private boolean dirty;
+
+    private static final class Entry {
+        final String contentHash;
+        final String[] types;
+
+        Entry(String contentHash, String[] types) {
+            this.contentHash = contentHash;
+            this.types = types;
+        }
+    }
+
+    /**
+     * Creates an index stored in a file, and loads it if the file exists.
+     *
+     * @param indexFile
+     *            the file the index is read from and written to
+     */
+    public DependencyIndex(File indexFile) {
+        this.indexFile = indexFile;
+        load();
+    }
+
+    /**
+     * Returns the index of a project, loading it on first use.
+     *
+     * @param project
+     *            a project
+     * @return the index of the project
+     */
+    public static DependencyIndex forProject(IProject project) {
+        DependencyIndex index = INDEXES.get(project.getName());
+        if (index == null) {
+            File folder = PMDPlugin.getDefault().getStateLocation().append(INDEX_FOLDER).toFile();
+            index = new DependencyIndex(new File(folder, project.getName() + ".index"));
+            DependencyIndex existing = INDEXES.putIfAbsent(project.getName(), index);
+            if (existing != null) {
+                index = existing;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Tells whether the references of a file are known for its content.
+     *
+     * @param path
+     *            the project relative path of the file
+     * @param contentHash
+     *            the current content hash of the file
+     * @return true if the file has been indexed with this content
+     */
+    public synchronized boolean isCurrent(String path, String contentHash) {
+        Entry entry = entries.get(path);
+        return entry != null && entry.contentHash.equals(contentHash);
+    }
+
+    /**
+     * Replaces the references of a file.
+     *
+     * @param path
+     *            the project relative path of the file
+     * @param contentHash
+     *            the content hash of the file the references were found in
+     * @param types
+     *            the referenced types
+     */
+    public synchronized void record(String path, String contentHash, Collection<String> types) {
+        remove(path);
+        String[] internedTypes = new String[types.size()];
+        int i = 0;
+        for (String type : types) {
+            Set<String> files = dependents.get(type);
+            if (files == null) {
+                files = new HashSet<String>();
+                dependents.put(type, files);
+            } else {
+                // the name is shared with the other files referring to the type
+                type = dependents.ceilingKey(type);
+            }
+            files.add(path);
+            internedTypes[i++] = type;
+        }
+        entries.put(path, new Entry(contentHash, internedTypes));
+        dirty = true;
+    }
+
+    /**
+     * Drops the references of a file, e.g. as it has been deleted.
+     *
+     * @param path
+     *            the project relative path of the file
+     */
+    public synchronized void remove(String path) {
+        Entry entry = entries.remove(path);
+        if (entry == null) {
+            return;
+        }
+        for (String type : entry.types) {
+            Set<String> files = dependents.get(type);
+            if (files != null) {
+                files.remove(path);
+                if (files.isEmpty()) {
+                    dependents.remove(type);
+                }
+            }
+        }
+        dirty = true;
+    }
+
+    /**
+     * Finds the files referring to types, to their nested types or to their
+     * package with an on demand import.
+     *
+     * @param types
+     *            the qualified names of top level types
+     * @return the project relative paths of the dependent files
+     */
+    public synchronized Set<String> dependentsOf(Collection<String> types) {
+        Set<String> files = new LinkedHashSet<String>();
+        for (String type : types) {
+            addDependents(files, dependents.get(type));
+            // '/' follows '.', so that the names starting with the type and a dot are the nested types
+            for (Set<String> nestedDependents : dependents.subMap(type + '.', type + '/').values()) {
+                addDependents(files, nestedDependents);
+            }
+            int packageEnd = type.lastIndexOf('.');
+            if (packageEnd > 0) {
+                addDependents(files, dependents.get(type.substring(0, packageEnd) + ON_DEMAND_SUFFIX));
+            }
+        }
+        return files;
+    }
+
+    private static void addDependents(Set<String> files, Set<String> dependentFiles) {
+        if (dependentFiles != null) {
+            files.addAll(dependentFiles);
+        }
+    }
+
+    private synchronized void load() {
+        if (!indexFile.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String path = in.readUTF();
+                String contentHash = in.readUTF();
+                String[] types = new String[in.readInt()];
+                for (int t = 0; t < types.length; t++) {
+                    types[t] = in.readUTF();
+                }
+                record(path, contentHash, Arrays.asList(types));
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to read dependency index " + indexFile + ", starting with an empty index", e);
+            entries.clear();
+            dependents.clear();
+        } finally {
+            IOUtil.closeQuietly(in);
+        }
+        dirty = false;
+    }
+
+    /**
+     * Writes the index to disk, if it has been modified since it was loaded
+     * or last written.
+     */
+    public synchronized void persist() {
+        if (!dirty) {
+            return;
+        }
+        File folder = indexFile.getParentFile();
+        if (!folder.exists() && !folder.mkdirs()) {
+            LOG.warn("Unable to create folder " + folder);
+            return;
+        }
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().contentHash);
+                out.writeInt(entry.getValue().types.length);
+                for (String type : entry.getValue().types) {
+                    out.writeUTF(type);
+                }
+            }
+            dirty = false;
+        } catch (IOException e) {
+            LOG.warn("Unable to write dependency index " + indexFile, e);
+        } finally {
+            IOUtil.closeQuietly(out);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.core.resources.IProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.cmd.RuleTier;
+import net.sourceforge.pmd.eclipse.util.IOUtil;
+
+/**
+ * Persistent per project estimate of the time a worker needs to analyze
+ * files, learned from the previous reviews of the project. The durations are
+ * kept per file, for the rule count of the last review, and per file and rule,
+ * to estimate a review with another rule count. Each review moves the
+ * estimates towards its own durations. The time the files waited for a
+ * worker, e.g. while the analysis was throttled, is not part of them.
+ */
+public final class ReviewCostModel {
+    private static final Logger LOG = LoggerFactory.getLogger(ReviewCostModel.class);
+
+    private static final String MODEL_FOLDER = "review-costs";
+    private static final String MS_PER_FILE = "msPerFile";
+    private static final String MS_PER_FILE_RULE = "msPerFileRule";
+    private static final String RULE_COUNT = "ruleCount";
+
+    // the estimate of a project without any review yet
+    private static final double DEFAULT_MS_PER_FILE_RULE = 0.2;
+    // the weight of the latest review in the estimates
+    private static final double LEARNING_RATE = 0.3;
+
+    private static final ConcurrentMap<String, ReviewCostModel> MODELS
+            = new ConcurrentHashMap<String, ReviewCostModel>();
+
+    private final File modelFile;
+    private double msPerFile;
+    private double msPerFileRule;
+    private int ruleCount;
+    private boolean dirty;
+
+    /**
+     * Creates a model stored in a file, and loads it if the file exists.
+     *
+     * @param modelFile
+     *            the file the model is read from and written to
+     */
+    public ReviewCostModel(File modelFile) {
+        this.modelFile = modelFile;
+        load();
+    }
+
+    /**
+     * Returns the cost model of the reviews of a rule tier of a project,
+     * loading it on first use.
+     *
+     * @param project
+     *            a project
+     * @param tier
+     *            the rule tier, null for the reviews of all the rules
+     * @return the cost model of the project and tier
+     */
+    public static ReviewCostModel forProject(IProject project, RuleTier tier) {
+        String name = tier == null ? project.getName() : project.getName() + tier.cacheSuffix();
+        ReviewCostModel model = MODELS.get(name);
+        if (model == null) {
+            File folder = PMDPlugin.getDefault().getStateLocation().append(MODEL_FOLDER).toFile();
+            model = new ReviewCostModel(new File(folder, name + ".properties"));
+            ReviewCostModel existing = MODELS.putIfAbsent(name, model);
+            if (existing != null) {
+                model = existing;
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Learns from the duration of a review.
+     *
+     * @param fileCount
+     *            the number of files PMD analyzed
+     * @param reviewRuleCount
+     *            the number of rules of the review
+     * @param durationMillis
+     *            the time the workers spent analyzing the files
+     */
+    public synchronized void record(int fileCount, int reviewRuleCount, long durationMillis) {
+        if (fileCount <= 0 || reviewRuleCount <= 0) {
+            return;
+        }
+        double fileMillis = (double) durationMillis / fileCount;
+        double fileRuleMillis = fileMillis / reviewRuleCount;
+        if (ruleCount == 0) {
+            msPerFileRule = fileRuleMillis;
+        } else {
+            msPerFileRule += LEARNING_RATE * (fileRuleMillis - msPerFileRule);
+        }
+        if (reviewRuleCount == ruleCount) {
+            msPerFile += LEARNING_RATE * (fileMillis - msPerFile);
+        } else {
+            msPerFile = fileMillis;
+            ruleCount = reviewRuleCount;
+        }
+        dirty = true;
+    }
+
+    /**
+     * @param reviewRuleCount
+     *            the number of rules of a review
+     * @return the estimated time in milliseconds to analyze a file
+     */
+    public synchronized double estimateFileMillis(int reviewRuleCount) {
+        if (ruleCount == 0) {
+            return DEFAULT_MS_PER_FILE_RULE * reviewRuleCount;
+        }
+        if (reviewRuleCount == ruleCount) {
+            return msPerFile;
+        }
+        return msPerFileRule * reviewRuleCount;
+    }
+
+    /**
+     * @param fileCount
+     *            a number of files
+     * @param reviewRuleCount
+     *            the number of rules of the review
+     * @return the estimated time in milliseconds to analyze the files
+     */
+    public long estimateMillis(int fileCount, int reviewRuleCount) {
+        return Math.round(fileCount * estimateFileMillis(reviewRuleCount));
+    }
+
+    /**
+     * @param budgetMillis
+     *            the time the analysis may take
+     * @param reviewRuleCount
+     *            the number of rules of the review
+     * @return the number of files that can be analyzed within the budget, at
+     *         least one
+     */
+    public int filesWithin(long budgetMillis, int reviewRuleCount) {
+        double fileMillis = estimateFileMillis(reviewRuleCount);
+        if (fileMillis <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, budgetMillis / fileMillis));
+    }
+
+    private synchronized void load() {
+        if (!modelFile.exists()) {
+            return;
+        }
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(modelFile));
+            Properties properties = new Properties();
+            properties.load(in);
+            msPerFile = Double.parseDouble(properties.getProperty(MS_PER_FILE, "0"));
+            msPerFileRule = Double.parseDouble(properties.getProperty(MS_PER_FILE_RULE, "0"));
+            ruleCount = Integer.parseInt(properties.getProperty(RULE_COUNT, "0"));
+        } catch (IOException e) {
+            LOG.warn("Unable to read review cost model " + modelFile + ", starting without estimates", e);
+            ruleCount = 0;
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid review cost model " + modelFile + ", starting without estimates", e);
+            ruleCount = 0;
+        } finally {
+            IOUtil.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the model to disk, if it has learned since it was loaded or last
+     * written.
+     */
+    public synchronized void persist() {
+        if (!dirty) {
+            return;
+        }
+        File folder = modelFile.getParentFile();
+        if (!folder.exists() && !folder.mkdirs()) {
+            LOG.warn("Unable to create folder " + folder);
+            return;
+        }
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(modelFile));
+            Properties properties = new Properties();
+            properties.setProperty(MS_PER_FILE, Double.toString(msPerFile));
+            properties.setProperty(MS_PER_FILE_RULE, Double.toString(msPerFileRule));
+            properties.setProperty(RULE_COUNT, Integer.toString(ruleCount));
+            properties.store(out, "PMD review cost model");
+            dirty = false;
+        } catch (IOException e) {
+            LOG.warn("Unable to write review cost model " + modelFile, e);
+        } finally {
+            IOUtil.closeQuietly(out);
+        }
+    }
+}
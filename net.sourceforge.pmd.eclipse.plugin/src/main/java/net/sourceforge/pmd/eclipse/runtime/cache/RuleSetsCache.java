@@ -0,0 +1,74 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.core.resources.IProject;
+
+import net.sourceforge.pmd.RuleSets;
+
+/**
+ * Keeps the effective rulesets of each project, that is the project rulesets
+ * filtered by the preferences. An entry is only valid for the revisions of
+ * the preferences and of the project rulesets it has been computed with, so
+ * that an entry computed concurrently to a change is never used.
+ */
+public final class RuleSetsCache {
+
+    private static final ConcurrentMap<String, Entry> ENTRIES = new ConcurrentHashMap<String, Entry>();
+
+    private RuleSetsCache() {
+        // utility
+    }
+
+    /**
+     * @return the cached rulesets of the project, or null if there are none
+     *         for these revisions
+     */
+    public static RuleSets get(IProject project, long preferencesRevision, long ruleSetsRevision) {
+        Entry entry = ENTRIES.get(project.getName());
+        if (entry != null && entry.preferencesRevision == preferencesRevision
+                && entry.ruleSetsRevision == ruleSetsRevision) {
+            return entry.ruleSets;
+        }
+        return null;
+    }
+
+    /**
+     * Caches the rulesets of a project. The revisions must have been read
+     * before the rulesets were computed.
+     */
+    public static void put(IProject project, long preferencesRevision, long ruleSetsRevision, RuleSets ruleSets) {
+        ENTRIES.put(project.getName(), new Entry(preferencesRevision, ruleSetsRevision, ruleSets));
+    }
+
+    /**
+     * Drops the rulesets of a project, e.g. when its rulesets changed.
+     */
+    public static void invalidate(IProject project) {
+        ENTRIES.remove(project.getName());
+    }
+
+    /**
+     * Drops the rulesets of all projects, e.g. when the preferences changed.
+     */
+    public static void invalidateAll() {
+        ENTRIES.clear();
+    }
+
+    private static final class Entry {
+        private final long preferencesRevision;
+        private final long ruleSetsRevision;
+        private final RuleSets ruleSets;
+
+        Entry(long preferencesRevision, long ruleSetsRevision, RuleSets ruleSets) {
+            this.preferencesRevision = preferencesRevision;
+            this.ruleSetsRevision = ruleSetsRevision;
+            this.ruleSets = ruleSets;
+        }
+    }
+}
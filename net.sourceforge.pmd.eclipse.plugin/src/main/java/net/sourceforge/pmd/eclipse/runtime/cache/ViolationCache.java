@@ -0,0 +1,460 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.cmd.MarkerInfo2;
+import net.sourceforge.pmd.eclipse.runtime.cmd.RuleTier;
+import net.sourceforge.pmd.eclipse.util.IOUtil;
+import net.sourceforge.pmd.eclipse.util.SourceBuffer;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+
+/**
+ * Persistent per project cache of the markers found in files. An entry is
+ * valid as long as the content of the file is unchanged and the fingerprint of
+ * the analysis (rules and their properties, PMD version, Java version...) is
+ * the same as the one the entry was computed with. The cache files are kept
+ * in the state location of the plugin. A cache file is written to a temporary
+ * file first, so that a failed write leaves the previous one intact.
+ */
+public final class ViolationCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ViolationCache.class);
+
+    private static final int FORMAT_VERSION = 2;
+    private static final String CACHE_FOLDER = "violation-cache";
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final ConcurrentMap<String, ViolationCache> CACHES = new ConcurrentHashMap<String, ViolationCache>();
+
+    private final File cacheFile;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private String fingerprint = "";
+    private boolean dirty;
+    private int hits;
+    private int misses;
+
+    /**
+     * Creates a cache stored in a file, and loads it if the file exists.
+     *
+     * @param cacheFile
+     *            the file of the cache
+     */
+    public ViolationCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+        load();
+    }
+
+    /**
+     * Returns the cache of the reviews of a rule tier of a project, loading it
+     * on first use. The tiers have their own caches, as each of them has its
+     * own fingerprint.
+     *
+     * @param project
+     *            a project
+     * @param tier
+     *            the rule tier, null for the reviews of all the rules
+     * @return the cache of the project and tier
+     */
+    public static ViolationCache forProject(IProject project, RuleTier tier) {
+        String name = cacheNameOf(project, tier);
+        ViolationCache cache = CACHES.get(name);
+        if (cache == null) {
+            File folder = PMDPlugin.getDefault().getStateLocation().append(CACHE_FOLDER).toFile();
+            cache = new ViolationCache(new File(folder, name + ".cache"));
+            ViolationCache existing = CACHES.putIfAbsent(name, cache);
+            if (existing != null) {
+                cache = existing;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Drops all the cached entries of a project, in memory and on disk.
+     *
+     * @param project
+     *            a project
+     */
+    public static void invalidate(IProject project) {
+        invalidate(cacheNameOf(project, null));
+        for (RuleTier tier : RuleTier.values()) {
+            invalidate(cacheNameOf(project, tier));
+        }
+    }
+
+    private static void invalidate(String name) {
+        ViolationCache cache = CACHES.get(name);
+        if (cache != null) {
+            cache.clear();
+        }
+        File folder = PMDPlugin.getDefault().getStateLocation().append(CACHE_FOLDER).toFile();
+        File file = new File(folder, name + ".cache");
+        if (file.exists() && !file.delete()) {
+            LOG.warn("Unable to delete violation cache " + file);
+        }
+    }
+
+    private static String cacheNameOf(IProject project, RuleTier tier) {
+        return tier == null ? project.getName() : project.getName() + tier.cacheSuffix();
+    }
+
+    /**
+     * Computes the fingerprint of an analysis. Whenever one of the inputs
+     * changes, all the cached entries of the project become invalid.
+     *
+     * @param ruleSets
+     *            the effective rulesets
+     * @param javaVersion
+     *            the java version of the project, may be null
+     * @param violationsAsErrors
+     *            whether high priority violations are reported as errors
+     * @param buildPathEnabled
+     *            whether the project build path is used for type resolution
+     * @param preScanSettings
+     *            the settings deciding which files are skipped or only
+     *            checked with the high priority rules
+     * @return the fingerprint
+     */
+    public static String fingerprintOf(RuleSets ruleSets, LanguageVersion javaVersion, boolean violationsAsErrors,
+            boolean buildPathEnabled, String preScanSettings) {
+        StringBuilder key = new StringBuilder(4096);
+        key.append(FORMAT_VERSION).append('|').append(PMDVersion.VERSION).append('|')
+                .append(javaVersion == null ? "" : javaVersion.getTerseName()).append('|').append(violationsAsErrors)
+                .append('|').append(buildPathEnabled).append('|').append(preScanSettings).append('\n');
+        for (RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            for (Rule rule : ruleSet.getRules()) {
+                key.append(rule.getLanguage().getTerseName()).append('|').append(rule.getName()).append('|')
+                        .append(rule.getRuleClass()).append('|').append(rule.getPriority().getPriority());
+                for (Map.Entry<PropertyDescriptor<?>, Object> property : rule.getPropertiesByPropertyDescriptor()
+                        .entrySet()) {
+                    key.append('|').append(property.getKey().name()).append('=')
+                            .append(valueToString(property.getValue()));
+                }
+                key.append('\n');
+            }
+        }
+        return toHex(newDigest().digest(key.toString().getBytes(UTF8)));
+    }
+
+    private static String valueToString(Object value) {
+        if (value instanceof Object[]) {
+            return Arrays.deepToString((Object[]) value);
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Starts the hash of the content of a file, which includes its charset.
+     * The digest is then updated with the raw bytes of the file while it is
+     * read, see {@link SourceBuffer#read(IFile, MessageDigest)}.
+     *
+     * @param file
+     *            a workspace file
+     * @return the digest of the content hash
+     */
+    public static MessageDigest newContentDigest(IFile file) throws CoreException {
+        MessageDigest digest = newDigest();
+        digest.update(file.getCharset().getBytes(UTF8));
+        return digest;
+    }
+
+    /**
+     * @param contentDigest
+     *            the digest started by {@link #newContentDigest(IFile)} and
+     *            updated with the content of the file
+     * @return the content hash
+     */
+    public static String contentHashOf(MessageDigest contentDigest) {
+        return toHex(contentDigest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Sets the fingerprint of the current analysis. All entries are dropped
+     * if it differs from the fingerprint they have been computed with.
+     *
+     * @param newFingerprint
+     *            the fingerprint computed by {@link #fingerprintOf}
+     */
+    public synchronized void useFingerprint(String newFingerprint) {
+        if (!fingerprint.equals(newFingerprint)) {
+            if (!entries.isEmpty()) {
+                LOG.debug("Analysis fingerprint changed, dropping " + entries.size() + " cached entries");
+            }
+            entries.clear();
+            fingerprint = newFingerprint;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Returns a copy of the cached markers of a file.
+     *
+     * @param file
+     *            a file
+     * @param contentHash
+     *            the current content hash of the file
+     * @return the markers, or null if there is no valid entry for the file
+     */
+    public synchronized Set<MarkerInfo2> get(IFile file, String contentHash) {
+        Entry entry = entries.get(keyOf(file));
+        if (entry == null || !entry.contentHash.equals(contentHash)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        // the markers are immutable, they are shared with the cache
+        return new HashSet<MarkerInfo2>(Arrays.asList(entry.markers));
+    }
+
+    /**
+     * Tells whether the cached markers of a file are valid, without counting
+     * a hit or a miss.
+     *
+     * @param file
+     *            a file
+     * @param contentHash
+     *            the current content hash of the file
+     * @return true if the file has been analyzed with this content
+     */
+    public synchronized boolean isCurrent(IFile file, String contentHash) {
+        Entry entry = entries.get(keyOf(file));
+        return entry != null && entry.contentHash.equals(contentHash);
+    }
+
+    /**
+     * Stores the markers found in a file.
+     *
+     * @param file
+     *            a file
+     * @param contentHash
+     *            the content hash of the file that has been analyzed
+     * @param markers
+     *            the markers found
+     */
+    public synchronized void put(IFile file, String contentHash, Set<MarkerInfo2> markers) {
+        entries.put(keyOf(file), new Entry(contentHash, markers.toArray(new MarkerInfo2[markers.size()])));
+        dirty = true;
+    }
+
+    /**
+     * Drops the entry of a file.
+     *
+     * @param file
+     *            a file
+     */
+    public synchronized void remove(IFile file) {
+        if (entries.remove(keyOf(file)) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * @return the number of lookups that found a valid entry
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that found no valid entry
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    private synchronized void clear() {
+        entries.clear();
+        fingerprint = "";
+        dirty = false;
+    }
+
+    private static String keyOf(IFile file) {
+        return file.getProjectRelativePath().toString();
+    }
+
+    private synchronized void load() {
+        if (!cacheFile.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            fingerprint = in.readUTF();
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String key = in.readUTF();
+                String contentHash = in.readUTF();
+                MarkerInfo2[] markers = new MarkerInfo2[in.readInt()];
+                for (int m = 0; m < markers.length; m++) {
+                    markers[m] = readMarker(in);
+                }
+                entries.put(key, new Entry(contentHash, markers));
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to read violation cache " + cacheFile + ", starting with an empty cache", e);
+            entries.clear();
+            fingerprint = "";
+        } finally {
+            IOUtil.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the cache to disk, if it has been modified since it was loaded or
+     * last written.
+     */
+    public synchronized void persist() {
+        if (!dirty) {
+            return;
+        }
+        File folder = cacheFile.getParentFile();
+        if (!folder.exists() && !folder.mkdirs()) {
+            LOG.warn("Unable to create folder " + folder);
+            return;
+        }
+        File temporary = new File(folder, cacheFile.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(fingerprint);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().contentHash);
+                out.writeInt(entry.getValue().markers.length);
+                for (MarkerInfo2 marker : entry.getValue().markers) {
+                    writeMarker(out, marker);
+                }
+            }
+            out.close();
+            replaceCacheFile(temporary);
+            dirty = false;
+        } catch (IOException e) {
+            LOG.warn("Unable to write violation cache " + cacheFile, e);
+            if (temporary.exists() && !temporary.delete()) {
+                LOG.warn("Unable to delete " + temporary);
+            }
+        } finally {
+            IOUtil.closeQuietly(out);
+        }
+    }
+
+    private void replaceCacheFile(File temporary) throws IOException {
+        try {
+            Files.move(temporary.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MarkerInfo2 readMarker(DataInputStream in) throws IOException {
+        String type = in.readUTF();
+        String ruleName = in.readBoolean() ? in.readUTF() : null;
+        String message = in.readUTF();
+        MarkerInfo2 marker;
+        if (ruleName == null) {
+            marker = MarkerInfo2.of(type, message, in.readInt());
+        } else {
+            int line = in.readInt();
+            int line2 = in.readInt();
+            int priority = in.readInt();
+            marker = MarkerInfo2.violation(type, ruleName, message, line, line2, priority, in.readInt());
+        }
+        int attributeCount = in.readInt();
+        for (int i = 0; i < attributeCount; i++) {
+            marker = marker.withAttribute(in.readUTF(), in.readUTF());
+        }
+        return marker;
+    }
+
+    private static void writeMarker(DataOutputStream out, MarkerInfo2 marker) throws IOException {
+        out.writeUTF(marker.getType());
+        out.writeBoolean(marker.getRuleName() != null);
+        if (marker.getRuleName() != null) {
+            out.writeUTF(marker.getRuleName());
+        }
+        out.writeUTF(marker.getMessage());
+        if (marker.getRuleName() != null) {
+            out.writeInt(marker.getLine());
+            out.writeInt(marker.getLine2());
+            out.writeInt(marker.getPriority());
+        }
+        out.writeInt(marker.getSeverity());
+        Map<String, String> attributes = marker.getAdditionalAttributes();
+        out.writeInt(attributes.size());
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            out.writeUTF(attribute.getKey());
+            out.writeUTF(attribute.getValue());
+        }
+    }
+
+    /**
+     * The cached markers of a file
+     */
+    private static class Entry {
+        final String contentHash;
+        final MarkerInfo2[] markers;
+
+        Entry(String contentHash, MarkerInfo2[] markers) {
+            this.contentHash = contentHash;
+            this.markers = markers;
+        }
+    }
+}
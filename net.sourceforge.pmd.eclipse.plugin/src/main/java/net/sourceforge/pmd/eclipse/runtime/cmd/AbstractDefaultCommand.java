@@ -6,6 +6,7 @@ package net.sourceforge.pmd.eclipse.runtime.cmd;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.lang.Language;
@@ -29,6 +30,7 @@ public abstract class AbstractDefaultCommand {
     private IProgressMonitor monitor;
     private int stepCount;
     private boolean userInitiated;
+    private int jobPriority = Job.LONG;
     private boolean terminated;
 
     protected AbstractDefaultCommand(String theName, String theDescription) {
@@ -156,6 +158,22 @@ public abstract class AbstractDefaultCommand {
         this.userInitiated = userInitiated;
     }
 
+    /**
+     * @return the priority of the job the command is executed in
+     */
+    public int getJobPriority() {
+        return jobPriority;
+    }
+
+    /**
+     * @param jobPriority
+     *            the priority of the job the command is executed in, one of
+     *            the priority constants of {@link Job}
+     */
+    public void setJobPriority(int jobPriority) {
+        this.jobPriority = jobPriority;
+    }
+
     /**
      * @return Returns the monitor.
      */
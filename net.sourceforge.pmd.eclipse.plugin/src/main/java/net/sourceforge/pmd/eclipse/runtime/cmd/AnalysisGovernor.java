@@ -0,0 +1,285 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Keeps the analysis from starving the workbench. The worker threads of all
+ * the running reviews together are limited to a share of the processors. When
+ * the heap is nearly full after a garbage collection, the analysis goes on
+ * with a single worker, and no new file is analyzed once it is full, unless a
+ * review has waited too long without any running file. The background
+ * reviews, e.g. the idle and deferred reviews, also wait while a build is
+ * running, so that the Java builder gets the processors.
+ *
+ * <p>The worker slots are given in the order of the job priorities of the
+ * reviews: while a review of a higher priority, e.g. of a saved file, waits
+ * for a slot, the slots released by the others go to it.
+ *
+ * <p>The heap is measured with the usage of the heap memory pools after their
+ * last collection, which is polled. The collection usage thresholds of the
+ * pools are left as they are, as they are shared by the whole JVM.
+ */
+public final class AnalysisGovernor {
+    /**
+     * The share of the processors the analysis threads may use.
+     */
+    public static final double PROCESSOR_SHARE = 0.75;
+
+    /**
+     * The used share of the heap above which the analysis runs on a single
+     * worker thread.
+     */
+    public static final double LOW_MEMORY_WATERMARK = 0.75;
+
+    /**
+     * The used share of the heap above which no new file is analyzed.
+     */
+    public static final double NO_MEMORY_WATERMARK = 0.9;
+
+    /**
+     * The time a review without running files waits while the heap is full,
+     * before it goes on with a single worker anyway: an idle review allocates
+     * too little for the old generation to be collected and measured again.
+     */
+    public static final long NO_MEMORY_MAX_WAIT_MILLIS = 10000;
+
+    private static final AnalysisGovernor INSTANCE = new AnalysisGovernor();
+
+    /**
+     * Why the analysis runs with fewer workers than it could.
+     */
+    public enum Throttle {
+        NONE(""),
+        LOW_MEMORY("low memory, single worker"),
+        NO_MEMORY("paused, low memory"),
+        BUILD("paused during the build");
+
+        private final String description;
+
+        Throttle(String description) {
+            this.description = description;
+        }
+
+        /**
+         * @return the description shown in the progress view
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final int workerLimit;
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+    private int activeWorkers;
+    // the number of reviews waiting for a worker slot, by job priority
+    private final SortedMap<Integer, Integer> waitingReviews = new TreeMap<Integer, Integer>();
+
+    private AnalysisGovernor() {
+        this(threadLimit(Integer.MAX_VALUE, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates a governor of its own. The reviews share the one of
+     * {@link #getInstance()}.
+     *
+     * @param workerLimit
+     *            the number of worker slots shared by the reviews using it
+     */
+    public AnalysisGovernor(int workerLimit) {
+        this.workerLimit = workerLimit;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+    }
+
+    public static AnalysisGovernor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param configuredThreads
+     *            the number of threads set in the preferences
+     * @param processors
+     *            the number of available processors
+     * @return the number of worker threads a review may use, at least one
+     */
+    public static int threadLimit(int configuredThreads, int processors) {
+        return Math.max(1, Math.min(configuredThreads, (int) (processors * PROCESSOR_SHARE)));
+    }
+
+    /**
+     * @param configuredThreads
+     *            the number of threads set in the preferences
+     * @return the number of worker threads a review may use on this machine
+     */
+    public int threadLimit(int configuredThreads) {
+        return Math.min(configuredThreads, workerLimit);
+    }
+
+    /**
+     * @param used
+     *            the used bytes of a memory pool
+     * @param max
+     *            the maximum size of the pool, negative if undefined
+     * @return the throttle the memory usage requires
+     */
+    public static Throttle memoryThrottle(long used, long max) {
+        if (max <= 0) {
+            return Throttle.NONE;
+        }
+        double share = (double) used / max;
+        if (share >= NO_MEMORY_WATERMARK) {
+            return Throttle.NO_MEMORY;
+        }
+        if (share >= LOW_MEMORY_WATERMARK) {
+            return Throttle.LOW_MEMORY;
+        }
+        return Throttle.NONE;
+    }
+
+    /**
+     * @param threadCount
+     *            the worker threads of a review
+     * @param throttle
+     *            the current throttle
+     * @return the number of files the review may analyze at the same time
+     */
+    public static int permittedWorkers(int threadCount, Throttle throttle) {
+        switch (throttle) {
+        case NONE:
+            return threadCount;
+        case LOW_MEMORY:
+            return Math.min(1, threadCount);
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Determines the current throttle.
+     *
+     * @param background
+     *            whether the review runs in the background, e.g. in idle
+     *            time, so that it waits for the builds
+     * @return the reason why the review must use fewer workers, if any
+     */
+    public Throttle currentThrottle(boolean background) {
+        Throttle throttle = heapThrottle();
+        if (throttle != Throttle.NONE) {
+            return throttle;
+        }
+        if (background && isBuildRunning()) {
+            return Throttle.BUILD;
+        }
+        return Throttle.NONE;
+    }
+
+    private Throttle heapThrottle() {
+        Throttle throttle = Throttle.NONE;
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage afterCollection = pool.getCollectionUsage();
+            MemoryUsage current = pool.getUsage();
+            if (afterCollection == null) {
+                // the pool does not support the collection usage
+                continue;
+            }
+            // the pool may have been collected since, without crossing the threshold again
+            long used = Math.min(afterCollection.getUsed(), current.getUsed());
+            Throttle poolThrottle = memoryThrottle(used, current.getMax());
+            if (poolThrottle.compareTo(throttle) > 0) {
+                throttle = poolThrottle;
+            }
+        }
+        return throttle;
+    }
+
+    /**
+     * @return true if a workspace build is running
+     */
+    public static boolean isBuildRunning() {
+        List<Job> builds = new ArrayList<Job>();
+        for (Job build : Job.getJobManager().find(ResourcesPlugin.FAMILY_AUTO_BUILD)) {
+            builds.add(build);
+        }
+        for (Job build : Job.getJobManager().find(ResourcesPlugin.FAMILY_MANUAL_BUILD)) {
+            builds.add(build);
+        }
+        for (Job build : builds) {
+            if (build.getState() == Job.RUNNING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the job is a workspace build
+     */
+    public static boolean isBuild(Job job) {
+        return job.belongsTo(ResourcesPlugin.FAMILY_AUTO_BUILD) || job.belongsTo(ResourcesPlugin.FAMILY_MANUAL_BUILD);
+    }
+
+    /**
+     * Takes one of the worker slots shared by all the reviews.
+     *
+     * @param jobPriority
+     *            the job priority of the review, e.g. {@link Job#SHORT}
+     * @return false if all the slots are taken, or if a review of a higher
+     *         priority waits for one
+     */
+    public synchronized boolean acquireWorker(int jobPriority) {
+        if (activeWorkers >= workerLimit
+                || !waitingReviews.isEmpty() && waitingReviews.firstKey().intValue() < jobPriority) {
+            return false;
+        }
+        activeWorkers++;
+        return true;
+    }
+
+    /**
+     * Tells whether a review waits for worker slots, so that the slots
+     * released meanwhile are kept for it rather than given to the reviews of
+     * a lower priority.
+     *
+     * @param jobPriority
+     *            the job priority of the review
+     * @param waiting
+     *            true when the review starts waiting, false when it stops
+     */
+    public synchronized void setWaiting(int jobPriority, boolean waiting) {
+        Integer key = Integer.valueOf(jobPriority);
+        Integer count = waitingReviews.get(key);
+        int newCount = (count == null ? 0 : count.intValue()) + (waiting ? 1 : -1);
+        if (newCount > 0) {
+            waitingReviews.put(key, Integer.valueOf(newCount));
+        } else {
+            waitingReviews.remove(key);
+        }
+    }
+
+    /**
+     * Gives back worker slots taken with {@link #acquireWorker(int)}.
+     *
+     * @param count
+     *            the number of slots
+     */
+    public synchronized void releaseWorkers(int count) {
+        activeWorkers = Math.max(0, activeWorkers - count);
+    }
+}
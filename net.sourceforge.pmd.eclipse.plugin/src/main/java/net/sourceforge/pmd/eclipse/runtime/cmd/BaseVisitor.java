@@ -4,64 +4,57 @@
 
 package net.sourceforge.pmd.eclipse.runtime.cmd;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
-import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.ui.IWorkingSet;
-import org.eclipse.ui.ResourceWorkingSetFilter;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import net.sourceforge.pmd.PMD;
 import net.sourceforge.pmd.PMDConfiguration;
-import net.sourceforge.pmd.PMDException;
 import net.sourceforge.pmd.Report;
 import net.sourceforge.pmd.Report.ConfigurationError;
 import net.sourceforge.pmd.Report.ProcessingError;
-import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleContext;
 import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.RuleSetFactory;
 import net.sourceforge.pmd.RuleSetNotFoundException;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.cache.FileAnalysisCache;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
-import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
-import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
-import net.sourceforge.pmd.eclipse.util.IOUtil;
-import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.eclipse.runtime.cache.CountingAnalysisCache;
+import net.sourceforge.pmd.eclipse.runtime.cache.DependencyIndex;
+import net.sourceforge.pmd.eclipse.runtime.cache.ViolationCache;
+import net.sourceforge.pmd.eclipse.util.SourceBuffer;
 import net.sourceforge.pmd.lang.LanguageVersion;
-import net.sourceforge.pmd.lang.LanguageVersionDiscoverer;
-import net.sourceforge.pmd.lang.java.JavaLanguageModule;
-import net.sourceforge.pmd.processor.MonoThreadProcessor;
-import net.sourceforge.pmd.renderers.AbstractRenderer;
 import net.sourceforge.pmd.renderers.Renderer;
-import net.sourceforge.pmd.util.NumericConstants;
-import net.sourceforge.pmd.util.StringUtil;
 import net.sourceforge.pmd.util.datasource.DataSource;
-import net.sourceforge.pmd.util.datasource.ReaderDataSource;
 
 /**
- * Factor some useful features for visitors
+ * Analyzes the files selected by a {@link ReviewPlanner} and accumulates
+ * their markers and the statistics of the review.
  *
  * @author Philippe Herlin
  *
@@ -72,11 +65,39 @@ public class BaseVisitor {
     private boolean useTaskMarker = false;
     private Map<IFile, Set<MarkerInfo2>> accumulator;
     // private PMDEngine pmdEngine;
-    private RuleSets ruleSets;
-    private Set<String> fileExtensions;
+    private ProjectAnalysisContext analysisContext;
     private int fileCount;
     private long pmdDuration;
-    private IProjectProperties projectProperties;
+    private int analyzedFileCount;
+    private long analysisMillis;
+    // the pending files and their content hash, if the violation cache is used
+    private final Map<IFile, String> pendingFiles = new LinkedHashMap<IFile, String>();
+    private int maxThreads = 1;
+    private int analysisWorkers;
+    private int analysisWorkerHeap;
+    private long analysisTimeoutMillis;
+    private boolean background;
+    private int jobPriority = Job.LONG;
+    private ViolationCache violationCache;
+    private List<ViolationCache> tierCaches = Collections.emptyList();
+    private boolean staleOnly;
+    private int violationCacheHits;
+    private int analysisCacheHits;
+    private int analysisCacheMisses;
+    private int timedOutFiles;
+    private FilePreScanner preScanner;
+    // the pending files only checked with the high priority rules
+    private final Set<IFile> lightFiles = new HashSet<IFile>();
+    private int skippedFileCount;
+    private int lightFileCount;
+    private DependencyIndex dependencyIndex;
+    // the types declared in the files whose content changed since they were indexed
+    private final Set<String> changedTypes = new LinkedHashSet<String>();
+    // the primary type names of the packages of the indexed files, listed once per review
+    private final Map<IPackageFragment, Set<String>> packageTypeNames = new HashMap<IPackageFragment, Set<String>>();
+    private ReviewOrder reviewOrder = ReviewOrder.none();
+    // applies the markers during the analysis, may be null
+    private MarkerFlusher markerFlusher;
 
     private PMDConfiguration configuration;
 
@@ -198,7 +219,7 @@ public class BaseVisitor {
      * @return Returns all the ruleSets.
      */
     public RuleSets getRuleSets() {
-        return this.ruleSets;
+        return analysisContext.getRuleSets();
     }
 
     /**
@@ -206,29 +227,7 @@ public class BaseVisitor {
      * @return
      */
     public RuleSet getRuleSet() {
-        return this.ruleSets.getAllRuleSets()[0];
-    }
-    
-    /**
-     * This removes all the Rulesets from the rulesets
-     * and sets the only ruleset to the one passed in.
-     * 
-     * @param ruleSet
-     */
-    public void setRuleSet(RuleSet ruleSet) {
-        this.ruleSets = new RuleSets(ruleSet);
-    }
-    
-    /**
-     * @param ruleSet
-     *            The ruleSet to set.
-     */
-    public void setRuleSets(final RuleSets ruleSets) {
-        this.ruleSets = ruleSets;
-    }
-
-    public void setFileExtensions(Set<String> fileExtensions) {
-        this.fileExtensions = fileExtensions;
+        return getRuleSets().getAllRuleSets()[0];
     }
 
     /**
@@ -246,439 +245,735 @@ public class BaseVisitor {
     }
 
     /**
-     * Set the project properties (note that visitor is expected to be called one project at a time
+     * @return the number of files a worker completed the analysis of
      */
-    public void setProjectProperties(IProjectProperties projectProperties) {
-        this.projectProperties = projectProperties;
+    public int getAnalyzedFilesCount() {
+        return analyzedFileCount;
     }
 
-    private boolean isIncluded(IFile file) throws PropertiesException {
-        return projectProperties.isIncludeDerivedFiles()
-                || !projectProperties.isIncludeDerivedFiles() && !file.isDerived();
+    /**
+     * @return the time the workers spent analyzing the files counted by
+     *         {@link #getAnalyzedFilesCount()}, without the time the files
+     *         waited for a worker and the time of the abandoned files
+     */
+    public long getAnalysisMillis() {
+        return analysisMillis;
     }
 
     /**
-     * Run PMD against a resource
-     *
-     * @param resource
-     *            the resource to process
+     * @return the number of files that are analyzed at the same time
      */
-    protected final void reviewResource(IResource resource) {
-
-        IFile file = (IFile) resource.getAdapter(IFile.class);
-        if (file == null || file.getFileExtension() == null) {
-            return;
-        }
+    public int getWorkerCount() {
+        return AnalysisGovernor.getInstance().threadLimit(analysisWorkers > 0 ? analysisWorkers : maxThreads);
+    }
 
-        if (PMDPlugin.getDefault().loadPreferences().isDetermineFiletypesAutomatically()) {
-            if (fileExtensions != null) {
-                if (!fileExtensions.contains(file.getFileExtension().toLowerCase(Locale.ROOT))) {
-                    PMDPlugin.getDefault().logInformation("Skipping file " + file.getName() + " based on file extension");
-                    LOG.debug("Skipping file " + file.getName() + " based on file extension");
-                    return;
-                }
-            } else {
-                LOG.warn("Can't check for file extensions.");
-            }
-        }
+    /**
+     * @return the number of files whose markers were taken from the violation cache
+     */
+    public int getViolationCacheHits() {
+        return violationCacheHits;
+    }
 
-        Reader input = null;
-        try {
-            boolean included = isIncluded(file);
-            LOG.debug("Derived files included: " + projectProperties.isIncludeDerivedFiles());
-            LOG.debug("file " + file.getName() + " is derived: " + file.isDerived());
-            LOG.debug("file checked: " + included);
+    /**
+     * @return the number of files whose result PMD took from its analysis cache
+     */
+    public int getAnalysisCacheHits() {
+        return analysisCacheHits;
+    }
 
-            prepareMarkerAccumulator(file);
+    /**
+     * @return the number of files PMD did not find up to date in its analysis cache
+     */
+    public int getAnalysisCacheMisses() {
+        return analysisCacheMisses;
+    }
 
-            LanguageVersionDiscoverer languageDiscoverer = new LanguageVersionDiscoverer();
-            LanguageVersion languageVersion = languageDiscoverer.getDefaultLanguageVersionForFile(file.getName());
-            // in case it is java, select the correct java version
-            if (languageVersion != null
-                    && languageVersion.getLanguage() == LanguageRegistry.getLanguage(JavaLanguageModule.NAME)) {
-                languageVersion = PMDPlugin.javaVersionFor(file.getProject());
-            }
-            if (languageVersion != null) {
-                configuration().setDefaultLanguageVersion(languageVersion);
-            }
-            LOG.debug("discovered language: " + languageVersion);
+    /**
+     * @return the number of files whose analysis timed out, or that were
+     *         skipped because their analysis timed out before
+     */
+    public int getTimedOutFilesCount() {
+        return timedOutFiles;
+    }
 
-            if (PMDPlugin.getDefault().loadPreferences().isProjectBuildPathEnabled()) {
-                configuration().setClassLoader(projectProperties.getAuxClasspath());
-            }
+    /**
+     * @return the number of files that were skipped, as they are generated or
+     *         too large
+     */
+    public int getSkippedFilesCount() {
+        return skippedFileCount;
+    }
 
-            final File sourceCodeFile = file.getRawLocation().toFile();
-            if (included && getRuleSets().applies(sourceCodeFile) && isFileInWorkingSet(file)
-                    && languageVersion != null) {
-                subTask("PMD checking: " + file.getName());
+    /**
+     * @return the number of large files that were only checked with the high
+     *         priority rules
+     */
+    public int getLightFilesCount() {
+        return lightFileCount;
+    }
 
-                long start = System.currentTimeMillis();
+    /**
+     * Set the analysis context of the project (note that visitor is expected to be called one project at a time)
+     */
+    public void setAnalysisContext(ProjectAnalysisContext analysisContext) {
+        this.analysisContext = analysisContext;
+    }
 
-                RuleContext context = PMD.newRuleContext(file.getName(), sourceCodeFile);
-                context.setLanguageVersion(languageVersion);
+    /**
+     * @param maxThreads
+     *            the maximum number of threads used to analyze the pending
+     *            files
+     */
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
 
-                input = new InputStreamReader(file.getContents(), file.getCharset());
-                // getPmdEngine().processFile(input, getRuleSet(), context);
-                // getPmdEngine().processFile(sourceCodeFile, getRuleSet(),
-                // context);
+    /**
+     * @param workers
+     *            the number of worker JVMs the pending files are analyzed in,
+     *            0 to analyze them in the workbench JVM
+     * @param heapMegabytes
+     *            the maximum heap size of the worker JVMs
+     */
+    public void setAnalysisWorkers(int workers, int heapMegabytes) {
+        this.analysisWorkers = workers;
+        this.analysisWorkerHeap = heapMegabytes;
+    }
 
-                DataSource dataSource = new ReaderDataSource(input, file.getRawLocation().toFile().getPath());
-                RuleSetFactory ruleSetFactory = new RuleSetFactory() {
-                    @Override
-                    public synchronized RuleSets createRuleSets(String referenceString)
-                            throws RuleSetNotFoundException {
-                        return new RuleSets(getRuleSets());
-                    }
-                };
-                // need to disable multi threading, as the ruleset is
-                // not recreated and shared between threads...
-                // but as we anyway have only one file to process, it won't hurt
-                // here.
-                configuration().setThreads(0);
-                LOG.debug("PMD running on file " + file.getName());
-                final Report collectingReport = new Report();
-                Renderer collectingRenderer = new AbstractRenderer("collectingRenderer",
-                        "Renderer that collect violations") {
-                    @Override
-                    public void startFileAnalysis(DataSource dataSource) {
-                        // TODO Auto-generated method stub
+    /**
+     * @param dependencyIndex
+     *            the index the referenced types of the changed files are
+     *            recorded in, null to not track the dependencies
+     */
+    void setDependencyIndex(DependencyIndex dependencyIndex) {
+        this.dependencyIndex = dependencyIndex;
+    }
 
-                    }
+    /**
+     * @return the qualified names of the types declared in the reviewed files
+     *         whose content changed since their dependencies were recorded
+     */
+    Set<String> getChangedTypes() {
+        return changedTypes;
+    }
 
-                    @Override
-                    public void start() throws IOException {
-                        // TODO Auto-generated method stub
+    /**
+     * @param preScanner
+     *            decides which files are skipped or only checked with the high
+     *            priority rules, null to analyze all the files
+     */
+    public void setPreScanner(FilePreScanner preScanner) {
+        this.preScanner = preScanner;
+    }
 
-                    }
+    /**
+     * @param seconds
+     *            the maximum duration of the analysis of a single file, 0 for
+     *            no limit
+     */
+    public void setAnalysisTimeout(int seconds) {
+        this.analysisTimeoutMillis = Math.max(0, seconds) * 1000L;
+    }
 
-                    @Override
-                    public void renderFileReport(Report report) throws IOException {
-                        for (RuleViolation v : report) {
-                            collectingReport.addRuleViolation(v);
-                        }
-                        for (Iterator<ProcessingError> it = report.errors(); it.hasNext();) {
-                            collectingReport.addError(it.next());
-                        }
-                        for (Iterator<ConfigurationError> it = report.configErrors(); it.hasNext();) {
-                            collectingReport.addConfigError(it.next());
-                        }
-                    }
+    /**
+     * @param background
+     *            whether the review runs in the background, e.g. in idle
+     *            time, so that its analysis waits while a build is running
+     */
+    void setBackground(boolean background) {
+        this.background = background;
+    }
 
-                    @Override
-                    public void end() throws IOException {
-                        // TODO Auto-generated method stub
+    /**
+     * @param jobPriority
+     *            the job priority of the review, which decides which of the
+     *            running reviews gets the next worker slot
+     */
+    void setJobPriority(int jobPriority) {
+        this.jobPriority = jobPriority;
+    }
 
-                    }
+    /**
+     * @param violationCache
+     *            the cache of the project, whose entries are used instead of
+     *            analyzing unchanged files. May be null.
+     */
+    public void setViolationCache(ViolationCache violationCache) {
+        this.violationCache = violationCache;
+    }
 
-                    @Override
-                    public String defaultFileExtension() {
-                        // TODO Auto-generated method stub
-                        return null;
-                    }
-                };
+    /**
+     * @param staleOnly
+     *            whether only the files that changed since their last review
+     *            are analyzed. The markers of the other files, and of the
+     *            excluded files, are left untouched.
+     */
+    void setStaleOnly(boolean staleOnly) {
+        this.staleOnly = staleOnly;
+    }
 
-                // PMD.processFiles(configuration(), ruleSetFactory,
-                // Arrays.asList(dataSource), context,
-                // Arrays.asList(collectingRenderer));
-                new MonoThreadProcessor(configuration()).processFiles(ruleSetFactory, Arrays.asList(dataSource),
-                        context, Arrays.asList(collectingRenderer));
-                LOG.debug("PMD run finished.");
+    /**
+     * @param tierCaches
+     *            the caches of the rule tiers of the project. A file that is
+     *            current in all of them is not stale either, as the reviews
+     *            of the tiers together checked all the rules.
+     */
+    void setTierCaches(List<ViolationCache> tierCaches) {
+        this.tierCaches = tierCaches;
+    }
 
-                pmdDuration += System.currentTimeMillis() - start;
+    /**
+     * @param reviewOrder
+     *            the order in which the pending files are analyzed
+     */
+    void setReviewOrder(ReviewOrder reviewOrder) {
+        this.reviewOrder = reviewOrder;
+    }
 
-                LOG.debug("PMD found " + collectingReport.size() + " violations for file " + file.getName());
+    /**
+     * @param markerFlusher
+     *            applies the markers of the files as soon as they are
+     *            complete. If null, all the markers are only accumulated.
+     */
+    void setMarkerFlusher(MarkerFlusher markerFlusher) {
+        this.markerFlusher = markerFlusher;
+    }
 
-                if (collectingReport.hasConfigErrors()) {
-                    StringBuilder message = new StringBuilder("There were configuration errors!\n");
-                    Iterator<ConfigurationError> errors = collectingReport.configErrors();
-                    while (errors.hasNext()) {
-                        ConfigurationError error = errors.next();
-                        message.append(error.rule().getName()).append(": ").append(error.issue()).append('\n');
-                    }
-                    LOG.warn(message.toString());
-                }
-                if (collectingReport.hasErrors()) {
-                    StringBuilder message = new StringBuilder("There were processing errors!\n");
-                    Iterator<ProcessingError> errors = collectingReport.errors();
-                    while (errors.hasNext()) {
-                        ProcessingError error = errors.next();
-                        message.append(error.getFile()).append(": ").append(error.getMsg()).append(' ')
-                        .append(error.getDetail())
-                        .append("\n");
-                    }
-                    PMDPlugin.getDefault().logWarn(message.toString());
-                    throw new PMDException(message.toString());
-                }
+    /**
+     * Adds the files selected by a planner to the pending files. The markers
+     * of the files the planner excluded are removed.
+     *
+     * @param planner
+     *            the planner of the review
+     */
+    void addPlannedFiles(ReviewPlanner planner) {
+        if (!staleOnly) {
+            for (IFile file : planner.getExcludedFiles()) {
+                prepareMarkerAccumulator(file);
+            }
+        }
+        for (IFile file : planner.getFiles()) {
+            prepareMarkerAccumulator(file);
+            addPendingFile(file);
+        }
+    }
 
-                updateMarkers(file, collectingReport.iterator(), isUseTaskMarker());
+    private void addPendingFile(IFile file) {
+        // a file too large to be analyzed is not read at all
+        long size = preScanner == null ? -1 : SourceBuffer.sizeOf(file);
+        if (preScanner != null && preScanner.isTooLarge(size)) {
+            skipFile(file, FilePreScanner.Decision.SKIP_LARGE, null);
+            return;
+        }
 
-                worked(1);
-                fileCount++;
-            } else {
-                LOG.debug("The file " + file.getName() + " is not in the working set");
+        // the file is read once for its content hash, its pre-scan and its
+        // dependencies, and once more when it is analyzed. Without the cache,
+        // the pre-scan only needs its first characters.
+        SourceBuffer source = null;
+        String header = null;
+        String contentHash = null;
+        try {
+            if (violationCache != null) {
+                MessageDigest contentDigest = ViolationCache.newContentDigest(file);
+                source = SourceBuffer.read(file, contentDigest);
+                contentHash = ViolationCache.contentHashOf(contentDigest);
+            } else if (preScanner != null && size >= 0) {
+                header = SourceBuffer.readHeader(file, FilePreScanner.HEADER_SIZE);
+            } else if (preScanner != null) {
+                source = SourceBuffer.read(file);
             }
-
         } catch (CoreException e) {
-            // TODO: complete message
-            LOG.error("Core exception visiting " + file.getName(), e);
-        } catch (PMDException e) {
-            // TODO: complete message
-            LOG.error("PMD exception visiting " + file.getName(), e);
+            LOG.warn("Unable to read " + file.getName(), e);
         } catch (IOException e) {
-            // TODO: complete message
-            LOG.error("IO exception visiting " + file.getName(), e);
-        } catch (PropertiesException e) {
-            // TODO: complete message
-            LOG.error("Properties exception visiting " + file.getName(), e);
-        } catch (IllegalArgumentException e) {
-            LOG.error("Illegal argument", e);
-        } finally {
-            IOUtil.closeQuietly(input);
+            LOG.warn("Unable to read " + file.getName(), e);
         }
-
+        if (contentHash != null) {
+            if (staleOnly && isCurrent(file, contentHash)) {
+                LOG.debug("Skipping the current file " + file.getName());
+                violationCacheHits++;
+                if (accumulator != null) {
+                    accumulator.remove(file);
+                }
+                return;
+            }
+            Set<MarkerInfo2> cachedMarkers = violationCache.get(file, contentHash);
+            if (cachedMarkers != null) {
+                LOG.debug("Using cached markers for file " + file.getName());
+                violationCacheHits++;
+                countAnalysisMarkers(cachedMarkers);
+                if (accumulator != null) {
+                    accumulator.put(file, cachedMarkers);
+                    markersCompleted(file);
+                }
+                return;
+            }
+            if (dependencyIndex != null) {
+                indexDependencies(file, contentHash, source);
+            }
+        }
+        if (preScanner != null && (source != null || header != null)) {
+            FilePreScanner.Decision decision = source != null ? preScanner.scan(source, contentHash)
+                    : preScanner.scan(size, header, null);
+            if (!preScan(file, decision, contentHash)) {
+                return;
+            }
+        }
+        pendingFiles.put(file, contentHash);
     }
 
     /**
-     * Test if a file is in the PMD working set
-     *
-     * @param file
-     * @return true if the file should be checked
+     * Records the types a file refers to, unless they are known for its
+     * content. The types the file declares have changed then.
      */
-    private boolean isFileInWorkingSet(final IFile file) throws PropertiesException {
-        boolean fileInWorkingSet = true;
-        IWorkingSet workingSet = projectProperties.getProjectWorkingSet();
-        if (workingSet != null) {
-            ResourceWorkingSetFilter filter = new ResourceWorkingSetFilter();
-            filter.setWorkingSet(workingSet);
-            fileInWorkingSet = filter.select(null, null, file);
+    private void indexDependencies(IFile file, String contentHash, SourceBuffer source) {
+        String path = file.getProjectRelativePath().toString();
+        if (!JavaCore.isJavaLikeFileName(file.getName()) || dependencyIndex.isCurrent(path, contentHash)) {
+            return;
+        }
+        ICompilationUnit unit = JavaCore.createCompilationUnitFrom(file);
+        if (unit == null) {
+            return;
+        }
+        try {
+            dependencyIndex.record(path, contentHash,
+                    TypeReferences.referencedTypesOf(unit, source.getContent(), packageTypeNamesOf(unit)));
+            changedTypes.addAll(TypeReferences.declaredTypesOf(unit));
+        } catch (JavaModelException e) {
+            // e.g. the file is not in a source folder
+            LOG.debug("Unable to find the types referenced by " + file.getName(), e);
         }
+    }
 
-        return fileInWorkingSet;
+    private Set<String> packageTypeNamesOf(ICompilationUnit unit) throws JavaModelException {
+        IJavaElement parent = unit.getParent();
+        if (!(parent instanceof IPackageFragment)) {
+            return Collections.emptySet();
+        }
+        IPackageFragment packageFragment = (IPackageFragment) parent;
+        Set<String> typeNames = packageTypeNames.get(packageFragment);
+        if (typeNames == null) {
+            typeNames = TypeReferences.typeNamesOf(packageFragment);
+            packageTypeNames.put(packageFragment, typeNames);
+        }
+        return typeNames;
     }
 
     /**
-     * Update markers list for the specified file
+     * Applies the decision of the pre-scan of a file. The markers of a skipped
+     * file are prepared at once.
      *
-     * @param file
-     *            the file for which markers are to be updated
-     * @param context
-     *            a PMD context
-     * @param fTask
-     *            indicate if a task marker should be created
-     * @param accumulator
-     *            a map that contains impacted file and marker informations
+     * @return false if the file is skipped
      */
-
-    private int maxAllowableViolationsFor(Rule rule) {
-
-        return rule.hasDescriptor(PMDRuntimeConstants.MAX_VIOLATIONS_DESCRIPTOR)
-                ? rule.getProperty(PMDRuntimeConstants.MAX_VIOLATIONS_DESCRIPTOR)
-                : PMDRuntimeConstants.MAX_VIOLATIONS_DESCRIPTOR.defaultValue();
-    }
-
-    public static String markerTypeFor(RuleViolation violation) {
-        switch (violation.getRule().getPriority()) {
-        case HIGH:
-            return PMDRuntimeConstants.PMD_MARKER_1;
-        case MEDIUM_HIGH:
-            return PMDRuntimeConstants.PMD_MARKER_2;
-        case MEDIUM:
-            return PMDRuntimeConstants.PMD_MARKER_3;
-        case MEDIUM_LOW:
-            return PMDRuntimeConstants.PMD_MARKER_4;
-        case LOW:
-            return PMDRuntimeConstants.PMD_MARKER_5;
-        default:
-            return PMDRuntimeConstants.PMD_MARKER;
+    private boolean preScan(IFile file, FilePreScanner.Decision decision, String contentHash) {
+        if (decision == FilePreScanner.Decision.LIGHT) {
+            LOG.debug("Checking the large file " + file.getName() + " with the high priority rules only");
+            lightFiles.add(file);
+            lightFileCount++;
+        } else if (decision.isSkipped()) {
+            skipFile(file, decision, contentHash);
+            return false;
         }
+        return true;
     }
 
-    private void prepareMarkerAccumulator(IFile file) {
-        Map<IFile, Set<MarkerInfo2>> accumulator = getAccumulator();
+    /**
+     * Prepares the marker telling why a file is not analyzed, and caches it
+     * if the content hash of the file is known.
+     */
+    private void skipFile(IFile file, FilePreScanner.Decision decision, String contentHash) {
+        LOG.debug("Skipping the file " + file.getName() + ": " + decision);
+        skippedFileCount++;
+        Set<MarkerInfo2> markers = new HashSet<MarkerInfo2>();
+        markers.add(preScanMarker(decision));
         if (accumulator != null) {
-            accumulator.put(file, new HashSet<MarkerInfo2>());
+            accumulator.put(file, markers);
+            markersCompleted(file);
+        }
+        if (violationCache != null && contentHash != null) {
+            violationCache.put(file, contentHash, markers);
         }
     }
 
-    private void updateMarkers(IFile file, Iterator<RuleViolation> violations, boolean fTask)
-            throws CoreException, PropertiesException {
-
-        Map<IFile, Set<MarkerInfo2>> accumulator = getAccumulator();
-        Set<MarkerInfo2> markerSet = new HashSet<MarkerInfo2>();
-        List<Review> reviewsList = findReviewedViolations(file);
-        Review review = new Review();
-        // final IPreferences preferences =
-        // PMDPlugin.getDefault().loadPreferences();
-        // final int maxViolationsPerFilePerRule =
-        // preferences.getMaxViolationsPerFilePerRule();
-        Map<Rule, Integer> violationsByRule = new HashMap<Rule, Integer>();
-
-        Rule rule;
-        while (violations.hasNext()) {
-            RuleViolation violation = violations.next();
-            rule = violation.getRule();
-            review.ruleName = rule.getName();
-            review.lineNumber = violation.getBeginLine();
-
-            if (reviewsList.contains(review)) {
-                LOG.debug("Ignoring violation of rule " + rule.getName() + " at line " + violation.getBeginLine()
-                        + " because of a review.");
-                continue;
+    private boolean isCurrent(IFile file, String contentHash) {
+        if (violationCache.isCurrent(file, contentHash)) {
+            return true;
+        }
+        if (tierCaches.isEmpty()) {
+            return false;
+        }
+        for (ViolationCache tierCache : tierCaches) {
+            if (!tierCache.isCurrent(file, contentHash)) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            Integer count = violationsByRule.get(rule);
-            if (count == null) {
-                count = NumericConstants.ZERO;
-                violationsByRule.put(rule, count);
-            }
+    /**
+     * @return the number of files that will be analyzed by
+     *         {@link #reviewPendingFiles()}
+     */
+    int getPendingFilesCount() {
+        return pendingFiles.size();
+    }
 
-            int maxViolations = maxAllowableViolationsFor(rule);
-
-            if (count.intValue() < maxViolations) {
-                // Ryan Gustafson 02/16/2008 - Always use PMD_MARKER, as people
-                // get confused as to why PMD problems don't always show up on
-                // Problems view like they do when you do build.
-                // markerSet.add(getMarkerInfo(violation, fTask ?
-                // PMDRuntimeConstants.PMD_TASKMARKER :
-                // PMDRuntimeConstants.PMD_MARKER));
-                markerSet.add(getMarkerInfo(violation, markerTypeFor(violation)));
-                /*
-                 * if (isDfaEnabled && violation.getRule().usesDFA()) { markerSet.add(getMarkerInfo(violation,
-                 * PMDRuntimeConstants.PMD_DFA_MARKER)); } else { markerSet.add(getMarkerInfo(violation, fTask ?
-                 * PMDRuntimeConstants.PMD_TASKMARKER : PMDRuntimeConstants.PMD_MARKER)); }
-                 */
-                violationsByRule.put(rule, Integer.valueOf(count.intValue() + 1));
-
-                LOG.debug("Adding a violation for rule " + rule.getName() + " at line " + violation.getBeginLine());
-            } else {
-                LOG.debug("Ignoring violation of rule " + rule.getName() + " at line " + violation.getBeginLine()
-                        + " because maximum violations has been reached for file " + file.getName());
-            }
+    /**
+     * Keeps the first pending files in review order and removes the others
+     * from the review. The markers of the removed files are left as they are.
+     *
+     * @param keptCount
+     *            the number of files to keep
+     * @return the removed files
+     */
+    List<IFile> deferPendingFiles(int keptCount) {
+        List<IFile> files = new ArrayList<IFile>(pendingFiles.keySet());
+        if (files.size() <= keptCount) {
+            return new ArrayList<IFile>();
         }
-
-        if (accumulator != null) {
-            LOG.debug("Adding markerSet to accumulator for file " + file.getName());
-            accumulator.put(file, markerSet);
+        reviewOrder.sort(files);
+        List<IFile> deferred = new ArrayList<IFile>(files.subList(keptCount, files.size()));
+        for (IFile file : deferred) {
+            pendingFiles.remove(file);
+            if (accumulator != null) {
+                accumulator.remove(file);
+            }
         }
+        return deferred;
     }
 
     /**
-     * Search for reviewed violations in that file
-     *
-     * @param file
+     * Run PMD against all the pending files with a single PMD processing call,
+     * and a second one for the large files that are only checked with the
+     * high priority rules. The violations are routed back to their files and
+     * the markers are prepared in the accumulator.
      */
-    private List<Review> findReviewedViolations(final IFile file) {
-        final List<Review> reviews = new ArrayList<Review>();
-        BufferedReader reader = null;
+    public void reviewPendingFiles() {
+        if (pendingFiles.isEmpty()) {
+            return;
+        }
+
         try {
-            int lineNumber = 0;
-            boolean findLine = false;
-            boolean comment = false;
-            final Stack<String> pendingReviews = new Stack<String>();
-            reader = new BufferedReader(new InputStreamReader(file.getContents()));
-            while (reader.ready()) {
-                String line = reader.readLine();
-                if (line != null) {
-                    line = line.trim();
-                    lineNumber++;
-                    if (line.startsWith("/*")) {
-                        comment = line.indexOf("*/") == -1;
-                    } else if (comment && line.indexOf("*/") != -1) {
-                        comment = false;
-                    } else if (!comment && line.startsWith(PMDRuntimeConstants.PLUGIN_STYLE_REVIEW_COMMENT)) {
-                        final String tail = line.substring(PMDRuntimeConstants.PLUGIN_STYLE_REVIEW_COMMENT.length());
-                        final String ruleName = tail.substring(0, tail.indexOf(':'));
-                        pendingReviews.push(ruleName);
-                        findLine = true;
-                    } else if (!comment && findLine && StringUtil.isNotEmpty(line) && !line.startsWith("//")) {
-                        findLine = false;
-                        while (!pendingReviews.empty()) {
-                            // @PMD:REVIEWED:AvoidInstantiatingObjectsInLoops:
-                            // by Herlin on 01/05/05 18:36
-                            final Review review = new Review();
-                            review.ruleName = pendingReviews.pop();
-                            review.lineNumber = lineNumber;
-                            reviews.add(review);
-                        }
+            List<IFile> files = new ArrayList<IFile>(pendingFiles.keySet());
+            List<IFile> largeFiles = new ArrayList<IFile>();
+            Iterator<IFile> iterator = files.iterator();
+            while (iterator.hasNext()) {
+                IFile file = iterator.next();
+                if (lightFiles.contains(file)) {
+                    iterator.remove();
+                    largeFiles.add(file);
+                }
+            }
+            if (!files.isEmpty()) {
+                reviewFiles(files, getRuleSets(), true);
+            }
+            if (!largeFiles.isEmpty()) {
+                RuleSets lightRuleSets = FilePreScanner.lightRuleSets(getRuleSets());
+                if (lightRuleSets.getAllRules().isEmpty()) {
+                    for (IFile file : largeFiles) {
+                        recordMarkers(file, new HashSet<MarkerInfo2>());
                     }
+                } else {
+                    // the analysis cache is kept for the rules of the first call
+                    reviewFiles(largeFiles, lightRuleSets, false);
                 }
             }
+        } finally {
+            pendingFiles.clear();
+            lightFiles.clear();
+        }
+    }
 
-            // if (log.isDebugEnabled()) {
-            // for (int i = 0; i < reviewsList.size(); i++) {
-            // final Review review = (Review) reviewsList.get(i);
-            // log.debug("Review : rule " + review.ruleName + ", line " +
-            // review.lineNumber);
-            // }
-            // }
+    private void reviewFiles(List<IFile> files, RuleSets filteringRuleSets, boolean useAnalysisCache) {
+        // the files have been filtered with the patterns of the rulesets
+        final RuleSets ruleSets = RuleSetsFileFilter.withoutPatterns(filteringRuleSets);
 
-        } catch (CoreException e) {
-            PMDPlugin.getDefault().logError("Core Exception when searching reviewed violations", e);
-        } catch (IOException e) {
-            PMDPlugin.getDefault().logError("IO Exception when searching reviewed violations", e);
-        } finally {
-            IOUtil.closeQuietly(reader);
+        // the default language version is used for all java files of the
+        // batch, as the files of a visitor all belong to the same project
+        LanguageVersion javaVersion = analysisContext.getJavaVersion();
+        if (javaVersion != null) {
+            configuration().setDefaultLanguageVersion(javaVersion);
         }
 
-        return reviews;
-    }
+        if (analysisContext.isBuildPathEnabled()) {
+            configuration().setClassLoader(analysisContext.getAuxClasspath());
+        }
+
+        ViolationSink sink = new ViolationSink(analysisContext.isViolationsAsErrors());
+        // the files are analyzed in the order of submission
+        reviewOrder.sort(files);
+        List<DataSource> dataSources = new ArrayList<DataSource>(files.size());
+        for (IFile file : files) {
+            WorkspaceFileDataSource dataSource = new WorkspaceFileDataSource(file,
+                    file.getRawLocation().toFile().getPath(), configuration().getSourceEncoding());
+            sink.register(dataSource);
+            dataSources.add(dataSource);
+        }
+
+        RuleSetFactory ruleSetFactory = new RuleSetFactory() {
+            @Override
+            public synchronized RuleSets createRuleSets(String referenceString)
+                    throws RuleSetNotFoundException {
+                return new RuleSets(ruleSets);
+            }
+        };
 
-    private MarkerInfo2 getMarkerInfo(RuleViolation violation, String type) throws PropertiesException {
+        CountingAnalysisCache analysisCache = null;
+        String analysisCacheLocation = analysisContext.getAnalysisCacheLocation();
+        // the analysis cache does not see the violations found by the worker JVMs
+        if (analysisCacheLocation != null && analysisWorkers == 0 && useAnalysisCache) {
+            analysisCache = new CountingAnalysisCache(new FileAnalysisCache(new File(analysisCacheLocation)));
+        }
+        configuration().setAnalysisCache(analysisCache);
+
+        AnalysisGovernor governor = AnalysisGovernor.getInstance();
+        int threads = analysisWorkers > 0 ? analysisWorkers : maxThreads;
+        int threadCount = Math.max(1, Math.min(governor.threadLimit(threads), dataSources.size()));
+        configuration().setThreads(threadCount);
+        LOG.debug("PMD running on " + dataSources.size() + " files with " + threadCount + " threads");
+
+        long start = System.currentTimeMillis();
+
+        // the listeners of this report are copied to the report of each
+        // file, so that they receive the violations as they are found
+        RuleContext context = new RuleContext();
+        context.getReport().addListener(sink);
+        if (analysisCache != null) {
+            context.getReport().addListener(analysisCache);
+        }
+        WorkerPoolProcessor processor = newProcessor(threadCount, new MarkerRouter(sink, analysisCache),
+                governor, ruleSets);
+        processor.setBackground(background);
+        processor.setJobPriority(jobPriority);
+        processor.processFiles(ruleSetFactory, dataSources, context, Collections.<Renderer>emptyList());
+        LOG.debug("PMD run finished.");
+
+        if (analysisCache != null) {
+            analysisCache.persist();
+            analysisCacheHits += analysisCache.getHits();
+            analysisCacheMisses += analysisCache.getMisses();
+        }
 
-        Rule rule = violation.getRule();
+        if (context.getReport().hasConfigErrors()) {
+            StringBuilder message = new StringBuilder("There were configuration errors!\n");
+            Iterator<ConfigurationError> errors = context.getReport().configErrors();
+            while (errors.hasNext()) {
+                ConfigurationError error = errors.next();
+                message.append(error.rule().getName()).append(": ").append(error.issue()).append('\n');
+            }
+            LOG.warn(message.toString());
+        }
 
-        MarkerInfo2 info = new MarkerInfo2(type, 7);
+        pmdDuration += System.currentTimeMillis() - start;
+        fileCount += processor.getProcessedFilesCount();
+        timedOutFiles += processor.getTimedOutFilesCount();
+        analyzedFileCount += processor.getAnalyzedFilesCount();
+        analysisMillis += processor.getAnalysisMillis();
+    }
 
-        info.add(IMarker.MESSAGE, rule.getName() + ": " + violation.getDescription());
-        info.add(PMDRuntimeConstants.KEY_MARKERATT_MESSAGE, violation.getDescription());
-        info.add(IMarker.LINE_NUMBER, violation.getBeginLine());
-        info.add(PMDRuntimeConstants.KEY_MARKERATT_LINE2, violation.getEndLine());
-        info.add(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, rule.getName());
-        info.add(PMDRuntimeConstants.KEY_MARKERATT_PRIORITY, rule.getPriority().getPriority());
-        info.add(IMarker.PRIORITY, IMarker.PRIORITY_NORMAL);
+    private WorkerPoolProcessor newProcessor(int threadCount, MarkerRouter router, AnalysisGovernor governor,
+            RuleSets ruleSets) {
+        if (analysisWorkers > 0) {
+            try {
+                return new RemoteWorkerProcessor(configuration(), threadCount, getMonitor(), router,
+                        analysisTimeoutMillis, governor, ruleSets, analysisContext.getJavaVersion(),
+                        analysisContext.isBuildPathEnabled() ? analysisContext.getAuxClasspath() : null,
+                        analysisWorkers, analysisWorkerHeap);
+            } catch (IOException e) {
+                LOG.warn("The files are analyzed in the workbench, as the analysis workers can not be used", e);
+            }
+        }
+        return new WorkerPoolProcessor(configuration(), threadCount, getMonitor(), router, analysisTimeoutMillis,
+                governor);
+    }
 
-        switch (rule.getPriority()) {
+    public static String markerTypeFor(RuleViolation violation) {
+        switch (violation.getRule().getPriority()) {
         case HIGH:
+            return PMDRuntimeConstants.PMD_MARKER_1;
         case MEDIUM_HIGH:
-            info.add(IMarker.SEVERITY,
-                    projectProperties.violationsAsErrors() ? IMarker.SEVERITY_ERROR : IMarker.SEVERITY_WARNING);
-            break;
-
+            return PMDRuntimeConstants.PMD_MARKER_2;
         case MEDIUM:
+            return PMDRuntimeConstants.PMD_MARKER_3;
         case MEDIUM_LOW:
-            info.add(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
-            break;
-
+            return PMDRuntimeConstants.PMD_MARKER_4;
         case LOW:
+            return PMDRuntimeConstants.PMD_MARKER_5;
         default:
-            info.add(IMarker.SEVERITY, IMarker.SEVERITY_INFO);
+            return PMDRuntimeConstants.PMD_MARKER;
+        }
+    }
+
+    /**
+     * Counts the files whose cached markers tell that their analysis timed
+     * out or was limited by the pre-scan.
+     */
+    private void countAnalysisMarkers(Set<MarkerInfo2> markers) {
+        for (MarkerInfo2 marker : markers) {
+            if (!PMDRuntimeConstants.PMD_ANALYSIS_MARKER.equals(marker.getType())) {
+                continue;
+            }
+            String decision = marker.getAdditionalAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRESCAN);
+            if (decision == null) {
+                // the analysis timed out for this content before
+                timedOutFiles++;
+            } else if (FilePreScanner.Decision.LIGHT.name().equals(decision)) {
+                lightFileCount++;
+            } else {
+                skippedFileCount++;
+            }
+        }
+    }
+
+    private MarkerInfo2 timeoutMarker(long timeoutMillis) {
+        return analysisMarker("PMD analysis timed out after " + timeoutMillis / 1000
+                + " s, the file is skipped until it is changed");
+    }
+
+    private MarkerInfo2 preScanMarker(FilePreScanner.Decision decision) {
+        MarkerInfo2 info;
+        switch (decision) {
+        case LIGHT:
+            info = analysisMarker("PMD checks files larger than " + preScanner.getLightLimitKilobytes()
+                    + " KB with the high priority rules only");
+            break;
+        case SKIP_LARGE:
+            info = analysisMarker("PMD does not check files larger than " + preScanner.getSkipLimitKilobytes()
+                    + " KB");
+            break;
+        default:
+            info = analysisMarker("PMD does not check generated files");
             break;
         }
+        return info.withAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRESCAN, decision.name());
+    }
 
+    private MarkerInfo2 analysisMarker(String message) {
+        RuleTier tier = analysisContext.getTier();
+        MarkerInfo2 info = MarkerInfo2.of(PMDRuntimeConstants.PMD_ANALYSIS_MARKER, message, IMarker.SEVERITY_INFO);
+        if (tier != null) {
+            // the marker has no rule name telling which tier it belongs to
+            info = info.withAttribute(PMDRuntimeConstants.KEY_MARKERATT_TIER, tier.name());
+        }
         return info;
     }
 
+    private void recordMarkers(IFile file, Set<MarkerInfo2> markers) {
+        if (lightFiles.contains(file)) {
+            markers.add(preScanMarker(FilePreScanner.Decision.LIGHT));
+        }
+        String contentHash = pendingFiles.get(file);
+        if (violationCache != null && contentHash != null) {
+            violationCache.put(file, contentHash, markers);
+        }
+        if (accumulator != null) {
+            accumulator.put(file, markers);
+            markersCompleted(file);
+        }
+    }
+
+    private void markersCompleted(IFile file) {
+        if (markerFlusher != null) {
+            // the markers of the files shown in an editor are applied at once
+            markerFlusher.completed(file, reviewOrder.isVisible(file));
+        }
+    }
+
+    private void prepareMarkerAccumulator(IFile file) {
+        Map<IFile, Set<MarkerInfo2>> accumulator = getAccumulator();
+        if (accumulator != null) {
+            accumulator.put(file, new HashSet<MarkerInfo2>());
+        }
+    }
+
     /**
-     * Private inner type to handle reviews
+     * Routes the report of each analyzed file back to its workspace file and
+     * updates the markers of that file. Reports are received on the thread
+     * that called processFiles, the markers were already prepared by the
+     * sink on the analysis threads.
      */
-    private class Review {
-        public String ruleName;
-        public int lineNumber;
+    private class MarkerRouter implements WorkerPoolProcessor.FileReportListener {
+
+        private final ViolationSink sink;
+        private final CountingAnalysisCache analysisCache;
+
+        MarkerRouter(ViolationSink sink, CountingAnalysisCache analysisCache) {
+            this.sink = sink;
+            this.analysisCache = analysisCache;
+        }
 
         @Override
-        public boolean equals(final Object obj) {
-            boolean result = false;
-            if (obj instanceof Review) {
-                Review reviewObj = (Review) obj;
-                result = ruleName.equals(reviewObj.ruleName) && lineNumber == reviewObj.lineNumber;
+        public void analysisCanceled(List<DataSource> unfinishedDataSources) {
+            sink.cancel();
+            for (DataSource dataSource : unfinishedDataSources) {
+                // roll back the file: its markers and cache entries are kept
+                WorkspaceFileDataSource fileDataSource = (WorkspaceFileDataSource) dataSource;
+                sink.discard(fileDataSource);
+                fileDataSource.release();
+                if (analysisCache != null) {
+                    analysisCache.analysisFailed(new File(fileDataSource.getNiceFileName(false, null)));
+                }
+                if (accumulator != null) {
+                    accumulator.remove(fileDataSource.getFile());
+                }
+            }
+        }
+
+        @Override
+        public void fileTimedOut(DataSource dataSource, long timeoutMillis) {
+            WorkspaceFileDataSource fileDataSource = (WorkspaceFileDataSource) dataSource;
+            IFile file = fileDataSource.getFile();
+            sink.discard(fileDataSource);
+            fileDataSource.release();
+            if (analysisCache != null) {
+                analysisCache.analysisFailed(new File(fileDataSource.getNiceFileName(false, null)));
+            }
+
+            // the marker set is cached with the content hash of the file,
+            // so that the file is not analyzed again until it changes
+            Set<MarkerInfo2> markers = new HashSet<MarkerInfo2>();
+            markers.add(timeoutMarker(timeoutMillis));
+            String contentHash = pendingFiles.get(file);
+            if (violationCache != null && contentHash != null) {
+                violationCache.put(file, contentHash, markers);
+            }
+            if (accumulator != null) {
+                accumulator.put(file, markers);
+                markersCompleted(file);
             }
-            return result;
         }
 
         @Override
-        public int hashCode() {
-            return ruleName.hashCode() + lineNumber * lineNumber;
+        public void fileAnalyzed(DataSource dataSource, Report report) {
+            WorkspaceFileDataSource fileDataSource = (WorkspaceFileDataSource) dataSource;
+            try {
+                routeReport(fileDataSource, report);
+            } finally {
+                fileDataSource.release();
+            }
         }
 
+        private void routeReport(WorkspaceFileDataSource dataSource, Report report) {
+            IFile file = dataSource.getFile();
+            Set<MarkerInfo2> markers = sink.takeMarkers(dataSource, report);
+
+            LOG.debug("PMD found " + report.size() + " violations for file " + file.getName());
+
+            if (report.hasErrors()) {
+                StringBuilder message = new StringBuilder("There were processing errors!\n");
+                Iterator<ProcessingError> errors = report.errors();
+                while (errors.hasNext()) {
+                    ProcessingError error = errors.next();
+                    message.append(error.getFile()).append(": ").append(error.getMsg()).append(' ')
+                    .append(error.getDetail())
+                    .append("\n");
+                }
+                PMDPlugin.getDefault().logWarn(message.toString());
+                LOG.error("PMD exception visiting " + file.getName());
+                return;
+            }
+
+            LOG.debug("Adding " + markers.size() + " markers to accumulator for file " + file.getName());
+            recordMarkers(file, markers);
+        }
     }
 }
@@ -0,0 +1,221 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RulePriority;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+import net.sourceforge.pmd.eclipse.util.SourceBuffer;
+
+/**
+ * Decides before the analysis whether a file is worth it, from its size and
+ * its first kilobytes only. Generated files, recognized by a signature in
+ * their header, and very large files are skipped. Large files are only
+ * checked with the high priority rules.
+ *
+ * <p>The decisions are kept per content hash, so that an unchanged file is
+ * not scanned again.
+ */
+public final class FilePreScanner {
+
+    /**
+     * The number of characters searched for the signatures of generated
+     * files.
+     */
+    public static final int HEADER_SIZE = 4096;
+
+    private static final int MAX_CACHED_DECISIONS = 10000;
+
+    // the decisions per settings and content hash, shared by all the reviews
+    private static final Map<String, Decision> DECISIONS = new LinkedHashMap<String, Decision>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Decision> eldest) {
+            return size() > MAX_CACHED_DECISIONS;
+        }
+    };
+
+    /**
+     * How a file is analyzed.
+     */
+    public enum Decision {
+        /** With all the rules. */
+        ANALYZE,
+        /** With the high priority rules only, as the file is large. */
+        LIGHT,
+        /** Not at all, as the file is generated. */
+        SKIP_GENERATED,
+        /** Not at all, as the file is too large. */
+        SKIP_LARGE;
+
+        /**
+         * @return true if the file is not analyzed at all
+         */
+        public boolean isSkipped() {
+            return this == SKIP_GENERATED || this == SKIP_LARGE;
+        }
+    }
+
+    private final int lightLimitKilobytes;
+    private final int skipLimitKilobytes;
+    private final List<String> signatures = new ArrayList<String>();
+    private final String settingsKey;
+
+    /**
+     * @param lightLimitKilobytes
+     *            the size above which only the high priority rules are
+     *            checked, 0 for no limit
+     * @param skipLimitKilobytes
+     *            the size above which a file is skipped, 0 for no limit
+     * @param signatures
+     *            the comma separated texts marking generated files
+     */
+    public FilePreScanner(int lightLimitKilobytes, int skipLimitKilobytes, String signatures) {
+        this.lightLimitKilobytes = Math.max(0, lightLimitKilobytes);
+        this.skipLimitKilobytes = Math.max(0, skipLimitKilobytes);
+        if (signatures != null) {
+            for (String signature : signatures.split(",")) {
+                if (signature.trim().length() > 0) {
+                    this.signatures.add(signature.trim());
+                }
+            }
+        }
+        this.settingsKey = this.lightLimitKilobytes + "|" + this.skipLimitKilobytes + "|" + this.signatures;
+    }
+
+    /**
+     * @return the scanner configured in the preferences
+     */
+    public static FilePreScanner of(IPreferences preferences) {
+        return new FilePreScanner(preferences.getLightAnalysisFileSize(), preferences.getSkippedFileSize(),
+                preferences.getGeneratedFileSignatures());
+    }
+
+    /**
+     * @return the settings the decisions depend on, to be part of the
+     *         fingerprint of the cached analysis results
+     */
+    public String getSettingsKey() {
+        return settingsKey;
+    }
+
+    public int getLightLimitKilobytes() {
+        return lightLimitKilobytes;
+    }
+
+    public int getSkipLimitKilobytes() {
+        return skipLimitKilobytes;
+    }
+
+    /**
+     * @param size
+     *            the size of the file in bytes
+     * @param header
+     *            the beginning of the file
+     * @return how the file is analyzed
+     */
+    public Decision classify(long size, String header) {
+        if (isTooLarge(size)) {
+            return Decision.SKIP_LARGE;
+        }
+        for (String signature : signatures) {
+            if (header.contains(signature)) {
+                return Decision.SKIP_GENERATED;
+            }
+        }
+        if (lightLimitKilobytes > 0 && size > lightLimitKilobytes * 1024L) {
+            return Decision.LIGHT;
+        }
+        return Decision.ANALYZE;
+    }
+
+    /**
+     * @param size
+     *            the size of a file in bytes, negative if it is unknown
+     * @return true if the file is skipped for its size, whatever its content
+     */
+    public boolean isTooLarge(long size) {
+        return skipLimitKilobytes > 0 && size > skipLimitKilobytes * 1024L;
+    }
+
+    /**
+     * Scans the content of a workspace file, unless the decision is known for
+     * its content hash.
+     *
+     * @param source
+     *            the content of the file, read once for the planning of the
+     *            review
+     * @param contentHash
+     *            the content hash of the file, null if it is unknown
+     * @return how the file is analyzed
+     */
+    public Decision scan(SourceBuffer source, String contentHash) {
+        CharSequence content = source.getContent();
+        return scan(source.getSize(), content.subSequence(0, Math.min(HEADER_SIZE, content.length())), contentHash);
+    }
+
+    /**
+     * Scans the beginning of a workspace file, unless the decision is known
+     * for its content hash.
+     *
+     * @param size
+     *            the size of the file in bytes
+     * @param header
+     *            the first {@link #HEADER_SIZE} characters of the file, or
+     *            all of them if it is shorter
+     * @param contentHash
+     *            the content hash of the file, null if it is unknown
+     * @return how the file is analyzed
+     */
+    public Decision scan(long size, CharSequence header, String contentHash) {
+        String key = contentHash == null ? null : settingsKey + '|' + contentHash;
+        if (key != null) {
+            synchronized (DECISIONS) {
+                Decision decision = DECISIONS.get(key);
+                if (decision != null) {
+                    return decision;
+                }
+            }
+        }
+
+        Decision decision = classify(size, header.toString());
+        if (key != null) {
+            synchronized (DECISIONS) {
+                DECISIONS.put(key, decision);
+            }
+        }
+        return decision;
+    }
+
+    /**
+     * @param ruleSets
+     *            the rules of a review
+     * @return the rules large files are checked with
+     */
+    public static RuleSets lightRuleSets(RuleSets ruleSets) {
+        RuleSets lightRuleSets = new RuleSets();
+        for (RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            List<Rule> lightRules = new ArrayList<Rule>();
+            for (Rule rule : ruleSet.getRules()) {
+                if (rule.getPriority() == RulePriority.HIGH) {
+                    lightRules.add(rule);
+                }
+            }
+            if (!lightRules.isEmpty()) {
+                lightRuleSets.addRuleSet(RuleSetUtil.retainOnly(ruleSet, lightRules));
+            }
+        }
+        return lightRuleSets;
+    }
+}
@@ -8,8 +8,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -25,6 +25,11 @@ import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
  * This is a particular processor for Eclipse in order to handle long running
  * commands.
  *
+ * <p>At most 10 commands run at the same time, the others wait in the order of
+ * their job priority, then in the order of submission. The commands with a
+ * priority of {@link Job#SHORT} or higher, e.g. the reviews of the saved files
+ * and of the files of the open editors, are not limited and do not wait.
+ *
  * @author Philippe Herlin
  *
  */
@@ -33,7 +38,11 @@ public class JobCommandProcessor {
     private final Map<AbstractDefaultCommand, Job> jobs = Collections
             .synchronizedMap(new HashMap<AbstractDefaultCommand, Job>());
 
-    private static ConcurrentLinkedQueue<Job> outstanding = new ConcurrentLinkedQueue<Job>();
+    private static final int MAX_RUNNING_JOBS = 10;
+
+    private static final PriorityQueue<QueuedJob> outstanding = new PriorityQueue<QueuedJob>();
+    // guarded by outstanding
+    private static long submissions;
     private static AtomicInteger count = new AtomicInteger();
     
     private static final JobCommandProcessor INSTANCE = new JobCommandProcessor();
@@ -49,6 +58,8 @@ public class JobCommandProcessor {
             throw new IllegalStateException();
         }
 
+        final int priority = aCommand.getJobPriority();
+        final boolean limited = priority > Job.SHORT;
         final Job job = new Job(aCommand.getName()) {
             @Override
             protected IStatus run(IProgressMonitor monitor) {
@@ -65,11 +76,13 @@ public class JobCommandProcessor {
                     PMDPlugin.getDefault().logError("Error executing command " + aCommand.getName(), e);
                 }
 
-                synchronized (outstanding) {
-                    count.decrementAndGet();
-                    Job job = outstanding.poll();
-                    if (job != null) {
-                        job.schedule();
+                if (limited) {
+                    synchronized (outstanding) {
+                        count.decrementAndGet();
+                        QueuedJob queued = outstanding.poll();
+                        if (queued != null) {
+                            queued.job.schedule();
+                        }
                     }
                 }
                 return Status.OK_STATUS;
@@ -78,14 +91,20 @@ public class JobCommandProcessor {
 
         if (aCommand instanceof AbstractDefaultCommand) {
             job.setUser(((AbstractDefaultCommand) aCommand).isUserInitiated());
+            job.setPriority(priority);
         }
 
-        synchronized (outstanding) {
-            if (count.incrementAndGet() > 10) {
-                // too many already running, put in a queue to run later
-                outstanding.add(job);
-            } else {
-                job.schedule();
+        if (!limited) {
+            // e.g. the review of the saved files does not wait for the builds
+            job.schedule();
+        } else {
+            synchronized (outstanding) {
+                if (count.incrementAndGet() > MAX_RUNNING_JOBS) {
+                    // too many already running, put in a queue to run later
+                    outstanding.add(new QueuedJob(job, priority, submissions++));
+                } else {
+                    job.schedule();
+                }
             }
         }
         this.addJob(aCommand, job);
@@ -128,4 +147,28 @@ public class JobCommandProcessor {
             }
         }
     }
+
+    /**
+     * A job waiting to run. The jobs of higher priority, i.e. of lower
+     * priority value, run first, then the jobs submitted first.
+     */
+    private static final class QueuedJob implements Comparable<QueuedJob> {
+        private final Job job;
+        private final int priority;
+        private final long submission;
+
+        QueuedJob(Job job, int priority, long submission) {
+            this.job = job;
+            this.priority = priority;
+            this.submission = submission;
+        }
+
+        @Override
+        public int compareTo(QueuedJob other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return submission < other.submission ? -1 : submission == other.submission ? 0 : 1;
+        }
+    }
 }
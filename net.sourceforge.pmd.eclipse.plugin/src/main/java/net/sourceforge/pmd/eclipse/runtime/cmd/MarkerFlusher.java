@@ -0,0 +1,158 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceRuleFactory;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.MultiRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
+
+/**
+ * Applies the markers of the files of a review while the review is still
+ * running, so that the results show up progressively. The files whose
+ * markers are complete are applied in batches, once enough files completed
+ * or enough time passed, each batch in its own short workspace operation
+ * holding the marker rules of its files only, so that a long review does not
+ * lock the workspace between the batches. The marker sets of the applied
+ * files are released, unless the review keeps them for its caller.
+ *
+ * <p>The flusher is used on the thread of the review only.
+ */
+public final class MarkerFlusher {
+    private static final Logger LOG = LoggerFactory.getLogger(MarkerFlusher.class);
+
+    /**
+     * The number of completed files applied at once.
+     */
+    public static final int BATCH_SIZE = 50;
+
+    /**
+     * The maximum time the completed files wait for their batch.
+     */
+    public static final long BATCH_INTERVAL_MILLIS = 2000;
+
+    private final Map<IFile, Set<MarkerInfo2>> accumulator;
+    private final Set<IFile> appliedFiles;
+    private final Map<IProject, ProjectAnalysisContext> analysisContexts;
+    private final IProgressMonitor monitor;
+    private final boolean retainMarkers;
+    private final List<IFile> completedFiles = new ArrayList<IFile>();
+    private long lastFlush = System.currentTimeMillis();
+    private int appliedMarkerCount;
+
+    /**
+     * @param accumulator
+     *            the markers of the files of the review
+     * @param appliedFiles
+     *            the set the applied files are added to
+     * @param analysisContexts
+     *            the contexts of the projects of the review, telling which
+     *            markers the review replaces
+     * @param monitor
+     *            the monitor of the review, may be null
+     * @param retainMarkers
+     *            whether the marker sets of the applied files are kept in the
+     *            accumulator
+     */
+    public MarkerFlusher(Map<IFile, Set<MarkerInfo2>> accumulator, Set<IFile> appliedFiles,
+            Map<IProject, ProjectAnalysisContext> analysisContexts, IProgressMonitor monitor,
+            boolean retainMarkers) {
+        this.accumulator = accumulator;
+        this.appliedFiles = appliedFiles;
+        this.analysisContexts = analysisContexts;
+        this.monitor = monitor;
+        this.retainMarkers = retainMarkers;
+    }
+
+    /**
+     * Tells that the markers of a file are complete in the accumulator.
+     *
+     * @param file
+     *            the file
+     * @param urgent
+     *            whether the markers are applied at once, e.g. as the file
+     *            is shown in an editor
+     */
+    public void completed(IFile file, boolean urgent) {
+        completedFiles.add(file);
+        if (urgent || completedFiles.size() >= BATCH_SIZE
+                || System.currentTimeMillis() - lastFlush >= BATCH_INTERVAL_MILLIS) {
+            flush();
+        }
+    }
+
+    /**
+     * Applies the markers of the completed files. If that fails, they are
+     * applied with the others at the end of the review.
+     */
+    public void flush() {
+        lastFlush = System.currentTimeMillis();
+        if (completedFiles.isEmpty()) {
+            return;
+        }
+        final List<IFile> batch = new ArrayList<IFile>(completedFiles);
+        completedFiles.clear();
+
+        IWorkspaceRunnable action = new IWorkspaceRunnable() {
+            @Override
+            public void run(IProgressMonitor runMonitor) throws CoreException {
+                for (IFile file : batch) {
+                    Set<MarkerInfo2> markers = accumulator.get(file);
+                    if (markers == null || appliedFiles.contains(file)) {
+                        // e.g. deferred to another review meanwhile
+                        continue;
+                    }
+                    int markerCount = MarkerUtil.replaceMarkers(file, markers,
+                            analysisContexts.get(file.getProject()), monitor);
+                    if (markerCount < 0) {
+                        return;
+                    }
+                    appliedFiles.add(file);
+                    appliedMarkerCount += markerCount;
+                    if (!retainMarkers) {
+                        accumulator.put(file, Collections.<MarkerInfo2>emptySet());
+                    }
+                }
+            }
+        };
+        try {
+            ResourcesPlugin.getWorkspace().run(action, schedulingRuleOf(batch), IWorkspace.AVOID_UPDATE, null);
+        } catch (CoreException e) {
+            LOG.warn("Unable to apply the markers of " + batch.size() + " files during the review", e);
+        }
+    }
+
+    private static ISchedulingRule schedulingRuleOf(List<IFile> files) {
+        IResourceRuleFactory ruleFactory = ResourcesPlugin.getWorkspace().getRuleFactory();
+        ISchedulingRule rule = null;
+        for (IFile file : files) {
+            rule = MultiRule.combine(rule, ruleFactory.markerRule(file));
+        }
+        return rule;
+    }
+
+    /**
+     * @return the number of markers of the files applied so far
+     */
+    public int getAppliedMarkerCount() {
+        return appliedMarkerCount;
+    }
+}
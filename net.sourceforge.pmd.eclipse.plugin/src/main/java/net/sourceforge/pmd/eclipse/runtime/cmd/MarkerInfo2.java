@@ -4,43 +4,343 @@
 
 package net.sourceforge.pmd.eclipse.runtime.cmd;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.runtime.CoreException;
 
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+
 /**
- * 
+ * The marker to create for a violation or for the analysis of a file. The
+ * record has a fixed layout: the lines, priority and severity are kept as
+ * primitives, the rule names are interned and the message of the marker is
+ * derived from the rule name and the description of the violation when the
+ * marker is created. Very long messages are truncated. The few markers with
+ * other attributes, e.g. the analysis markers, keep them as strings. The
+ * record is immutable, so that it can be shared, e.g. with the violation
+ * cache.
+ *
+ * <p>The record owns the attributes of its layout and the other attributes
+ * the plugin sets. The attributes other plug-ins add to a marker are left
+ * alone when the marker is compared or updated.
+ *
  * @author Brian Remedios
  */
-public class MarkerInfo2 {
+public final class MarkerInfo2 {
+
+    /**
+     * The attributes of the marker of a violation, in the order of
+     * {@link #getAttributeValues()}.
+     */
+    private static final String[] VIOLATION_ATTRIBUTE_NAMES = { IMarker.MESSAGE,
+        PMDRuntimeConstants.KEY_MARKERATT_MESSAGE, IMarker.LINE_NUMBER, PMDRuntimeConstants.KEY_MARKERATT_LINE2,
+        PMDRuntimeConstants.KEY_MARKERATT_RULENAME, PMDRuntimeConstants.KEY_MARKERATT_PRIORITY, IMarker.PRIORITY,
+        IMarker.SEVERITY, };
+
+    private static final String[] ANALYSIS_ATTRIBUTE_NAMES = { IMarker.MESSAGE, IMarker.SEVERITY, };
+
+    /**
+     * The attributes the plugin sets besides the layout, on some markers only.
+     */
+    private static final String[] OPTIONAL_ATTRIBUTE_NAMES = { PMDRuntimeConstants.KEY_MARKERATT_PRESCAN,
+        PMDRuntimeConstants.KEY_MARKERATT_TIER, };
+
+    private static final Set<String> OWNED_ATTRIBUTE_NAMES = new HashSet<String>();
+
+    static {
+        OWNED_ATTRIBUTE_NAMES.addAll(Arrays.asList(VIOLATION_ATTRIBUTE_NAMES));
+        OWNED_ATTRIBUTE_NAMES.addAll(Arrays.asList(ANALYSIS_ATTRIBUTE_NAMES));
+        OWNED_ATTRIBUTE_NAMES.addAll(Arrays.asList(OPTIONAL_ATTRIBUTE_NAMES));
+    }
+
+    private static final String[] NO_ATTRIBUTES = new String[0];
+
+    // keeps the message within the limits of the marker attributes and of DataOutput.writeUTF
+    private static final int MAX_MESSAGE_LENGTH = 8192;
 
     private final String type;
-    private Map<String, Object> data;
+    private final String ruleName;
+    private final String message;
+    private final int line;
+    private final int line2;
+    private final int priority;
+    private final int severity;
+    // names and values of the other attributes, one after the other
+    private final String[] additionalAttributes;
+
+    private MarkerInfo2(String type, String ruleName, String message, int line, int line2, int priority,
+            int severity, String[] additionalAttributes) {
+        this.type = type.intern();
+        this.ruleName = ruleName == null ? null : ruleName.intern();
+        this.message = message != null && message.length() > MAX_MESSAGE_LENGTH
+                ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+        this.line = line;
+        this.line2 = line2;
+        this.priority = priority;
+        this.severity = severity;
+        this.additionalAttributes = additionalAttributes;
+    }
+
+    /**
+     * Creates the marker of a violation.
+     *
+     * @param type
+     *            the marker type
+     * @param ruleName
+     *            the name of the violated rule
+     * @param description
+     *            the description of the violation
+     * @param line
+     *            the first line of the violation
+     * @param line2
+     *            the last line of the violation
+     * @param priority
+     *            the PMD priority of the rule
+     * @param severity
+     *            the marker severity, e.g. {@link IMarker#SEVERITY_WARNING}
+     * @return the marker
+     */
+    public static MarkerInfo2 violation(String type, String ruleName, String description, int line, int line2,
+            int priority, int severity) {
+        return new MarkerInfo2(type, ruleName, description, line, line2, priority, severity, NO_ATTRIBUTES);
+    }
+
+    /**
+     * Creates a marker not related to a rule, e.g. telling how a file has
+     * been analyzed.
+     *
+     * @param type
+     *            the marker type
+     * @param message
+     *            the message of the marker
+     * @param severity
+     *            the marker severity, e.g. {@link IMarker#SEVERITY_INFO}
+     * @return the marker
+     */
+    public static MarkerInfo2 of(String type, String message, int severity) {
+        return new MarkerInfo2(type, null, message, 0, 0, 0, severity, NO_ATTRIBUTES);
+    }
+
+    /**
+     * @param name
+     *            the name of an attribute not part of the fixed layout
+     * @param value
+     *            its value
+     * @return a copy of this marker with the attribute
+     */
+    public MarkerInfo2 withAttribute(String name, String value) {
+        String[] attributes = Arrays.copyOf(additionalAttributes, additionalAttributes.length + 2);
+        attributes[attributes.length - 2] = name.intern();
+        attributes[attributes.length - 1] = value;
+        return new MarkerInfo2(type, ruleName, message, line, line2, priority, severity, attributes);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return the name of the violated rule, null if the marker is not related
+     *         to a rule
+     */
+    public String getRuleName() {
+        return ruleName;
+    }
+
+    /**
+     * @return the description of the violation, or the message of a marker not
+     *         related to a rule
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getLine2() {
+        return line2;
+    }
+
+    /**
+     * @return the PMD priority of the rule, 0 if the marker is not related to
+     *         a rule
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    public int getSeverity() {
+        return severity;
+    }
+
+    /**
+     * @param name
+     *            the name of an attribute not part of the fixed layout
+     * @return its value, or null if the marker does not have it
+     */
+    public String getAdditionalAttribute(String name) {
+        for (int i = 0; i < additionalAttributes.length; i += 2) {
+            if (additionalAttributes[i].equals(name)) {
+                return additionalAttributes[i + 1];
+            }
+        }
+        return null;
+    }
 
-    public MarkerInfo2(String theType, int expectedSize) {
-        type = theType;
-        data = new HashMap<String, Object>(expectedSize);
+    /**
+     * @return the attributes not part of the fixed layout, by name
+     */
+    public Map<String, String> getAdditionalAttributes() {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        for (int i = 0; i < additionalAttributes.length; i += 2) {
+            attributes.put(additionalAttributes[i], additionalAttributes[i + 1]);
+        }
+        return attributes;
     }
 
-    public void add(String name, Object value) {
-        data.put(name, value);
+    /**
+     * @return the names of the attributes of the marker, the array must not be
+     *         modified
+     */
+    public String[] getAttributeNames() {
+        String[] names = ruleName == null ? ANALYSIS_ATTRIBUTE_NAMES : VIOLATION_ATTRIBUTE_NAMES;
+        if (additionalAttributes.length == 0) {
+            return names;
+        }
+        String[] allNames = Arrays.copyOf(names, names.length + additionalAttributes.length / 2);
+        for (int i = 0; i < additionalAttributes.length; i += 2) {
+            allNames[names.length + i / 2] = additionalAttributes[i];
+        }
+        return allNames;
     }
 
-    public void add(String name, int value) {
-        add(name, Integer.valueOf(value));
+    /**
+     * @return the values of the attributes of the marker, in the order of
+     *         {@link #getAttributeNames()}
+     */
+    public Object[] getAttributeValues() {
+        Object[] values;
+        int index;
+        if (ruleName == null) {
+            values = new Object[ANALYSIS_ATTRIBUTE_NAMES.length + additionalAttributes.length / 2];
+            values[0] = message;
+            values[1] = Integer.valueOf(severity);
+            index = ANALYSIS_ATTRIBUTE_NAMES.length;
+        } else {
+            values = new Object[VIOLATION_ATTRIBUTE_NAMES.length + additionalAttributes.length / 2];
+            values[0] = getMarkerMessage();
+            values[1] = message;
+            values[2] = Integer.valueOf(line);
+            values[3] = Integer.valueOf(line2);
+            values[4] = ruleName;
+            values[5] = Integer.valueOf(priority);
+            values[6] = Integer.valueOf(IMarker.PRIORITY_NORMAL);
+            values[7] = Integer.valueOf(severity);
+            index = VIOLATION_ATTRIBUTE_NAMES.length;
+        }
+        for (int i = 1; i < additionalAttributes.length; i += 2) {
+            values[index++] = additionalAttributes[i];
+        }
+        return values;
     }
 
-    public void addAsMarkerTo(IFile file) throws CoreException {
+    /**
+     * @return the attributes of the marker by name, built on each call
+     */
+    public Map<String, Object> getAttributes() {
+        String[] names = getAttributeNames();
+        Object[] values = getAttributeValues();
+        Map<String, Object> attributes = new HashMap<String, Object>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            attributes.put(names[i], values[i]);
+        }
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    /**
+     * @param name
+     *            the name of a marker attribute
+     * @return true if the attribute is set by the plugin, rather than by
+     *         another plug-in
+     * @see #hasAttributes(Map)
+     */
+    public static boolean isOwnedAttribute(String name) {
+        return OWNED_ATTRIBUTE_NAMES.contains(name);
+    }
+
+    /**
+     * Tells whether the attributes of an existing marker are the ones of this
+     * marker. Only the attributes owned by the plugin are compared. The
+     * attributes of the marker of a violation are compared without building
+     * them.
+     *
+     * @param attributes
+     *            the attributes of an existing marker
+     * @return true if the owned attributes are the same
+     */
+    public boolean hasAttributes(Map<String, Object> attributes) {
+        if (ruleName == null || additionalAttributes.length > 0) {
+            // rare, not worth a dedicated comparison
+            Map<String, Object> ownedAttributes = new HashMap<String, Object>(attributes);
+            ownedAttributes.keySet().retainAll(OWNED_ATTRIBUTE_NAMES);
+            return getAttributes().equals(ownedAttributes);
+        }
+        for (String name : OPTIONAL_ATTRIBUTE_NAMES) {
+            if (attributes.containsKey(name)) {
+                return false;
+            }
+        }
+        Object markerMessage = attributes.get(IMarker.MESSAGE);
+        return isInteger(attributes.get(IMarker.LINE_NUMBER), line)
+                && isInteger(attributes.get(PMDRuntimeConstants.KEY_MARKERATT_LINE2), line2)
+                && isInteger(attributes.get(PMDRuntimeConstants.KEY_MARKERATT_PRIORITY), priority)
+                && isInteger(attributes.get(IMarker.PRIORITY), IMarker.PRIORITY_NORMAL)
+                && isInteger(attributes.get(IMarker.SEVERITY), severity)
+                && ruleName.equals(attributes.get(PMDRuntimeConstants.KEY_MARKERATT_RULENAME))
+                && message.equals(attributes.get(PMDRuntimeConstants.KEY_MARKERATT_MESSAGE))
+                && markerMessage instanceof String && isMarkerMessage((String) markerMessage);
+    }
+
+    private static boolean isInteger(Object value, int expected) {
+        return value instanceof Integer && ((Integer) value).intValue() == expected;
+    }
+
+    private boolean isMarkerMessage(String markerMessage) {
+        return markerMessage.length() == ruleName.length() + 2 + message.length()
+                && markerMessage.startsWith(ruleName) && markerMessage.startsWith(": ", ruleName.length())
+                && markerMessage.endsWith(message);
+    }
+
+    private String getMarkerMessage() {
+        return ruleName + ": " + message;
+    }
 
+    /**
+     * Creates the marker. It should be called within a workspace operation,
+     * so that the markers of a file are created in one batch.
+     *
+     * @param file
+     *            the file
+     * @return the marker
+     */
+    public IMarker addAsMarkerTo(IFile file) throws CoreException {
         IMarker marker = file.createMarker(type);
-        marker.setAttributes(data.keySet().toArray(new String[data.size()]), data.values().toArray());
+        marker.setAttributes(getAttributeNames(), getAttributeValues());
+        return marker;
     }
 
+    @Override
     public String toString() {
-        return "MarkerInfo2: rule=" + data.get("rulename") + ", message=" + data.get(IMarker.MESSAGE) + ", line="
-                + data.get(IMarker.LINE_NUMBER);
+        return "MarkerInfo2: rule=" + ruleName + ", message=" + message + ", line=" + line;
     }
 }
@@ -0,0 +1,194 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tells whether a path fully matches any of a collection of regular
+ * expressions, as the include and exclude patterns of a ruleset.
+ *
+ * <p>Most of these patterns are a literal path followed by <code>.*</code>,
+ * e.g. the patterns derived from the build path. They are stored in a prefix
+ * tree, which is walked once along the path. All other patterns are combined
+ * into a single regular expression, so that a path is matched at most once.
+ * Invalid patterns never match, as in PMD.
+ */
+public final class PathMatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PathMatcher.class);
+
+    private static final String ANY_SUFFIX = ".*";
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    private final Node prefixes = new Node();
+    private final Pattern combinedPattern;
+    // patterns with back references can not be combined without renumbering,
+    // and the patterns that fail to combine
+    private final List<Pattern> separatePatterns = new ArrayList<Pattern>();
+    private boolean empty = true;
+
+    private PathMatcher(Collection<String> regexes) {
+        StringBuilder combined = new StringBuilder();
+        List<Pattern> combinedPatterns = new ArrayList<Pattern>();
+        for (String regex : regexes) {
+            if (regex.endsWith(ANY_SUFFIX) && literalOf(regex.substring(0, regex.length() - 2)) != null) {
+                prefixes.add(literalOf(regex.substring(0, regex.length() - 2))).prefixEnd = true;
+            } else if (literalOf(regex) != null) {
+                prefixes.add(literalOf(regex)).exactEnd = true;
+            } else {
+                Pattern pattern = compile(regex);
+                if (pattern == null) {
+                    continue;
+                } else if (hasBackReference(regex)) {
+                    separatePatterns.add(pattern);
+                } else {
+                    if (combined.length() > 0) {
+                        combined.append('|');
+                    }
+                    combined.append("(?:").append(regex).append(')');
+                    combinedPatterns.add(pattern);
+                }
+            }
+            empty = false;
+        }
+        combinedPattern = combined.length() == 0 ? null : compileCombined(combined.toString(), combinedPatterns);
+    }
+
+    /**
+     * Compiles the combined patterns. Valid patterns may not combine, e.g.
+     * if they declare the same named group or one ends within a quote, then
+     * they are matched one after the other.
+     */
+    private Pattern compileCombined(String combined, List<Pattern> combinedPatterns) {
+        try {
+            return Pattern.compile(combined);
+        } catch (PatternSyntaxException e) {
+            LOG.debug("Unable to combine the patterns, they are matched separately: " + e.getMessage());
+            separatePatterns.addAll(combinedPatterns);
+            return null;
+        }
+    }
+
+    /**
+     * Compiles regular expressions into a matcher.
+     *
+     * @param regexes
+     *            the regular expressions, which must match the whole path
+     * @return the matcher
+     */
+    public static PathMatcher compile(Collection<String> regexes) {
+        return new PathMatcher(regexes);
+    }
+
+    /**
+     * @return whether no path can match
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @param path
+     *            a path, with '/' as separator
+     * @return whether one of the regular expressions matches the whole path
+     */
+    public boolean matches(String path) {
+        if (empty) {
+            return false;
+        }
+        Node node = prefixes;
+        int length = path.length();
+        for (int i = 0; node != null; i++) {
+            if (node.prefixEnd || i == length && node.exactEnd) {
+                return true;
+            }
+            node = i < length ? node.children.get(path.charAt(i)) : null;
+        }
+        if (combinedPattern != null && combinedPattern.matcher(path).matches()) {
+            return true;
+        }
+        for (Pattern pattern : separatePatterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the text a regular expression matches literally, or null if it
+     *         contains unescaped meta characters
+     */
+    public static String literalOf(String regex) {
+        StringBuilder literal = new StringBuilder(regex.length());
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                // only escaped punctuation is literal, e.g. "\d" or "\Q" are not
+                if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    return null;
+                }
+                literal.append(regex.charAt(++i));
+            } else if (META_CHARACTERS.indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+
+    private static boolean hasBackReference(String regex) {
+        for (int i = 0; i < regex.length() - 1; i++) {
+            if (regex.charAt(i) == '\\') {
+                char next = regex.charAt(i + 1);
+                if (Character.isDigit(next) || next == 'k') {
+                    return true;
+                }
+                i++;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern compile(String regex) {
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            LOG.warn("Ignoring invalid path pattern " + regex, e);
+            return null;
+        }
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<Character, Node>();
+        private boolean prefixEnd;
+        private boolean exactEnd;
+
+        Node add(String text) {
+            Node node = this;
+            for (int i = 0; i < text.length(); i++) {
+                Character c = Character.valueOf(text.charAt(i));
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.ui.IWorkingSet;
+
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
+import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
+import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.LanguageVersionDiscoverer;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+
+/**
+ * Everything a review needs to know about a project, computed once per
+ * project and review. The context is not modified after its creation, so
+ * that the visitors and the analysis threads can share it.
+ */
+public final class ProjectAnalysisContext {
+
+    private final IProjectProperties properties;
+    private final RuleSets ruleSets;
+    // the tier of the rulesets, null if they contain the rules of all tiers
+    private final RuleTier tier;
+    // the names of the rules of the background tier, among all the rules of the review
+    private final Set<String> backgroundRuleNames;
+    private final RuleSetsFileFilter ruleSetsFileFilter;
+    private final Set<String> fileExtensions;
+    private final LanguageVersion javaVersion;
+    private final LanguageVersionDiscoverer languageDiscoverer;
+    private final Language javaLanguage;
+    private final ClassLoader auxClasspath;
+    // the full paths of the working set resources, null if there is no working set
+    private final Set<IPath> workingSetPaths;
+    private final String analysisCacheLocation;
+    private final boolean includeDerivedFiles;
+    private final boolean violationsAsErrors;
+    private final boolean determineFiletypesAutomatically;
+    private final boolean buildPathEnabled;
+
+    private ProjectAnalysisContext(IProjectProperties properties, RuleSets ruleSets, Set<String> fileExtensions,
+            IPreferences preferences) throws PropertiesException {
+        IProject project = properties.getProject();
+        this.properties = properties;
+        this.ruleSets = ruleSets;
+        this.tier = null;
+        this.backgroundRuleNames = Collections.unmodifiableSet(
+                RuleTier.backgroundRuleNamesOf(ruleSets.getAllRules(), preferences.getBackgroundRuleNames()));
+        this.ruleSetsFileFilter = new RuleSetsFileFilter(ruleSets);
+        this.fileExtensions = fileExtensions == null ? null
+                : Collections.unmodifiableSet(new HashSet<String>(fileExtensions));
+        this.javaVersion = PMDPlugin.javaVersionFor(project);
+        this.languageDiscoverer = new LanguageVersionDiscoverer();
+        this.javaLanguage = LanguageRegistry.getLanguage(JavaLanguageModule.NAME);
+        this.buildPathEnabled = preferences.isProjectBuildPathEnabled();
+        this.auxClasspath = buildPathEnabled ? properties.getAuxClasspath() : null;
+        this.workingSetPaths = workingSetPathsOf(properties.getProjectWorkingSet());
+        this.analysisCacheLocation = properties.getAnalysisCacheLocation();
+        this.includeDerivedFiles = properties.isIncludeDerivedFiles();
+        this.violationsAsErrors = properties.violationsAsErrors();
+        this.determineFiletypesAutomatically = preferences.isDetermineFiletypesAutomatically();
+    }
+
+    private ProjectAnalysisContext(ProjectAnalysisContext context, RuleTier tier) {
+        this.properties = context.properties;
+        this.tier = tier;
+        this.backgroundRuleNames = context.backgroundRuleNames;
+        this.ruleSets = tier.select(context.ruleSets, backgroundRuleNames);
+        this.ruleSetsFileFilter = new RuleSetsFileFilter(ruleSets);
+        this.fileExtensions = context.fileExtensions;
+        this.javaVersion = context.javaVersion;
+        this.languageDiscoverer = context.languageDiscoverer;
+        this.javaLanguage = context.javaLanguage;
+        this.buildPathEnabled = context.buildPathEnabled;
+        this.auxClasspath = context.auxClasspath;
+        this.workingSetPaths = context.workingSetPaths;
+        // PMD drops its whole cache when the rules change, so each tier has its own
+        this.analysisCacheLocation = context.analysisCacheLocation == null ? null
+                : context.analysisCacheLocation + tier.cacheSuffix();
+        this.includeDerivedFiles = context.includeDerivedFiles;
+        this.violationsAsErrors = context.violationsAsErrors;
+        this.determineFiletypesAutomatically = context.determineFiletypesAutomatically;
+    }
+
+    /**
+     * Creates the context of a project.
+     *
+     * @param properties
+     *            the properties of the project
+     * @param ruleSets
+     *            the rulesets to apply, already filtered by the preferences
+     * @param fileExtensions
+     *            the extensions of the files the rules apply to, may be null
+     * @param preferences
+     *            the plugin preferences
+     */
+    public static ProjectAnalysisContext create(IProjectProperties properties, RuleSets ruleSets,
+            Set<String> fileExtensions, IPreferences preferences) throws PropertiesException {
+        return new ProjectAnalysisContext(properties, ruleSets, fileExtensions, preferences);
+    }
+
+    /**
+     * Derives the context of the review of a single tier from the context of
+     * a project. The rulesets keep only the rules of the tier.
+     *
+     * @param ruleTier
+     *            the tier to review
+     * @return the context of the tier
+     */
+    public ProjectAnalysisContext forTier(RuleTier ruleTier) {
+        if (tier != null) {
+            throw new IllegalStateException("The context is already restricted to the " + tier + " tier");
+        }
+        return new ProjectAnalysisContext(this, ruleTier);
+    }
+
+    private static Set<IPath> workingSetPathsOf(IWorkingSet workingSet) {
+        if (workingSet == null) {
+            return null;
+        }
+        Set<IPath> paths = new HashSet<IPath>();
+        for (IAdaptable element : workingSet.getElements()) {
+            IResource resource = (IResource) element.getAdapter(IResource.class);
+            if (resource != null) {
+                paths.add(resource.getFullPath());
+            }
+        }
+        return paths;
+    }
+
+    public IProject getProject() {
+        return properties.getProject();
+    }
+
+    public IProjectProperties getProperties() {
+        return properties;
+    }
+
+    public RuleSets getRuleSets() {
+        return ruleSets;
+    }
+
+    /**
+     * @return the tier of the rules of the context, or null if the context
+     *         contains the rules of all tiers
+     */
+    public RuleTier getTier() {
+        return tier;
+    }
+
+    /**
+     * @return whether some rules of the project belong to the background tier
+     */
+    public boolean hasBackgroundRules() {
+        return !backgroundRuleNames.isEmpty();
+    }
+
+    /**
+     * Tells whether a review with this context replaces a marker: a review of
+     * all tiers replaces all markers, the review of a tier only the markers
+     * of that tier.
+     *
+     * @param marker
+     *            a PMD marker of a file of the project
+     */
+    public boolean replaces(IMarker marker) {
+        return tier == null || tier.owns(marker, backgroundRuleNames);
+    }
+
+    /**
+     * @return the java version of the project, or null if it is not a java
+     *         project
+     */
+    public LanguageVersion getJavaVersion() {
+        return javaVersion;
+    }
+
+    /**
+     * @return the class loader of the project build path, or null if the
+     *         build path must not be used
+     */
+    public ClassLoader getAuxClasspath() {
+        return auxClasspath;
+    }
+
+    /**
+     * @return the location of the PMD analysis cache, or null if there is none
+     */
+    public String getAnalysisCacheLocation() {
+        return analysisCacheLocation;
+    }
+
+    public boolean isViolationsAsErrors() {
+        return violationsAsErrors;
+    }
+
+    public boolean isBuildPathEnabled() {
+        return buildPathEnabled;
+    }
+
+    /**
+     * @param fileName
+     *            the name of a file
+     * @return whether the file has an extension and, if the file types are
+     *         determined automatically, whether the rules apply to it
+     */
+    public boolean hasApplicableExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot == -1) {
+            return false;
+        }
+        if (!determineFiletypesAutomatically || fileExtensions == null) {
+            return true;
+        }
+        return fileExtensions.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return whether a file with the given derived flag must be checked with
+     *         respect to the derived files setting of the project
+     */
+    public boolean isIncluded(boolean derived) {
+        return includeDerivedFiles || !derived;
+    }
+
+    /**
+     * @param fullPath
+     *            the full path of a file
+     * @return whether the file belongs to the working set of the project, if
+     *         any
+     */
+    public boolean isInWorkingSet(IPath fullPath) {
+        if (workingSetPaths == null) {
+            return true;
+        }
+        for (IPath path = fullPath; path.segmentCount() > 0; path = path.removeLastSegments(1)) {
+            if (workingSetPaths.contains(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether a file with an applicable extension must be analyzed:
+     * it is not excluded as derived file, belongs to the working set, PMD
+     * supports its language and it is not excluded by the rulesets.
+     */
+    public boolean accepts(IFile file) {
+        return isIncluded(file.isDerived()) && isInWorkingSet(file.getFullPath())
+                && languageVersionOf(file.getName()) != null
+                && ruleSetsFileFilter.applies(file.getRawLocation().toFile());
+    }
+
+    /**
+     * @return the language version to analyze the file with, or null if PMD
+     *         does not support the file
+     */
+    public LanguageVersion languageVersionOf(String fileName) {
+        LanguageVersion languageVersion = languageDiscoverer.getDefaultLanguageVersionForFile(fileName);
+        // in case it is java, select the java version of the project
+        if (languageVersion != null && languageVersion.getLanguage() == javaLanguage) {
+            return javaVersion;
+        }
+        return languageVersion;
+    }
+}
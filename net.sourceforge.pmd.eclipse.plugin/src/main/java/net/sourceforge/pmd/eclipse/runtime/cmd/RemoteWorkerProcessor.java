@@ -0,0 +1,211 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Report.ProcessingError;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.eclipse.runtime.worker.AnalysisWorker;
+import net.sourceforge.pmd.eclipse.runtime.worker.AnalysisWorkerPool;
+import net.sourceforge.pmd.eclipse.runtime.worker.ViolationRecord;
+import net.sourceforge.pmd.eclipse.runtime.worker.WorkerConfiguration;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.processor.PmdRunnable;
+import net.sourceforge.pmd.util.datasource.DataSource;
+
+/**
+ * Analyzes the files in the analysis worker JVMs instead of the workbench
+ * JVM, so that the analysis does not fill the heap of the workbench. The
+ * worker threads of the processor only wait for the answers of the workers.
+ *
+ * <p>A file whose worker crashed is analyzed once more on a new worker. If
+ * the workers can not be started, or can not load the rules, e.g. as a rule
+ * class is only available in the workbench, the files are analyzed in the
+ * workbench as usual.
+ */
+class RemoteWorkerProcessor extends WorkerPoolProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(RemoteWorkerProcessor.class);
+
+    private static final int MAX_ATTEMPTS = 2;
+
+    private final AnalysisWorkerPool pool = AnalysisWorkerPool.getInstance();
+    private final WorkerConfiguration workerConfiguration;
+    private final Map<String, Rule> rulesByName = new HashMap<String, Rule>();
+    private final int poolSize;
+    private final int heapMegabytes;
+    // the workers analyzing a file, so that they can be stopped when it is abandoned
+    private final Map<DataSource, AnalysisWorker> busyWorkers = new ConcurrentHashMap<DataSource, AnalysisWorker>();
+    private final Set<DataSource> abandoned = Collections
+            .newSetFromMap(new ConcurrentHashMap<DataSource, Boolean>());
+    private volatile boolean analyzeLocally;
+
+    /**
+     * @param ruleSets
+     *            the rules of the review, they are written to a ruleset file
+     *            for the workers
+     * @param javaVersion
+     *            the Java version of the project, may be null
+     * @param auxClasspath
+     *            the auxclasspath of the project, may be null
+     * @param poolSize
+     *            the number of worker JVMs
+     * @param heapMegabytes
+     *            the maximum heap size of the worker JVMs
+     * @throws IOException
+     *             if the ruleset file could not be written
+     * @see WorkerPoolProcessor#WorkerPoolProcessor(PMDConfiguration, int,
+     *      IProgressMonitor, FileReportListener, long, AnalysisGovernor)
+     */
+    RemoteWorkerProcessor(PMDConfiguration configuration, int threadCount, IProgressMonitor monitor,
+            FileReportListener listener, long timeoutMillis, AnalysisGovernor governor, RuleSets ruleSets,
+            LanguageVersion javaVersion, ClassLoader auxClasspath, int poolSize, int heapMegabytes) throws IOException {
+        super(configuration, threadCount, monitor, listener, timeoutMillis, governor);
+        this.poolSize = poolSize;
+        this.heapMegabytes = heapMegabytes;
+        for (Rule rule : ruleSets.getAllRules()) {
+            if (!rulesByName.containsKey(rule.getName())) {
+                rulesByName.put(rule.getName(), rule);
+            }
+        }
+        this.workerConfiguration = new WorkerConfiguration(AnalysisWorkerPool.ruleSetFileOf(ruleSets).getPath(),
+                javaVersion == null ? "" : javaVersion.getTerseName(), classpathOf(auxClasspath));
+    }
+
+    private static List<String> classpathOf(ClassLoader classLoader) {
+        List<String> entries = new ArrayList<String>();
+        if (classLoader instanceof URLClassLoader) {
+            for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                try {
+                    entries.add(new File(url.toURI()).getPath());
+                } catch (URISyntaxException e) {
+                    entries.add(url.getPath());
+                } catch (IllegalArgumentException e) {
+                    LOG.debug("Skipping the auxclasspath entry " + url, e);
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    protected Callable<Report> analysisTask(final PmdRunnable runnable, final DataSource dataSource) {
+        return new Callable<Report>() {
+            @Override
+            public Report call() throws InterruptedException {
+                return analyzeRemotely(runnable, dataSource);
+            }
+        };
+    }
+
+    @Override
+    protected void analysisAbandoned(DataSource dataSource) {
+        abandoned.add(dataSource);
+        AnalysisWorker worker = busyWorkers.get(dataSource);
+        if (worker != null) {
+            LOG.debug("Stopping the analysis worker of " + dataSource);
+            worker.destroy();
+        }
+    }
+
+    private Report analyzeRemotely(PmdRunnable runnable, DataSource dataSource) throws InterruptedException {
+        String fileName = dataSource.getNiceFileName(false, null);
+        String charset = charsetOf(dataSource);
+        for (int attempt = 1;; attempt++) {
+            if (analyzeLocally) {
+                return runnable.call();
+            }
+            AnalysisWorker worker;
+            try {
+                worker = pool.lease(poolSize, heapMegabytes);
+            } catch (IOException e) {
+                LOG.warn("The analysis workers could not be started, analyzing in the workbench", e);
+                analyzeLocally = true;
+                continue;
+            }
+            busyWorkers.put(dataSource, worker);
+            try {
+                AnalysisWorker.Result result = worker.analyze(workerConfiguration, fileName, charset);
+                if (result.isConfigurationFailed()) {
+                    LOG.warn("The analysis workers could not load the rules, analyzing in the workbench: "
+                            + result.getError());
+                    analyzeLocally = true;
+                    continue;
+                }
+                return reportOf(result, fileName);
+            } catch (IOException e) {
+                if (abandoned.contains(dataSource)) {
+                    // the report is dropped anyway
+                    return new Report();
+                }
+                if (attempt >= MAX_ATTEMPTS) {
+                    LOG.warn("The analysis worker crashed again while analyzing " + fileName, e);
+                    Report report = new Report();
+                    report.addError(new ProcessingError(e, fileName));
+                    return report;
+                }
+                LOG.warn("The analysis worker crashed while analyzing " + fileName + ", retrying", e);
+            } finally {
+                busyWorkers.remove(dataSource);
+                pool.release(worker, poolSize, heapMegabytes);
+            }
+        }
+    }
+
+    private String charsetOf(DataSource dataSource) {
+        if (dataSource instanceof WorkspaceFileDataSource) {
+            try {
+                return ((WorkspaceFileDataSource) dataSource).getFile().getCharset();
+            } catch (CoreException e) {
+                LOG.debug("Unable to determine the charset of " + dataSource, e);
+            }
+        }
+        return configuration.getSourceEncoding().name();
+    }
+
+    private Report reportOf(AnalysisWorker.Result result, String fileName) {
+        Report report = new Report();
+        if (result.getError() != null) {
+            report.addError(new ProcessingError(new IOException(result.getError()), fileName));
+            return report;
+        }
+        for (ViolationRecord record : result.getViolations()) {
+            Rule rule = rulesByName.get(record.getRuleName());
+            if (rule == null) {
+                LOG.debug("Ignoring a violation of the unknown rule " + record.getRuleName());
+                continue;
+            }
+            FakeRuleViolation violation = new FakeRuleViolation(rule);
+            violation.setFilename(fileName);
+            violation.setBeginLine(record.getBeginLine());
+            violation.setEndLine(record.getEndLine());
+            violation.setBeginColumn(record.getBeginColumn());
+            violation.setEndColumn(record.getEndColumn());
+            violation.setDescription(record.getDescription());
+            report.addRuleViolation(violation);
+        }
+        return report;
+    }
+}
@@ -30,7 +30,7 @@ import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
-import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
+import net.sourceforge.pmd.eclipse.runtime.builder.MarkerQuery;
 import net.sourceforge.pmd.eclipse.util.IOUtil;
 import net.sourceforge.pmd.renderers.Renderer;
 import net.sourceforge.pmd.util.StringUtil;
@@ -182,24 +182,27 @@ public class RenderReportsCmd extends AbstractProjectCommand {
      */
     private Report createReport(IProject project) throws CoreException {
 
-        Report report = new Report();
+        final Report report = new Report();
 
-        IMarker[] markers = MarkerUtil.findAllMarkers(project);
-        RuleSet ruleSet = PMDPlugin.getDefault().getPreferencesManager().getRuleSet();
-        boolean isJavaProject = project.hasNature(JavaCore.NATURE_ID);
+        final RuleSet ruleSet = PMDPlugin.getDefault().getPreferencesManager().getRuleSet();
+        final boolean isJavaProject = project.hasNature(JavaCore.NATURE_ID);
 
-        for (IMarker marker : markers) {
-            String ruleName = marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, "");
-            Rule rule = ruleSet.getRuleByName(ruleName);
+        // the markers are added to the report as they are found
+        MarkerQuery.allMarkers().accept(project, new MarkerQuery.MarkerVisitor() {
+            public boolean visit(IMarker marker) throws CoreException {
+                String ruleName = marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, "");
+                Rule rule = ruleSet.getRuleByName(ruleName);
 
-            FakeRuleViolation ruleViolation = createViolation(marker, rule);
+                FakeRuleViolation ruleViolation = createViolation(marker, rule);
 
-            if (isJavaProject && marker.getResource() instanceof IFile) {
-                classAndPackageFrom(marker, ruleViolation);
-            }
+                if (isJavaProject && marker.getResource() instanceof IFile) {
+                    classAndPackageFrom(marker, ruleViolation);
+                }
 
-            report.addRuleViolation(ruleViolation);
-        }
+                report.addRuleViolation(ruleViolation);
+                return true;
+            }
+        });
 
         return report;
     }
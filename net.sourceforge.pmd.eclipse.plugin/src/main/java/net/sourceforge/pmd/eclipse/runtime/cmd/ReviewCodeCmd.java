@@ -6,8 +6,11 @@ package net.sourceforge.pmd.eclipse.runtime.cmd;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -18,17 +21,11 @@ import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
-import org.eclipse.core.resources.IResourceDeltaVisitor;
-import org.eclipse.core.resources.IResourceRuleFactory;
-import org.eclipse.core.resources.IResourceVisitor;
-import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
-import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
-import org.eclipse.core.runtime.jobs.MultiRule;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
@@ -44,10 +41,15 @@ import org.slf4j.LoggerFactory;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.eclipse.plugin.EditorTracker;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
-import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
+import net.sourceforge.pmd.eclipse.runtime.cache.DependencyIndex;
+import net.sourceforge.pmd.eclipse.runtime.cache.ReviewCostModel;
+import net.sourceforge.pmd.eclipse.runtime.cache.RuleSetsCache;
+import net.sourceforge.pmd.eclipse.runtime.cache.ViolationCache;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferencesManager;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
 import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
@@ -64,9 +66,15 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
 
     private static final Logger LOG = LoggerFactory.getLogger(ReviewCodeCmd.class);
 
+    // the maximum number of dependent files a review checks again at once
+    private static final int MAX_DEPENDENT_FILES = 200;
+
     private final List<IResource> resources = new ArrayList<IResource>();
     private IResourceDelta resourceDelta;
-    private Map<IFile, Set<MarkerInfo2>> markersByFile = new HashMap<IFile, Set<MarkerInfo2>>();
+    // the files whose markers were applied during the analysis
+    private Set<IFile> appliedFiles = Collections.synchronizedSet(new HashSet<IFile>());
+    private Map<IFile, Set<MarkerInfo2>> markersByFile = Collections
+            .synchronizedMap(new HashMap<IFile, Set<MarkerInfo2>>());
     private boolean taskMarker;
     private boolean openPmdPerspective;
     private boolean openPmdViolationsOverviewView;
@@ -74,19 +82,48 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
     private int ruleCount;
     private int fileCount;
     private long pmdDuration;
+    private int violationCacheHits;
+    private int analysisCacheHits;
+    private int analysisCacheMisses;
+    private int timedOutFiles;
+    private int skippedFiles;
+    private int lightFiles;
     private String onErrorIssue = null;
     /**
      * Whether to run the review command, even if PMD is disabled in the project settings.
      */
     private boolean runAlways = false;
     /**
-     * Maximum count of changed resources, that are considered to be not a full build. If more than these resources are
-     * changed, PMD will only be executed, if full build option is enabled.
+     * Whether the review checks the files a previous review deferred, so that
+     * it is not limited by the latency budget.
+     */
+    private boolean deferredReview = false;
+    /**
+     * The rule tier the review is restricted to, null to review all the rules.
+     */
+    private RuleTier tier = null;
+    /**
+     * Whether the review only analyzes the files that changed since their
+     * last review, leaving the markers of the other files untouched.
+     */
+    private boolean staleOnly = false;
+    /**
+     * Whether the markers of the files applied during the review are kept,
+     * so that {@link #getMarkers()} returns all of them.
      */
-    private static final int MAXIMUM_RESOURCE_COUNT = 5;
+    private boolean retainMarkers = false;
+    /**
+     * The dependent files reviewed in the next batches, once this review has
+     * completed.
+     */
+    private List<IFile> nextDependents = Collections.emptyList();
+    private MarkerFlusher markerFlusher;
 
     private IProjectProperties propertyCache = null;
 
+    private final Map<IProject, ProjectAnalysisContext> analysisContexts
+            = new HashMap<IProject, ProjectAnalysisContext>();
+
     private static final long serialVersionUID = 1L;
 
     /**
@@ -173,6 +210,15 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
             fileCount = 0;
             ruleCount = 0;
             pmdDuration = 0;
+            violationCacheHits = 0;
+            analysisCacheHits = 0;
+            analysisCacheMisses = 0;
+            timedOutFiles = 0;
+            skippedFiles = 0;
+            lightFiles = 0;
+            analysisContexts.clear();
+            markerFlusher = new MarkerFlusher(markersByFile, appliedFiles, analysisContexts, getMonitor(),
+                    retainMarkers);
 
             beginTask("PMD checking...", getStepCount());
 
@@ -188,31 +234,10 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
             // do we really need to do any of the rest of this if
             // fileCount and ruleCount are both 0?
 
-            // skip the marking processing if the markersByFile set is empty
-            // (avoids grabbing the "run" lock for nothing)
-            if (!markersByFile.isEmpty()) {
-                // Appliquer les marqueurs
-                IWorkspaceRunnable action = new IWorkspaceRunnable() {
-                    public void run(IProgressMonitor monitor) throws CoreException {
-                        applyMarkers();
-                    }
-                };
-
-                // clear the markers here. The call to Resource.deleteMarkers
-                // will
-                // also call the Workspace.prepareOperation so do that
-                // outside the larger "applyMarkers" call to avoid doubly
-                // holding locks
-                // for too long
-                for (IFile file : markersByFile.keySet()) {
-                    if (isCanceled()) {
-                        break;
-                    }
-                    MarkerUtil.deleteAllMarkersIn(file);
-                }
-
-                final IWorkspace workspace = ResourcesPlugin.getWorkspace();
-                workspace.run(action, getSchedulingRule(), IWorkspace.AVOID_UPDATE, getMonitor());
+            // skip the marking processing if all the markers have already
+            // been applied
+            if (markersByFile.size() > appliedFiles.size()) {
+                applyMarkers();
             }
 
             // Switch to the PMD perspective if required
@@ -233,8 +258,6 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
                 PMDPlugin.getDefault().showView(PMDPlugin.VIOLATIONS_OUTLINE_ID);
             }
 
-        } catch (CoreException e) {
-            throw new RuntimeException("Core exception when reviewing code", e);
         } finally {
             LOG.info("ReviewCode command has ended.");
             setTerminated(true);
@@ -245,18 +268,30 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
                 logInfo("Review code command finished. " + ruleCount + " rules were executed against " + fileCount
                         + " files. Actual PMD duration is about " + pmdDuration + "ms, that is about "
                         + (float) pmdDuration / fileCount + " ms/file, " + (float) pmdDuration / ruleCount
-                        + " ms/rule, " + (float) pmdDuration / ((long) fileCount * (long) ruleCount) + " ms/filerule");
+                        + " ms/rule, " + (float) pmdDuration / ((long) fileCount * (long) ruleCount) + " ms/filerule. "
+                        + cacheStatistics() + timeoutStatistics() + preScanStatistics());
             } else {
                 logInfo("Review code command finished. " + ruleCount + " rules were executed against " + fileCount
-                        + " files. PMD was not executed.");
+                        + " files. PMD was not executed. " + cacheStatistics() + timeoutStatistics()
+                        + preScanStatistics());
             }
         }
 
         PMDPlugin.getDefault().changedFiles(markedFiles());
+
+        if (!nextDependents.isEmpty()) {
+            if (isCanceled()) {
+                logInfo(nextDependents.size() + " dependent files are not reviewed, as the review was canceled.");
+            } else {
+                reviewDependentBatch(nextDependents);
+            }
+        }
     }
 
     /**
-     * @return Returns the file markers
+     * @return Returns the file markers. The marker sets of the files applied
+     *         during the review are empty, unless the markers are retained.
+     * @see #setRetainMarkers(boolean)
      */
     public Map<IFile, Set<MarkerInfo2>> getMarkers() {
         return markersByFile;
@@ -266,6 +301,30 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         return fileCount;
     }
 
+    /**
+     * @return the number of files that were skipped, as their analysis took
+     *         longer than the timeout, now or before
+     */
+    public int getTimedOutFileCount() {
+        return timedOutFiles;
+    }
+
+    /**
+     * @return the number of files that were skipped, as they are generated or
+     *         too large
+     */
+    public int getSkippedFileCount() {
+        return skippedFiles;
+    }
+
+    /**
+     * @return the number of large files that were only checked with the high
+     *         priority rules
+     */
+    public int getLightFileCount() {
+        return lightFiles;
+    }
+
     /**
      * @param resource
      *            The resource to set.
@@ -309,6 +368,70 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         this.runAlways = runAlways;
     }
 
+    /**
+     * @param deferredReview
+     *            whether the command reviews the files a review deferred as
+     *            they exceeded the latency budget. Such a review is not
+     *            limited by the budget.
+     */
+    public void setDeferredReview(boolean deferredReview) {
+        this.deferredReview = deferredReview;
+    }
+
+    /**
+     * A review of files of the open editors only runs at a
+     * {@link Job#SHORT} priority, unless another priority has been set, so
+     * that it does not wait for the reviews of the builds.
+     */
+    @Override
+    public int getJobPriority() {
+        int priority = super.getJobPriority();
+        if (priority == Job.LONG && isEditorReview()) {
+            return Job.SHORT;
+        }
+        return priority;
+    }
+
+    private boolean isEditorReview() {
+        Set<IFile> openFiles = PMDPlugin.getDefault().getEditorTracker().getOpenFiles();
+        if (resources.isEmpty() || openFiles.isEmpty()) {
+            return false;
+        }
+        for (IResource resource : resources) {
+            if (!openFiles.contains(resource)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param tier
+     *            the rule tier the review is restricted to, null to review
+     *            all the rules
+     */
+    public void setTier(RuleTier tier) {
+        this.tier = tier;
+    }
+
+    /**
+     * @param staleOnly
+     *            whether only the files that changed since their last review
+     *            are analyzed, e.g. by the checks of the idle time
+     */
+    public void setStaleOnly(boolean staleOnly) {
+        this.staleOnly = staleOnly;
+    }
+
+    /**
+     * @param retainMarkers
+     *            whether the markers of the files are kept after they have
+     *            been applied, instead of being released during the review
+     */
+    public void setRetainMarkers(boolean retainMarkers) {
+        this.retainMarkers = retainMarkers;
+    }
+
     /**
      * @param openPmdPerspective
      *            Tell whether the PMD perspective should be opened after processing.
@@ -340,13 +463,19 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
     @Override
     public void reset() {
         resources.clear();
-        markersByFile = new HashMap<IFile, Set<MarkerInfo2>>();
+        markersByFile = Collections.synchronizedMap(new HashMap<IFile, Set<MarkerInfo2>>());
+        appliedFiles = Collections.synchronizedSet(new HashSet<IFile>());
         setTerminated(false);
         openPmdPerspective = false;
         openPmdViolationsOverviewView = false;
         openPmdViolationsOutlineView = false;
         onErrorIssue = null;
         runAlways = false;
+        deferredReview = false;
+        tier = null;
+        staleOnly = false;
+        retainMarkers = false;
+        nextDependents = Collections.emptyList();
     }
 
     @Override
@@ -355,42 +484,31 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
     }
 
     /**
-     * @return the scheduling rule needed to apply markers
-     */
-    private ISchedulingRule getSchedulingRule() {
-        final IWorkspace workspace = ResourcesPlugin.getWorkspace();
-        final IResourceRuleFactory ruleFactory = workspace.getRuleFactory();
-        ISchedulingRule rule;
-
-        if (resources.isEmpty()) {
-            rule = ruleFactory.markerRule(resourceDelta.getResource().getProject());
-        } else {
-            ISchedulingRule[] rules = new ISchedulingRule[resources.size()];
-            for (int i = 0; i < rules.length; i++) {
-                rules[i] = ruleFactory.markerRule((IResource) resources.get(i));
-            }
-            rule = new MultiRule(resources.toArray(rules));
-        }
-
-        return rule;
-    }
-
-    /**
-     * Process the list of workbench resources
+     * Process the list of workbench resources. The resources are grouped by
+     * project, so that the files of a project are analyzed in one batch.
      */
     private void processResources() {
-        Set<String> projects = new HashSet<String>();
+        Map<IProject, List<IResource>> resourcesByProject = new LinkedHashMap<IProject, List<IResource>>();
         for (IResource resource : resources) {
-            projects.add(resource.getProject().getName());
+            List<IResource> projectResources = resourcesByProject.get(resource.getProject());
+            if (projectResources == null) {
+                projectResources = new ArrayList<IResource>();
+                resourcesByProject.put(resource.getProject(), projectResources);
+            }
+            projectResources.add(resource);
         }
-        logInfo("ReviewCodeCmd started with " + resources.size() + " selected resources on projects " + projects);
+        logInfo("ReviewCodeCmd started with " + resources.size() + " selected resources on projects "
+                + resourcesByProject.keySet());
 
-        for (IResource resource : resources) {
+        for (Map.Entry<IProject, List<IResource>> entry : resourcesByProject.entrySet()) {
+            if (isCanceled()) {
+                break;
+            }
             // if resource is a project, visit only its source folders
-            if (resource instanceof IProject) {
-                processProject((IProject) resource);
+            if (entry.getValue().contains(entry.getKey())) {
+                processProject(entry.getKey());
             } else {
-                processResource(resource);
+                processResources(entry.getKey(), entry.getValue());
             }
         }
     }
@@ -402,59 +520,65 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         return propertyCache;
     }
 
-    private RuleSets rulesetsFrom(IResource resource) throws PropertiesException {
-        IProject project = resource.getProject();
-        IProjectProperties properties = getProjectProperties(project);
+    /**
+     * Returns the analysis context of a project, which is computed once per
+     * execution of the command.
+     */
+    private ProjectAnalysisContext analysisContextFor(IProject project) throws PropertiesException {
+        ProjectAnalysisContext analysisContext = analysisContexts.get(project);
+        if (analysisContext == null) {
+            IProjectProperties properties = getProjectProperties(project);
+            RuleSets ruleSets = filteredRuleSets(properties); // properties.getProjectRuleSet();
+            analysisContext = ProjectAnalysisContext.create(properties, ruleSets, determineFileExtensions(ruleSets),
+                    PMDPlugin.getDefault().loadPreferences());
+            if (tier != null) {
+                analysisContext = analysisContext.forTier(tier);
+            }
+            analysisContexts.put(project, analysisContext);
+        }
+        return analysisContext;
+    }
 
-        return filteredRuleSets(properties); // properties.getProjectRuleSet();
+    /**
+     * Returns the context a project is reviewed with. A review limited by the
+     * latency budget only checks the rules of the save tier, the rules of the
+     * background tier are checked afterwards by another review.
+     */
+    private ProjectAnalysisContext reviewContextFor(IProject project, boolean latencyBudgeted)
+            throws PropertiesException {
+        ProjectAnalysisContext analysisContext = analysisContextFor(project);
+        if (latencyBudgeted && analysisContext.getTier() == null && analysisContext.hasBackgroundRules()) {
+            analysisContext = analysisContext.forTier(RuleTier.SAVE);
+            // the markers of the project are replaced for the save tier only
+            analysisContexts.put(project, analysisContext);
+        }
+        return analysisContext;
     }
 
     /**
-     * Review a single resource
+     * Review resources of a single project
      */
-    private void processResource(IResource resource) {
+    private void processResources(IProject project, List<? extends IResource> projectResources) {
         try {
 
-            final IProject project = resource.getProject();
             final IProjectProperties properties = getProjectProperties(project);
             if (!runAlways && !properties.isPmdEnabled()) {
                 return;
             }
 
-            RuleSets ruleSets = rulesetsFrom(resource);
-            Set<String> fileExtensions = determineFileExtensions(ruleSets);
-            // final PMDEngine pmdEngine = getPmdEngineForProject(project);
-            int targetCount = 0;
-            if (resource.exists()) {
-                targetCount = countResourceElement(resource);
-            }
-            // Could add a property that lets us set the max number to analyze
-            if (properties.isFullBuildEnabled() || isUserInitiated() || targetCount <= MAXIMUM_RESOURCE_COUNT) {
-                setStepCount(targetCount);
-                LOG.debug("Visiting resource " + resource.getName() + " : " + getStepCount());
+            boolean latencyBudgeted = isLatencyBudgeted(properties);
+            ProjectAnalysisContext analysisContext = reviewContextFor(project, latencyBudgeted);
+            ReviewPlanner planner = new ReviewPlanner(analysisContext, getMonitor());
+            for (IResource resource : projectResources) {
                 if (resource.exists()) {
-                    final ResourceVisitor visitor = new ResourceVisitor();
-                    visitor.setMonitor(getMonitor());
-                    visitor.setRuleSets(ruleSets);
-                    visitor.setFileExtensions(fileExtensions);
-                    // visitor.setPmdEngine(pmdEngine);
-                    visitor.setAccumulator(markersByFile);
-                    visitor.setUseTaskMarker(taskMarker);
-                    visitor.setProjectProperties(properties);
-                    resource.accept(visitor);
-
-                    ruleCount = ruleSets.getAllRules().size();
-                    fileCount += visitor.getProcessedFilesCount();
-                    pmdDuration += visitor.getActualPmdDuration();
+                    planner.plan(resource);
                 } else {
                     LOG.debug("Skipping resource " + resource.getName() + " because it doesn't exist.");
                 }
-            } else {
-                String message = "Skipping resource " + resource.getName() + " because of fullBuildEnabled flag and "
-                        + "targetCount is " + targetCount + ". This is more than " + MAXIMUM_RESOURCE_COUNT + "."
-                        + " If you want to execute PMD, please check \"Full build enabled\" in the project settings";
-                PMDPlugin.getDefault().logInformation(message);
             }
+            setStepCount(planner.getFiles().size());
+            LOG.debug("Reviewing resources " + projectResources + " : " + getStepCount());
+            review(analysisContext, planner, latencyBudgeted);
             worked(1); // TODO - temp fix? BR
 
         } catch (PropertiesException e) {
@@ -464,6 +588,265 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         }
     }
 
+    /**
+     * Tells whether the review of a project is limited by the latency budget:
+     * the rules of the background tier, and the files estimated to exceed the
+     * budget, are deferred to background reviews. Reviews the user started,
+     * and builds of projects with full build enabled, check all the files
+     * with all the rules at once.
+     */
+    private boolean isLatencyBudgeted(IProjectProperties properties) throws PropertiesException {
+        return !properties.isFullBuildEnabled() && !isUserInitiated() && !deferredReview;
+    }
+
+    /**
+     * Analyzes the files selected by a planner and accumulates the markers
+     * and statistics of the review.
+     *
+     * @param latencyBudgeted
+     *            whether the files estimated to exceed the latency budget are
+     *            deferred to a background review
+     */
+    private void review(ProjectAnalysisContext analysisContext, ReviewPlanner planner, boolean latencyBudgeted) {
+        BaseVisitor visitor = new BaseVisitor();
+        visitor.setMonitor(getMonitor());
+        visitor.setAccumulator(markersByFile);
+        visitor.setMarkerFlusher(markerFlusher);
+        EditorTracker editorTracker = PMDPlugin.getDefault().getEditorTracker();
+        visitor.setReviewOrder(new ReviewOrder(editorTracker.getOpenFiles(), editorTracker.getVisibleFiles()));
+        visitor.setUseTaskMarker(taskMarker);
+        visitor.setAnalysisContext(analysisContext);
+        visitor.setMaxThreads(maxAnalysisThreads());
+        // the reviews of the builds and of the saved files do not wait for the builds
+        visitor.setBackground(deferredReview || getJobPriority() == Job.DECORATE);
+        visitor.setJobPriority(getJobPriority());
+        IPreferences preferences = PMDPlugin.getDefault().loadPreferences();
+        visitor.setAnalysisTimeout(preferences.getAnalysisTimeout());
+        visitor.setAnalysisWorkers(preferences.getAnalysisWorkers(), preferences.getAnalysisWorkerHeap());
+        visitor.setPreScanner(FilePreScanner.of(preferences));
+        ViolationCache violationCache = violationCacheFor(analysisContext);
+        visitor.setViolationCache(violationCache);
+        if (staleOnly) {
+            visitor.setStaleOnly(true);
+            visitor.setTierCaches(tierCachesFor(analysisContext));
+        }
+        DependencyIndex dependencyIndex = null;
+        if (analysisContext.isBuildPathEnabled()) {
+            // the results of the rules using type resolution depend on the referenced types
+            dependencyIndex = DependencyIndex.forProject(analysisContext.getProject());
+            visitor.setDependencyIndex(dependencyIndex);
+        }
+        visitor.addPlannedFiles(planner);
+        int reviewRuleCount = analysisContext.getRuleSets().getAllRules().size();
+        ReviewCostModel costModel = ReviewCostModel.forProject(analysisContext.getProject(),
+                analysisContext.getTier());
+        List<IFile> deferredFiles = Collections.emptyList();
+        if (latencyBudgeted) {
+            deferredFiles = deferFilesBeyondBudget(visitor, costModel, reviewRuleCount);
+        }
+        visitor.reviewPendingFiles();
+        markerFlusher.flush();
+        violationCache.persist();
+        if (dependencyIndex != null) {
+            dependencyIndex.persist();
+        }
+        // the files PMD took from its analysis cache tell nothing about the cost
+        costModel.record(visitor.getAnalyzedFilesCount() - visitor.getAnalysisCacheHits(), reviewRuleCount,
+                visitor.getAnalysisMillis());
+        costModel.persist();
+
+        ruleCount = reviewRuleCount;
+        fileCount += visitor.getProcessedFilesCount();
+        pmdDuration += visitor.getActualPmdDuration();
+        violationCacheHits += visitor.getViolationCacheHits();
+        analysisCacheHits += visitor.getAnalysisCacheHits();
+        analysisCacheMisses += visitor.getAnalysisCacheMisses();
+        timedOutFiles += visitor.getTimedOutFilesCount();
+        skippedFiles += visitor.getSkippedFilesCount();
+        lightFiles += visitor.getLightFilesCount();
+
+        if (analysisContext.getTier() == RuleTier.SAVE) {
+            reviewBackgroundTier(planner, deferredFiles);
+        }
+        if (dependencyIndex != null && !visitor.getChangedTypes().isEmpty() && !isCanceled()) {
+            reviewDependents(analysisContext.getProject(), dependencyIndex, visitor.getChangedTypes(),
+                    planner.getFiles());
+        }
+    }
+
+    /**
+     * Reviews the files referring to the changed types in low priority jobs,
+     * as their content is unchanged but their violations may not be. Their
+     * cached markers are dropped, and they are reviewed in batches, each batch
+     * starting when the previous one has completed.
+     */
+    private void reviewDependents(IProject project, DependencyIndex dependencyIndex, Set<String> changedTypes,
+            List<IFile> reviewedFiles) {
+        Set<IFile> dependents = new LinkedHashSet<IFile>();
+        for (String path : dependencyIndex.dependentsOf(changedTypes)) {
+            IFile file = project.getFile(path);
+            if (file.exists()) {
+                dependents.add(file);
+            } else {
+                dependencyIndex.remove(path);
+            }
+        }
+        dependents.removeAll(reviewedFiles);
+        if (dependents.isEmpty()) {
+            return;
+        }
+
+        List<ViolationCache> violationCaches = new ArrayList<ViolationCache>();
+        violationCaches.add(ViolationCache.forProject(project, null));
+        for (RuleTier ruleTier : RuleTier.values()) {
+            violationCaches.add(ViolationCache.forProject(project, ruleTier));
+        }
+        for (IFile file : dependents) {
+            for (ViolationCache violationCache : violationCaches) {
+                violationCache.remove(file);
+            }
+        }
+        for (ViolationCache violationCache : violationCaches) {
+            violationCache.persist();
+        }
+        logInfo(dependents.size() + " files refer to " + changedTypes.size() + " changed types, they are reviewed"
+                + " in the background in batches of at most " + MAX_DEPENDENT_FILES + " files.");
+        reviewDependentBatch(new ArrayList<IFile>(dependents));
+    }
+
+    /**
+     * Reviews the first dependent files in a low priority job, which reviews
+     * the remaining ones once it has completed.
+     */
+    private void reviewDependentBatch(List<IFile> dependents) {
+        int batchSize = Math.min(MAX_DEPENDENT_FILES, dependents.size());
+        ReviewCodeCmd dependentsCmd = new ReviewCodeCmd();
+        dependentsCmd.setTaskMarker(taskMarker);
+        dependentsCmd.setDeferredReview(true);
+        dependentsCmd.setStaleOnly(true);
+        dependentsCmd.setJobPriority(Job.DECORATE);
+        for (IFile file : dependents.subList(0, batchSize)) {
+            if (file.exists()) {
+                dependentsCmd.addResource(file);
+            }
+        }
+        dependentsCmd.nextDependents = new ArrayList<IFile>(dependents.subList(batchSize, dependents.size()));
+        if (dependentsCmd.isReadyToExecute()) {
+            dependentsCmd.performExecute();
+        } else if (!dependentsCmd.nextDependents.isEmpty()) {
+            // all the files of the batch have been deleted meanwhile
+            reviewDependentBatch(dependentsCmd.nextDependents);
+        }
+    }
+
+    /**
+     * Reviews the files of a review of the save tier with the rules of the
+     * background tier, in a low priority job. The deferred files are left
+     * out, as their review checks all the rules.
+     */
+    private void reviewBackgroundTier(ReviewPlanner planner, List<IFile> deferredFiles) {
+        Set<IFile> files = new LinkedHashSet<IFile>(planner.getFiles());
+        // the markers of the background tier are removed from the excluded files too
+        files.addAll(planner.getExcludedFiles());
+        files.removeAll(deferredFiles);
+        if (files.isEmpty()) {
+            return;
+        }
+
+        ReviewCodeCmd backgroundCmd = new ReviewCodeCmd();
+        backgroundCmd.setTaskMarker(taskMarker);
+        backgroundCmd.setDeferredReview(true);
+        backgroundCmd.setTier(RuleTier.BACKGROUND);
+        backgroundCmd.setJobPriority(Job.DECORATE);
+        for (IFile file : files) {
+            backgroundCmd.addResource(file);
+        }
+        backgroundCmd.performExecute();
+    }
+
+    /**
+     * Keeps the pending files of a visitor, whose analysis is estimated to fit
+     * into the latency budget, and reviews the others in the background.
+     *
+     * @return the deferred files
+     */
+    private List<IFile> deferFilesBeyondBudget(BaseVisitor visitor, ReviewCostModel costModel,
+            int reviewRuleCount) {
+        int latencyBudget = PMDPlugin.getDefault().loadPreferences().getReviewLatencyBudget();
+        int pendingCount = visitor.getPendingFilesCount();
+        if (latencyBudget <= 0 || pendingCount == 0) {
+            return Collections.emptyList();
+        }
+        // the workers share the budget
+        int workerCount = visitor.getWorkerCount();
+        int immediateCount = costModel.filesWithin((long) latencyBudget * workerCount, reviewRuleCount);
+        if (pendingCount <= immediateCount) {
+            return Collections.emptyList();
+        }
+        List<IFile> deferredFiles = visitor.deferPendingFiles(immediateCount);
+        logInfo("The review of " + pendingCount + " files is estimated to take "
+                + costModel.estimateMillis(pendingCount, reviewRuleCount) / workerCount + "ms, more than the budget of "
+                + latencyBudget + "ms. " + deferredFiles.size() + " files are reviewed in the background.");
+
+        ReviewCodeCmd deferredCmd = new ReviewCodeCmd();
+        deferredCmd.setTaskMarker(taskMarker);
+        deferredCmd.setDeferredReview(true);
+        for (IFile file : deferredFiles) {
+            deferredCmd.addResource(file);
+        }
+        deferredCmd.performExecute();
+        return deferredFiles;
+    }
+
+    /**
+     * Returns the violation cache of a project, after having dropped its
+     * entries if they have been computed with other rules or settings.
+     */
+    private ViolationCache violationCacheFor(ProjectAnalysisContext analysisContext) {
+        ViolationCache violationCache = ViolationCache.forProject(analysisContext.getProject(),
+                analysisContext.getTier());
+        violationCache.useFingerprint(ViolationCache.fingerprintOf(analysisContext.getRuleSets(),
+                analysisContext.getJavaVersion(), analysisContext.isViolationsAsErrors(),
+                analysisContext.isBuildPathEnabled(),
+                FilePreScanner.of(PMDPlugin.getDefault().loadPreferences()).getSettingsKey()));
+        return violationCache;
+    }
+
+    /**
+     * Returns the violation caches of the rule tiers of a review of all the
+     * rules, as the files of the reviews limited by the latency budget are
+     * only current in them.
+     */
+    private List<ViolationCache> tierCachesFor(ProjectAnalysisContext analysisContext) {
+        if (analysisContext.getTier() != null || !analysisContext.hasBackgroundRules()) {
+            return Collections.emptyList();
+        }
+        List<ViolationCache> tierCaches = new ArrayList<ViolationCache>();
+        for (RuleTier ruleTier : RuleTier.values()) {
+            tierCaches.add(violationCacheFor(analysisContext.forTier(ruleTier)));
+        }
+        return tierCaches;
+    }
+
+    private String cacheStatistics() {
+        return "Violation cache: " + violationCacheHits + " hits. Analysis cache: " + analysisCacheHits + " hits, "
+                + analysisCacheMisses + " misses.";
+    }
+
+    private String timeoutStatistics() {
+        return timedOutFiles == 0 ? "" : " " + timedOutFiles + " files were skipped after an analysis timeout.";
+    }
+
+    private String preScanStatistics() {
+        String statistics = skippedFiles == 0 ? "" : " " + skippedFiles + " generated or large files were skipped.";
+        return lightFiles == 0 ? statistics
+                : statistics + " " + lightFiles + " large files were checked with the high priority rules only.";
+    }
+
+    private int maxAnalysisThreads() {
+        return Math.max(1, PMDPlugin.getDefault().loadPreferences().getMaxAnalysisThreads());
+    }
+
     private Set<String> determineFileExtensions(RuleSets ruleSets) {
         Set<Language> languages = new HashSet<Language>();
         for (Rule rule : ruleSets.getAllRules()) {
@@ -485,15 +868,13 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
      */
     private void processProject(IProject project) {
         try {
-            setStepCount(countResourceElement(project));
-            logInfo("ReviewCodeCmd: visiting project " + project.getName() + ": " + getStepCount()
-                    + " resources found.");
-            LOG.debug("Visiting project " + project.getName() + " : " + getStepCount() + " resources found.");
+            logInfo("ReviewCodeCmd: visiting project " + project.getName());
+            LOG.debug("Visiting project " + project.getName());
 
             if (project.hasNature(JavaCore.NATURE_ID)) {
                 processJavaProject(project);
             } else {
-                processResource(project);
+                processResources(project, Collections.singletonList(project));
             }
 
         } catch (CoreException e) {
@@ -505,6 +886,7 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         final IJavaProject javaProject = JavaCore.create(project);
         final IClasspathEntry[] entries = javaProject.getRawClasspath();
         final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+        final List<IContainer> sourceContainers = new ArrayList<IContainer>();
         for (IClasspathEntry entrie : entries) {
             if (entrie.getEntryKind() == IClasspathEntry.CPE_SOURCE) {
 
@@ -525,10 +907,11 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
                     LOG.warn("Source container " + entrie.getPath() + " for project " + project.getName()
                             + " is not valid");
                 } else {
-                    processResource(sourceContainer);
+                    sourceContainers.add(sourceContainer);
                 }
             }
         }
+        processResources(project, sourceContainers);
     }
 
     private void taskScope(int activeRuleCount, int totalRuleCount) {
@@ -536,9 +919,30 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
                 + " rules");
     }
 
+    /**
+     * Returns the project rulesets filtered by the preferences. The result is
+     * cached until the preferences or the project rulesets change.
+     */
     private RuleSets filteredRuleSets(IProjectProperties properties) throws PropertiesException {
         final RuleSets projectRuleSets = properties.getProjectRuleSets();
-        IPreferences preferences = PMDPlugin.getDefault().getPreferencesManager().loadPreferences();
+        IPreferencesManager preferencesManager = PMDPlugin.getDefault().getPreferencesManager();
+        // read the revisions first, so that a concurrent change makes the cached entry stale
+        long preferencesRevision = preferencesManager.getRevision();
+        long ruleSetsRevision = properties.getRuleSetsRevision();
+
+        RuleSets filteredRuleSets = RuleSetsCache.get(properties.getProject(), preferencesRevision, ruleSetsRevision);
+        if (filteredRuleSets == null) {
+            filteredRuleSets = filterRuleSets(properties, projectRuleSets, preferencesManager.loadPreferences());
+            RuleSetsCache.put(properties.getProject(), preferencesRevision, ruleSetsRevision, filteredRuleSets);
+        } else {
+            LOG.debug("Using cached rulesets of project " + properties.getProject().getName());
+        }
+
+        taskScope(filteredRuleSets.getAllRules().size(), projectRuleSets.getAllRules().size());
+        return filteredRuleSets;
+    }
+
+    private RuleSets filterRuleSets(IProjectProperties properties, RuleSets projectRuleSets, IPreferences preferences) {
         Set<String> onlyActiveRuleNames = preferences.getActiveRuleNames();
 
         RuleSets filteredRuleSets = new RuleSets();
@@ -571,20 +975,9 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
                     properties.getBuildPathIncludePatterns());
             filteredRuleSets.addRuleSet(filteredRuleSet);
         }
-
-        taskScope(filteredRuleSets.getAllRules().size(), projectRuleSets.getAllRules().size());
         return filteredRuleSets;
     }
 
-    private RuleSets rulesetsFromResourceDelta() throws PropertiesException {
-
-        IResource resource = resourceDelta.getResource();
-        final IProject project = resource.getProject();
-        final IProjectProperties properties = getProjectProperties(project);
-
-        return filteredRuleSets(properties); // properties.getProjectRuleSet();
-    }
-
     /**
      * Review a resource delta
      */
@@ -596,37 +989,13 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
             logInfo("ReviewCodeCmd started on resource delta " + resource.getName() + " in project "
                     + project.getName());
 
-            final RuleSets ruleSets = rulesetsFromResourceDelta();
-            Set<String> fileExtensions = determineFileExtensions(ruleSets);
-
-            // PMDEngine pmdEngine = getPmdEngineForProject(project);
-            int targetCount = countDeltaElement(resourceDelta);
-            // Could add a property that lets us set the max number to analyze
-            if (properties.isFullBuildEnabled() || isUserInitiated() || targetCount <= MAXIMUM_RESOURCE_COUNT) {
-                setStepCount(targetCount);
-                LOG.debug("Visiting delta of resource " + resource.getName() + " : " + getStepCount());
-
-                DeltaVisitor visitor = new DeltaVisitor();
-                visitor.setMonitor(getMonitor());
-                visitor.setRuleSets(ruleSets);
-                visitor.setFileExtensions(fileExtensions);
-                // visitor.setPmdEngine(pmdEngine);
-                visitor.setAccumulator(markersByFile);
-                visitor.setUseTaskMarker(taskMarker);
-                visitor.setProjectProperties(properties);
-                resourceDelta.accept(visitor);
-
-                ruleCount = ruleSets.getAllRules().size();
-                fileCount += visitor.getProcessedFilesCount();
-                pmdDuration += visitor.getActualPmdDuration();
-            } else {
-                String message = "Skipping resourceDelta " + resource.getName()
-                        + " because of fullBuildEnabled flag and " + "targetCount is " + targetCount
-                        + ". This is more than " + MAXIMUM_RESOURCE_COUNT + "."
-                        + " If you want to execute PMD, please check \"Full build enabled\" in the project settings";
-                PMDPlugin.getDefault().logInformation(message);
-                LOG.debug(message);
-            }
+            boolean latencyBudgeted = isLatencyBudgeted(properties);
+            ProjectAnalysisContext analysisContext = reviewContextFor(project, latencyBudgeted);
+            ReviewPlanner planner = new ReviewPlanner(analysisContext, getMonitor());
+            planner.plan(resourceDelta);
+            setStepCount(planner.getFiles().size());
+            LOG.debug("Reviewing delta of resource " + resource.getName() + " : " + getStepCount());
+            review(analysisContext, planner, latencyBudgeted);
         } catch (PropertiesException e) {
             throw new RuntimeException(e);
         } catch (CoreException e) {
@@ -635,86 +1004,38 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
     }
 
     /**
-     * Apply PMD markers after the review
+     * Apply PMD markers after the review, the markers of the files not
+     * applied during the review are applied in batches of a few files.
      *
+     * @see MarkerFlusher
      */
     private void applyMarkers() {
         LOG.info("Processing marker directives");
-        int violationCount = 0;
         long start = System.currentTimeMillis();
 
-        String currentFile = ""; // for logging
-
         beginTask("PMD Applying markers", markersByFile.size());
 
         try {
             for (IFile file : markersByFile.keySet()) {
                 if (isCanceled()) {
+                    LOG.debug("Applying markers canceled before file " + file.getName());
                     break;
                 }
-                currentFile = file.getName();
-                Set<MarkerInfo2> markerInfoSet = markersByFile.get(file);
-                for (MarkerInfo2 markerInfo : markerInfoSet) {
-                    markerInfo.addAsMarkerTo(file);
-                    violationCount++;
+                if (!appliedFiles.contains(file)) {
+                    markerFlusher.completed(file, false);
                 }
-
                 worked(1);
             }
-        } catch (CoreException e) {
-            // TODO: NLS
-            LOG.warn("CoreException when setting marker for file " + currentFile + " : " + e.getMessage());
+            markerFlusher.flush();
         } finally {
             long duration = System.currentTimeMillis() - start;
+            int violationCount = markerFlusher.getAppliedMarkerCount();
             int count = markersByFile.size();
             LOG.info("" + violationCount + " markers applied on " + count + " files in " + duration + "ms.");
             LOG.info("End of processing marker directives. " + violationCount + " violations for " + count + " files.");
         }
     }
 
-    /**
-     * Count the number of sub-resources of a resource
-     *
-     * @param resource
-     *            a project
-     * @return the element count
-     */
-    private int countResourceElement(IResource resource) {
-
-        if (resource instanceof IFile) {
-            return 1;
-        }
-
-        final CountVisitor visitor = new CountVisitor();
-
-        try {
-            resource.accept(visitor);
-        } catch (CoreException e) {
-            logError("Exception when counting elements of a project", e);
-        }
-
-        return visitor.count;
-    }
-
-    /**
-     * Count the number of sub-resources of a delta
-     *
-     * @param delta
-     *            a resource delta
-     * @return the element count
-     */
-    private int countDeltaElement(IResourceDelta delta) {
-        final CountVisitor visitor = new CountVisitor();
-
-        try {
-            delta.accept(visitor);
-        } catch (CoreException e) {
-            logError("Exception counting elements in a delta selection", e);
-        }
-
-        return visitor.count;
-    }
-
     /**
      * opens the PMD perspective
      *
@@ -727,23 +1048,4 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         window.getActivePage().setPerspective(reg.findPerspectiveWithId(PMDRuntimeConstants.ID_PERSPECTIVE));
     }
 
-    /**
-     * Private inner class to count the number of resources or delta elements. Only files are counted.
-     */
-    private final class CountVisitor implements IResourceVisitor, IResourceDeltaVisitor {
-        public int count = 0;
-
-        public boolean visit(IResource resource) {
-            if (resource instanceof IFile) {
-                count++;
-            }
-            return true;
-        }
-
-        public boolean visit(IResourceDelta delta) {
-            IResource resource = delta.getResource();
-            return visit(resource);
-        }
-    }
-
 }
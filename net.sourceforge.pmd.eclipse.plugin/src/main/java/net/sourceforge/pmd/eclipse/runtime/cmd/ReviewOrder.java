@@ -0,0 +1,87 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+
+/**
+ * The order in which the files of a review are analyzed, so that the files
+ * the developer is working on get their markers first: the files of the
+ * visible editors, then the files of the other open editors, then the other
+ * files of their packages and finally all the other files.
+ */
+final class ReviewOrder implements Comparator<IFile> {
+
+    static final int VISIBLE_EDITOR = 0;
+    static final int OPEN_EDITOR = 1;
+    static final int EDITOR_PACKAGE = 2;
+    static final int OTHER = 3;
+
+    private final Set<IFile> visibleFiles;
+    private final Set<IFile> openFiles;
+    private final Set<IContainer> editorPackages = new HashSet<IContainer>();
+
+    /**
+     * @param openFiles
+     *            the files of the open editors, and the changed files of the
+     *            review
+     * @param visibleFiles
+     *            the files of the visible editors
+     */
+    ReviewOrder(Collection<IFile> openFiles, Collection<IFile> visibleFiles) {
+        this.visibleFiles = new HashSet<IFile>(visibleFiles);
+        this.openFiles = new HashSet<IFile>(openFiles);
+        this.openFiles.addAll(visibleFiles);
+        for (IFile file : this.openFiles) {
+            editorPackages.add(file.getParent());
+        }
+    }
+
+    /**
+     * @return the order of a review without open editors
+     */
+    static ReviewOrder none() {
+        return new ReviewOrder(Collections.<IFile>emptySet(), Collections.<IFile>emptySet());
+    }
+
+    int priorityOf(IFile file) {
+        if (visibleFiles.contains(file)) {
+            return VISIBLE_EDITOR;
+        }
+        if (openFiles.contains(file)) {
+            return OPEN_EDITOR;
+        }
+        if (editorPackages.contains(file.getParent())) {
+            return EDITOR_PACKAGE;
+        }
+        return OTHER;
+    }
+
+    boolean isVisible(IFile file) {
+        return visibleFiles.contains(file);
+    }
+
+    @Override
+    public int compare(IFile file1, IFile file2) {
+        return priorityOf(file1) - priorityOf(file2);
+    }
+
+    /**
+     * Sorts files by priority. Files of the same priority keep their order.
+     */
+    void sort(List<IFile> files) {
+        if (!openFiles.isEmpty()) {
+            Collections.sort(files, this);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects the files of a project a review has to analyze, in a single pass
+ * over the resources. The files are kept in the order they were found and
+ * each file is only selected once, even if the planned resources overlap.
+ *
+ * <p>Files with an applicable extension that must not be analyzed, e.g.
+ * because they are derived or outside the working set, are reported as
+ * excluded, so that their markers can be removed.
+ */
+final class ReviewPlanner implements IResourceProxyVisitor, IResourceDeltaVisitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReviewPlanner.class);
+
+    private final ProjectAnalysisContext context;
+    private final IProgressMonitor monitor;
+    private final Set<IFile> files = new LinkedHashSet<IFile>();
+    private final Set<IFile> excludedFiles = new LinkedHashSet<IFile>();
+
+    ReviewPlanner(ProjectAnalysisContext context, IProgressMonitor monitor) {
+        this.context = context;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Selects the files of a resource and all its members.
+     */
+    public void plan(IResource resource) throws CoreException {
+        resource.accept(this, IResource.NONE);
+    }
+
+    /**
+     * Selects the added and changed files of a resource delta.
+     */
+    public void plan(IResourceDelta delta) throws CoreException {
+        delta.accept(this);
+    }
+
+    @Override
+    public boolean visit(IResourceProxy proxy) {
+        if (isCanceled()) {
+            return false;
+        }
+        if (proxy.getType() == IResource.FILE && context.hasApplicableExtension(proxy.getName())) {
+            select((IFile) proxy.requestResource());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean visit(IResourceDelta delta) {
+        if (isCanceled()) {
+            return false;
+        }
+        int kind = delta.getKind();
+        IResource resource = delta.getResource();
+        if ((kind == IResourceDelta.ADDED || kind == IResourceDelta.CHANGED) && resource.getType() == IResource.FILE
+                && context.hasApplicableExtension(resource.getName())) {
+            select((IFile) resource);
+        }
+        return true;
+    }
+
+    private void select(IFile file) {
+        if (files.contains(file) || excludedFiles.contains(file)) {
+            return;
+        }
+        if (context.accepts(file)) {
+            files.add(file);
+        } else {
+            LOG.debug("The file " + file.getName() + " is excluded from the review");
+            excludedFiles.add(file);
+        }
+    }
+
+    private boolean isCanceled() {
+        return monitor != null && monitor.isCanceled();
+    }
+
+    /**
+     * @return the files to analyze, in the order they were found
+     */
+    public List<IFile> getFiles() {
+        return new ArrayList<IFile>(files);
+    }
+
+    /**
+     * @return the files with an applicable extension, that must not be
+     *         analyzed
+     */
+    public List<IFile> getExcludedFiles() {
+        return new ArrayList<IFile>(excludedFiles);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+
+/**
+ * Answers {@link RuleSets#applies(File)} with compiled include and exclude
+ * patterns. As in PMD, a ruleset applies to a file if one of its include
+ * patterns matches the path, or else if none of its exclude patterns does,
+ * and the rulesets apply if one of them applies.
+ */
+public final class RuleSetsFileFilter {
+
+    private final List<PathMatcher> includes = new ArrayList<PathMatcher>();
+    private final List<PathMatcher> excludes = new ArrayList<PathMatcher>();
+    private final boolean appliesToAll;
+
+    public RuleSetsFileFilter(RuleSets ruleSets) {
+        boolean unfiltered = false;
+        for (RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            PathMatcher exclude = PathMatcher.compile(ruleSet.getExcludePatterns());
+            if (exclude.isEmpty()) {
+                // nothing is excluded from this ruleset
+                unfiltered = true;
+                break;
+            }
+            includes.add(PathMatcher.compile(ruleSet.getIncludePatterns()));
+            excludes.add(exclude);
+        }
+        appliesToAll = unfiltered;
+    }
+
+    /**
+     * Removes the include and exclude patterns of rulesets, once their files
+     * have been selected with a filter, so that PMD does not match each file
+     * against the patterns again. The patterns are kept if the rulesets do
+     * not all have the same ones, as PMD then decides for each ruleset.
+     *
+     * @param ruleSets
+     *            the rulesets the files have been filtered with
+     * @return the rulesets to analyze the accepted files with
+     */
+    public static RuleSets withoutPatterns(RuleSets ruleSets) {
+        RuleSet[] allRuleSets = ruleSets.getAllRuleSets();
+        if (allRuleSets.length == 0) {
+            return ruleSets;
+        }
+        List<String> includePatterns = allRuleSets[0].getIncludePatterns();
+        List<String> excludePatterns = allRuleSets[0].getExcludePatterns();
+        if (includePatterns.isEmpty() && excludePatterns.isEmpty()) {
+            return ruleSets;
+        }
+        for (RuleSet ruleSet : allRuleSets) {
+            if (!ruleSet.getIncludePatterns().equals(includePatterns)
+                    || !ruleSet.getExcludePatterns().equals(excludePatterns)) {
+                return ruleSets;
+            }
+        }
+
+        List<String> noPatterns = Collections.emptyList();
+        RuleSets unfilteredRuleSets = new RuleSets();
+        for (RuleSet ruleSet : allRuleSets) {
+            unfilteredRuleSets.addRuleSet(RuleSetUtil.setIncludePatterns(
+                    RuleSetUtil.setExcludePatterns(ruleSet, noPatterns), noPatterns));
+        }
+        return unfilteredRuleSets;
+    }
+
+    /**
+     * @param file
+     *            a file of the file system
+     * @return whether one of the rulesets applies to the file
+     */
+    public boolean applies(File file) {
+        if (appliesToAll || file == null) {
+            return true;
+        }
+        String path = file.getPath().replace('\\', '/');
+        for (int i = 0; i < includes.size(); i++) {
+            if (includes.get(i).matches(path) || !excludes.get(i).matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
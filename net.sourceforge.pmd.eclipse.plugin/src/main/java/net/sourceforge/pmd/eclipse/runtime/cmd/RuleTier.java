@@ -0,0 +1,124 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.eclipse.core.resources.IMarker;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+
+/**
+ * The tiers the rules are executed in by the checks triggered by a build. The
+ * rules of the save tier run in the build, the rules of the background tier
+ * afterwards, in a low priority job. A rule belongs to the background tier if
+ * it needs the data flow analysis or several files, or if it has been
+ * assigned to it in the preferences.
+ */
+public enum RuleTier {
+    SAVE, BACKGROUND;
+
+    /**
+     * @param rule
+     *            a rule
+     * @param backgroundRuleNames
+     *            the names of the rules assigned to the background tier
+     * @return the tier of the rule
+     */
+    public static RuleTier of(Rule rule, Set<String> backgroundRuleNames) {
+        if (rule.isDfa() || rule.isMultifile() || backgroundRuleNames.contains(rule.getName())) {
+            return BACKGROUND;
+        }
+        return SAVE;
+    }
+
+    /**
+     * @param rules
+     *            some rules
+     * @param backgroundRuleNames
+     *            the names of the rules assigned to the background tier
+     * @return the names of the rules of the background tier
+     */
+    public static Set<String> backgroundRuleNamesOf(Collection<Rule> rules, Set<String> backgroundRuleNames) {
+        Set<String> names = new HashSet<String>();
+        for (Rule rule : rules) {
+            if (of(rule, backgroundRuleNames) == BACKGROUND) {
+                names.add(rule.getName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Copies the rulesets, keeping only the rules of this tier. The rulesets
+     * left without rules are dropped.
+     *
+     * @param ruleSets
+     *            the rulesets of the review
+     * @param backgroundRuleNames
+     *            the names of the rules assigned to the background tier
+     * @return the rulesets of the tier
+     */
+    public RuleSets select(RuleSets ruleSets, Set<String> backgroundRuleNames) {
+        RuleSets tierRuleSets = new RuleSets();
+        for (RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            List<Rule> tierRules = new ArrayList<Rule>();
+            for (Rule rule : ruleSet.getRules()) {
+                if (of(rule, backgroundRuleNames) == this) {
+                    tierRules.add(rule);
+                }
+            }
+            if (!tierRules.isEmpty()) {
+                tierRuleSets.addRuleSet(RuleSetUtil.retainOnly(ruleSet, tierRules));
+            }
+        }
+        return tierRuleSets;
+    }
+
+    /**
+     * Tells whether a marker has been created by the rules of this tier. The
+     * markers of rules that are not part of the review anymore belong to the
+     * save tier, so that the next save removes them. The analysis markers
+     * carry the tier they were created by.
+     *
+     * @param ruleName
+     *            the rule name of the marker, null if it is an analysis marker
+     * @param markerTier
+     *            the tier attribute of the marker, null if it has none
+     * @param backgroundRuleNames
+     *            the names of the rules of the background tier
+     */
+    public boolean owns(String ruleName, String markerTier, Set<String> backgroundRuleNames) {
+        if (ruleName == null) {
+            return name().equals(markerTier == null ? SAVE.name() : markerTier);
+        }
+        return backgroundRuleNames.contains(ruleName) == (this == BACKGROUND);
+    }
+
+    /**
+     * @see #owns(String, String, Set)
+     */
+    public boolean owns(IMarker marker, Set<String> backgroundRuleNames) {
+        return owns(marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, null),
+                marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_TIER, null), backgroundRuleNames);
+    }
+
+    /**
+     * @return the suffix of the cache files of the tier, which keeps the
+     *         entries of the tiers apart
+     */
+    public String cacheSuffix() {
+        return "." + name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.eclipse.jdt.core.Flags;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IImportDeclaration;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * Finds the types a compilation unit refers to, from the Java model rather
+ * than from a parse of PMD: the imports, and the types of the same package
+ * whose name occurs in the source. Fully qualified references in the code are
+ * not found. The references are indexed per project, so the dependents of a
+ * type in other projects are not found either.
+ */
+final class TypeReferences {
+
+    private static final String JAVA_SUFFIX = ".java";
+
+    private TypeReferences() {
+        // utility
+    }
+
+    /**
+     * @param unit
+     *            a compilation unit
+     * @param source
+     *            the source of the unit, as read for the review
+     * @param packageTypeNames
+     *            the names of the primary types of the package of the unit, see
+     *            {@link #typeNamesOf(IPackageFragment)}
+     * @return the qualified names of the referenced types, and the package
+     *         names followed by <code>.*</code> of the on demand imports
+     */
+    public static Set<String> referencedTypesOf(ICompilationUnit unit, CharSequence source,
+            Set<String> packageTypeNames) throws JavaModelException {
+        Set<String> types = new LinkedHashSet<String>();
+        for (IImportDeclaration declaration : unit.getImports()) {
+            String name = declaration.getElementName();
+            if (Flags.isStatic(declaration.getFlags())) {
+                // the type of the imported member, or of all its members
+                types.add(name.substring(0, name.lastIndexOf('.')));
+            } else {
+                types.add(name);
+            }
+        }
+
+        IJavaElement parent = unit.getParent();
+        if (parent instanceof IPackageFragment) {
+            IPackageFragment packageFragment = (IPackageFragment) parent;
+            Set<String> identifiers = identifiersOf(source);
+            String ownTypeName = primaryTypeNameOf(unit);
+            for (String typeName : packageTypeNames) {
+                if (!typeName.equals(ownTypeName) && identifiers.contains(typeName)) {
+                    types.add(qualifiedName(packageFragment, typeName));
+                }
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Lists the primary types of a package once, for the references of all
+     * its compilation units.
+     *
+     * @param packageFragment
+     *            a package
+     * @return the names of the primary types of its compilation units
+     */
+    public static Set<String> typeNamesOf(IPackageFragment packageFragment) throws JavaModelException {
+        Set<String> typeNames = new HashSet<String>();
+        for (ICompilationUnit unit : packageFragment.getCompilationUnits()) {
+            typeNames.add(primaryTypeNameOf(unit));
+        }
+        return typeNames;
+    }
+
+    /**
+     * @param unit
+     *            a compilation unit
+     * @return the qualified names of the top level types declared in the unit
+     */
+    public static Set<String> declaredTypesOf(ICompilationUnit unit) throws JavaModelException {
+        Set<String> types = new LinkedHashSet<String>();
+        IJavaElement parent = unit.getParent();
+        if (parent instanceof IPackageFragment) {
+            for (IType type : unit.getTypes()) {
+                types.add(qualifiedName((IPackageFragment) parent, type.getElementName()));
+            }
+            // a unit that does not compile may have no types in the model
+            types.add(qualifiedName((IPackageFragment) parent, primaryTypeNameOf(unit)));
+        }
+        return types;
+    }
+
+    private static String primaryTypeNameOf(ICompilationUnit unit) {
+        String name = unit.getElementName();
+        return name.endsWith(JAVA_SUFFIX) ? name.substring(0, name.length() - JAVA_SUFFIX.length()) : name;
+    }
+
+    private static String qualifiedName(IPackageFragment packageFragment, String typeName) {
+        return packageFragment.isDefaultPackage() ? typeName : packageFragment.getElementName() + '.' + typeName;
+    }
+
+    private static Set<String> identifiersOf(CharSequence source) {
+        Set<String> identifiers = new HashSet<String>();
+        int start = -1;
+        for (int i = 0; i <= source.length(); i++) {
+            boolean part = i < source.length() && Character.isJavaIdentifierPart(source.charAt(i));
+            if (start < 0 && part && Character.isJavaIdentifierStart(source.charAt(i))) {
+                start = i;
+            } else if (start >= 0 && !part) {
+                identifiers.add(source.subSequence(start, i).toString());
+                start = -1;
+            }
+        }
+        return identifiers;
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.ThreadSafeReportListener;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.stat.Metric;
+import net.sourceforge.pmd.util.StringUtil;
+
+/**
+ * Converts the violations of the analyzed files to markers, as soon as PMD
+ * reports them on the analysis threads. Reviewed violations are dropped and
+ * once a rule has reached its maximum number of violations in a file, its
+ * further violations are not converted anymore.
+ *
+ * <p>Once the sink is canceled, it aborts the rule reporting a violation, so
+ * that the analysis threads stop as soon as possible.
+ */
+public final class ViolationSink implements ThreadSafeReportListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ViolationSink.class);
+
+    // the files of the analysis, by the file name of their violations
+    private final ConcurrentMap<String, FileViolations> files = new ConcurrentHashMap<String, FileViolations>();
+    private final boolean violationsAsErrors;
+    private volatile boolean canceled;
+
+    /**
+     * @param violationsAsErrors
+     *            whether violations of high priority are reported as errors
+     */
+    public ViolationSink(boolean violationsAsErrors) {
+        this.violationsAsErrors = violationsAsErrors;
+    }
+
+    /**
+     * Registers a file before its analysis, so that its violations are
+     * accepted.
+     */
+    public void register(WorkspaceFileDataSource dataSource) {
+        files.put(dataSource.getNiceFileName(false, null), new FileViolations(dataSource));
+    }
+
+    @Override
+    public void ruleViolationAdded(RuleViolation violation) {
+        if (canceled) {
+            // PMD records the exception as a processing error of the rule
+            throw new OperationCanceledException();
+        }
+        FileViolations fileViolations = files.get(violation.getFilename());
+        if (fileViolations == null) {
+            LOG.debug("Ignoring a violation of the unknown file " + violation.getFilename());
+            return;
+        }
+        fileViolations.accept(violation);
+    }
+
+    @Override
+    public void metricAdded(Metric metric) {
+        // metrics are not reported as markers
+    }
+
+    /**
+     * Takes the markers of an analyzed file. The file is unregistered.
+     *
+     * @param dataSource
+     *            the data source of the file
+     * @param report
+     *            the report of the file, whose violations are only used if
+     *            none was received
+     * @return the markers of the file
+     */
+    public Set<MarkerInfo2> takeMarkers(WorkspaceFileDataSource dataSource, Report report) {
+        FileViolations fileViolations = files.remove(dataSource.getNiceFileName(false, null));
+        if (fileViolations == null) {
+            fileViolations = new FileViolations(dataSource);
+        }
+        if (fileViolations.received == 0 && !report.isEmpty()) {
+            // e.g. the violations were reported with another file name
+            Iterator<RuleViolation> violations = report.iterator();
+            while (violations.hasNext()) {
+                fileViolations.accept(violations.next());
+            }
+        }
+        return fileViolations.markers;
+    }
+
+    /**
+     * Cancels the analysis. The violations reported afterwards abort the
+     * rule that reports them.
+     */
+    void cancel() {
+        canceled = true;
+    }
+
+    /**
+     * Unregisters a file whose analysis has been abandoned. The violations
+     * still reported for it are ignored.
+     */
+    void discard(WorkspaceFileDataSource dataSource) {
+        files.remove(dataSource.getNiceFileName(false, null));
+    }
+
+    private static int maxAllowableViolationsFor(Rule rule) {
+        return rule.hasDescriptor(PMDRuntimeConstants.MAX_VIOLATIONS_DESCRIPTOR)
+                ? rule.getProperty(PMDRuntimeConstants.MAX_VIOLATIONS_DESCRIPTOR)
+                : PMDRuntimeConstants.MAX_VIOLATIONS_DESCRIPTOR.defaultValue();
+    }
+
+    private MarkerInfo2 getMarkerInfo(RuleViolation violation, String type) {
+
+        Rule rule = violation.getRule();
+
+        int severity;
+        switch (rule.getPriority()) {
+        case HIGH:
+        case MEDIUM_HIGH:
+            severity = violationsAsErrors ? IMarker.SEVERITY_ERROR : IMarker.SEVERITY_WARNING;
+            break;
+
+        case MEDIUM:
+        case MEDIUM_LOW:
+            severity = IMarker.SEVERITY_WARNING;
+            break;
+
+        case LOW:
+        default:
+            severity = IMarker.SEVERITY_INFO;
+            break;
+        }
+
+        return MarkerInfo2.violation(type, rule.getName(), violation.getDescription(), violation.getBeginLine(),
+                violation.getEndLine(), rule.getPriority().getPriority(), severity);
+    }
+
+    /**
+     * Search for reviewed violations in the content of a file.
+     *
+     * @param content
+     *            the content the file was analyzed with
+     * @return the reviews, as rule name and line number
+     */
+    public static Set<Review> findReviewedViolations(final CharSequence content) {
+        final Set<Review> reviews = new HashSet<Review>();
+        final int length = content.length();
+        int lineStart = 0;
+        int lineNumber = 0;
+        boolean findLine = false;
+        boolean comment = false;
+        final Stack<String> pendingReviews = new Stack<String>();
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && content.charAt(lineEnd) != '\n' && content.charAt(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            final String line = content.subSequence(lineStart, lineEnd).toString().trim();
+            // a line ends with \n, \r or \r\n, as for a reader
+            lineStart = lineEnd + 1;
+            if (lineEnd + 1 < length && content.charAt(lineEnd) == '\r' && content.charAt(lineEnd + 1) == '\n') {
+                lineStart++;
+            }
+            lineNumber++;
+            if (line.startsWith("/*")) {
+                comment = line.indexOf("*/") == -1;
+            } else if (comment && line.indexOf("*/") != -1) {
+                comment = false;
+            } else if (!comment && line.startsWith(PMDRuntimeConstants.PLUGIN_STYLE_REVIEW_COMMENT)) {
+                final String tail = line.substring(PMDRuntimeConstants.PLUGIN_STYLE_REVIEW_COMMENT.length());
+                final String ruleName = tail.substring(0, tail.indexOf(':'));
+                pendingReviews.push(ruleName);
+                findLine = true;
+            } else if (!comment && findLine && StringUtil.isNotEmpty(line) && !line.startsWith("//")) {
+                findLine = false;
+                while (!pendingReviews.empty()) {
+                    // @PMD:REVIEWED:AvoidInstantiatingObjectsInLoops:
+                    // by Herlin on 01/05/05 18:36
+                    reviews.add(new Review(pendingReviews.pop(), lineNumber));
+                }
+            }
+        }
+        return reviews;
+    }
+
+    /**
+     * The markers of a file. Only one analysis thread reports the violations
+     * of a file, the markers are taken once its analysis is completed.
+     */
+    private final class FileViolations {
+        private final WorkspaceFileDataSource dataSource;
+        private final Set<MarkerInfo2> markers = new HashSet<MarkerInfo2>();
+        private final Map<Rule, Integer> violationsByRule = new HashMap<Rule, Integer>();
+        private Set<Review> reviews;
+        private int received;
+
+        FileViolations(WorkspaceFileDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        synchronized void accept(RuleViolation violation) {
+            received++;
+            Rule rule = violation.getRule();
+            Integer count = violationsByRule.get(rule);
+            int maxViolations = maxAllowableViolationsFor(rule);
+            if (count != null && count.intValue() >= maxViolations) {
+                return;
+            }
+
+            if (reviews().contains(new Review(rule.getName(), violation.getBeginLine()))) {
+                LOG.debug("Ignoring violation of rule " + rule.getName() + " at line " + violation.getBeginLine()
+                        + " because of a review.");
+                return;
+            }
+
+            int newCount = count == null ? 1 : count.intValue() + 1;
+            violationsByRule.put(rule, Integer.valueOf(newCount));
+            // Ryan Gustafson 02/16/2008 - Always use PMD_MARKER, as people
+            // get confused as to why PMD problems don't always show up on
+            // Problems view like they do when you do build.
+            markers.add(getMarkerInfo(violation, BaseVisitor.markerTypeFor(violation)));
+
+            if (newCount == maxViolations) {
+                LOG.debug("Maximum violations reached for rule " + rule.getName() + " in file "
+                        + dataSource.getFile().getName() + ", further violations are ignored");
+            }
+        }
+
+        private Set<Review> reviews() {
+            if (reviews == null) {
+                try {
+                    reviews = findReviewedViolations(dataSource.getSource().getContent());
+                } catch (IOException e) {
+                    PMDPlugin.getDefault().logError("IO Exception when searching reviewed violations", e);
+                    reviews = new HashSet<Review>();
+                }
+            }
+            return reviews;
+        }
+    }
+
+    /**
+     * A reviewed violation.
+     */
+    public static final class Review {
+        private final String ruleName;
+        private final int lineNumber;
+
+        public Review(String ruleName, int lineNumber) {
+            this.ruleName = ruleName;
+            this.lineNumber = lineNumber;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            boolean result = false;
+            if (obj instanceof Review) {
+                Review reviewObj = (Review) obj;
+                result = ruleName.equals(reviewObj.ruleName) && lineNumber == reviewObj.lineNumber;
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return ruleName.hashCode() + lineNumber * lineNumber;
+        }
+    }
+}
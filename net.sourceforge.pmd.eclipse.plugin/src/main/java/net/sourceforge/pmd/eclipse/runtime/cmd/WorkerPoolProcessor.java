@@ -0,0 +1,607 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PMDException;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSetFactory;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.SourceCodeProcessor;
+import net.sourceforge.pmd.eclipse.util.IOUtil;
+import net.sourceforge.pmd.processor.AbstractPMDProcessor;
+import net.sourceforge.pmd.processor.PmdRunnable;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.util.datasource.DataSource;
+
+/**
+ * Runs the analysis of a batch of files on a bounded pool of worker threads.
+ * PMD gives every worker thread its own copy of the rulesets. The reports are
+ * rendered and handed to the {@link FileReportListener} on the calling thread,
+ * which also takes care of the progress monitor and of cancellation, as the
+ * monitor is not thread safe.
+ *
+ * <p>On cancellation, the processor stops waiting for the workers at once and
+ * reports the files whose analysis did not complete, so that their partial
+ * results are rolled back. The workers stop at the next file, or earlier if
+ * the listeners of the report abort the running rule.
+ *
+ * <p>The files are handed to the workers as the {@link AnalysisGovernor}
+ * permits: it may take workers away while the heap is low or, for the
+ * background reviews, while a build runs, and the reviews running at the same
+ * time share its worker slots, in the order of their job priorities. While the
+ * heap is full, a review without running files goes on with a single worker
+ * after {@link AnalysisGovernor#NO_MEMORY_MAX_WAIT_MILLIS}. The progress view
+ * shows the active workers and why fewer of them run, or that the review is
+ * stalled.
+ *
+ * <p>If a timeout is set, the analysis of a file that takes longer is
+ * abandoned. Its worker thread can not be stopped, so the pool gets another
+ * thread for the remaining files, and the abandoned thread ends on its own.
+ * It keeps its worker slot of the governor until it ends. Once as many
+ * abandoned threads of a review still run as it has workers, no other file
+ * is handed to the workers, and the remaining files are given up like on
+ * cancellation when the other files have completed.
+ *
+ * <p>PMD reads the workspace files through a reader of their decoded content,
+ * rather than through their input stream, so that the content is not encoded
+ * and decoded again.
+ *
+ * <p>A processor is meant to be used for one call of
+ * {@link #processFiles(net.sourceforge.pmd.RuleSetFactory, List, net.sourceforge.pmd.RuleContext, List)}
+ * only: the worker threads are discarded afterwards, together with the ruleset
+ * copies PMD keeps per thread.
+ */
+public class WorkerPoolProcessor extends AbstractPMDProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkerPoolProcessor.class);
+
+    // also the maximum delay until a cancellation is noticed
+    private static final long POLL_INTERVAL_MS = 50;
+
+    // the abandoned analysis threads of all the reviews that did not end yet
+    private static final AtomicInteger HANGING_THREADS = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+    private final CompletionService<Report> completionService;
+    // the tasks handed to the workers, each holds a worker slot of the governor
+    private final Map<Future<Report>, TimedTask> tasks = new HashMap<Future<Report>, TimedTask>();
+    private final Deque<TimedTask> queuedTasks = new ArrayDeque<TimedTask>();
+    private final AnalysisGovernor governor;
+    private final int threadCount;
+    private AnalysisGovernor.Throttle throttle = AnalysisGovernor.Throttle.NONE;
+    private boolean background;
+    private int jobPriority = Job.LONG;
+    // whether the governor keeps the released slots for this processor
+    private boolean waiting;
+    // when the review started to wait without any running file as the heap is full, 0 if it does not
+    private long stalledSince;
+    private final IProgressMonitor monitor;
+    private final FileReportListener listener;
+    private final long timeoutMillis;
+    private DataSource currentDataSource;
+    private int submittedTasks;
+    private int processedFiles;
+    private int timedOutFiles;
+    private int analyzedFiles;
+    private long analysisMillis;
+    // the abandoned analysis threads of this review that did not end yet
+    private final AtomicInteger hangingThreads = new AtomicInteger();
+    private volatile boolean canceled;
+
+    /**
+     * Receives the report of each analyzed file.
+     */
+    public interface FileReportListener {
+        /**
+         * Called on the thread that called processFiles, once for every file
+         * whose analysis has completed, even if no violation was found.
+         *
+         * @param dataSource
+         *            the data source of the file
+         * @param report
+         *            the report of the file
+         */
+        void fileAnalyzed(DataSource dataSource, Report report);
+
+        /**
+         * Called on the thread that called processFiles, once for every file
+         * whose analysis has been abandoned, as it took longer than the
+         * timeout.
+         *
+         * @param dataSource
+         *            the data source of the file
+         * @param timeoutMillis
+         *            the timeout
+         */
+        void fileTimedOut(DataSource dataSource, long timeoutMillis);
+
+        /**
+         * Called on the thread that called processFiles, when the analysis
+         * has been canceled.
+         *
+         * @param unfinishedDataSources
+         *            the data sources of the files whose analysis did not
+         *            complete, and whose reports will not be received
+         */
+        void analysisCanceled(List<DataSource> unfinishedDataSources);
+    }
+
+    /**
+     * @param configuration
+     *            the PMD configuration
+     * @param threadCount
+     *            the number of worker threads
+     * @param monitor
+     *            the monitor to report progress to and to check for
+     *            cancellation, may be null
+     * @param listener
+     *            receives the report of each file
+     * @param timeoutMillis
+     *            the maximum duration of the analysis of a file, 0 for no
+     *            limit
+     * @param governor
+     *            decides how many files are analyzed at the same time
+     */
+    public WorkerPoolProcessor(PMDConfiguration configuration, int threadCount, IProgressMonitor monitor,
+            FileReportListener listener, long timeoutMillis, AnalysisGovernor governor) {
+        super(configuration);
+        int poolSize = Math.max(1, threadCount);
+        this.threadCount = poolSize;
+        this.governor = governor;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        this.completionService = new ExecutorCompletionService<Report>(executor);
+        this.monitor = monitor;
+        this.listener = listener;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @param background
+     *            whether the files are analyzed in the background, so that
+     *            the analysis waits while a build is running
+     */
+    void setBackground(boolean background) {
+        this.background = background;
+    }
+
+    /**
+     * @param jobPriority
+     *            the job priority of the review, the worker slots go to the
+     *            reviews of the highest priority first
+     */
+    void setJobPriority(int jobPriority) {
+        this.jobPriority = jobPriority;
+    }
+
+    /**
+     * Same as the PMD implementation, except that the data source of each
+     * task is remembered, so that its report can be routed back to it.
+     */
+    @Override
+    public void processFiles(RuleSetFactory ruleSetFactory, List<DataSource> files, RuleContext ctx,
+            List<Renderer> renderers) {
+        RuleSets rs = createRuleSets(ruleSetFactory, ctx.getReport());
+        configuration.getAnalysisCache().checkValidity(rs, configuration.getClassLoader());
+        SourceCodeProcessor processor = new DecodedSourceProcessor(configuration, files);
+
+        for (DataSource dataSource : files) {
+            currentDataSource = dataSource;
+            runAnalysis(new PmdRunnable(dataSource, dataSource.getNiceFileName(false, null), renderers, ctx, rs, processor));
+        }
+        currentDataSource = null;
+
+        renderReports(renderers, ctx.getReport());
+        collectReports(renderers);
+
+        for (DataSource dataSource : files) {
+            IOUtil.closeQuietly(dataSource);
+        }
+    }
+
+    @Override
+    protected void runAnalysis(PmdRunnable runnable) {
+        queuedTasks.add(new TimedTask(analysisTask(runnable, currentDataSource), currentDataSource));
+        submittedTasks++;
+    }
+
+    /**
+     * Creates the task that analyzes a file on a worker thread. The task runs
+     * PMD on the worker thread itself.
+     *
+     * @param runnable
+     *            the PMD analysis of the file
+     * @param dataSource
+     *            the data source of the file
+     * @return the task, which returns the report of the file
+     */
+    protected Callable<Report> analysisTask(PmdRunnable runnable, DataSource dataSource) {
+        return runnable;
+    }
+
+    /**
+     * Called on the thread that called processFiles, when a running analysis
+     * is abandoned, as it took too long or as the review was canceled.
+     *
+     * @param dataSource
+     *            the data source of the file
+     */
+    protected void analysisAbandoned(DataSource dataSource) {
+        // the worker thread can not be stopped
+    }
+
+    @Override
+    protected void collectReports(List<Renderer> renderers) {
+        try {
+            while (processedFiles < submittedTasks) {
+                if (isCanceled()) {
+                    LOG.debug("Analysis canceled after " + processedFiles + " of " + submittedTasks + " files");
+                    cancelUnfinishedTasks();
+                    break;
+                }
+                if (tasks.isEmpty() && hangingThreads.get() >= threadCount) {
+                    LOG.warn("The analysis of " + queuedTasks.size() + " files is given up, as " + hangingThreads.get()
+                            + " abandoned analysis threads of the review still run");
+                    cancelUnfinishedTasks();
+                    break;
+                }
+                dispatchQueuedTasks();
+
+                Future<Report> future = completionService.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (timeoutMillis > 0) {
+                    abandonOverdueTasks();
+                }
+                if (future == null) {
+                    continue;
+                }
+
+                TimedTask task = tasks.remove(future);
+                if (task == null) {
+                    // abandoned before, its late result is dropped
+                    continue;
+                }
+                governor.releaseWorkers(1);
+                try {
+                    Report report = future.get();
+                    if (task.duration >= 0) {
+                        analyzedFiles++;
+                        analysisMillis += task.duration;
+                    }
+                    renderReports(renderers, report);
+                    listener.fileAnalyzed(task.dataSource, report);
+                } catch (ExecutionException e) {
+                    LOG.error("Unexpected error while analyzing a file", e.getCause());
+                }
+                fileCompleted();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            setWaiting(false);
+            releaseUnfinishedTasks();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Hands queued files to the workers, as far as the governor permits.
+     */
+    private void dispatchQueuedTasks() {
+        AnalysisGovernor.Throttle currentThrottle = governor.currentThrottle(background);
+        if (currentThrottle != throttle) {
+            LOG.debug("Analysis throttle changed from " + throttle + " to " + currentThrottle);
+            throttle = currentThrottle;
+            reportProgress();
+        }
+        int permittedWorkers = AnalysisGovernor.permittedWorkers(threadCount, throttle);
+        if (hangingThreads.get() >= threadCount) {
+            // as many threads as the review has workers hang already
+            permittedWorkers = 0;
+        } else if (throttle != AnalysisGovernor.Throttle.NO_MEMORY) {
+            stalledSince = 0;
+        } else if (tasks.isEmpty() && !queuedTasks.isEmpty()) {
+            long now = System.currentTimeMillis();
+            if (stalledSince == 0) {
+                stalledSince = now;
+                LOG.debug("Analysis stalled, the heap is full");
+                reportProgress();
+            } else if (now - stalledSince >= AnalysisGovernor.NO_MEMORY_MAX_WAIT_MILLIS) {
+                // the heap may not be measured again before something allocates
+                permittedWorkers = 1;
+            }
+        }
+        while (!queuedTasks.isEmpty() && tasks.size() < permittedWorkers && governor.acquireWorker(jobPriority)) {
+            TimedTask task = queuedTasks.poll();
+            tasks.put(completionService.submit(task), task);
+        }
+        setWaiting(!queuedTasks.isEmpty() && tasks.size() < permittedWorkers);
+    }
+
+    private void setWaiting(boolean waiting) {
+        if (waiting != this.waiting) {
+            this.waiting = waiting;
+            governor.setWaiting(jobPriority, waiting);
+        }
+    }
+
+    private void cancelUnfinishedTasks() {
+        canceled = true;
+        setWaiting(false);
+        List<DataSource> unfinished = new ArrayList<DataSource>(tasks.size() + queuedTasks.size());
+        for (Map.Entry<Future<Report>, TimedTask> entry : tasks.entrySet()) {
+            unfinished.add(entry.getValue().dataSource);
+        }
+        for (TimedTask task : queuedTasks) {
+            unfinished.add(task.dataSource);
+        }
+        releaseUnfinishedTasks();
+        queuedTasks.clear();
+        executor.shutdownNow();
+        listener.analysisCanceled(unfinished);
+    }
+
+    /**
+     * Abandons the tasks handed to the workers. The worker slot of a task is
+     * given back at once if it did not start or has completed, otherwise when
+     * its thread ends.
+     */
+    private void releaseUnfinishedTasks() {
+        for (Map.Entry<Future<Report>, TimedTask> entry : tasks.entrySet()) {
+            if (!abandon(entry.getKey(), entry.getValue())) {
+                governor.releaseWorkers(1);
+            }
+        }
+        tasks.clear();
+    }
+
+    private void abandonOverdueTasks() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Future<Report>, TimedTask>> entries = tasks.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Future<Report>, TimedTask> entry = entries.next();
+            if (entry.getKey().isDone() || !entry.getValue().isOverdue(now, timeoutMillis)
+                    || !abandon(entry.getKey(), entry.getValue())) {
+                // a task that completed meanwhile is received with the others
+                continue;
+            }
+            entries.remove();
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() + 1);
+            executor.setCorePoolSize(executor.getCorePoolSize() + 1);
+            timedOutFiles++;
+            LOG.warn("Analysis of " + entry.getValue().dataSource + " abandoned after " + timeoutMillis + " ms, "
+                    + HANGING_THREADS.get() + " abandoned analysis threads still run");
+            listener.fileTimedOut(entry.getValue().dataSource, timeoutMillis);
+            fileCompleted();
+        }
+    }
+
+    /**
+     * @return true if the worker thread of the task still runs, it then gives
+     *         back its worker slot when it ends
+     */
+    private boolean abandon(Future<Report> future, TimedTask task) {
+        if (!task.abandon()) {
+            return false;
+        }
+        hangingThreads.incrementAndGet();
+        HANGING_THREADS.incrementAndGet();
+        // PMD does not check for interruption, but try anyway
+        future.cancel(true);
+        analysisAbandoned(task.dataSource);
+        return true;
+    }
+
+    /**
+     * Called on the worker thread of an abandoned task, when it ends.
+     */
+    private void abandonedTaskEnded(TimedTask task) {
+        hangingThreads.decrementAndGet();
+        HANGING_THREADS.decrementAndGet();
+        governor.releaseWorkers(1);
+        LOG.info("The abandoned analysis of " + task.dataSource + " ended after "
+                + (System.currentTimeMillis() - task.startTime) + " ms");
+    }
+
+    private void fileCompleted() {
+        processedFiles++;
+        reportProgress();
+        if (monitor != null) {
+            monitor.worked(1);
+        }
+    }
+
+    private void reportProgress() {
+        if (monitor == null) {
+            return;
+        }
+        StringBuilder state = new StringBuilder("PMD checking: ").append(processedFiles).append(" of ")
+                .append(submittedTasks).append(" files, ").append(tasks.size()).append(" workers");
+        if (hangingThreads.get() > 0) {
+            state.append(", ").append(hangingThreads.get()).append(" abandoned");
+        }
+        if (stalledSince != 0 && tasks.isEmpty()) {
+            state.append(" (stalled, the heap is full)");
+        } else if (throttle != AnalysisGovernor.Throttle.NONE) {
+            state.append(" (").append(throttle.getDescription()).append(')');
+        }
+        monitor.subTask(state.toString());
+    }
+
+    private boolean isCanceled() {
+        return monitor != null && monitor.isCanceled();
+    }
+
+    /**
+     * @return the number of files, whose analysis has been completed
+     */
+    public int getProcessedFilesCount() {
+        return processedFiles;
+    }
+
+    /**
+     * @return the number of files, whose analysis has been abandoned as it
+     *         took longer than the timeout
+     */
+    public int getTimedOutFilesCount() {
+        return timedOutFiles;
+    }
+
+    /**
+     * @return the number of files, whose analysis has been completed by a
+     *         worker, without the abandoned files
+     */
+    public int getAnalyzedFilesCount() {
+        return analyzedFiles;
+    }
+
+    /**
+     * @return the time the workers spent analyzing the files counted by
+     *         {@link #getAnalyzedFilesCount()}. The time the files waited for a
+     *         worker, e.g. while the analysis was throttled, and the time of
+     *         the abandoned files are not included.
+     */
+    public long getAnalysisMillis() {
+        return analysisMillis;
+    }
+
+    /**
+     * Runs the analysis of a file and remembers when a worker thread started
+     * it, so that the time spent waiting in the queue is not counted.
+     */
+    private final class TimedTask implements Callable<Report> {
+        private static final int NEW = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int ABANDONED = 3;
+
+        private final Callable<Report> analysis;
+        private final DataSource dataSource;
+        private final AtomicInteger state = new AtomicInteger(NEW);
+        // 0 until a worker thread takes the task
+        private volatile long startTime;
+        // -1 until the analysis has completed
+        private volatile long duration = -1;
+
+        TimedTask(Callable<Report> analysis, DataSource dataSource) {
+            this.analysis = analysis;
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        public Report call() throws Exception {
+            if (!state.compareAndSet(NEW, RUNNING)) {
+                // abandoned before it started
+                return new Report();
+            }
+            startTime = System.currentTimeMillis();
+            try {
+                if (canceled) {
+                    return new Report();
+                }
+                Report report = analysis.call();
+                duration = System.currentTimeMillis() - startTime;
+                return report;
+            } finally {
+                if (!state.compareAndSet(RUNNING, DONE)) {
+                    abandonedTaskEnded(this);
+                }
+            }
+        }
+
+        /**
+         * @return true if a worker thread runs the task, false if it did not
+         *         start or has completed
+         */
+        boolean abandon() {
+            if (state.compareAndSet(NEW, ABANDONED)) {
+                return false;
+            }
+            return state.compareAndSet(RUNNING, ABANDONED);
+        }
+
+        boolean isOverdue(long now, long timeoutMillis) {
+            long start = startTime;
+            return start != 0 && now - start > timeoutMillis;
+        }
+    }
+
+    /**
+     * Hands PMD a reader of the decoded content of the workspace files. PMD
+     * passes their input stream, which is then left unread, and the file name
+     * the report of the file is created with.
+     */
+    private static class DecodedSourceProcessor extends SourceCodeProcessor {
+        private final Map<String, WorkspaceFileDataSource> workspaceFiles =
+                new HashMap<String, WorkspaceFileDataSource>();
+
+        DecodedSourceProcessor(PMDConfiguration configuration, List<DataSource> files) {
+            super(configuration);
+            for (DataSource dataSource : files) {
+                if (dataSource instanceof WorkspaceFileDataSource) {
+                    workspaceFiles.put(dataSource.getNiceFileName(false, null), (WorkspaceFileDataSource) dataSource);
+                }
+            }
+        }
+
+        @Override
+        public void processSourceCode(InputStream sourceCode, RuleSets ruleSets, RuleContext ctx)
+                throws PMDException {
+            WorkspaceFileDataSource dataSource = ctx.getSourceCodeFile() == null ? null
+                    : workspaceFiles.get(ctx.getSourceCodeFile().getPath());
+            if (dataSource == null) {
+                super.processSourceCode(sourceCode, ruleSets, ctx);
+                return;
+            }
+            try {
+                // the reader does not hold any resource to close
+                processSourceCode(dataSource.getReader(), ruleSets, ctx);
+            } catch (IOException e) {
+                throw new PMDException("IO exception: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Creates daemon threads, so that a hanging analysis never prevents the
+     * workbench from shutting down.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "PMD analysis worker " + COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+
+import net.sourceforge.pmd.eclipse.util.SourceBuffer;
+import net.sourceforge.pmd.util.datasource.DataSource;
+
+/**
+ * A data source for a workspace file. The content is only read when PMD asks
+ * for it, that is on the thread analyzing the file, so that a batch of data
+ * sources does not keep all files in memory.
+ *
+ * <p>The file is decoded with its own charset and handed to PMD as a reader
+ * of the decoded content. The content is only encoded in the source encoding
+ * of the PMD configuration if the input stream is read. The decoded content is
+ * kept until the report of the file is processed, so that the review comments
+ * are searched without reading the file again.
+ */
+public class WorkspaceFileDataSource implements DataSource {
+
+    private final IFile file;
+    private final String fileName;
+    private final Charset sourceEncoding;
+    private volatile SourceBuffer source;
+
+    /**
+     * @param file
+     *            the workspace file
+     * @param fileName
+     *            the name PMD uses to report violations of this file
+     * @param sourceEncoding
+     *            the encoding PMD expects the content in
+     */
+    public WorkspaceFileDataSource(IFile file, String fileName, Charset sourceEncoding) {
+        this.file = file;
+        this.fileName = fileName;
+        this.sourceEncoding = sourceEncoding;
+    }
+
+    public IFile getFile() {
+        return file;
+    }
+
+    /**
+     * @return the content in the source encoding of the PMD configuration,
+     *         encoded when the stream is first read
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new InputStream() {
+            private InputStream encoded;
+
+            private InputStream encoded() throws IOException {
+                if (encoded == null) {
+                    ByteBuffer bytes = getSource().encode(sourceEncoding);
+                    encoded = new ByteArrayInputStream(bytes.array(), bytes.arrayOffset() + bytes.position(),
+                            bytes.remaining());
+                }
+                return encoded;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return encoded().read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                return encoded().read(buffer, offset, length);
+            }
+
+            @Override
+            public int available() throws IOException {
+                return encoded == null ? 0 : encoded.available();
+            }
+        };
+    }
+
+    /**
+     * @return a reader of the decoded content, without encoding it again
+     */
+    public Reader getReader() throws IOException {
+        return getSource().newReader();
+    }
+
+    /**
+     * @return the decoded content of the file, read at the first call
+     */
+    public SourceBuffer getSource() throws IOException {
+        SourceBuffer result = source;
+        if (result == null) {
+            try {
+                result = SourceBuffer.read(file);
+            } catch (CoreException e) {
+                throw new IOException("Unable to read " + file.getName(), e);
+            }
+            source = result;
+        }
+        return result;
+    }
+
+    /**
+     * Releases the decoded content, once the report of the file is processed.
+     */
+    public void release() {
+        source = null;
+    }
+
+    @Override
+    public String getNiceFileName(boolean shortNames, String inputFileName) {
+        return fileName;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the content is read and closed at once in getSource
+        release();
+    }
+
+    @Override
+    public String toString() {
+        return fileName;
+    }
+}
@@ -29,6 +29,17 @@ public interface IPreferences {
     boolean PMD_CHECK_AFTER_SAVE_DEFAULT = false;
     boolean PMD_USE_CUSTOM_PRIORITY_NAMES_DEFAULT = true;
     int MAX_VIOLATIONS_PFPR_DEFAULT = 5;
+    int MAX_ANALYSIS_THREADS_DEFAULT = Math.max(1, Runtime.getRuntime().availableProcessors());
+    int ANALYSIS_TIMEOUT_DEFAULT = 60;
+    int REVIEW_LATENCY_BUDGET_DEFAULT = 2000;
+    int IDLE_REVIEW_DELAY_DEFAULT = 60;
+    int ANALYSIS_WORKERS_DEFAULT = 0;
+    int ANALYSIS_WORKER_HEAP_DEFAULT = 2048;
+    int LIGHT_ANALYSIS_FILE_SIZE_DEFAULT = 512;
+    int SKIPPED_FILE_SIZE_DEFAULT = 4096;
+    String GENERATED_FILE_SIGNATURES_DEFAULT = "@Generated,@javax.annotation.Generated,"
+            + "Generated by the protocol buffer compiler,by the JavaTM Architecture for XML Binding,"
+            + "Generated By:JavaCC,DO NOT EDIT";
     boolean DETERMINE_FILETYPES_AUTOMATICALLY_DEFAULT = true;
     String REVIEW_ADDITIONAL_COMMENT_DEFAULT = "by {0} on {1}";
     boolean REVIEW_PMD_STYLE_ENABLED_DEFAULT = true;
@@ -72,6 +83,21 @@ public interface IPreferences {
 
     void setActiveRuleNames(Set<String> ruleNames);
 
+    /**
+     * @return the names of the rules that are assigned to the background tier,
+     *         in addition to the rules that need the data flow analysis or
+     *         several files
+     */
+    Set<String> getBackgroundRuleNames();
+
+    /**
+     * Assigns rules to the background tier.
+     *
+     * @param ruleNames
+     *            the names of the rules
+     */
+    void setBackgroundRuleNames(Set<String> ruleNames);
+
     /**
      * Should the Project Build Path be used?
      */
@@ -146,6 +172,136 @@ public interface IPreferences {
      */
     void setMaxViolationsPerFilePerRule(int maxViolationPerFilePerRule);
 
+    /**
+     * Get the maximum number of worker threads used to analyze files in
+     * parallel during a code review
+     */
+    int getMaxAnalysisThreads();
+
+    /**
+     * Set the maximum number of worker threads used to analyze files in
+     * parallel during a code review
+     * 
+     * @param maxAnalysisThreads
+     *            a value of 1 disables the parallel analysis
+     */
+    void setMaxAnalysisThreads(int maxAnalysisThreads);
+
+    /**
+     * Get the maximum time in seconds the analysis of a single file may take.
+     * Files whose analysis takes longer are skipped until their content changes.
+     *
+     * @return the timeout in seconds, 0 if there is no limit
+     */
+    int getAnalysisTimeout();
+
+    /**
+     * Set the maximum time in seconds the analysis of a single file may take.
+     *
+     * @param analysisTimeout
+     *            the timeout in seconds, 0 for no limit
+     */
+    void setAnalysisTimeout(int analysisTimeout);
+
+    /**
+     * Get the time in milliseconds a check triggered by a build may take. The
+     * files estimated to exceed it are checked in the background.
+     *
+     * @return the latency budget in milliseconds, 0 for no limit
+     */
+    int getReviewLatencyBudget();
+
+    /**
+     * Set the time in milliseconds a check triggered by a build may take.
+     *
+     * @param reviewLatencyBudget
+     *            the latency budget in milliseconds, 0 for no limit
+     */
+    void setReviewLatencyBudget(int reviewLatencyBudget);
+
+    /**
+     * Get the number of seconds without user input or build after which the
+     * stale files of the workspace are checked in the background.
+     *
+     * @return the idle delay in seconds, 0 if the idle checks are disabled
+     */
+    int getIdleReviewDelay();
+
+    /**
+     * Set the number of seconds without user input or build after which the
+     * stale files of the workspace are checked in the background.
+     *
+     * @param idleReviewDelay
+     *            the idle delay in seconds, 0 to disable the idle checks
+     */
+    void setIdleReviewDelay(int idleReviewDelay);
+
+    /**
+     * Get the number of separate JVMs the files are analyzed in. With 0, the
+     * files are analyzed in the workbench JVM.
+     *
+     * @return the number of worker JVMs
+     */
+    int getAnalysisWorkers();
+
+    /**
+     * Set the number of separate JVMs the files are analyzed in.
+     *
+     * @param analysisWorkers
+     *            the number of worker JVMs, 0 to analyze the files in the
+     *            workbench JVM
+     */
+    void setAnalysisWorkers(int analysisWorkers);
+
+    /**
+     * Get the maximum heap size of each analysis worker JVM.
+     *
+     * @return the maximum heap size in megabytes
+     */
+    int getAnalysisWorkerHeap();
+
+    /**
+     * Set the maximum heap size of each analysis worker JVM.
+     *
+     * @param analysisWorkerHeap
+     *            the maximum heap size in megabytes
+     */
+    void setAnalysisWorkerHeap(int analysisWorkerHeap);
+
+    /**
+     * Get the size in kilobytes above which only the high priority rules are
+     * checked in a file, 0 for no limit.
+     */
+    int getLightAnalysisFileSize();
+
+    /**
+     * Set the size in kilobytes above which only the high priority rules are
+     * checked in a file.
+     */
+    void setLightAnalysisFileSize(int lightAnalysisFileSize);
+
+    /**
+     * Get the size in kilobytes above which a file is not checked, 0 for no
+     * limit.
+     */
+    int getSkippedFileSize();
+
+    /**
+     * Set the size in kilobytes above which a file is not checked.
+     */
+    void setSkippedFileSize(int skippedFileSize);
+
+    /**
+     * Get the comma separated texts that mark a file as generated, when they
+     * appear in its first kilobytes. Generated files are not checked.
+     */
+    String getGeneratedFileSignatures();
+
+    /**
+     * Set the comma separated texts that mark a file as generated.
+     */
+    void setGeneratedFileSignatures(String generatedFileSignatures);
+
     /**
      * If true: When checking, whether a given file should be analyzed by PMD, take
      * the rule's language and the language's file extensions into account.
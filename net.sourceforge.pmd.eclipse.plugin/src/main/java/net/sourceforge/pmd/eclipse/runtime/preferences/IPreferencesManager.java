@@ -37,6 +37,15 @@ public interface IPreferencesManager {
      * @param preferences structure of the preferences information
      */
     void storePreferences(IPreferences preferences);
+
+    /**
+     * Returns the revision of the preferences. It changes whenever the
+     * preferences or the configured rule set are reloaded or stored, so that
+     * results derived from them can be cached.
+     *
+     * @return the current revision
+     */
+    long getRevision();
     
     
     // The following operations are for a transition period only
@@ -39,6 +39,15 @@ class PreferencesImpl implements IPreferences {
     private boolean checkAfterSaveEnabled;
     private boolean useCustomPriorityNames;
     private int maxViolationsPerFilePerRule;
+    private int maxAnalysisThreads;
+    private int analysisTimeout;
+    private int reviewLatencyBudget;
+    private int idleReviewDelay;
+    private int analysisWorkers;
+    private int analysisWorkerHeap;
+    private int lightAnalysisFileSize;
+    private int skippedFileSize;
+    private String generatedFileSignatures;
     private boolean determineFiletypesAutomatically;
     private String reviewAdditionalComment;
     private boolean reviewPmdStyleEnabled;
@@ -47,6 +56,7 @@ class PreferencesImpl implements IPreferences {
     private String logLevel;
     private boolean globalRuleManagement;
     private Set<String> activeRuleNames = new HashSet<String>();
+    private Set<String> backgroundRuleNames = new HashSet<String>();
     private Set<String> activeRendererNames = new HashSet<String>();
     private Set<String> activeExclusionPatterns = new HashSet<String>();
     private Set<String> activeInclusionPatterns = new HashSet<String>();
@@ -147,6 +157,132 @@ class PreferencesImpl implements IPreferences {
         this.maxViolationsPerFilePerRule = maxViolationPerFilePerRule;
     }
 
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#getMaxAnalysisThreads()
+     */
+    public int getMaxAnalysisThreads() {
+        return maxAnalysisThreads;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#setMaxAnalysisThreads(int)
+     */
+    public void setMaxAnalysisThreads(int maxAnalysisThreads) {
+        this.maxAnalysisThreads = maxAnalysisThreads;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#getAnalysisTimeout()
+     */
+    public int getAnalysisTimeout() {
+        return analysisTimeout;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#setAnalysisTimeout(int)
+     */
+    public void setAnalysisTimeout(int analysisTimeout) {
+        this.analysisTimeout = analysisTimeout;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#getReviewLatencyBudget()
+     */
+    public int getReviewLatencyBudget() {
+        return reviewLatencyBudget;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#setReviewLatencyBudget(int)
+     */
+    public void setReviewLatencyBudget(int reviewLatencyBudget) {
+        this.reviewLatencyBudget = reviewLatencyBudget;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#getIdleReviewDelay()
+     */
+    public int getIdleReviewDelay() {
+        return idleReviewDelay;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#setIdleReviewDelay(int)
+     */
+    public void setIdleReviewDelay(int idleReviewDelay) {
+        this.idleReviewDelay = idleReviewDelay;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#getAnalysisWorkers()
+     */
+    public int getAnalysisWorkers() {
+        return analysisWorkers;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#setAnalysisWorkers(int)
+     */
+    public void setAnalysisWorkers(int analysisWorkers) {
+        this.analysisWorkers = analysisWorkers;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#getAnalysisWorkerHeap()
+     */
+    public int getAnalysisWorkerHeap() {
+        return analysisWorkerHeap;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#setAnalysisWorkerHeap(int)
+     */
+    public void setAnalysisWorkerHeap(int analysisWorkerHeap) {
+        this.analysisWorkerHeap = analysisWorkerHeap;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#getLightAnalysisFileSize()
+     */
+    public int getLightAnalysisFileSize() {
+        return lightAnalysisFileSize;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#setLightAnalysisFileSize(int)
+     */
+    public void setLightAnalysisFileSize(int lightAnalysisFileSize) {
+        this.lightAnalysisFileSize = lightAnalysisFileSize;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#getSkippedFileSize()
+     */
+    public int getSkippedFileSize() {
+        return skippedFileSize;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#setSkippedFileSize(int)
+     */
+    public void setSkippedFileSize(int skippedFileSize) {
+        this.skippedFileSize = skippedFileSize;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#getGeneratedFileSignatures()
+     */
+    public String getGeneratedFileSignatures() {
+        return generatedFileSignatures;
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences#setGeneratedFileSignatures(String)
+     */
+    public void setGeneratedFileSignatures(String generatedFileSignatures) {
+        this.generatedFileSignatures = generatedFileSignatures;
+    }
+
     @Override
     public boolean isDetermineFiletypesAutomatically() {
         return determineFiletypesAutomatically;
@@ -298,6 +434,14 @@ class PreferencesImpl implements IPreferences {
         activeRuleNames = ruleNames;
     }
 
+    public Set<String> getBackgroundRuleNames() {
+        return backgroundRuleNames;
+    }
+
+    public void setBackgroundRuleNames(Set<String> ruleNames) {
+        backgroundRuleNames = ruleNames;
+    }
+
     public Set<String> activeExclusionPatterns() {
         return activeExclusionPatterns;
     }
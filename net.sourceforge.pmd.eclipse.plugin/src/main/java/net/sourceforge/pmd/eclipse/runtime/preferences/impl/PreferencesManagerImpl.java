@@ -17,6 +17,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.resources.IProject;
@@ -37,6 +38,7 @@ import net.sourceforge.pmd.RuleSetNotFoundException;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.eclipse.core.IRuleSetManager;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.cache.RuleSetsCache;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferencesFactory;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferencesManager;
@@ -68,6 +70,15 @@ class PreferencesManagerImpl implements IPreferencesManager {
     private static final String PMD_VIOLATIONS_OUTLINE_ENABLED = PMDPlugin.PLUGIN_ID + ".pmd_outline_enabled";
     private static final String PMD_CHECK_AFTER_SAVE_ENABLED = PMDPlugin.PLUGIN_ID + ".pmd_check_after_save_enabled";
     private static final String MAX_VIOLATIONS_PFPR = PMDPlugin.PLUGIN_ID + ".max_violations_pfpr";
+    private static final String MAX_ANALYSIS_THREADS = PMDPlugin.PLUGIN_ID + ".max_analysis_threads";
+    private static final String ANALYSIS_TIMEOUT = PMDPlugin.PLUGIN_ID + ".analysis_timeout";
+    private static final String REVIEW_LATENCY_BUDGET = PMDPlugin.PLUGIN_ID + ".review_latency_budget";
+    private static final String IDLE_REVIEW_DELAY = PMDPlugin.PLUGIN_ID + ".idle_review_delay";
+    private static final String ANALYSIS_WORKERS = PMDPlugin.PLUGIN_ID + ".analysis_workers";
+    private static final String ANALYSIS_WORKER_HEAP = PMDPlugin.PLUGIN_ID + ".analysis_worker_heap";
+    private static final String LIGHT_ANALYSIS_FILE_SIZE = PMDPlugin.PLUGIN_ID + ".light_analysis_file_size";
+    private static final String SKIPPED_FILE_SIZE = PMDPlugin.PLUGIN_ID + ".skipped_file_size";
+    private static final String GENERATED_FILE_SIGNATURES = PMDPlugin.PLUGIN_ID + ".generated_file_signatures";
     private static final String DETERMINE_FILETYPES_AUTOMATICALLY = PMDPlugin.PLUGIN_ID + ".determine_filetypes_automatically";
     private static final String REVIEW_ADDITIONAL_COMMENT = PMDPlugin.PLUGIN_ID + ".review_additional_comment";
     private static final String REVIEW_PMD_STYLE_ENABLED = PMDPlugin.PLUGIN_ID + ".review_pmd_style_enabled";
@@ -77,6 +88,7 @@ class PreferencesManagerImpl implements IPreferencesManager {
     private static final String LOG_LEVEL = PMDPlugin.PLUGIN_ID + ".log_level";
     private static final String GLOBAL_RULE_MANAGEMENT = PMDPlugin.PLUGIN_ID + ".globalRuleManagement";
     private static final String ACTIVE_RULES = PMDPlugin.PLUGIN_ID + ".active_rules";
+    private static final String BACKGROUND_RULES = PMDPlugin.PLUGIN_ID + ".background_rules";
     private static final String ACTIVE_RENDERERS = PMDPlugin.PLUGIN_ID + ".active_renderers";
     private static final String ACTIVE_EXCLUSIONS = PMDPlugin.PLUGIN_ID + ".active_exclusions";
     private static final String ACTIVE_INCLUSIONS = PMDPlugin.PLUGIN_ID + ".active_inclusions";
@@ -128,6 +140,7 @@ class PreferencesManagerImpl implements IPreferencesManager {
     private IPreferenceStore loadPreferencesStore;
 
     private RuleSet ruleSet;
+    private final AtomicLong revision = new AtomicLong();
 
     public PriorityDescriptor defaultDescriptorFor(RulePriority priority) {
         return DEFAULT_DESCRIPTORS_BY_PRIORITY.get(priority);
@@ -160,6 +173,15 @@ class PreferencesManagerImpl implements IPreferencesManager {
         loadCheckAfterSaveEnabled();
         loadUseCustomPriorityNames();
         loadMaxViolationsPerFilePerRule();
+        loadMaxAnalysisThreads();
+        loadAnalysisTimeout();
+        loadReviewLatencyBudget();
+        loadIdleReviewDelay();
+        loadAnalysisWorkers();
+        loadAnalysisWorkerHeap();
+        loadLightAnalysisFileSize();
+        loadSkippedFileSize();
+        loadGeneratedFileSignatures();
         loadDetermineFiletypesAutomatically();
         loadReviewAdditionalComment();
         loadReviewPmdStyleEnabled();
@@ -168,6 +190,7 @@ class PreferencesManagerImpl implements IPreferencesManager {
         loadLogLevel();
         loadGlobalRuleManagement();
         loadActiveRules();
+        loadBackgroundRules();
         loadActiveReportRenderers();
         loadActiveExclusions();
         loadActiveInclusions();
@@ -179,6 +202,7 @@ class PreferencesManagerImpl implements IPreferencesManager {
         loadSelectedRuleNames();
         loadSelectedPropertyTab();
 
+        preferencesChanged();
         return preferences;
     }
 
@@ -233,6 +257,15 @@ class PreferencesManagerImpl implements IPreferencesManager {
         storeCheckAfterSaveEnabled();
         storeUseCustomPriorityNames();
         storeMaxViolationsPerFilePerRule();
+        storeMaxAnalysisThreads();
+        storeAnalysisTimeout();
+        storeReviewLatencyBudget();
+        storeIdleReviewDelay();
+        storeAnalysisWorkers();
+        storeAnalysisWorkerHeap();
+        storeLightAnalysisFileSize();
+        storeSkippedFileSize();
+        storeGeneratedFileSignatures();
         storeDetermineFiletypesAutomatically();
         storeReviewAdditionalComment();
         storeReviewPmdStyleEnabled();
@@ -241,6 +274,7 @@ class PreferencesManagerImpl implements IPreferencesManager {
         storeLogLevel();
         storeGlobalRuleManagement();
         storeActiveRules();
+        storeBackgroundRules();
         storeActiveReportRenderers();
         storeActiveExclusions();
         storeActiveInclusions();
@@ -251,6 +285,20 @@ class PreferencesManagerImpl implements IPreferencesManager {
         storeGroupingColumn();
         storeSelectedRuleNames();
         storeSelectedPropertyTab();
+
+        preferencesChanged();
+    }
+
+    /**
+     * @see net.sourceforge.pmd.eclipse.runtime.preferences.IPreferencesManager#getRevision()
+     */
+    public long getRevision() {
+        return revision.get();
+    }
+
+    private void preferencesChanged() {
+        revision.incrementAndGet();
+        RuleSetsCache.invalidateAll();
     }
 
     /**
@@ -271,6 +319,7 @@ class PreferencesManagerImpl implements IPreferencesManager {
         updateConfiguredProjects(newRuleSet);
         ruleSet = newRuleSet;
         storeRuleSetInStateLocation(ruleSet);
+        preferencesChanged();
     }
 
     private void loadProjectBuildPathEnabled() {
@@ -308,6 +357,51 @@ class PreferencesManagerImpl implements IPreferencesManager {
         loadPreferencesStore.setDefault(MAX_VIOLATIONS_PFPR, IPreferences.MAX_VIOLATIONS_PFPR_DEFAULT);
         preferences.setMaxViolationsPerFilePerRule(loadPreferencesStore.getInt(MAX_VIOLATIONS_PFPR));
     }
+
+    private void loadMaxAnalysisThreads() {
+        loadPreferencesStore.setDefault(MAX_ANALYSIS_THREADS, IPreferences.MAX_ANALYSIS_THREADS_DEFAULT);
+        preferences.setMaxAnalysisThreads(loadPreferencesStore.getInt(MAX_ANALYSIS_THREADS));
+    }
+
+    private void loadAnalysisTimeout() {
+        loadPreferencesStore.setDefault(ANALYSIS_TIMEOUT, IPreferences.ANALYSIS_TIMEOUT_DEFAULT);
+        preferences.setAnalysisTimeout(loadPreferencesStore.getInt(ANALYSIS_TIMEOUT));
+    }
+
+    private void loadReviewLatencyBudget() {
+        loadPreferencesStore.setDefault(REVIEW_LATENCY_BUDGET, IPreferences.REVIEW_LATENCY_BUDGET_DEFAULT);
+        preferences.setReviewLatencyBudget(loadPreferencesStore.getInt(REVIEW_LATENCY_BUDGET));
+    }
+
+    private void loadIdleReviewDelay() {
+        loadPreferencesStore.setDefault(IDLE_REVIEW_DELAY, IPreferences.IDLE_REVIEW_DELAY_DEFAULT);
+        preferences.setIdleReviewDelay(loadPreferencesStore.getInt(IDLE_REVIEW_DELAY));
+    }
+
+    private void loadAnalysisWorkers() {
+        loadPreferencesStore.setDefault(ANALYSIS_WORKERS, IPreferences.ANALYSIS_WORKERS_DEFAULT);
+        preferences.setAnalysisWorkers(loadPreferencesStore.getInt(ANALYSIS_WORKERS));
+    }
+
+    private void loadAnalysisWorkerHeap() {
+        loadPreferencesStore.setDefault(ANALYSIS_WORKER_HEAP, IPreferences.ANALYSIS_WORKER_HEAP_DEFAULT);
+        preferences.setAnalysisWorkerHeap(loadPreferencesStore.getInt(ANALYSIS_WORKER_HEAP));
+    }
+
+    private void loadLightAnalysisFileSize() {
+        loadPreferencesStore.setDefault(LIGHT_ANALYSIS_FILE_SIZE, IPreferences.LIGHT_ANALYSIS_FILE_SIZE_DEFAULT);
+        preferences.setLightAnalysisFileSize(loadPreferencesStore.getInt(LIGHT_ANALYSIS_FILE_SIZE));
+    }
+
+    private void loadSkippedFileSize() {
+        loadPreferencesStore.setDefault(SKIPPED_FILE_SIZE, IPreferences.SKIPPED_FILE_SIZE_DEFAULT);
+        preferences.setSkippedFileSize(loadPreferencesStore.getInt(SKIPPED_FILE_SIZE));
+    }
+
+    private void loadGeneratedFileSignatures() {
+        loadPreferencesStore.setDefault(GENERATED_FILE_SIGNATURES, IPreferences.GENERATED_FILE_SIGNATURES_DEFAULT);
+        preferences.setGeneratedFileSignatures(loadPreferencesStore.getString(GENERATED_FILE_SIGNATURES));
+    }
     
     private void loadDetermineFiletypesAutomatically() {
         loadPreferencesStore.setDefault(DETERMINE_FILETYPES_AUTOMATICALLY, IPreferences.DETERMINE_FILETYPES_AUTOMATICALLY_DEFAULT);
@@ -349,6 +443,11 @@ class PreferencesManagerImpl implements IPreferencesManager {
         preferences.setActiveRuleNames(asStringSet(loadPreferencesStore.getString(ACTIVE_RULES), ","));
     }
 
+    private void loadBackgroundRules() {
+        loadPreferencesStore.setDefault(BACKGROUND_RULES, "");
+        preferences.setBackgroundRuleNames(asStringSet(loadPreferencesStore.getString(BACKGROUND_RULES), ","));
+    }
+
     private void loadActiveReportRenderers() {
         loadPreferencesStore.setDefault(ACTIVE_RENDERERS, IPreferences.ACTIVE_RENDERERS);
         preferences.activeReportRenderers(asStringSet(loadPreferencesStore.getString(ACTIVE_RENDERERS), ","));
@@ -457,6 +556,11 @@ class PreferencesManagerImpl implements IPreferencesManager {
         storePreferencesStore.setValue(ACTIVE_RULES, asDelimitedString(preferences.getActiveRuleNames(), ","));
     }
 
+    private void storeBackgroundRules() {
+        storePreferencesStore.setValue(BACKGROUND_RULES,
+                asDelimitedString(preferences.getBackgroundRuleNames(), ","));
+    }
+
     private void storeActiveReportRenderers() {
         storePreferencesStore.setValue(ACTIVE_RENDERERS, asDelimitedString(preferences.activeReportRenderers(), ","));
     }
@@ -499,6 +603,42 @@ class PreferencesManagerImpl implements IPreferencesManager {
         storePreferencesStore.setValue(MAX_VIOLATIONS_PFPR, preferences.getMaxViolationsPerFilePerRule());
     }
 
+    private void storeMaxAnalysisThreads() {
+        storePreferencesStore.setValue(MAX_ANALYSIS_THREADS, preferences.getMaxAnalysisThreads());
+    }
+
+    private void storeAnalysisTimeout() {
+        storePreferencesStore.setValue(ANALYSIS_TIMEOUT, preferences.getAnalysisTimeout());
+    }
+
+    private void storeReviewLatencyBudget() {
+        storePreferencesStore.setValue(REVIEW_LATENCY_BUDGET, preferences.getReviewLatencyBudget());
+    }
+
+    private void storeIdleReviewDelay() {
+        storePreferencesStore.setValue(IDLE_REVIEW_DELAY, preferences.getIdleReviewDelay());
+    }
+
+    private void storeAnalysisWorkers() {
+        storePreferencesStore.setValue(ANALYSIS_WORKERS, preferences.getAnalysisWorkers());
+    }
+
+    private void storeAnalysisWorkerHeap() {
+        storePreferencesStore.setValue(ANALYSIS_WORKER_HEAP, preferences.getAnalysisWorkerHeap());
+    }
+
+    private void storeLightAnalysisFileSize() {
+        storePreferencesStore.setValue(LIGHT_ANALYSIS_FILE_SIZE, preferences.getLightAnalysisFileSize());
+    }
+
+    private void storeSkippedFileSize() {
+        storePreferencesStore.setValue(SKIPPED_FILE_SIZE, preferences.getSkippedFileSize());
+    }
+
+    private void storeGeneratedFileSignatures() {
+        storePreferencesStore.setValue(GENERATED_FILE_SIGNATURES, preferences.getGeneratedFileSignatures());
+    }
+
     private void storeDetermineFiletypesAutomatically() {
         storePreferencesStore.setValue(DETERMINE_FILETYPES_AUTOMATICALLY, preferences.isDetermineFiletypesAutomatically());
     }
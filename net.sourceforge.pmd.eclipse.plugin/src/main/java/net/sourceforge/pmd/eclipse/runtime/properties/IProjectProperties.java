@@ -59,6 +59,13 @@ public interface IProjectProperties {
      */
     void setProjectRuleSets(RuleSets projectRuleSets) throws PropertiesException;
 
+    /**
+     * @return the revision of the project rule sets. It changes whenever
+     *         rule sets are set, so that results derived from them can be
+     *         cached. Revisions are unique across all projects properties.
+     */
+    long getRuleSetsRevision();
+
     /**
      * @return Returns the project Rule Sets.
      */
@@ -200,4 +207,24 @@ public interface IProjectProperties {
      * @return the classpath or <code>null</code> if the project is not a java project
      */
     ClassLoader getAuxClasspath();
+
+    /**
+     * Forgets the class loader of the auxiliary classpath, so that the next
+     * call of {@link #getAuxClasspath()} uses the current build path of the
+     * project.
+     */
+    void resetAuxClasspath();
+
+    /**
+     * @return the location of the PMD analysis cache file of the project, or
+     *         <code>null</code> if the project is not accessible
+     */
+    String getAnalysisCacheLocation();
+
+    /**
+     * Drops the analysis results cached for the project. This must be called
+     * when the previous results cannot be trusted anymore, e.g. when the rules
+     * or the classpath of the project changed.
+     */
+    void invalidateAnalysisCache();
 }
@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -29,7 +30,10 @@ import net.sourceforge.pmd.PMD;
 import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.cache.RuleSetsCache;
+import net.sourceforge.pmd.eclipse.runtime.cache.ViolationCache;
 import net.sourceforge.pmd.eclipse.runtime.cmd.JavaProjectClassLoader;
+import net.sourceforge.pmd.eclipse.runtime.cmd.RuleTier;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectPropertiesManager;
 import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
@@ -49,6 +53,8 @@ public class ProjectPropertiesImpl implements IProjectProperties {
     private static final Logger LOG = LoggerFactory.getLogger(ProjectPropertiesImpl.class);
 
     private static final String PROJECT_RULESET_FILE = ".ruleset";
+    private static final String ANALYSIS_CACHE_FILE = "pmd-analysis.cache";
+    private static final AtomicLong RULE_SETS_REVISIONS = new AtomicLong();
 
     private final IProjectPropertiesManager projectPropertiesManager;
     private final IProject project;
@@ -57,6 +63,7 @@ public class ProjectPropertiesImpl implements IProjectProperties {
     private boolean ruleSetStoredInProject;
     private String ruleSetFile;
     private RuleSets projectRuleSets;
+    private volatile long ruleSetsRevision = RULE_SETS_REVISIONS.incrementAndGet();
     private long projectRuleFileLastModified = 0;
     private IWorkingSet projectWorkingSet;
     private boolean includeDerivedFiles;
@@ -169,6 +176,8 @@ public class ProjectPropertiesImpl implements IProjectProperties {
 
         this.needRebuild = !this.projectRuleSets.getAllRules().equals(newProjectRuleSets.getAllRules());
         this.projectRuleSets = newProjectRuleSets;
+        this.ruleSetsRevision = RULE_SETS_REVISIONS.incrementAndGet();
+        RuleSetsCache.invalidate(project);
         if (this.ruleSetStoredInProject) {
             for (File f : getResolvedRuleSetFiles()) {
                 if (f != null) {
@@ -180,6 +189,11 @@ public class ProjectPropertiesImpl implements IProjectProperties {
         }
     }
 
+    @Override
+    public long getRuleSetsRevision() {
+        return ruleSetsRevision;
+    }
+
     /**
      * @see net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties#isRuleSetStoredInProject()
      */
@@ -484,7 +498,7 @@ public class ProjectPropertiesImpl implements IProjectProperties {
     }
 
     @Override
-    public ClassLoader getAuxClasspath() {
+    public synchronized ClassLoader getAuxClasspath() {
         try {
             if (project != null && project.hasNature(JavaCore.NATURE_ID)) {
                 if (auxclasspath == null) {
@@ -500,4 +514,38 @@ public class ProjectPropertiesImpl implements IProjectProperties {
         }
         return null;
     }
+
+    @Override
+    public synchronized void resetAuxClasspath() {
+        auxclasspath = null;
+    }
+
+    @Override
+    public String getAnalysisCacheLocation() {
+        if (project == null || !project.isAccessible()) {
+            return null;
+        }
+        return project.getWorkingLocation(PMDPlugin.PLUGIN_ID).append(ANALYSIS_CACHE_FILE).toOSString();
+    }
+
+    @Override
+    public void invalidateAnalysisCache() {
+        String location = getAnalysisCacheLocation();
+        if (location != null) {
+            deleteAnalysisCache(new File(location));
+            for (RuleTier tier : RuleTier.values()) {
+                deleteAnalysisCache(new File(location + tier.cacheSuffix()));
+            }
+        }
+        if (project != null) {
+            ViolationCache.invalidate(project);
+        }
+        LOG.debug("Analysis caches of project {} invalidated", project);
+    }
+
+    private static void deleteAnalysisCache(File cacheFile) {
+        if (cacheFile.exists() && !cacheFile.delete()) {
+            LOG.warn("Unable to delete the analysis cache {}", cacheFile);
+        }
+    }
 }
@@ -40,6 +40,7 @@ import net.sourceforge.pmd.RuleSetNotFoundException;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.builder.PMDNature;
+import net.sourceforge.pmd.eclipse.runtime.cache.RuleSetsCache;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectPropertiesManager;
 import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
@@ -98,6 +99,9 @@ public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager {
             } else {
                 // else resynchronize the ruleset
                 final boolean needRebuild = synchronizeRuleSet(projectProperties);
+                if (needRebuild) {
+                    projectProperties.invalidateAnalysisCache();
+                }
                 projectProperties.setNeedRebuild(projectProperties.isNeedRebuild() || needRebuild);
             }
 
@@ -135,6 +139,7 @@ public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager {
     @Override
     public void removeProjectProperties(IProject project) {
         this.projectsProperties.remove(project);
+        RuleSetsCache.invalidate(project);
     }
 
     /**
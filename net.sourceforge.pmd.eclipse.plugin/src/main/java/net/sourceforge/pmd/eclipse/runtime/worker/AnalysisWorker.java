@@ -0,0 +1,178 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The workbench side of an analysis worker JVM, see
+ * {@link AnalysisWorkerMain} for the protocol. A worker analyzes one file at
+ * a time. When the pipe to the worker breaks, e.g. as the worker ran out of
+ * memory, the worker is destroyed and the pool starts another one.
+ */
+public final class AnalysisWorker {
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisWorker.class);
+
+    private final Process process;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final int heapMegabytes;
+    private WorkerConfiguration configuration;
+    // why the current configuration could not be loaded, null if it could
+    private String configurationError;
+    private volatile boolean dead;
+
+    /**
+     * The answer of a worker to an analysis request.
+     */
+    public static final class Result {
+        private final List<ViolationRecord> violations;
+        private final String error;
+        private final boolean configurationFailed;
+
+        private Result(List<ViolationRecord> violations, String error, boolean configurationFailed) {
+            this.violations = violations;
+            this.error = error;
+            this.configurationFailed = configurationFailed;
+        }
+
+        /**
+         * @return the violations found in the file, empty on error
+         */
+        public List<ViolationRecord> getViolations() {
+            return violations;
+        }
+
+        /**
+         * @return why the file could not be analyzed, null on success
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * @return true if the worker could not load the configuration, the
+         *         file has not been analyzed then
+         */
+        public boolean isConfigurationFailed() {
+            return configurationFailed;
+        }
+    }
+
+    /**
+     * Starts a worker JVM.
+     *
+     * @param command
+     *            the command line of the JVM
+     * @param log
+     *            the file the standard error of the JVM is appended to
+     * @param heapMegabytes
+     *            the maximum heap size given in the command line
+     */
+    AnalysisWorker(List<String> command, File log, int heapMegabytes) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectError(ProcessBuilder.Redirect.appendTo(log));
+        this.process = builder.start();
+        this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        this.heapMegabytes = heapMegabytes;
+        LOG.debug("Analysis worker started with " + heapMegabytes + " MB");
+    }
+
+    /**
+     * Analyzes a file.
+     *
+     * @param newConfiguration
+     *            the configuration of the project of the file, only sent if
+     *            it differs from the previous one
+     * @param path
+     *            the path of the file
+     * @param charset
+     *            the charset of the file
+     * @return the answer of the worker
+     * @throws IOException
+     *             if the worker has crashed, it is destroyed then
+     */
+    public Result analyze(WorkerConfiguration newConfiguration, String path, String charset) throws IOException {
+        try {
+            if (!newConfiguration.equals(configuration)) {
+                configuration = null;
+                out.writeByte(AnalysisWorkerMain.CONFIGURE);
+                newConfiguration.write(out);
+                out.flush();
+                configurationError = in.readByte() == AnalysisWorkerMain.RESULT_OK ? null : in.readUTF();
+                configuration = newConfiguration;
+            }
+            if (configurationError != null) {
+                return new Result(Collections.<ViolationRecord>emptyList(), configurationError, true);
+            }
+
+            out.writeByte(AnalysisWorkerMain.ANALYZE);
+            out.writeUTF(path);
+            out.writeUTF(charset);
+            out.flush();
+            if (in.readByte() != AnalysisWorkerMain.RESULT_OK) {
+                return new Result(Collections.<ViolationRecord>emptyList(), in.readUTF(), false);
+            }
+            int count = in.readInt();
+            List<ViolationRecord> violations = new ArrayList<ViolationRecord>(count);
+            for (int i = 0; i < count; i++) {
+                violations.add(ViolationRecord.read(in));
+            }
+            return new Result(violations, null, false);
+        } catch (IOException e) {
+            destroy();
+            throw e;
+        }
+    }
+
+    /**
+     * @return false once the worker has crashed or has been stopped
+     */
+    public boolean isAlive() {
+        return !dead;
+    }
+
+    int getHeapMegabytes() {
+        return heapMegabytes;
+    }
+
+    /**
+     * Asks the worker to exit once it is idle.
+     */
+    void exit() {
+        if (dead) {
+            return;
+        }
+        dead = true;
+        try {
+            out.writeByte(AnalysisWorkerMain.EXIT);
+            out.close();
+        } catch (IOException e) {
+            LOG.debug("The analysis worker is gone already", e);
+            process.destroy();
+        }
+    }
+
+    /**
+     * Kills the worker, e.g. as it took too long to analyze a file. The
+     * pending request fails with an IOException.
+     */
+    public void destroy() {
+        dead = true;
+        process.destroy();
+    }
+}
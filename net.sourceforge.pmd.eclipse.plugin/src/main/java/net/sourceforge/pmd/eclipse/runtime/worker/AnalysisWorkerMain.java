@@ -0,0 +1,215 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PMDException;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Report.ProcessingError;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSetNotFoundException;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.RulesetsFactoryUtils;
+import net.sourceforge.pmd.SourceCodeProcessor;
+import net.sourceforge.pmd.eclipse.util.IOUtil;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+
+/**
+ * The main class of an analysis worker JVM. The workbench sends the requests
+ * on the standard input, the worker answers on the standard output. Anything
+ * else written to the standard output goes to the standard error, which the
+ * workbench redirects to a log file.
+ *
+ * <p>A request starts with its command byte:
+ * <ul>
+ * <li>{@link #CONFIGURE}, followed by a {@link WorkerConfiguration}. The
+ * answer is the result byte, followed by a message on error.</li>
+ * <li>{@link #ANALYZE}, followed by the path and the charset of a file. The
+ * answer is the result byte, followed by the number of violations and their
+ * {@link ViolationRecord}s, or by a message on error.</li>
+ * <li>{@link #EXIT}, which has no answer.</li>
+ * </ul>
+ * The worker also exits when its standard input is closed.
+ *
+ * <p>This class runs outside of the workbench: it must not depend on any
+ * Eclipse class.
+ */
+public final class AnalysisWorkerMain {
+
+    public static final byte CONFIGURE = 1;
+    public static final byte ANALYZE = 2;
+    public static final byte EXIT = 3;
+
+    public static final byte RESULT_OK = 0;
+    public static final byte RESULT_ERROR = 1;
+
+    private static final int MAX_MESSAGE_LENGTH = 8192;
+
+    private RuleSets ruleSets;
+    private SourceCodeProcessor processor;
+    private String configurationError = "The worker has not been configured";
+
+    public static void main(String[] args) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        // the standard output is reserved for the answers
+        System.setOut(System.err);
+        new AnalysisWorkerMain().serve(in, out);
+        out.close();
+    }
+
+    /**
+     * Answers the requests until the exit command or the end of the input.
+     *
+     * @param in
+     *            the requests
+     * @param out
+     *            the answers, flushed after each of them
+     */
+    public void serve(DataInput in, DataOutputStream out) throws IOException {
+        while (true) {
+            byte command;
+            try {
+                command = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            switch (command) {
+            case CONFIGURE:
+                configure(WorkerConfiguration.read(in), out);
+                break;
+            case ANALYZE:
+                analyze(in.readUTF(), in.readUTF(), out);
+                break;
+            case EXIT:
+                return;
+            default:
+                throw new IOException("Unknown command " + command);
+            }
+            out.flush();
+        }
+    }
+
+    private void configure(WorkerConfiguration configuration, DataOutputStream out) throws IOException {
+        ruleSets = null;
+        processor = null;
+        try {
+            PMDConfiguration pmdConfiguration = new PMDConfiguration();
+            pmdConfiguration.setIgnoreIncrementalAnalysis(true);
+            if (!configuration.getAuxClasspath().isEmpty()) {
+                StringBuilder classpath = new StringBuilder();
+                for (String entry : configuration.getAuxClasspath()) {
+                    if (classpath.length() > 0) {
+                        classpath.append(File.pathSeparatorChar);
+                    }
+                    classpath.append(entry);
+                }
+                pmdConfiguration.prependClasspath(classpath.toString());
+            }
+            LanguageVersion languageVersion = LanguageRegistry
+                    .findLanguageVersionByTerseName(configuration.getLanguageVersion());
+            if (languageVersion != null) {
+                pmdConfiguration.setDefaultLanguageVersion(languageVersion);
+            }
+            ruleSets = RulesetsFactoryUtils.defaultFactory().createRuleSets(configuration.getRuleSetPath());
+            processor = new SourceCodeProcessor(pmdConfiguration);
+            configurationError = null;
+            out.writeByte(RESULT_OK);
+        } catch (RuleSetNotFoundException e) {
+            configurationFailed(e, out);
+        } catch (IOException e) {
+            // e.g. an auxclasspath that can not be read
+            configurationFailed(e, out);
+        } catch (RuntimeException e) {
+            // e.g. a rule class that is not on the classpath of the worker
+            configurationFailed(e, out);
+        }
+    }
+
+    private void configurationFailed(Exception e, DataOutputStream out) throws IOException {
+        configurationError = String.valueOf(e);
+        e.printStackTrace();
+        writeError(configurationError, out);
+    }
+
+    private void analyze(String path, String charset, DataOutputStream out) throws IOException {
+        if (configurationError != null) {
+            writeError(configurationError, out);
+            return;
+        }
+
+        File file = new File(path);
+        RuleContext context = new RuleContext();
+        context.setSourceCodeFile(file);
+        context.setLanguageVersion(null);
+        Report report = new Report();
+        context.setReport(report);
+
+        String error = null;
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(file), charset);
+            processor.processSourceCode(reader, ruleSets, context);
+        } catch (PMDException e) {
+            error = String.valueOf(e.getCause() == null ? e : e.getCause());
+        } catch (IOException e) {
+            error = String.valueOf(e);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            error = String.valueOf(e);
+        } finally {
+            IOUtil.closeQuietly(reader);
+        }
+        if (error == null && report.hasErrors()) {
+            StringBuilder errors = new StringBuilder();
+            Iterator<ProcessingError> iterator = report.errors();
+            while (iterator.hasNext()) {
+                errors.append(iterator.next().getMsg()).append('\n');
+            }
+            error = errors.toString();
+        }
+
+        if (error != null) {
+            writeError(error, out);
+            return;
+        }
+        List<ViolationRecord> records = new ArrayList<ViolationRecord>(report.size());
+        Iterator<RuleViolation> violations = report.iterator();
+        while (violations.hasNext()) {
+            records.add(ViolationRecord.of(violations.next()));
+        }
+        out.writeByte(RESULT_OK);
+        out.writeInt(records.size());
+        for (ViolationRecord record : records) {
+            record.write(out);
+        }
+    }
+
+    private static void writeError(String message, DataOutputStream out) throws IOException {
+        out.writeByte(RESULT_ERROR);
+        // within the limit of writeUTF
+        out.writeUTF(message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message);
+    }
+}
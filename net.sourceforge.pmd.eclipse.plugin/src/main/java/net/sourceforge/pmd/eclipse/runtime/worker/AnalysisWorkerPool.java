@@ -0,0 +1,221 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.worker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.Path;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.writer.WriterException;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+import net.sourceforge.pmd.eclipse.util.IOUtil;
+
+/**
+ * The analysis worker JVMs shared by all the reviews. The workers are started
+ * on demand and kept running between the reviews, so that the rules and the
+ * auxclasspath stay loaded. A worker that crashed is replaced by a new one on
+ * the next lease.
+ */
+public final class AnalysisWorkerPool {
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisWorkerPool.class);
+
+    private static final String LOG_FILE = "analysis-worker.log";
+    private static final String RULESET_FOLDER = "worker-rulesets";
+
+    private static final AnalysisWorkerPool INSTANCE = new AnalysisWorkerPool();
+
+    private final List<AnalysisWorker> idleWorkers = new ArrayList<AnalysisWorker>();
+    // the idle and the leased workers
+    private int workerCount;
+    private String classpath;
+    private boolean shutdown;
+
+    private AnalysisWorkerPool() {
+    }
+
+    public static AnalysisWorkerPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Takes an idle worker, or starts one if the pool is not full. Waits for
+     * a worker to be released otherwise.
+     *
+     * @param poolSize
+     *            the maximum number of workers
+     * @param heapMegabytes
+     *            the maximum heap size of the workers
+     * @return the worker, to be given back with {@link #release}
+     * @throws IOException
+     *             if the worker could not be started
+     */
+    public synchronized AnalysisWorker lease(int poolSize, int heapMegabytes)
+            throws IOException, InterruptedException {
+        while (true) {
+            if (shutdown) {
+                throw new IOException("The analysis workers have been shut down");
+            }
+            Iterator<AnalysisWorker> workers = idleWorkers.iterator();
+            while (workers.hasNext()) {
+                AnalysisWorker worker = workers.next();
+                workers.remove();
+                if (worker.isAlive() && worker.getHeapMegabytes() == heapMegabytes) {
+                    return worker;
+                }
+                discard(worker);
+            }
+            if (workerCount < poolSize) {
+                AnalysisWorker worker = new AnalysisWorker(commandLine(heapMegabytes),
+                        PMDPlugin.getDefault().getStateLocation().append(LOG_FILE).toFile(), heapMegabytes);
+                workerCount++;
+                return worker;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Gives back a leased worker. It is stopped if it has crashed, if the
+     * pool got smaller or if the heap size changed meanwhile.
+     *
+     * @param worker
+     *            the worker
+     * @param poolSize
+     *            the maximum number of workers
+     * @param heapMegabytes
+     *            the maximum heap size of the workers
+     */
+    public synchronized void release(AnalysisWorker worker, int poolSize, int heapMegabytes) {
+        if (shutdown || !worker.isAlive() || workerCount > poolSize || worker.getHeapMegabytes() != heapMegabytes) {
+            discard(worker);
+        } else {
+            idleWorkers.add(worker);
+        }
+        notifyAll();
+    }
+
+    private void discard(AnalysisWorker worker) {
+        worker.exit();
+        workerCount--;
+    }
+
+    /**
+     * Stops all the workers. Leased workers are stopped when they are
+     * released.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        for (AnalysisWorker worker : idleWorkers) {
+            discard(worker);
+        }
+        idleWorkers.clear();
+        notifyAll();
+    }
+
+    private List<String> commandLine(int heapMegabytes) throws IOException {
+        if (classpath == null) {
+            classpath = bundleClasspath();
+        }
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-Xmx" + heapMegabytes + "m");
+        command.add("-cp");
+        command.add(classpath);
+        command.add(AnalysisWorkerMain.class.getName());
+        return command;
+    }
+
+    /**
+     * The worker JVMs run with the classpath of this plugin, as it contains
+     * PMD and its language modules.
+     */
+    private static String bundleClasspath() throws IOException {
+        Bundle bundle = PMDPlugin.getDefault().getBundle();
+        String header = bundle.getHeaders().get(Constants.BUNDLE_CLASSPATH);
+        StringBuilder classpath = new StringBuilder();
+        for (String entry : (header == null ? "." : header).split(",")) {
+            URL url = FileLocator.find(bundle, new Path(entry.trim()), null);
+            if (url == null) {
+                LOG.debug("Bundle classpath entry " + entry + " not found");
+                continue;
+            }
+            if (classpath.length() > 0) {
+                classpath.append(File.pathSeparatorChar);
+            }
+            classpath.append(new File(FileLocator.toFileURL(url).getPath()).getPath());
+        }
+        return classpath.toString();
+    }
+
+    /**
+     * Writes the rules of a review to a ruleset file the workers can load.
+     * The file is named by the hash of its content, so that equal rules are
+     * written only once.
+     *
+     * @param ruleSets
+     *            the rules of the review
+     * @return the ruleset file
+     */
+    public static synchronized File ruleSetFileOf(RuleSets ruleSets) throws IOException {
+        // the ruleset writer is only capable of writing one ruleset
+        RuleSet ruleSet = RuleSetUtil.newEmpty(RuleSetUtil.DEFAULT_RULESET_NAME,
+                RuleSetUtil.DEFAULT_RULESET_DESCRIPTION);
+        for (RuleSet rs : ruleSets.getAllRuleSets()) {
+            ruleSet = RuleSetUtil.addRules(ruleSet, rs.getRules());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            PMDPlugin.getDefault().getRuleSetWriter().write(bytes, ruleSet);
+        } catch (WriterException e) {
+            throw new IOException("The rules could not be written for the analysis workers", e);
+        }
+
+        File folder = PMDPlugin.getDefault().getStateLocation().append(RULESET_FOLDER).toFile();
+        File file = new File(folder, hashOf(bytes.toByteArray()) + ".xml");
+        if (!file.exists()) {
+            if (!folder.isDirectory() && !folder.mkdirs()) {
+                throw new IOException("Could not create " + folder);
+            }
+            File temporary = new File(folder, file.getName() + ".tmp");
+            OutputStream out = new FileOutputStream(temporary);
+            try {
+                bytes.writeTo(out);
+            } finally {
+                IOUtil.closeQuietly(out);
+            }
+            if (!temporary.renameTo(file) && !file.exists()) {
+                throw new IOException("Could not write " + file);
+            }
+        }
+        return file;
+    }
+
+    private static String hashOf(byte[] bytes) {
+        try {
+            return new BigInteger(1, MessageDigest.getInstance("MD5").digest(bytes)).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.worker;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * A violation found by an analysis worker, as it is sent back to the
+ * workbench. The rule is only identified by its name, the workbench looks it
+ * up in the rules of the review.
+ */
+public final class ViolationRecord {
+
+    // keeps the description within the limit of DataOutput.writeUTF
+    private static final int MAX_DESCRIPTION_LENGTH = 8192;
+
+    private final String ruleName;
+    private final int beginLine;
+    private final int endLine;
+    private final int beginColumn;
+    private final int endColumn;
+    private final String description;
+
+    public ViolationRecord(String ruleName, int beginLine, int endLine, int beginColumn, int endColumn,
+            String description) {
+        this.ruleName = ruleName;
+        this.beginLine = beginLine;
+        this.endLine = endLine;
+        this.beginColumn = beginColumn;
+        this.endColumn = endColumn;
+        this.description = description;
+    }
+
+    /**
+     * @return the record of a violation reported by PMD
+     */
+    public static ViolationRecord of(RuleViolation violation) {
+        String description = violation.getDescription();
+        if (description != null && description.length() > MAX_DESCRIPTION_LENGTH) {
+            description = description.substring(0, MAX_DESCRIPTION_LENGTH);
+        }
+        return new ViolationRecord(violation.getRule().getName(), violation.getBeginLine(), violation.getEndLine(),
+                violation.getBeginColumn(), violation.getEndColumn(), description == null ? "" : description);
+    }
+
+    public String getRuleName() {
+        return ruleName;
+    }
+
+    public int getBeginLine() {
+        return beginLine;
+    }
+
+    public int getEndLine() {
+        return endLine;
+    }
+
+    public int getBeginColumn() {
+        return beginColumn;
+    }
+
+    public int getEndColumn() {
+        return endColumn;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Writes the record in the format read by {@link #read(DataInput)}.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(ruleName);
+        out.writeInt(beginLine);
+        out.writeInt(endLine);
+        out.writeInt(beginColumn);
+        out.writeInt(endColumn);
+        out.writeUTF(description);
+    }
+
+    /**
+     * Reads a record written by {@link #write(DataOutput)}.
+     */
+    public static ViolationRecord read(DataInput in) throws IOException {
+        return new ViolationRecord(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                in.readUTF());
+    }
+
+    @Override
+    public String toString() {
+        return ruleName + "@" + beginLine + ": " + description;
+    }
+}
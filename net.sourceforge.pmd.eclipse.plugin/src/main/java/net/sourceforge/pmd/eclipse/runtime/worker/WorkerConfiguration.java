@@ -0,0 +1,102 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.worker;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What an analysis worker needs to know about a project: the rules, the
+ * default Java version and the auxclasspath. A worker keeps its configuration
+ * until another one is sent, so that the rules are not loaded again for every
+ * file.
+ */
+public final class WorkerConfiguration {
+
+    private final String ruleSetPath;
+    private final String languageVersion;
+    private final List<String> auxClasspath;
+
+    /**
+     * @param ruleSetPath
+     *            the path of the ruleset file
+     * @param languageVersion
+     *            the terse name of the default language version, empty for
+     *            the default of PMD
+     * @param auxClasspath
+     *            the entries of the auxclasspath
+     */
+    public WorkerConfiguration(String ruleSetPath, String languageVersion, List<String> auxClasspath) {
+        this.ruleSetPath = ruleSetPath;
+        this.languageVersion = languageVersion;
+        this.auxClasspath = Collections.unmodifiableList(new ArrayList<String>(auxClasspath));
+    }
+
+    public String getRuleSetPath() {
+        return ruleSetPath;
+    }
+
+    public String getLanguageVersion() {
+        return languageVersion;
+    }
+
+    public List<String> getAuxClasspath() {
+        return auxClasspath;
+    }
+
+    /**
+     * Writes the configuration in the format read by {@link #read(DataInput)}.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(ruleSetPath);
+        out.writeUTF(languageVersion);
+        out.writeInt(auxClasspath.size());
+        for (String entry : auxClasspath) {
+            out.writeUTF(entry);
+        }
+    }
+
+    /**
+     * Reads a configuration written by {@link #write(DataOutput)}.
+     */
+    public static WorkerConfiguration read(DataInput in) throws IOException {
+        String ruleSetPath = in.readUTF();
+        String languageVersion = in.readUTF();
+        int entryCount = in.readInt();
+        List<String> auxClasspath = new ArrayList<String>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            auxClasspath.add(in.readUTF());
+        }
+        return new WorkerConfiguration(ruleSetPath, languageVersion, auxClasspath);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof WorkerConfiguration)) {
+            return false;
+        }
+        WorkerConfiguration other = (WorkerConfiguration) obj;
+        return ruleSetPath.equals(other.ruleSetPath) && languageVersion.equals(other.languageVersion)
+                && auxClasspath.equals(other.auxClasspath);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * ruleSetPath.hashCode() + languageVersion.hashCode()) + auxClasspath.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "WorkerConfiguration[" + ruleSetPath + ", " + languageVersion + ", " + auxClasspath.size()
+                + " auxclasspath entries]";
+    }
+}
@@ -8,6 +8,7 @@ import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
+import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jface.resource.ImageDescriptor;
@@ -18,7 +19,7 @@ import org.eclipse.jface.viewers.LabelProviderChangedEvent;
 
 import net.sourceforge.pmd.RulePriority;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
-import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.builder.MarkerQuery;
 import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
 import net.sourceforge.pmd.eclipse.ui.priority.PriorityDescriptorCache;
 import net.sourceforge.pmd.eclipse.ui.views.PriorityFilter;
@@ -70,40 +71,31 @@ public class RuleLabelDecorator implements ILightweightLabelDecorator {
 
         IResource resource = (IResource) element;
 
-        Set<Integer> range = null;
+        // consider only the priorities, that are not filtered, in one pass
+        // over the markers which stops at the highest possible priority
+        final Integer[] highestPriority = new Integer[1];
         try {
-            range = MarkerUtil.priorityRangeOf(resource, PMDRuntimeConstants.RULE_MARKER_TYPES, 5);
-        } catch (CoreException e1) {
-            return;
-        }
-
-        if (range.isEmpty()) {
-            return;
-        }
-
-        // consider only the priorities, that are not filtered
-        Integer highestPriority = null;
-        for (Integer priority : range) {
-            if (PriorityFilter.getInstance().isPriorityEnabled(RulePriority.valueOf(priority))) {
-                if (highestPriority == null || highestPriority > priority) {
-                    highestPriority = priority;
+            MarkerQuery.ruleMarkers().accept(resource, new MarkerQuery.MarkerVisitor() {
+                public boolean visit(IMarker marker) throws CoreException {
+                    int priority = MarkerUtil.rulePriorityFor(marker);
+                    if (PriorityFilter.getInstance().isPriorityEnabled(RulePriority.valueOf(priority))
+                            && (highestPriority[0] == null || highestPriority[0] > priority)) {
+                        highestPriority[0] = priority;
+                    }
+                    return highestPriority[0] == null || highestPriority[0] != RulePriority.HIGH.getPriority();
                 }
-            }
+            });
+        } catch (CoreException e) {
+            PMDPlugin.getDefault().logError("Error while adding overlay icon", e);
+            return;
         }
 
-        if (highestPriority == null) {
+        if (highestPriority[0] == null) {
             return;
         }
 
-        ImageDescriptor overlay = PriorityDescriptorCache.INSTANCE.descriptorFor(RulePriority.valueOf(highestPriority)).getAnnotationImageDescriptor();
-
-        try {
-            boolean hasMarkers = MarkerUtil.hasAnyRuleMarkers(resource);
-            if (hasMarkers) {
-                decoration.addOverlay(overlay);
-            }
-        } catch (CoreException e) {
-            PMDPlugin.getDefault().logError("Error while adding overlay icon", e);
-        }
+        ImageDescriptor overlay = PriorityDescriptorCache.INSTANCE
+                .descriptorFor(RulePriority.valueOf(highestPriority[0])).getAnnotationImageDescriptor();
+        decoration.addOverlay(overlay);
     }
 }
@@ -4,9 +4,6 @@
 
 package net.sourceforge.pmd.eclipse.ui.model;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -16,6 +13,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
@@ -27,9 +25,10 @@ import org.eclipse.jdt.core.JavaModelException;
 
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.builder.MarkerQuery;
 import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
-import net.sourceforge.pmd.eclipse.util.IOUtil;
+import net.sourceforge.pmd.eclipse.util.SourceBuffer;
 
 /**
  * AbstractPMDRecord for Files
@@ -189,8 +188,12 @@ public class FileRecord extends AbstractPMDRecord {
      */
     @Override
     public boolean hasMarkers() {
-        final IMarker[] markers = findMarkers();
-        return markers != null && markers.length > 0;
+        try {
+            return resource.isAccessible() && MarkerQuery.ruleMarkers().exists(resource);
+        } catch (CoreException ce) {
+            PMDPlugin.getDefault().logError(StringKeys.ERROR_FIND_MARKER + this.toString(), ce);
+        }
+        return false;
     }
 
     /**
@@ -205,7 +208,7 @@ public class FileRecord extends AbstractPMDRecord {
             // this is the overwritten Function from AbstractPMDRecord
             // we simply call the IResource-function to find Markers
             if (resource.isAccessible()) {
-                return MarkerUtil.findMarkers(resource, PMDRuntimeConstants.RULE_MARKER_TYPES);
+                return MarkerQuery.ruleMarkers().find(resource);
             }
         } catch (CoreException ce) {
             PMDPlugin.getDefault().logError(StringKeys.ERROR_FIND_MARKER + this.toString(), ce);
@@ -225,7 +228,7 @@ public class FileRecord extends AbstractPMDRecord {
             // we can only find Markers for a file
             // we use the DFA-Marker-ID set for Dataflow Anomalies
             if (resource.isAccessible()) {
-                return MarkerUtil.findMarkers(resource, PMDRuntimeConstants.PMD_DFA_MARKER);
+                return MarkerQuery.markersOf(PMDRuntimeConstants.PMD_DFA_MARKER).find(resource);
             }
         } catch (CoreException ce) {
             PMDPlugin.getDefault().logError(StringKeys.ERROR_FIND_MARKER + this.toString(), ce);
@@ -243,24 +246,15 @@ public class FileRecord extends AbstractPMDRecord {
      */
     @Override
     public IMarker[] findMarkersByAttribute(String attributeName, Object value) {
-        final IMarker[] markers = findMarkers();
-        final List<IMarker> attributeMarkers = new ArrayList<IMarker>();
         try {
-            // we get all Markers and catch the ones that matches our criteria
-            for (IMarker marker : markers) {
-                final Object val = marker.getAttribute(attributeName);
-
-                // if the value is null, the Attribute doesn't exist
-                if (val != null && val.equals(value)) {
-                    attributeMarkers.add(marker);
-                }
+            if (resource.isAccessible()) {
+                return MarkerQuery.ruleMarkers().withAttribute(attributeName, value).find(resource);
             }
         } catch (CoreException ce) {
             PMDPlugin.getDefault().logError(StringKeys.ERROR_FIND_MARKER + this.toString(), ce);
         }
 
-        // return an Array of the Markers
-        return attributeMarkers.toArray(new IMarker[attributeMarkers.size()]);
+        return MarkerUtil.EMPTY_MARKERS;
     }
 
     /**
@@ -336,26 +330,19 @@ public class FileRecord extends AbstractPMDRecord {
      * @return a String which is the Files Content
      */
     protected String resourceToString(IResource resource) {
-        final StringBuilder fileContents = new StringBuilder();
-        BufferedReader bReader = null;
+        IFile file = (IFile) resource.getAdapter(IFile.class);
+        if (file == null) {
+            return "";
+        }
         try {
-            // we create a FileReader
-            bReader = new BufferedReader(new FileReader(resource.getRawLocation().toFile()));
-
-            // ... and read the File line by line
-            while (bReader.ready()) {
-                fileContents.append(bReader.readLine()).append('\n');
-            }
-        } catch (FileNotFoundException fnfe) {
+            return SourceBuffer.read(file).toString();
+        } catch (CoreException ce) {
             PMDPlugin.getDefault()
-                    .logError(StringKeys.ERROR_FILE_NOT_FOUND + resource.toString() + " in " + this.toString(), fnfe);
+                    .logError(StringKeys.ERROR_FILE_NOT_FOUND + resource.toString() + " in " + this.toString(), ce);
         } catch (IOException ioe) {
             PMDPlugin.getDefault().logError(StringKeys.ERROR_IO_EXCEPTION + this.toString(), ioe);
-        } finally {
-            IOUtil.closeQuietly(bReader);
         }
-
-        return fileContents.toString();
+        return "";
     }
 
     /**
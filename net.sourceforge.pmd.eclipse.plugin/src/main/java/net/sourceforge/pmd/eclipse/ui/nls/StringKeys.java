@@ -43,6 +43,24 @@ public class StringKeys {
     public static final String PREF_GENERAL_LABEL_MAX_VIOLATIONS_PFPR = "preference.pmd.label.max_violations_pfpr";
     public static final String PREF_GENERAL_LABEL_DETERMINE_FILETYPES_AUTOMATICALLY = "preference.pmd.label.determine_filetypes_automatically";
     public static final String PREF_GENERAL_TOOLTIP_MAX_VIOLATIONS_PFPR = "preference.pmd.tooltip.max_violations_pfpr";
+    public static final String PREF_GENERAL_LABEL_MAX_ANALYSIS_THREADS = "preference.pmd.label.max_analysis_threads";
+    public static final String PREF_GENERAL_TOOLTIP_MAX_ANALYSIS_THREADS = "preference.pmd.tooltip.max_analysis_threads";
+    public static final String PREF_GENERAL_LABEL_ANALYSIS_TIMEOUT = "preference.pmd.label.analysis_timeout";
+    public static final String PREF_GENERAL_TOOLTIP_ANALYSIS_TIMEOUT = "preference.pmd.tooltip.analysis_timeout";
+    public static final String PREF_GENERAL_LABEL_REVIEW_LATENCY_BUDGET = "preference.pmd.label.review_latency_budget";
+    public static final String PREF_GENERAL_TOOLTIP_REVIEW_LATENCY_BUDGET = "preference.pmd.tooltip.review_latency_budget";
+    public static final String PREF_GENERAL_LABEL_IDLE_REVIEW_DELAY = "preference.pmd.label.idle_review_delay";
+    public static final String PREF_GENERAL_TOOLTIP_IDLE_REVIEW_DELAY = "preference.pmd.tooltip.idle_review_delay";
+    public static final String PREF_GENERAL_LABEL_ANALYSIS_WORKERS = "preference.pmd.label.analysis_workers";
+    public static final String PREF_GENERAL_TOOLTIP_ANALYSIS_WORKERS = "preference.pmd.tooltip.analysis_workers";
+    public static final String PREF_GENERAL_LABEL_ANALYSIS_WORKER_HEAP = "preference.pmd.label.analysis_worker_heap";
+    public static final String PREF_GENERAL_TOOLTIP_ANALYSIS_WORKER_HEAP = "preference.pmd.tooltip.analysis_worker_heap";
+    public static final String PREF_GENERAL_LABEL_LIGHT_ANALYSIS_FILE_SIZE = "preference.pmd.label.light_analysis_file_size";
+    public static final String PREF_GENERAL_TOOLTIP_LIGHT_ANALYSIS_FILE_SIZE = "preference.pmd.tooltip.light_analysis_file_size";
+    public static final String PREF_GENERAL_LABEL_SKIPPED_FILE_SIZE = "preference.pmd.label.skipped_file_size";
+    public static final String PREF_GENERAL_TOOLTIP_SKIPPED_FILE_SIZE = "preference.pmd.tooltip.skipped_file_size";
+    public static final String PREF_GENERAL_LABEL_GENERATED_FILE_SIGNATURES = "preference.pmd.label.generated_file_signatures";
+    public static final String PREF_GENERAL_TOOLTIP_GENERATED_FILE_SIGNATURES = "preference.pmd.tooltip.generated_file_signatures";
     public static final String PREF_GENERAL_MESSAGE_INVALID_NUMERIC_VALUE = "preference.pmd.message.invalid_numeric_value";
     public static final String PREF_GENERAL_REVIEW_PMD_STYLE = "preference.pmd.label.review_pmd_style";
     public static final String PREF_GENERAL_GROUP_LOGGING = "preference.pmd.group.logging";
@@ -71,6 +89,7 @@ public class StringKeys {
     public static final String PREF_RULESET_COLUMN_RULESET_NAME = "preference.ruleset.column.ruleset_name";
     public static final String PREF_RULESET_COLUMN_RULE_NAME = "preference.ruleset.column.rule_name";
     public static final String PREF_RULESET_COLUMN_RULE_TYPE = "preference.ruleset.column.rule_type";
+    public static final String PREF_RULESET_COLUMN_TIER = "preference.ruleset.column.tier";
     public static final String PREF_RULESET_COLUMN_EXAMPLE_CNT = "preference.ruleset.column.example_count";
     public static final String PREF_RULESET_COLUMN_SINCE = "preference.ruleset.column.since";
     public static final String PREF_RULESET_COLUMN_FILTERS_REGEX = "preference.ruleset.column.filters.regex";
@@ -90,6 +109,9 @@ public class StringKeys {
     public static final String PREF_RULESET_GROUPING_NONE = "preference.ruleset.grouping.none";
     public static final String PREF_RULESET_GROUPING_PMD_VERSION = "preference.ruleset.grouping.pmd_version";
     public static final String PREF_RULESET_GROUPING_REGEX = "preference.ruleset.grouping.regex";
+    public static final String PREF_RULESET_TIER_SAVE = "preference.ruleset.tier.save";
+    public static final String PREF_RULESET_TIER_BACKGROUND = "preference.ruleset.tier.background";
+    public static final String PREF_RULESET_MENU_CHECK_IN_BACKGROUND = "preference.ruleset.menu.check_in_background";
     public static final String PREF_RULESET_BUTTON_GLOBALRULEMANAGEMENT = "preference.ruleset.button.globalrulemanagement";
     public static final String PREF_RULESET_BUTTON_GLOBALRULEMANAGEMENT_EXPL = "preference.ruleset.button.globalrulemanagement.explanation";
     public static final String PREF_RULESET_BUTTON_ADDFILTER = "preference.ruleset.button.addfilter";
@@ -172,6 +194,7 @@ public class StringKeys {
     public static final String VIEW_OVERVIEW_COLUMN_VIO_KLOC = "view.overview.column_vio_loc";
     public static final String VIEW_OVERVIEW_COLUMN_VIO_METHOD = "view.overview.column_vio_method";
     public static final String VIEW_OVERVIEW_COLUMN_PROJECT = "view.overview.column_project";
+    public static final String VIEW_OVERVIEW_SKIPPED_FILES = "view.overview.skipped_files";
     public static final String VIEW_DATAFLOW_DEFAULT_TEXT = "view.dataflow.default_text";
     public static final String VIEW_DATAFLOW_CHOOSE_METHOD = "view.dataflow.choose_method";
     public static final String VIEW_DATAFLOW_GRAPH_COLUMN_LINE = "view.dataflow.graph.column_line";
@@ -83,6 +83,17 @@ public class GeneralPreferencesPage extends PreferencePage implements IWorkbench
 
     private static final String[] LOG_LEVELS = { "OFF", "FATAL", "ERROR", "WARN", "INFO", "DEBUG", "ALL" };
     private static final RGB SHAPE_COLOR = new RGB(255, 255, 255);
+    private static final int MAX_ANALYSIS_THREADS_LIMIT = 64;
+    private static final int ANALYSIS_TIMEOUT_LIMIT = 3600;
+    private static final int REVIEW_LATENCY_BUDGET_LIMIT = 600000;
+    private static final int REVIEW_LATENCY_BUDGET_INCREMENT = 100;
+    private static final int IDLE_REVIEW_DELAY_LIMIT = 3600;
+    private static final int ANALYSIS_WORKERS_LIMIT = 16;
+    private static final int ANALYSIS_WORKER_HEAP_MINIMUM = 64;
+    private static final int ANALYSIS_WORKER_HEAP_LIMIT = 65536;
+    private static final int ANALYSIS_WORKER_HEAP_INCREMENT = 256;
+    private static final int FILE_SIZE_LIMIT = 1048576;
+    private static final int FILE_SIZE_INCREMENT = 128;
 
     private Text additionalCommentText;
     private Label sampleLabel;
@@ -93,6 +104,15 @@ public class GeneralPreferencesPage extends PreferencePage implements IWorkbench
     private Button checkCodeOnSave;
     private Button useCustomPriorityNames;
     private Spinner maxViolationsPerFilePerRule;
+    private Spinner maxAnalysisThreads;
+    private Spinner analysisTimeout;
+    private Spinner reviewLatencyBudget;
+    private Spinner idleReviewDelay;
+    private Spinner analysisWorkers;
+    private Spinner analysisWorkerHeap;
+    private Spinner lightAnalysisFileSize;
+    private Spinner skippedFileSize;
+    private Text generatedFileSignaturesText;
     private Button reviewPmdStyleBox;
     private Text logFileNameText;
     private Scale logLevelScale;
@@ -170,6 +190,18 @@ public class GeneralPreferencesPage extends PreferencePage implements IWorkbench
         determineFiletypesAutomatically = buildDetermineFiletypesAutomatically(group);
         Label separator = new Label(group, SWT.SEPARATOR | SWT.SHADOW_IN | SWT.HORIZONTAL);
         maxViolationsPerFilePerRule = buildMaxViolationsPerFilePerRuleText(group);
+        maxAnalysisThreads = buildMaxAnalysisThreadsText(group);
+        analysisTimeout = buildAnalysisTimeoutText(group);
+        reviewLatencyBudget = buildReviewLatencyBudgetText(group);
+        idleReviewDelay = buildIdleReviewDelayText(group);
+        analysisWorkers = buildAnalysisWorkersText(group);
+        analysisWorkerHeap = buildAnalysisWorkerHeapText(group);
+        lightAnalysisFileSize = buildFileSizeText(group, StringKeys.PREF_GENERAL_LABEL_LIGHT_ANALYSIS_FILE_SIZE,
+                StringKeys.PREF_GENERAL_TOOLTIP_LIGHT_ANALYSIS_FILE_SIZE, preferences.getLightAnalysisFileSize());
+        skippedFileSize = buildFileSizeText(group, StringKeys.PREF_GENERAL_LABEL_SKIPPED_FILE_SIZE,
+                StringKeys.PREF_GENERAL_TOOLTIP_SKIPPED_FILE_SIZE, preferences.getSkippedFileSize());
+        buildLabel(group, StringKeys.PREF_GENERAL_LABEL_GENERATED_FILE_SIGNATURES);
+        generatedFileSignaturesText = buildGeneratedFileSignaturesText(group);
 
         GridData data = new GridData();
         data.horizontalAlignment = GridData.FILL;
@@ -201,6 +233,51 @@ public class GeneralPreferencesPage extends PreferencePage implements IWorkbench
         data.grabExcessHorizontalSpace = true;
         maxViolationsPerFilePerRule.setLayoutData(data);
 
+        data = new GridData();
+        data.horizontalAlignment = GridData.FILL;
+        data.grabExcessHorizontalSpace = true;
+        maxAnalysisThreads.setLayoutData(data);
+
+        data = new GridData();
+        data.horizontalAlignment = GridData.FILL;
+        data.grabExcessHorizontalSpace = true;
+        analysisTimeout.setLayoutData(data);
+
+        data = new GridData();
+        data.horizontalAlignment = GridData.FILL;
+        data.grabExcessHorizontalSpace = true;
+        reviewLatencyBudget.setLayoutData(data);
+
+        data = new GridData();
+        data.horizontalAlignment = GridData.FILL;
+        data.grabExcessHorizontalSpace = true;
+        idleReviewDelay.setLayoutData(data);
+
+        data = new GridData();
+        data.horizontalAlignment = GridData.FILL;
+        data.grabExcessHorizontalSpace = true;
+        analysisWorkers.setLayoutData(data);
+
+        data = new GridData();
+        data.horizontalAlignment = GridData.FILL;
+        data.grabExcessHorizontalSpace = true;
+        analysisWorkerHeap.setLayoutData(data);
+
+        data = new GridData();
+        data.horizontalAlignment = GridData.FILL;
+        data.grabExcessHorizontalSpace = true;
+        lightAnalysisFileSize.setLayoutData(data);
+
+        data = new GridData();
+        data.horizontalAlignment = GridData.FILL;
+        data.grabExcessHorizontalSpace = true;
+        skippedFileSize.setLayoutData(data);
+
+        data = new GridData();
+        data.horizontalAlignment = GridData.FILL;
+        data.grabExcessHorizontalSpace = true;
+        generatedFileSignaturesText.setLayoutData(data);
+
         return group;
     }
 
@@ -733,6 +810,200 @@ public class GeneralPreferencesPage extends PreferencePage implements IWorkbench
         return spinner;
     }
 
+    /**
+     * Build the spinner for the maximum number of analysis threads
+     *
+     * @param parent
+     * @return
+     */
+    private Spinner buildMaxAnalysisThreadsText(Composite parent) {
+
+        Composite comp = new Composite(parent, 0);
+        comp.setLayout(new GridLayout(2, false));
+
+        Label label = buildLabel(comp, StringKeys.PREF_GENERAL_LABEL_MAX_ANALYSIS_THREADS);
+        label.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, false, false, 1, 1));
+
+        final Spinner spinner = new Spinner(comp, SWT.BORDER);
+        spinner.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, true, false, 1, 1));
+        spinner.setMinimum(1);
+        spinner.setMaximum(MAX_ANALYSIS_THREADS_LIMIT);
+        spinner.setSelection(preferences.getMaxAnalysisThreads());
+        spinner.setToolTipText(getMessage(StringKeys.PREF_GENERAL_TOOLTIP_MAX_ANALYSIS_THREADS));
+        return spinner;
+    }
+
+    /**
+     * Build the spinner for the analysis timeout of a single file
+     *
+     * @param parent
+     * @return
+     */
+    private Spinner buildAnalysisTimeoutText(Composite parent) {
+
+        Composite comp = new Composite(parent, 0);
+        comp.setLayout(new GridLayout(2, false));
+
+        Label label = buildLabel(comp, StringKeys.PREF_GENERAL_LABEL_ANALYSIS_TIMEOUT);
+        label.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, false, false, 1, 1));
+
+        final Spinner spinner = new Spinner(comp, SWT.BORDER);
+        spinner.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, true, false, 1, 1));
+        spinner.setMinimum(0);
+        spinner.setMaximum(ANALYSIS_TIMEOUT_LIMIT);
+        spinner.setSelection(preferences.getAnalysisTimeout());
+        spinner.setToolTipText(getMessage(StringKeys.PREF_GENERAL_TOOLTIP_ANALYSIS_TIMEOUT));
+        return spinner;
+    }
+
+    /**
+     * Build the spinner for the latency budget of the checks triggered by a build
+     *
+     * @param parent
+     * @return
+     */
+    private Spinner buildReviewLatencyBudgetText(Composite parent) {
+
+        Composite comp = new Composite(parent, 0);
+        comp.setLayout(new GridLayout(2, false));
+
+        Label label = buildLabel(comp, StringKeys.PREF_GENERAL_LABEL_REVIEW_LATENCY_BUDGET);
+        label.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, false, false, 1, 1));
+
+        final Spinner spinner = new Spinner(comp, SWT.BORDER);
+        spinner.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, true, false, 1, 1));
+        spinner.setMinimum(0);
+        spinner.setMaximum(REVIEW_LATENCY_BUDGET_LIMIT);
+        spinner.setIncrement(REVIEW_LATENCY_BUDGET_INCREMENT);
+        spinner.setSelection(preferences.getReviewLatencyBudget());
+        spinner.setToolTipText(getMessage(StringKeys.PREF_GENERAL_TOOLTIP_REVIEW_LATENCY_BUDGET));
+        return spinner;
+    }
+
+    /**
+     * Build the spinner for the idle delay of the background checks of the workspace
+     *
+     * @param parent
+     * @return
+     */
+    private Spinner buildIdleReviewDelayText(Composite parent) {
+
+        Composite comp = new Composite(parent, 0);
+        comp.setLayout(new GridLayout(2, false));
+
+        Label label = buildLabel(comp, StringKeys.PREF_GENERAL_LABEL_IDLE_REVIEW_DELAY);
+        label.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, false, false, 1, 1));
+
+        final Spinner spinner = new Spinner(comp, SWT.BORDER);
+        spinner.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, true, false, 1, 1));
+        spinner.setMinimum(0);
+        spinner.setMaximum(IDLE_REVIEW_DELAY_LIMIT);
+        spinner.setSelection(preferences.getIdleReviewDelay());
+        spinner.setToolTipText(getMessage(StringKeys.PREF_GENERAL_TOOLTIP_IDLE_REVIEW_DELAY));
+        return spinner;
+    }
+
+    /**
+     * Build the spinner for the number of analysis worker JVMs
+     *
+     * @param parent
+     * @return
+     */
+    private Spinner buildAnalysisWorkersText(Composite parent) {
+
+        Composite comp = new Composite(parent, 0);
+        comp.setLayout(new GridLayout(2, false));
+
+        Label label = buildLabel(comp, StringKeys.PREF_GENERAL_LABEL_ANALYSIS_WORKERS);
+        label.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, false, false, 1, 1));
+
+        final Spinner spinner = new Spinner(comp, SWT.BORDER);
+        spinner.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, true, false, 1, 1));
+        spinner.setMinimum(0);
+        spinner.setMaximum(ANALYSIS_WORKERS_LIMIT);
+        spinner.setSelection(preferences.getAnalysisWorkers());
+        spinner.setToolTipText(getMessage(StringKeys.PREF_GENERAL_TOOLTIP_ANALYSIS_WORKERS));
+        return spinner;
+    }
+
+    /**
+     * Build the spinner for the maximum heap size of the analysis worker JVMs
+     *
+     * @param parent
+     * @return
+     */
+    private Spinner buildAnalysisWorkerHeapText(Composite parent) {
+
+        Composite comp = new Composite(parent, 0);
+        comp.setLayout(new GridLayout(2, false));
+
+        Label label = buildLabel(comp, StringKeys.PREF_GENERAL_LABEL_ANALYSIS_WORKER_HEAP);
+        label.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, false, false, 1, 1));
+
+        final Spinner spinner = new Spinner(comp, SWT.BORDER);
+        spinner.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, true, false, 1, 1));
+        spinner.setMinimum(ANALYSIS_WORKER_HEAP_MINIMUM);
+        spinner.setMaximum(ANALYSIS_WORKER_HEAP_LIMIT);
+        spinner.setIncrement(ANALYSIS_WORKER_HEAP_INCREMENT);
+        spinner.setSelection(preferences.getAnalysisWorkerHeap());
+        spinner.setToolTipText(getMessage(StringKeys.PREF_GENERAL_TOOLTIP_ANALYSIS_WORKER_HEAP));
+        return spinner;
+    }
+
+    /**
+     * Build a spinner for a file size limit in kilobytes
+     *
+     * @param parent
+     * @param labelKey
+     * @param tooltipKey
+     * @param size
+     * @return
+     */
+    private Spinner buildFileSizeText(Composite parent, String labelKey, String tooltipKey, int size) {
+
+        Composite comp = new Composite(parent, 0);
+        comp.setLayout(new GridLayout(2, false));
+
+        Label label = buildLabel(comp, labelKey);
+        label.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, false, false, 1, 1));
+
+        final Spinner spinner = new Spinner(comp, SWT.BORDER);
+        spinner.setLayoutData(
+                new GridData(GridData.HORIZONTAL_ALIGN_BEGINNING, GridData.VERTICAL_ALIGN_CENTER, true, false, 1, 1));
+        spinner.setMinimum(0);
+        spinner.setMaximum(FILE_SIZE_LIMIT);
+        spinner.setIncrement(FILE_SIZE_INCREMENT);
+        spinner.setSelection(size);
+        spinner.setToolTipText(getMessage(tooltipKey));
+        return spinner;
+    }
+
+    /**
+     * Build the text for the signatures of generated files
+     *
+     * @param parent
+     * @return
+     */
+    private Text buildGeneratedFileSignaturesText(Composite parent) {
+        Text text = new Text(parent, SWT.SINGLE | SWT.BORDER);
+        text.setText(preferences.getGeneratedFileSignatures());
+        text.setToolTipText(getMessage(StringKeys.PREF_GENERAL_TOOLTIP_GENERATED_FILE_SIGNATURES));
+        return text;
+    }
+
     private Button buildDetermineFiletypesAutomatically(Composite viewGroup) {
         Button button = new Button(viewGroup, SWT.CHECK);
         button.setText(getMessage(StringKeys.PREF_GENERAL_LABEL_DETERMINE_FILETYPES_AUTOMATICALLY));
@@ -798,6 +1069,42 @@ public class GeneralPreferencesPage extends PreferencePage implements IWorkbench
             maxViolationsPerFilePerRule.setMinimum(IPreferences.MAX_VIOLATIONS_PFPR_DEFAULT);
         }
 
+        if (maxAnalysisThreads != null) {
+            maxAnalysisThreads.setSelection(IPreferences.MAX_ANALYSIS_THREADS_DEFAULT);
+        }
+
+        if (analysisTimeout != null) {
+            analysisTimeout.setSelection(IPreferences.ANALYSIS_TIMEOUT_DEFAULT);
+        }
+
+        if (reviewLatencyBudget != null) {
+            reviewLatencyBudget.setSelection(IPreferences.REVIEW_LATENCY_BUDGET_DEFAULT);
+        }
+
+        if (idleReviewDelay != null) {
+            idleReviewDelay.setSelection(IPreferences.IDLE_REVIEW_DELAY_DEFAULT);
+        }
+
+        if (analysisWorkers != null) {
+            analysisWorkers.setSelection(IPreferences.ANALYSIS_WORKERS_DEFAULT);
+        }
+
+        if (analysisWorkerHeap != null) {
+            analysisWorkerHeap.setSelection(IPreferences.ANALYSIS_WORKER_HEAP_DEFAULT);
+        }
+
+        if (lightAnalysisFileSize != null) {
+            lightAnalysisFileSize.setSelection(IPreferences.LIGHT_ANALYSIS_FILE_SIZE_DEFAULT);
+        }
+
+        if (skippedFileSize != null) {
+            skippedFileSize.setSelection(IPreferences.SKIPPED_FILE_SIZE_DEFAULT);
+        }
+
+        if (generatedFileSignaturesText != null) {
+            generatedFileSignaturesText.setText(IPreferences.GENERATED_FILE_SIGNATURES_DEFAULT);
+        }
+
         setText(logFileNameText, IPreferences.LOG_FILENAME_DEFAULT);
 
         if (logLevelScale != null) {
@@ -921,6 +1228,42 @@ public class GeneralPreferencesPage extends PreferencePage implements IWorkbench
                     .setMaxViolationsPerFilePerRule(Integer.valueOf(maxViolationsPerFilePerRule.getText()).intValue());
         }
 
+        if (maxAnalysisThreads != null) {
+            preferences.setMaxAnalysisThreads(maxAnalysisThreads.getSelection());
+        }
+
+        if (analysisTimeout != null) {
+            preferences.setAnalysisTimeout(analysisTimeout.getSelection());
+        }
+
+        if (reviewLatencyBudget != null) {
+            preferences.setReviewLatencyBudget(reviewLatencyBudget.getSelection());
+        }
+
+        if (idleReviewDelay != null) {
+            preferences.setIdleReviewDelay(idleReviewDelay.getSelection());
+        }
+
+        if (analysisWorkers != null) {
+            preferences.setAnalysisWorkers(analysisWorkers.getSelection());
+        }
+
+        if (analysisWorkerHeap != null) {
+            preferences.setAnalysisWorkerHeap(analysisWorkerHeap.getSelection());
+        }
+
+        if (lightAnalysisFileSize != null) {
+            preferences.setLightAnalysisFileSize(lightAnalysisFileSize.getSelection());
+        }
+
+        if (skippedFileSize != null) {
+            preferences.setSkippedFileSize(skippedFileSize.getSelection());
+        }
+
+        if (generatedFileSignaturesText != null) {
+            preferences.setGeneratedFileSignatures(generatedFileSignaturesText.getText());
+        }
+
         if (determineFiletypesAutomatically != null) {
             preferences.setDetermineFiletypesAutomatically(determineFiletypesAutomatically.getSelection());
         }
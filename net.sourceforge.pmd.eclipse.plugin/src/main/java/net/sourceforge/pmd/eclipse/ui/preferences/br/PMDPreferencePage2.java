@@ -71,7 +71,8 @@ public class PMDPreferencePage2 extends AbstractPMDPreferencePage
         // IconColumnDescriptor.priority,
         RuleTableColumns.IMG_PRIORITY,
         // PreferenceTableColumns.fixCount,
-        RuleTableColumns.SINCE, RuleTableColumns.RULE_SET_NAME, RuleTableColumns.RULE_TYPE, RuleTableColumns.MIN_LANGUAGE_VERSION,
+        RuleTableColumns.SINCE, RuleTableColumns.RULE_SET_NAME, RuleTableColumns.RULE_TYPE, RuleTableColumns.TIER,
+        RuleTableColumns.MIN_LANGUAGE_VERSION,
         RuleTableColumns.MAX_LANGUAGE_VERSION, RuleTableColumns.LANGUAGE,
         // regex text -> compact color squares (for comparison)
         RuleTableColumns.FILTER_VIOLATION_REGEX,
@@ -87,6 +88,7 @@ public class PMDPreferencePage2 extends AbstractPMDPreferencePage
         { RuleTableColumns.SINCE, StringKeys.PREF_RULESET_GROUPING_PMD_VERSION },
         { RuleTableColumns.PRIORITY_NAME, StringKeys.PREF_RULESET_COLUMN_PRIORITY },
         { RuleTableColumns.RULE_TYPE, StringKeys.PREF_RULESET_COLUMN_RULE_TYPE },
+        { RuleTableColumns.TIER, StringKeys.PREF_RULESET_COLUMN_TIER },
         { RuleTableColumns.LANGUAGE, StringKeys.PREF_RULESET_COLUMN_LANGUAGE },
         { RuleTableColumns.FILTER_VIOLATION_REGEX, StringKeys.PREF_RULESET_GROUPING_REGEX },
         { null, StringKeys.PREF_RULESET_GROUPING_NONE } };
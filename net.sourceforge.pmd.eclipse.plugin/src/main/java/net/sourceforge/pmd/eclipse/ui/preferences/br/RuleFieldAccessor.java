@@ -9,7 +9,11 @@ import java.util.List;
 import java.util.Set;
 
 import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.plugin.UISettings;
+import net.sourceforge.pmd.eclipse.runtime.cmd.RuleTier;
+import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
+import net.sourceforge.pmd.eclipse.ui.preferences.editors.SWTUtil;
 import net.sourceforge.pmd.eclipse.ui.quickfix.PMDResolutionGenerator;
 import net.sourceforge.pmd.eclipse.util.Util;
 import net.sourceforge.pmd.lang.Language;
@@ -148,6 +152,14 @@ public interface RuleFieldAccessor {
         }
     };
 
+    RuleFieldAccessor TIER = new BasicRuleFieldAccessor() {
+        public Comparable<String> valueFor(Rule rule) {
+            RuleTier tier = RuleTier.of(rule, PMDPlugin.getDefault().loadPreferences().getBackgroundRuleNames());
+            return SWTUtil.stringFor(tier == RuleTier.SAVE ? StringKeys.PREF_RULESET_TIER_SAVE
+                    : StringKeys.PREF_RULESET_TIER_BACKGROUND);
+        }
+    };
+
     RuleFieldAccessor LANGUAGE = new BasicRuleFieldAccessor() {
         public Comparable<Language> valueFor(Rule rule) {
             return rule.getLanguage();
@@ -39,6 +39,8 @@ public interface RuleTableColumns {
             32, RuleFieldAccessor.LANGUAGE, false, null);
     RuleColumnDescriptor RULE_TYPE = new TextColumnDescriptor("tRType", StringKeys.PREF_RULESET_COLUMN_RULE_TYPE,
             SWT.LEFT, 20, RuleFieldAccessor.RULE_TYPE, false, null);
+    RuleColumnDescriptor TIER = new TextColumnDescriptor("tTier", StringKeys.PREF_RULESET_COLUMN_TIER, SWT.LEFT, 80,
+            RuleFieldAccessor.TIER, false, null);
     RuleColumnDescriptor MIN_LANGUAGE_VERSION = new TextColumnDescriptor("tMinLang", StringKeys.PREF_RULESET_COLUMN_MIN_VER,
             SWT.LEFT, 30, RuleFieldAccessor.MIN_LANGUAGE_VERSION, false, null);
     RuleColumnDescriptor MAX_LANGUAGE_VERSION = new TextColumnDescriptor("tMaxLang", StringKeys.PREF_RULESET_COLUMN_MAX_VER,
@@ -47,6 +47,7 @@ import org.eclipse.swt.widgets.TreeItem;
 
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.eclipse.runtime.cmd.RuleTier;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.runtime.preferences.impl.PreferenceUIStore;
 import net.sourceforge.pmd.eclipse.runtime.writer.IRuleSetWriter;
@@ -90,6 +91,7 @@ public class RuleTableManager extends AbstractTreeTableManager<Rule> implements
 
     // private Menu ruleListMenu;
     private MenuItem useDefaultsItem;
+    private MenuItem checkInBackgroundItem;
     private Button addRuleButton;
     private Button removeRuleButton;
     private Button exportRuleSetButton;
@@ -223,11 +225,49 @@ public class RuleTableManager extends AbstractTreeTableManager<Rule> implements
                 resetHandler.resetValuesIn(ruleSelection);
             }
         });
+
+        checkInBackgroundItem = new MenuItem(menu, SWT.CHECK);
+        checkInBackgroundItem.setText(SWTUtil.stringFor(StringKeys.PREF_RULESET_MENU_CHECK_IN_BACKGROUND));
+        checkInBackgroundItem.addSelectionListener(new SelectionAdapter() {
+            public void widgetSelected(SelectionEvent event) {
+                assignToBackgroundTier(checkInBackgroundItem.getSelection());
+            }
+        });
     }
 
     protected void adjustTableMenuOptions() {
         boolean hasDefaults = ruleSelection.haveDefaultValues();
         useDefaultsItem.setEnabled(!hasDefaults);
+
+        List<Rule> rules = ruleSelection.allRules();
+        boolean inBackground = !rules.isEmpty();
+        for (Rule rule : rules) {
+            inBackground &= RuleTier.of(rule, preferences.getBackgroundRuleNames()) == RuleTier.BACKGROUND;
+        }
+        checkInBackgroundItem.setEnabled(!rules.isEmpty());
+        checkInBackgroundItem.setSelection(inBackground);
+    }
+
+    /**
+     * Assigns the selected rules to the background tier, or removes them from
+     * it. The rules that need the data flow analysis or several files stay in
+     * the background tier anyway.
+     */
+    private void assignToBackgroundTier(boolean inBackground) {
+        if (ruleSelection == null) {
+            return;
+        }
+        Set<String> backgroundRuleNames = new HashSet<String>(preferences.getBackgroundRuleNames());
+        for (Rule rule : ruleSelection.allRules()) {
+            if (inBackground) {
+                backgroundRuleNames.add(rule.getName());
+            } else {
+                backgroundRuleNames.remove(rule.getName());
+            }
+        }
+        preferences.setBackgroundRuleNames(backgroundRuleNames);
+        setModified();
+        refresh();
     }
 
     /**
@@ -4,11 +4,15 @@
 
 package net.sourceforge.pmd.eclipse.ui.views; // NOPMD by Sven on 13.11.06 11:45
 
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jface.viewers.ISelection;
@@ -34,8 +38,11 @@ import org.eclipse.ui.part.ViewPart;
 
 import net.sourceforge.pmd.RulePriority;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.builder.MarkerQuery;
 import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
 import net.sourceforge.pmd.eclipse.runtime.cmd.DeleteMarkersCommand;
+import net.sourceforge.pmd.eclipse.runtime.cmd.FilePreScanner.Decision;
 import net.sourceforge.pmd.eclipse.ui.PMDUiConstants;
 import net.sourceforge.pmd.eclipse.ui.model.AbstractPMDRecord;
 import net.sourceforge.pmd.eclipse.ui.model.FileRecord;
@@ -142,6 +149,7 @@ public class ViolationOverview extends ViewPart implements ISelectionProvider, I
         if (memento != null) {
             restoreTreeSettings();
         }
+        refreshPreScanSummary();
     }
 
     /**
@@ -410,10 +418,63 @@ public class ViolationOverview extends ViewPart implements ISelectionProvider, I
             // this.treeViewer.getControl().setRedraw(false);
             treeViewer.refresh();
             refreshMenu();
+            refreshPreScanSummary();
             // this.treeViewer.getControl().setRedraw(true);
         }
     }
 
+    /**
+     * Tells how many files the pre-scan skipped or only checked with the high
+     * priority rules, as they have no violations to show.
+     */
+    private void refreshPreScanSummary() {
+        final Set<IResource> skippedFiles = new HashSet<IResource>();
+        final Set<IResource> lightFiles = new HashSet<IResource>();
+        try {
+            MarkerQuery.markersOf(PMDRuntimeConstants.PMD_ANALYSIS_MARKER).accept(
+                    ResourcesPlugin.getWorkspace().getRoot(), new MarkerQuery.MarkerVisitor() {
+                        @Override
+                        public boolean visit(IMarker marker) {
+                            Decision decision = preScanDecisionOf(marker);
+                            if (decision == null) {
+                                return true;
+                            }
+                            if (decision.isSkipped()) {
+                                skippedFiles.add(marker.getResource());
+                            } else if (decision == Decision.LIGHT) {
+                                lightFiles.add(marker.getResource());
+                            }
+                            return true;
+                        }
+                    });
+        } catch (CoreException e) {
+            PMDPlugin.getDefault().logError(StringKeys.ERROR_CORE_EXCEPTION, e);
+        }
+        if (skippedFiles.isEmpty() && lightFiles.isEmpty()) {
+            setContentDescription("");
+        } else {
+            setContentDescription(MessageFormat.format(getString(StringKeys.VIEW_OVERVIEW_SKIPPED_FILES),
+                    skippedFiles.size(), lightFiles.size()));
+        }
+    }
+
+    /**
+     * @return the pre-scan decision recorded on an analysis marker, null if
+     *         there is none
+     */
+    private static Decision preScanDecisionOf(IMarker marker) {
+        String decision = marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRESCAN, null);
+        if (decision == null) {
+            return null;
+        }
+        try {
+            return Decision.valueOf(decision);
+        } catch (IllegalArgumentException e) {
+            // e.g. recorded by another version of the plugin
+            return null;
+        }
+    }
+
     public void refreshMenu() {
         menuManager.createDropDownMenu(getViewSite().getActionBars().getMenuManager());
         // note: the context menu doesn't need to be refreshed
@@ -0,0 +1,243 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.security.MessageDigest;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * The decoded content of a workspace file, read at once so that the parser,
+ * the review comment scanner and the line counter share it.
+ *
+ * <p>The bytes are read through NIO into a buffer that is kept per thread and
+ * reused for the next file, and decoded with the charset of the file.
+ */
+public final class SourceBuffer {
+
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    // larger buffers are not kept for the next file
+    private static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(INITIAL_CAPACITY);
+        }
+    };
+
+    private final IFile file;
+    private final String charset;
+    private final CharBuffer content;
+    private final int size;
+
+    private SourceBuffer(IFile file, String charset, CharBuffer content, int size) {
+        this.file = file;
+        this.charset = charset;
+        this.content = content;
+        this.size = size;
+    }
+
+    /**
+     * Reads and decodes the content of a file.
+     *
+     * @param file
+     *            a workspace file
+     * @return the content of the file
+     */
+    public static SourceBuffer read(IFile file) throws CoreException, IOException {
+        return read(file, null);
+    }
+
+    /**
+     * Reads and decodes the content of a file, and updates a digest with its
+     * raw bytes, so that the file is not read again to hash it.
+     *
+     * @param file
+     *            a workspace file
+     * @param digest
+     *            the digest to update, may be null
+     * @return the content of the file
+     */
+    public static SourceBuffer read(IFile file, MessageDigest digest) throws CoreException, IOException {
+        String charset = file.getCharset();
+        ByteBuffer bytes = readBytes(file);
+        if (digest != null) {
+            digest.update(bytes.duplicate());
+        }
+        int size = bytes.remaining();
+        return new SourceBuffer(file, charset, decode(bytes, charset), size);
+    }
+
+    /**
+     * Reads and decodes the beginning of a file only.
+     *
+     * @param file
+     *            a workspace file
+     * @param length
+     *            the maximum number of characters to read
+     * @return the first characters of the file
+     */
+    public static String readHeader(IFile file, int length) throws CoreException, IOException {
+        Reader reader = new InputStreamReader(file.getContents(true), file.getCharset());
+        try {
+            char[] chars = new char[length];
+            int count = 0;
+            int read = 0;
+            while (count < length && read != -1) {
+                read = reader.read(chars, count, length - count);
+                count += Math.max(0, read);
+            }
+            return new String(chars, 0, count);
+        } finally {
+            IOUtil.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * @param file
+     *            a workspace file
+     * @return the size of the file in bytes, without reading it, or -1 if it
+     *         is not known, e.g. for a file of a remote file system
+     */
+    public static long sizeOf(IFile file) {
+        IPath location = file.getRawLocation();
+        File localFile = location == null ? null : location.toFile();
+        return localFile != null && localFile.isFile() ? localFile.length() : -1;
+    }
+
+    private static ByteBuffer readBytes(IFile file) throws CoreException, IOException {
+        ReadableByteChannel channel = openChannel(file);
+        try {
+            ByteBuffer buffer = BUFFERS.get();
+            buffer.clear();
+            if (channel instanceof FileChannel) {
+                // one more byte, so that the end of the file is detected without growing
+                long size = ((FileChannel) channel).size();
+                buffer = ensureCapacity(buffer, (int) Math.min(Integer.MAX_VALUE - 1, size) + 1);
+            }
+            while (channel.read(buffer) != -1) {
+                if (!buffer.hasRemaining()) {
+                    buffer = ensureCapacity(buffer, buffer.capacity() * 2);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            IOUtil.closeQuietly(channel);
+        }
+    }
+
+    private static ReadableByteChannel openChannel(IFile file) throws CoreException, IOException {
+        IPath location = file.getRawLocation();
+        File localFile = location == null ? null : location.toFile();
+        if (localFile != null && localFile.isFile()) {
+            return new FileInputStream(localFile).getChannel();
+        }
+        // e.g. a file of a remote file system
+        return Channels.newChannel(file.getContents(true));
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int capacity) {
+        if (buffer.capacity() >= capacity) {
+            return buffer;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        larger.put(buffer);
+        if (capacity <= MAX_POOLED_CAPACITY) {
+            BUFFERS.set(larger);
+        }
+        return larger;
+    }
+
+    private static CharBuffer decode(ByteBuffer bytes, String charset) throws CharacterCodingException {
+        // malformed input is replaced, as a reader would do
+        return Charset.forName(charset).newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE).decode(bytes);
+    }
+
+    public IFile getFile() {
+        return file;
+    }
+
+    /**
+     * @return the charset the file was decoded with
+     */
+    public String getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return the decoded content, which must not be modified
+     */
+    public CharSequence getContent() {
+        return content.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the size of the file in bytes, when it was read
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return a reader of the decoded content, which does not copy it
+     */
+    public Reader newReader() {
+        final CharBuffer chars = content.asReadOnlyBuffer();
+        return new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (length == 0) {
+                    return 0;
+                }
+                if (!chars.hasRemaining()) {
+                    return -1;
+                }
+                int count = Math.min(length, chars.remaining());
+                chars.get(buffer, offset, count);
+                return count;
+            }
+
+            @Override
+            public void close() {
+                // nothing to release, the content is kept by the buffer
+            }
+        };
+    }
+
+    /**
+     * Encodes the content, e.g. in the source encoding PMD expects.
+     *
+     * @param encoding
+     *            the target encoding
+     * @return the encoded content
+     */
+    public ByteBuffer encode(Charset encoding) {
+        return encoding.encode(content.asReadOnlyBuffer());
+    }
+
+    @Override
+    public String toString() {
+        return content.toString();
+    }
+}